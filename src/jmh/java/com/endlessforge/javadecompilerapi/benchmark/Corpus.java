@@ -0,0 +1,72 @@
+package com.endlessforge.javadecompilerapi.benchmark;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Fixed inputs for the benchmarks, cut from the commons-io jar pinned in pom.xml so every run
+ * and every machine decompiles the same bytes. Corpus jars hold the first {@code n} classes
+ * in name order and are written once to target/jmh-corpus.
+ */
+final class Corpus {
+
+    private static final Path DIR = Path.of("target", "jmh-corpus");
+
+    private Corpus() {}
+
+    static byte[] classBytes(String internalName) throws IOException {
+        try (ZipFile zip = new ZipFile(sourceJar())) {
+            ZipEntry entry = zip.getEntry(internalName + ".class");
+            if (entry == null) throw new FileNotFoundException(internalName + ".class not in " + zip.getName());
+            try (InputStream in = zip.getInputStream(entry)) {
+                return in.readAllBytes();
+            }
+        }
+    }
+
+    static File jar(int classes) throws IOException {
+        Path jar = DIR.resolve("corpus-" + classes + ".jar");
+        if (Files.exists(jar)) return jar.toFile();
+        Files.createDirectories(DIR);
+        Path tmp = Files.createTempFile(DIR, "corpus-", ".tmp");
+        try (ZipFile source = new ZipFile(sourceJar());
+             ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            List<String> names = new ArrayList<>();
+            for (Enumeration<? extends ZipEntry> en = source.entries(); en.hasMoreElements(); ) {
+                String name = en.nextElement().getName();
+                if (name.endsWith(".class") && !name.startsWith("META-INF/")) names.add(name);
+            }
+            Collections.sort(names);
+            if (names.size() < classes) {
+                throw new IllegalArgumentException("only " + names.size() + " classes available, " + classes + " requested");
+            }
+            for (String name : names.subList(0, classes)) {
+                ZipEntry entry = new ZipEntry(name);
+                entry.setTime(0L); // same bytes on every machine
+                zos.putNextEntry(entry);
+                try (InputStream in = source.getInputStream(source.getEntry(name))) {
+                    in.transferTo(zos);
+                }
+                zos.closeEntry();
+            }
+        }
+        Files.move(tmp, jar);
+        return jar.toFile();
+    }
+
+    private static File sourceJar() throws IOException {
+        try {
+            return new File(IOUtils.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+}
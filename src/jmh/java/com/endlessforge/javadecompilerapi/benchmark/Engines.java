@@ -0,0 +1,75 @@
+package com.endlessforge.javadecompilerapi.benchmark;
+
+import ch.qos.logback.classic.Level;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.endlessforge.javadecompilerapi.service.DecompilerService;
+import com.endlessforge.javadecompilerapi.service.cache.DecompilationCache;
+import com.endlessforge.javadecompilerapi.service.cfr.CfrAdapter;
+import com.endlessforge.javadecompilerapi.service.external.ExternalToolAdapter;
+import com.endlessforge.javadecompilerapi.service.external.ExternalWorkerPool;
+import com.endlessforge.javadecompilerapi.service.jadx.JadxAdapter;
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import com.endlessforge.javadecompilerapi.service.nested.NestedArchives;
+import com.endlessforge.javadecompilerapi.service.output.OutputEncoders;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompilePipeline;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompileWorkerPool;
+import com.endlessforge.javadecompilerapi.service.procyon.ProcyonAdapter;
+import com.endlessforge.javadecompilerapi.service.race.RaceDecompiler;
+import com.endlessforge.javadecompilerapi.util.ModeDetector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * The service graph the application context would build, wired by hand with the defaults from
+ * application.properties and in-memory meters. The result cache is off so every invocation decompiles.
+ */
+final class Engines {
+
+    static {
+        // without Spring's logging setup logback prints every engine's debug output
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    final CfrAdapter cfr;
+    final ProcyonAdapter procyon;
+    final JadxAdapter jadx;
+    final ExternalToolAdapter external;
+    final OutputEncoders encoders;
+    final DecompilerService service;
+
+    Engines(int zipLevel) throws IOException {
+        DecompileMetrics metrics = new DecompileMetrics(new SimpleMeterRegistry());
+        DecompileWorkerPool workers = new DecompileWorkerPool(0, Duration.ZERO);
+        DecompilePipeline pipeline = new DecompilePipeline(workers, metrics,
+                Duration.ofSeconds(30), Duration.ofMinutes(5));
+        long maxClassBytes = 8 * 1024 * 1024;
+        cfr = new CfrAdapter(pipeline, metrics, maxClassBytes);
+        procyon = new ProcyonAdapter(pipeline, metrics, 0);
+        jadx = new JadxAdapter(pipeline, metrics, maxClassBytes);
+        external = new ExternalToolAdapter(new ExternalWorkerPool(1, 50, Duration.ofMinutes(2), "", metrics), metrics,
+                modes());
+        DecompilationCache cache = new DecompilationCache(false, 0, false, "", 0);
+        RaceDecompiler race = new RaceDecompiler(cfr, procyon, jadx, metrics, workers);
+        NestedArchives nested = new NestedArchives("", 2, 134217728L, 536870912L, new ObjectMapper());
+        encoders = new OutputEncoders(zipLevel, 9, new ObjectMapper());
+        service = new DecompilerService(cfr, procyon, jadx, external, race, nested, cache, metrics, new ObjectMapper(), encoders,
+                workers);
+    }
+
+    private static ModeDetector modes() {
+        ModeDetector modes = new ModeDetector(false);
+        modes.refresh();
+        return modes;
+    }
+
+    /** Fails the benchmark up front when an external mode's tool is not installed in ./tools. */
+    static void requireMode(String mode) {
+        if (!modes().isModeAvailable(mode)) {
+            throw new IllegalStateException(mode + " is not available; install its tool in ./tools");
+        }
+    }
+}
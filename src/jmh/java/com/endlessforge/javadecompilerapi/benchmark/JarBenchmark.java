@@ -0,0 +1,63 @@
+package com.endlessforge.javadecompilerapi.benchmark;
+
+import com.endlessforge.javadecompilerapi.service.DecompilerService;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompileContext;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+import com.endlessforge.javadecompilerapi.service.pipeline.EntrySink;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole corpus jars of increasing size through each engine. Embedded engines write into a sink
+ * that only consumes the entries, so this is the engine and pipeline cost without the ZIP;
+ * external tools write their output directory as they do for a request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g"})
+public class JarBenchmark {
+
+    @Param({"cfr", "procyon", "jadx", "jdcore"})
+    public String mode;
+
+    @Param({"10", "50", "200"})
+    public int classes;
+
+    private Engines engines;
+    private File jar;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (DecompilerService.isExternalMode(mode)) Engines.requireMode(mode);
+        engines = new Engines(1);
+        jar = Corpus.jar(classes);
+    }
+
+    @Benchmark
+    public void decompileJar(Blackhole bh) throws IOException {
+        if (!DecompilerService.isExternalMode(mode)) {
+            engines.service.decompileArchive(jar, mode, null, new EntrySink() {
+                @Override
+                public void put(DecompiledEntry entry) {
+                    bh.consume(entry);
+                }
+            }, new DecompileContext());
+            return;
+        }
+        File outDir = Files.createTempDirectory("jmh-ext-out-").toFile();
+        try {
+            engines.external.decompileJarWithExternalTool(jar, outDir, mode, null);
+        } finally {
+            FileUtils.deleteQuietly(outDir);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.endlessforge.javadecompilerapi.benchmark;
+
+import com.endlessforge.javadecompilerapi.service.DecompilerService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One class per invocation through each adapter's single-class entry point, as served by
+ * {@code POST /decompile/class}. IOCase is small; IOUtils is large with many overloads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g"})
+public class SingleClassBenchmark {
+
+    @Param({"cfr", "procyon", "jadx", "jdcore"})
+    public String mode;
+
+    @Param({"org/apache/commons/io/IOCase", "org/apache/commons/io/IOUtils"})
+    public String className;
+
+    private Engines engines;
+    private byte[] classBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (DecompilerService.isExternalMode(mode)) Engines.requireMode(mode);
+        engines = new Engines(1);
+        classBytes = Corpus.classBytes(className);
+    }
+
+    @Benchmark
+    public String decompileClass() throws IOException {
+        return switch (mode) {
+            case "cfr" -> engines.cfr.decompileClass(classBytes, null);
+            case "procyon" -> engines.procyon.decompileClass(classBytes, null);
+            case "jadx" -> engines.jadx.decompileClass(classBytes, null);
+            default -> engines.external.decompileClassWithExternalTool(classBytes, mode, null);
+        };
+    }
+}
@@ -0,0 +1,131 @@
+package com.endlessforge.javadecompilerapi.benchmark;
+
+import com.endlessforge.javadecompilerapi.JavaDecompilerApiApplication;
+import com.endlessforge.javadecompilerapi.service.engine.EngineWarmup;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Application startup, once per fork so every sample is a cold JVM. {@link #context} starts the
+ * application in the benchmark JVM, until the context is up ({@code warmUp=false}: engines load on
+ * first use) or until every engine is warmed up ({@code warmUp=true}: when readiness flips).
+ * {@link #extractedJar} launches the jar {@code -Pcds} extracts to {@code target/cds}, with and
+ * without its AppCDS archive, and waits for {@code /actuator/health/readiness}; the archive only
+ * maps onto the classpath it was dumped with, hence the separate process.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 5, jvmArgsAppend = {"-Xmx384m", "-XX:+UseSerialGC"})
+public class StartupBenchmark {
+
+    private static final Duration READY_TIMEOUT = Duration.ofMinutes(5);
+
+    @State(Scope.Benchmark)
+    public static class InProcess {
+
+        @Param({"false", "true"})
+        public boolean warmUp;
+
+        ConfigurableApplicationContext context;
+
+        @TearDown(Level.Iteration)
+        public void stop() {
+            if (context != null) context.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Launched {
+
+        @Param({"false", "true"})
+        public boolean archive;
+
+        File jar;
+        File jsa;
+        Process process;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            Path dir = Path.of("target", "cds");
+            try (Stream<Path> files = Files.list(dir)) {
+                jar = files.filter(p -> p.toString().endsWith(".jar")).findFirst()
+                        .orElseThrow(() -> new IOException("no extracted jar in " + dir + "; build with -Pcds"))
+                        .toFile();
+            }
+            jsa = dir.resolve("application.jsa").toFile();
+            if (archive && !jsa.isFile()) throw new IOException(jsa + " missing; build with -Pcds");
+        }
+
+        @TearDown(Level.Iteration)
+        public void stop() throws InterruptedException {
+            if (process == null) return;
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) process.destroyForcibly();
+        }
+    }
+
+    @Benchmark
+    public ConfigurableApplicationContext context(InProcess state) throws InterruptedException {
+        state.context = SpringApplication.run(JavaDecompilerApiApplication.class,
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--decompiler.cache.disk.enabled=false",
+                "--decompiler.engines.warm-up=" + state.warmUp);
+        if (state.warmUp && !state.context.getBean(EngineWarmup.class).await(READY_TIMEOUT)) {
+            throw new IllegalStateException("engine warm-up did not finish");
+        }
+        return state.context;
+    }
+
+    @Benchmark
+    public int extractedJar(Launched state) throws IOException, InterruptedException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>(List.of("java", "-Xmx384m", "-XX:+UseSerialGC"));
+        if (state.archive) command.add("-XX:SharedArchiveFile=" + state.jsa.getAbsolutePath());
+        command.addAll(List.of("-jar", state.jar.getAbsolutePath(),
+                "--server.port=" + port,
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--decompiler.cache.disk.enabled=false"));
+        state.process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+
+        HttpClient http = HttpClient.newHttpClient();
+        HttpRequest readiness = HttpRequest.newBuilder(
+                URI.create("http://localhost:" + port + "/actuator/health/readiness")).build();
+        long deadline = System.nanoTime() + READY_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!state.process.isAlive()) throw new IllegalStateException("exited with " + state.process.exitValue());
+            try {
+                int status = http.send(readiness, HttpResponse.BodyHandlers.discarding()).statusCode();
+                if (status == 200) return status;
+            } catch (IOException notListeningYet) {
+                // keep polling
+            }
+            Thread.sleep(20);
+        }
+        throw new IllegalStateException("not ready within " + READY_TIMEOUT);
+    }
+}
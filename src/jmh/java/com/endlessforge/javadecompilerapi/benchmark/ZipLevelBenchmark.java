@@ -0,0 +1,120 @@
+package com.endlessforge.javadecompilerapi.benchmark;
+
+import com.endlessforge.javadecompilerapi.service.cache.PinnedArchive;
+import com.endlessforge.javadecompilerapi.service.output.OutputFormat;
+import com.endlessforge.javadecompilerapi.service.output.OutputWriter;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompileContext;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ZIP result at each deflate level ({@code decompiler.output.zip-level}). {@code decompileJar}
+ * is the full {@link com.endlessforge.javadecompilerapi.service.DecompilerService#decompileJar}
+ * path with CFR; {@code writeZip} encodes already decompiled sources through
+ * {@link com.endlessforge.javadecompilerapi.service.output.OutputEncoders}, which isolates what the
+ * level costs. The compressed size of the last {@code writeZip} is printed at teardown.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g"})
+public class ZipLevelBenchmark {
+
+    @Param({"0", "1", "6", "9"})
+    public int level;
+
+    @Param({"200"})
+    public int classes;
+
+    private Engines engines;
+    private File jar;
+    private final List<DecompiledEntry> sources = new ArrayList<>();
+    private long zipBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        engines = new Engines(level);
+        jar = Corpus.jar(classes);
+        engines.service.decompileArchive(jar, "cfr", null, sources::add, new DecompileContext());
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (zipBytes > 0) System.out.println("level " + level + ": " + sources.size() + " sources, " + zipBytes + " bytes zipped");
+    }
+
+    @Benchmark
+    public long decompileJar() throws IOException {
+        PinnedArchive result = engines.service.decompileJar(new CorpusUpload(jar), "cfr", null);
+        try {
+            return Files.size(result.path());
+        } finally {
+            engines.service.release(result);
+        }
+    }
+
+    @Benchmark
+    public long writeZip() throws IOException {
+        CountingOutputStream out = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        try (OutputWriter writer = engines.encoders.open(OutputFormat.ZIP, out)) {
+            for (DecompiledEntry entry : sources) writer.put(entry);
+        }
+        zipBytes = out.getByteCount();
+        return zipBytes;
+    }
+
+    /** A corpus jar presented the way a multipart upload reaches the service. */
+    private record CorpusUpload(File file) implements MultipartFile {
+
+        @Override
+        public String getName() {
+            return "file";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return file.getName();
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/java-archive";
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return file.length() == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return file.length();
+        }
+
+        @Override
+        public byte[] getBytes() throws IOException {
+            return Files.readAllBytes(file.toPath());
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FileInputStream(file);
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            Files.copy(file.toPath(), dest.toPath());
+        }
+    }
+}
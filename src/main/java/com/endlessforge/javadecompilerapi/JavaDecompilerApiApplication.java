@@ -2,8 +2,10 @@ package com.endlessforge.javadecompilerapi;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class JavaDecompilerApiApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,27 @@
+package com.endlessforge.javadecompilerapi.controller;
+
+import com.endlessforge.javadecompilerapi.service.admission.AdmissionRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+/**
+ * Turns admission rejections into 429 (wait queue full) or 503 (no capacity within the wait),
+ * both with {@code Retry-After}.
+ */
+@RestControllerAdvice
+public class AdmissionExceptionHandler {
+
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<Map<String, Object>> rejected(AdmissionRejectedException e) {
+        HttpStatus status = e.queueFull() ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE;
+        long seconds = e.retryAfter().toSeconds();
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds))
+                .body(Map.of("error", e.getMessage(), "mode", e.mode(), "retryAfterSeconds", seconds));
+    }
+}
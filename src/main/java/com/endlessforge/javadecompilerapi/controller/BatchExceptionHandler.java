@@ -0,0 +1,20 @@
+package com.endlessforge.javadecompilerapi.controller;
+
+import com.endlessforge.javadecompilerapi.service.batch.BatchTooLargeException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+/** 413 for a batch whose classes inflate past {@code decompiler.batch.max-bytes}, before any engine sees them. */
+@RestControllerAdvice
+public class BatchExceptionHandler {
+
+    @ExceptionHandler(BatchTooLargeException.class)
+    public ResponseEntity<Map<String, Object>> tooLarge(BatchTooLargeException e) {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .body(Map.of("error", "batch too large", "maxBytes", e.maxBytes(), "advice", "split the batch or upload a JAR to /decompile/jar"));
+    }
+}
@@ -0,0 +1,19 @@
+package com.endlessforge.javadecompilerapi.controller;
+
+import com.endlessforge.javadecompilerapi.service.InvalidClassFileException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+/** 400 for a single-class upload whose header cannot be read, before any engine sees it. */
+@RestControllerAdvice
+public class ClassFileExceptionHandler {
+
+    @ExceptionHandler(InvalidClassFileException.class)
+    public ResponseEntity<Map<String, Object>> invalid(InvalidClassFileException e) {
+        return ResponseEntity.badRequest()
+                .body(Map.of("error", "not a class file", "detail", e.getMessage(), "advice", "upload JARs to /decompile/jar"));
+    }
+}
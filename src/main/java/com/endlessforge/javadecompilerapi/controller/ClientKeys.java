@@ -0,0 +1,50 @@
+package com.endlessforge.javadecompilerapi.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Who a request comes from, for fair sharing in admission control: the value of
+ * {@code decompiler.admission.client-header} (an API key) when it is trusted, otherwise the remote
+ * address. A key is trusted when it is one of {@code decompiler.admission.api-keys}, or whatever it
+ * is when the request comes from one of {@code decompiler.admission.trusted-proxies}; anyone else
+ * could mint a fresh key per request and jump the fair-share order.
+ */
+@Component
+public class ClientKeys {
+
+    private static final int MAX_KEY_LENGTH = 128;
+
+    private final String header;
+    private final Set<String> apiKeys;
+    private final Set<String> trustedProxies;
+
+    public ClientKeys(@Value("${decompiler.admission.client-header:X-Api-Key}") String header,
+                      @Value("${decompiler.admission.api-keys:}") String apiKeys,
+                      @Value("${decompiler.admission.trusted-proxies:}") String trustedProxies) {
+        this.header = header;
+        this.apiKeys = parseList(apiKeys);
+        this.trustedProxies = parseList(trustedProxies);
+    }
+
+    public String of(HttpServletRequest request) {
+        String address = request.getRemoteAddr();
+        String key = header.isBlank() ? null : request.getHeader(header);
+        if (key != null && !key.isBlank()) {
+            key = key.strip();
+            if (apiKeys.contains(key) || trustedProxies.contains(address)) {
+                return "key:" + (key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key);
+            }
+        }
+        return "addr:" + address;
+    }
+
+    private static Set<String> parseList(String spec) {
+        return Arrays.stream(spec.split(",")).map(String::strip).filter(s -> !s.isEmpty()).collect(Collectors.toUnmodifiableSet());
+    }
+}
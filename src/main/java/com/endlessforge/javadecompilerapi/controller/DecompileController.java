@@ -1,34 +1,99 @@
 package com.endlessforge.javadecompilerapi.controller;
 
 import com.endlessforge.javadecompilerapi.service.DecompilerService;
+import com.endlessforge.javadecompilerapi.service.UploadedJar;
+import com.endlessforge.javadecompilerapi.service.admission.AdmissionControl;
+import com.endlessforge.javadecompilerapi.service.admission.Priority;
+import com.endlessforge.javadecompilerapi.service.admission.Workload;
+import com.endlessforge.javadecompilerapi.service.batch.ClassBatch;
+import com.endlessforge.javadecompilerapi.service.batch.ClassBatchService;
+import com.endlessforge.javadecompilerapi.service.cache.PinnedArchive;
+import com.endlessforge.javadecompilerapi.service.incremental.IncrementalDecompiler;
+import com.endlessforge.javadecompilerapi.service.library.Classpath;
+import com.endlessforge.javadecompilerapi.service.library.LibraryStore;
+import com.endlessforge.javadecompilerapi.service.linemap.LineMapService;
+import com.endlessforge.javadecompilerapi.service.nested.NestedArchives;
+import com.endlessforge.javadecompilerapi.service.nested.NestedFilter;
+import com.endlessforge.javadecompilerapi.service.output.OutputEncoders;
+import com.endlessforge.javadecompilerapi.service.output.OutputFormat;
+import com.endlessforge.javadecompilerapi.service.search.SearchService;
 import com.endlessforge.javadecompilerapi.util.ModeDetector;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/decompile")
 public class DecompileController {
 
+    /** SHA-256 of the uploaded JAR; pass it as {@code base} to a later incremental request. */
+    static final String JAR_SHA256_HEADER = "X-Jar-Sha256";
+
+    /** Name of the result's search index, for {@code /search}; only set when {@code index=true} was asked for. */
+    static final String SEARCH_INDEX_HEADER = "X-Search-Index";
+
+    /** Artifact to resolve stack frames against at {@code /linemaps/resolve}; only set when {@code lines=true}. */
+    static final String LINE_MAPS_HEADER = "X-Line-Maps";
+
     private final DecompilerService decompilerService;
+    private final ClassBatchService batchService;
     private final ModeDetector modeDetector;
+    private final AdmissionControl admission;
+    private final ClientKeys clients;
+    private final IncrementalDecompiler incremental;
+    private final LibraryStore libraries;
+    private final SearchService search;
+    private final LineMapService lineMaps;
+    private final OutputEncoders encoders;
+    private final long maxClassBytes;
 
-    public DecompileController(DecompilerService decompilerService, ModeDetector modeDetector) {
+    public DecompileController(DecompilerService decompilerService, ClassBatchService batchService, ModeDetector modeDetector,
+                               AdmissionControl admission, ClientKeys clients, IncrementalDecompiler incremental,
+                               LibraryStore libraries,
+                               SearchService search, LineMapService lineMaps, OutputEncoders encoders,
+                               @Value("${decompiler.class.max-bytes:8388608}") long maxClassBytes) {
         this.decompilerService = decompilerService;
+        this.batchService = batchService;
         this.modeDetector = modeDetector;
+        this.admission = admission;
+        this.clients = clients;
+        this.incremental = incremental;
+        this.libraries = libraries;
+        this.search = search;
+        this.lineMaps = lineMaps;
+        this.encoders = encoders;
+        this.maxClassBytes = maxClassBytes;
     }
 
+    /**
+     * Decompiles one class. {@code libraries} (comma-separated SHA-256 digests from {@code /libraries})
+     * and {@code lib} parts form the classpath its references are resolved against.
+     */
     @PostMapping("/class")
     public ResponseEntity<?> decompileClass(
             @RequestPart("file") MultipartFile file,
             @RequestParam(value = "mode", defaultValue = "cfr") String mode,
-            @RequestParam(value = "className", required = false) String className
+            @RequestParam(value = "className", required = false) String className,
+            @RequestParam(value = "libraries", required = false) String libraryHashes,
+            @RequestPart(value = "lib", required = false) List<MultipartFile> libraryFiles,
+            HttpServletRequest request
     ) throws IOException {
         if (file == null || file.isEmpty()) return ResponseEntity.badRequest().body(Map.of("error", "file required"));
+        // a class is decompiled from a heap copy; refuse multi-megabyte "classes" before reading them
+        if (file.getSize() > maxClassBytes) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body(Map.of("error", "class file too large", "maxBytes", maxClassBytes, "advice", "upload JARs to /decompile/jar"));
+        }
 
         // validate mode availability
         if (!modeDetector.isModeAvailable(mode)) {
@@ -36,37 +101,281 @@ public class DecompileController {
                     .body(Map.of("error", "mode not available", "mode", mode, "advice", "place tool JARs in ./tools or use mode=cfr"));
         }
 
-        Map<String, Object> result = decompilerService.decompileSingleClass(file, mode, className);
-        return ResponseEntity.ok(result);
+        // the classpath pins its libraries until the class is decompiled
+        try (Classpath classpath = libraries.classpath(libraryHashes, libraryFiles);
+             AdmissionControl.Permit permit = admission.admit(Priority.INTERACTIVE, clients.of(request),
+                     mode.toLowerCase(Locale.ROOT), Workload.ofClass(file.getSize()))) {
+            Map<String, Object> result = decompilerService.decompileSingleClass(file, mode, className, classpath);
+            return ResponseEntity.ok(result);
+        }
     }
 
+    /**
+     * Decompiles a JAR into a ZIP of sources. Fat JARs and WARs are decompiled unit by unit, with
+     * {@code include}/{@code exclude} selecting units by path (see {@link NestedFilter}). References
+     * resolve against {@code libraries} and {@code lib} parts as for single classes. {@code format}
+     * picks the encoding (see {@link OutputFormat}). With {@code index=true} a ZIP result is also
+     * indexed for {@code /search} (see {@value #SEARCH_INDEX_HEADER}); with {@code lines=true} every
+     * source comes with a {@code .linemap} entry for {@code /linemaps/resolve} (see {@value #LINE_MAPS_HEADER}).
+     */
     @PostMapping("/jar")
     public ResponseEntity<?> decompileJar(
             @RequestPart("file") MultipartFile file,
             @RequestParam(value = "mode", defaultValue = "cfr") String mode,
-            @RequestParam(value = "className", required = false) String targetClass
+            @RequestParam(value = "className", required = false) String targetClass,
+            @RequestParam(value = "include", required = false) String include,
+            @RequestParam(value = "exclude", required = false) String exclude,
+            @RequestParam(value = "libraries", required = false) String libraryHashes,
+            @RequestPart(value = "lib", required = false) List<MultipartFile> libraryFiles,
+            @RequestParam(value = "index", defaultValue = "false") boolean index,
+            @RequestParam(value = "format", required = false) String formatLabel,
+            @RequestParam(value = "lines", defaultValue = "false") boolean lines,
+            HttpServletRequest request
     ) throws IOException {
 
         if (file == null || file.isEmpty()) return ResponseEntity.badRequest().body(Map.of("error", "file required"));
+        OutputFormat format;
+        try {
+            format = OutputFormat.parse(formatLabel);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage(), "formats", encoders.labels()));
+        }
+        if (!encoders.isAvailable(format)) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "format not available here", "format", format.label(), "formats", encoders.labels()));
+        }
+        if (lines && !format.isZip()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "line maps need a zip format", "format", format.label()));
+        }
 
         if (!modeDetector.isModeAvailable(mode)) {
             return ResponseEntity.status(HttpStatus.CONFLICT)
                     .body(Map.of("error", "mode not available", "mode", mode, "advice", "place tool JARs in ./tools or use mode=cfr"));
         }
+        if (!modeDetector.supportsJar(mode)) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "mode only decompiles single classes", "mode", mode, "advice", "use /decompile/class or another mode"));
+        }
 
         // For jar we may return a zip; service returns File path if zip created
-        File zip = decompilerService.decompileJar(file, mode, targetClass);
-        if (zip == null) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "decompilation failed"));
+        UploadedJar upload;
+        PinnedArchive zip;
+        try (Classpath classpath = libraries.classpath(libraryHashes, libraryFiles)) {
+            upload = decompilerService.receiveJar(file);
+            try (AdmissionControl.Permit permit = admission.admit(Priority.BULK, clients.of(request),
+                    mode.toLowerCase(Locale.ROOT), upload)) {
+                zip = decompilerService.decompileJar(upload, mode, targetClass, NestedFilter.parse(include, exclude), classpath,
+                        lines, format);
+            }
+        }
+        try {
+            // only cached ZIPs can be indexed; the header is left out for the others
+            String searchIndex = index && format.isZip() ? search.index(zip.path()) : null;
+            String lineMapsArtifact = lines ? lineMaps.artifact(zip.path()) : null;
+            return resultResponse(zip, format, upload.sha256(), searchIndex, lineMapsArtifact);
+        } catch (IOException | RuntimeException e) {
+            decompilerService.release(zip);
+            throw e;
         }
+    }
 
-        InputStreamResource resource = new InputStreamResource(new FileInputStream(zip));
+    /**
+     * Decompiles a new version of a JAR against {@code base}, the {@value #JAR_SHA256_HEADER} of an
+     * earlier whole-JAR run in the same mode: only changed classes are decompiled, the other sources
+     * come from the stored result. With {@code delta=true} only added and changed sources are
+     * returned, with an incremental-manifest.json listing added, changed and removed files.
+     */
+    @PostMapping("/jar/incremental")
+    public ResponseEntity<?> decompileJarIncremental(
+            @RequestPart("file") MultipartFile file,
+            @RequestParam(value = "mode", defaultValue = "cfr") String mode,
+            @RequestParam("base") String base,
+            @RequestParam(value = "delta", defaultValue = "false") boolean delta,
+            HttpServletRequest request
+    ) throws IOException {
+        String normalizedMode = mode.toLowerCase(Locale.ROOT);
+        String baseHash = base.toLowerCase(Locale.ROOT);
+        if (file == null || file.isEmpty()) return ResponseEntity.badRequest().body(Map.of("error", "file required"));
+        if (!baseHash.matches("[0-9a-f]{64}")) {
+            return ResponseEntity.badRequest().body(Map.of("error", "base must be a SHA-256 hex digest"));
+        }
+        if (DecompilerService.isExternalMode(normalizedMode)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "incremental decompilation needs an embedded mode", "mode", mode));
+        }
+        if (!modeDetector.isModeAvailable(normalizedMode)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", "mode not available", "mode", mode, "advice", "place tool JARs in ./tools or use mode=cfr"));
+        }
+        // checked before receiving the upload; the base may still be evicted before it is used
+        if (!incremental.hasBase(baseHash, normalizedMode)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "base not found", "base", baseHash, "mode", normalizedMode,
+                            "advice", "decompile the base JAR whole with this mode first; needs the disk cache"));
+        }
+
+        UploadedJar upload = decompilerService.receiveJar(file);
+        if (NestedArchives.isNested(upload.jar().toFile(), null)) {
+            upload.delete();
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "incremental decompilation does not support fat JARs or WARs", "advice", "use /decompile/jar"));
+        }
+        PinnedArchive zip;
+        try (AdmissionControl.Permit permit = admission.admit(Priority.BULK, clients.of(request), normalizedMode, upload)) {
+            zip = incremental.decompile(upload, normalizedMode, baseHash, delta);
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "base not found", "base", baseHash));
+        }
+        return resultResponse(zip, OutputFormat.ZIP, upload.sha256(), null, null);
+    }
+
+    /** Takes over {@code zip}: it is released when the body has been written, or here on failure. */
+    private ResponseEntity<?> resultResponse(PinnedArchive zip, OutputFormat format, String jarSha256, String searchIndex,
+                                             String lineMapsArtifact) throws IOException {
+        InputStream in = decompilerService.openResult(zip);
+        long length;
+        try {
+            length = Files.size(zip.path());
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        InputStreamResource resource = new InputStreamResource(in);
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-        headers.setContentDisposition(ContentDisposition.attachment().filename(zip.getName()).build());
+        headers.setContentType(MediaType.parseMediaType(format.mediaType()));
+        headers.setContentDisposition(ContentDisposition.attachment().filename(zip.path().getFileName().toString()).build());
+        headers.setContentLength(length);
+        headers.set(JAR_SHA256_HEADER, jarSha256);
+        if (searchIndex != null) headers.set(SEARCH_INDEX_HEADER, searchIndex);
+        if (lineMapsArtifact != null) headers.set(LINE_MAPS_HEADER, lineMapsArtifact);
 
         return ResponseEntity.ok()
                 .headers(headers)
                 .body(resource);
     }
+
+    /**
+     * Same as {@link #decompileJar} but entries go out as classes finish (chunked transfer).
+     * Dropping the connection cancels the remaining work.
+     */
+    @PostMapping(value = "/jar", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> decompileJarStreaming(
+            @RequestPart("file") MultipartFile file,
+            @RequestParam(value = "mode", defaultValue = "cfr") String mode,
+            @RequestParam(value = "className", required = false) String targetClass,
+            @RequestParam(value = "include", required = false) String include,
+            @RequestParam(value = "exclude", required = false) String exclude,
+            @RequestParam(value = "libraries", required = false) String libraryHashes,
+            @RequestPart(value = "lib", required = false) List<MultipartFile> libraryFiles,
+            @RequestParam(value = "format", required = false) String formatLabel,
+            @RequestParam(value = "lines", defaultValue = "false") boolean lines,
+            HttpServletRequest request
+    ) throws IOException {
+
+        if (file == null || file.isEmpty()) return ResponseEntity.badRequest().build();
+        OutputFormat format;
+        try {
+            format = OutputFormat.parse(formatLabel);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (!encoders.isAvailable(format) || lines && !format.isZip()) return ResponseEntity.badRequest().build();
+        if (!modeDetector.isModeAvailable(mode)) return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        if (!modeDetector.supportsJar(mode)) return ResponseEntity.badRequest().build();
+
+        // the classpath, like the permit, is held until the body has been written
+        Classpath classpath = libraries.classpath(libraryHashes, libraryFiles);
+        UploadedJar upload;
+        AdmissionControl.Permit permit;
+        try {
+            // copy the upload before returning: the body runs after this thread has left the handler
+            upload = decompilerService.receiveJar(file);
+            // admitted before answering, held until the body has been written
+            permit = admission.admit(Priority.BULK, clients.of(request), mode.toLowerCase(Locale.ROOT), upload);
+        } catch (IOException | RuntimeException e) {
+            classpath.close();
+            throw e;
+        }
+        StreamingResponseBody body = out -> {
+            try (permit; classpath) {
+                decompilerService.streamJar(upload, mode, targetClass, NestedFilter.parse(include, exclude), classpath, lines, format, out);
+            }
+        };
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(format.mediaType()));
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename("decompiled-" + mode.toLowerCase(Locale.ROOT) + format.extension()).build());
+        // no Content-Length: the servlet container falls back to chunked transfer
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+
+    /**
+     * Many classes in one request: repeated {@code files} parts and/or an {@code archive} ZIP of loose
+     * classes, decompiled together. Streams NDJSON (default) or, with {@code format=zip} or
+     * {@code zip-store}, a ZIP that ends with a batch-status.json entry.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<StreamingResponseBody> decompileBatch(
+            @RequestPart(value = "files", required = false) List<MultipartFile> files,
+            @RequestPart(value = "archive", required = false) MultipartFile archive,
+            @RequestParam(value = "mode", defaultValue = "cfr") String mode,
+            @RequestParam(value = "format", defaultValue = "ndjson") String format,
+            HttpServletRequest request
+    ) throws IOException {
+        String normalizedMode = mode.toLowerCase(Locale.ROOT);
+        OutputFormat zip;
+        try {
+            zip = OutputFormat.parse(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (zip == OutputFormat.NDJSON) zip = null;
+        else if (!zip.isZip()) return ResponseEntity.badRequest().build();
+        // external tools take one file per run; a shared type context needs an embedded engine
+        if (DecompilerService.isExternalMode(normalizedMode)) return ResponseEntity.badRequest().build();
+        if (!modeDetector.isModeAvailable(normalizedMode)) return ResponseEntity.status(HttpStatus.CONFLICT).build();
+
+        int fileCount = files == null ? 0 : files.size();
+        long fileBytes = files == null ? 0 : files.stream().mapToLong(MultipartFile::getSize).sum();
+        long archiveBytes = archive == null ? 0 : archive.getSize();
+        if (fileCount == 0 && archiveBytes == 0) return ResponseEntity.badRequest().build();
+
+        // admitted on the part sizes, before anything is inflated
+        AdmissionControl.Permit permit = admission.admit(Priority.BULK, clients.of(request), normalizedMode,
+                Workload.ofBatch(fileBytes, fileCount, archiveBytes));
+        // read everything before returning: the body runs after the multipart files are cleaned up
+        ClassBatch batch;
+        try {
+            batch = batchService.collect(files, archive);
+        } catch (IOException | RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+        if (batch.items().isEmpty()) {
+            batch.close();
+            permit.close();
+            return ResponseEntity.badRequest().build();
+        }
+        HttpHeaders headers = new HttpHeaders();
+        StreamingResponseBody body;
+        if (zip != null) {
+            OutputFormat zipFormat = zip;
+            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+            headers.setContentDisposition(ContentDisposition.attachment()
+                    .filename("decompiled-batch-" + normalizedMode + zipFormat.extension()).build());
+            body = out -> {
+                try (permit; batch) {
+                    batchService.writeZip(batch, normalizedMode, zipFormat, out);
+                }
+            };
+        } else {
+            headers.setContentType(MediaType.APPLICATION_NDJSON);
+            body = out -> {
+                try (permit; batch) {
+                    batchService.writeNdjson(batch, normalizedMode, out);
+                }
+            };
+        }
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
 }
@@ -1,7 +1,9 @@
 package com.endlessforge.javadecompilerapi.controller;
 
+import com.endlessforge.javadecompilerapi.service.cache.DecompilationCache;
 import com.endlessforge.javadecompilerapi.util.ModeDetector;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Map;
@@ -10,9 +12,11 @@ import java.util.Map;
 public class InfoController {
 
     private final ModeDetector modeDetector;
+    private final DecompilationCache cache;
 
-    public InfoController(ModeDetector modeDetector) {
+    public InfoController(ModeDetector modeDetector, DecompilationCache cache) {
         this.modeDetector = modeDetector;
+        this.cache = cache;
     }
 
     @GetMapping("/health")
@@ -24,7 +28,20 @@ public class InfoController {
     public Map<String, Object> modes() {
         return Map.of(
                 "modes", modeDetector.detectAllModes(),
-                "java", modeDetector.isJavaAvailable()
+                "java", modeDetector.isJavaAvailable(),
+                "capabilities", modeDetector.capabilities()
         );
     }
+
+    /** Re-detects modes now, e.g. after changing tools/ where no filesystem watch is possible. */
+    @PostMapping("/modes/refresh")
+    public Map<String, Object> refreshModes() {
+        modeDetector.refresh();
+        return modes();
+    }
+
+    @GetMapping("/cache")
+    public Map<String, Object> cache() {
+        return cache.stats();
+    }
 }
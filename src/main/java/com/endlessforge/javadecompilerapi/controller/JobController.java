@@ -0,0 +1,114 @@
+package com.endlessforge.javadecompilerapi.controller;
+
+import com.endlessforge.javadecompilerapi.service.DecompilerService;
+import com.endlessforge.javadecompilerapi.service.UploadedJar;
+import com.endlessforge.javadecompilerapi.service.job.DecompileJob;
+import com.endlessforge.javadecompilerapi.service.job.JobService;
+import com.endlessforge.javadecompilerapi.service.library.Classpath;
+import com.endlessforge.javadecompilerapi.service.library.LibraryStore;
+import com.endlessforge.javadecompilerapi.service.nested.NestedFilter;
+import com.endlessforge.javadecompilerapi.util.ModeDetector;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.*;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Job-based JAR decompilation: POST returns an id right away, GET polls and downloads.
+ */
+@RestController
+@RequestMapping("/jobs")
+public class JobController {
+
+    private final JobService jobService;
+    private final DecompilerService decompilerService;
+    private final ModeDetector modeDetector;
+    private final LibraryStore libraries;
+    private final ClientKeys clients;
+
+    public JobController(JobService jobService, DecompilerService decompilerService, ModeDetector modeDetector,
+                         LibraryStore libraries, ClientKeys clients) {
+        this.jobService = jobService;
+        this.decompilerService = decompilerService;
+        this.modeDetector = modeDetector;
+        this.libraries = libraries;
+        this.clients = clients;
+    }
+
+    @PostMapping
+    public ResponseEntity<?> submit(
+            @RequestPart("file") MultipartFile file,
+            @RequestParam(value = "mode", defaultValue = "cfr") String mode,
+            @RequestParam(value = "className", required = false) String targetClass,
+            @RequestParam(value = "include", required = false) String include,
+            @RequestParam(value = "exclude", required = false) String exclude,
+            @RequestParam(value = "libraries", required = false) String libraryHashes,
+            @RequestPart(value = "lib", required = false) List<MultipartFile> libraryFiles,
+            @RequestParam(value = "index", defaultValue = "false") boolean index,
+            @RequestParam(value = "lines", defaultValue = "false") boolean lines,
+            HttpServletRequest request
+    ) throws IOException {
+        if (file == null || file.isEmpty()) return ResponseEntity.badRequest().body(Map.of("error", "file required"));
+
+        if (!modeDetector.isModeAvailable(mode)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", "mode not available", "mode", mode, "advice", "place tool JARs in ./tools or use mode=cfr"));
+        }
+        if (!modeDetector.supportsJar(mode)) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "mode only decompiles single classes", "mode", mode, "advice", "use /decompile/class or another mode"));
+        }
+
+        NestedFilter nestedFilter = NestedFilter.parse(include, exclude);
+        Classpath classpath = libraries.classpath(libraryHashes, libraryFiles);
+        UploadedJar upload;
+        try {
+            upload = decompilerService.receiveJar(file);
+        } catch (IOException | RuntimeException e) {
+            classpath.close();
+            throw e;
+        }
+        DecompileJob job;
+        try {
+            job = jobService.submit(upload, mode, targetClass, nestedFilter, classpath, lines, index,
+                    clients.of(request));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .body(Map.of("error", "job queue full", "queued", jobService.queued()));
+        }
+
+        return ResponseEntity.accepted()
+                .header(HttpHeaders.LOCATION, "/jobs/" + job.id())
+                .body(job.describe());
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<?> status(@PathVariable String id) {
+        DecompileJob job = jobService.get(id);
+        if (job == null) return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "unknown job", "id", id));
+        return ResponseEntity.ok(job.describe());
+    }
+
+    @GetMapping("/{id}/result")
+    public ResponseEntity<?> result(@PathVariable String id) {
+        DecompileJob job = jobService.get(id);
+        if (job == null) return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "unknown job", "id", id));
+        if (job.status() != DecompileJob.Status.DONE) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(job.describe());
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setContentDisposition(ContentDisposition.attachment().filename(job.result().getFileName().toString()).build());
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(new FileSystemResource(job.result()));
+    }
+}
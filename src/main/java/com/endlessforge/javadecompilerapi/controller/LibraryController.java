@@ -0,0 +1,51 @@
+package com.endlessforge.javadecompilerapi.controller;
+
+import com.endlessforge.javadecompilerapi.service.library.LibraryStore;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Library JARs to decompile against. Upload once, then pass the returned {@code sha256} as
+ * {@code libraries} to {@code /decompile/class}, {@code /decompile/jar} or {@code /jobs};
+ * those endpoints also take {@code lib} parts directly.
+ */
+@RestController
+@RequestMapping("/libraries")
+public class LibraryController {
+
+    private final LibraryStore libraries;
+
+    public LibraryController(LibraryStore libraries) {
+        this.libraries = libraries;
+    }
+
+    @PostMapping
+    public ResponseEntity<?> upload(@RequestPart("file") MultipartFile file) throws IOException {
+        if (file == null || file.isEmpty()) return ResponseEntity.badRequest().body(Map.of("error", "file required"));
+        String sha256 = libraries.store(file);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .header(HttpHeaders.LOCATION, "/libraries/" + sha256)
+                .body(Map.of("sha256", sha256));
+    }
+
+    @GetMapping
+    public Map<String, Object> list() {
+        List<Map<String, Object>> stored = libraries.list();
+        return Map.of("libraries", stored, "count", stored.size());
+    }
+
+    @GetMapping("/{sha256}")
+    public ResponseEntity<?> get(@PathVariable String sha256) {
+        if (!libraries.contains(sha256)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "library not found", "sha256", sha256));
+        }
+        return ResponseEntity.ok(Map.of("sha256", sha256));
+    }
+}
@@ -0,0 +1,30 @@
+package com.endlessforge.javadecompilerapi.controller;
+
+import com.endlessforge.javadecompilerapi.service.library.InvalidLibraryException;
+import com.endlessforge.javadecompilerapi.service.library.UnknownLibraryException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Library problems of any request: 404 for an unknown {@code libraries} hash, 400 for a bad upload. */
+@RestControllerAdvice
+public class LibraryExceptionHandler {
+
+    @ExceptionHandler(UnknownLibraryException.class)
+    public ResponseEntity<Map<String, Object>> unknown(UnknownLibraryException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("error", e.getMessage(), "sha256", e.sha256(), "advice", "upload it to /libraries again"));
+    }
+
+    @ExceptionHandler(InvalidLibraryException.class)
+    public ResponseEntity<Map<String, Object>> invalid(InvalidLibraryException e) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", e.getMessage());
+        if (e.fileName() != null) body.put("file", e.fileName());
+        return ResponseEntity.badRequest().body(body);
+    }
+}
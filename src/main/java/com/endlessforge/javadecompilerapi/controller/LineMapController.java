@@ -0,0 +1,50 @@
+package com.endlessforge.javadecompilerapi.controller;
+
+import com.endlessforge.javadecompilerapi.service.linemap.LineMapService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps stack trace lines onto decompiled sources without decompiling again. The body is a stack
+ * trace as text, one frame per line ({@code Caused by:} and other lines are skipped). {@code artifact}
+ * is the {@value DecompileController#LINE_MAPS_HEADER} of a JAR request with {@code lines=true}; or give
+ * {@code jar} (its SHA-256) and {@code mode} for a whole-JAR result.
+ */
+@RestController
+public class LineMapController {
+
+    private final LineMapService lineMaps;
+
+    public LineMapController(LineMapService lineMaps) {
+        this.lineMaps = lineMaps;
+    }
+
+    @PostMapping(value = "/linemaps/resolve", consumes = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<?> resolve(
+            @RequestParam(value = "artifact", required = false) String artifact,
+            @RequestParam(value = "jar", required = false) String jar,
+            @RequestParam(value = "mode", defaultValue = "cfr") String mode,
+            @RequestBody String trace
+    ) throws IOException {
+        String name = artifact != null ? artifact
+                : jar != null ? LineMapService.wholeJarArtifact(jar.toLowerCase(Locale.ROOT), mode.toLowerCase(Locale.ROOT)) : null;
+        if (name == null) return ResponseEntity.badRequest().body(Map.of("error", "artifact or jar required"));
+
+        Map<String, Object> result = lineMaps.resolve(name, List.of(trace.split("\\R")));
+        if (result == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "no such result", "artifact", name,
+                    "advice", "decompile the JAR with lines=true first; needs the disk cache"));
+        }
+        return ResponseEntity.ok(result);
+    }
+}
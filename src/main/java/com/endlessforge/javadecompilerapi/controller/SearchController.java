@@ -0,0 +1,59 @@
+package com.endlessforge.javadecompilerapi.controller;
+
+import com.endlessforge.javadecompilerapi.service.search.SearchService;
+import com.endlessforge.javadecompilerapi.service.search.TermKind;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Queries decompiled results in the cache: {@code index} is the {@value DecompileController#SEARCH_INDEX_HEADER}
+ * of a JAR request, or give {@code jar} (its SHA-256) and {@code mode} for a whole-JAR result.
+ * {@code q} is a class, method, field or identifier name, a method signature such as
+ * {@code get(String,int)} or a string constant; {@code *} and {@code ?} are wildcards, case is ignored.
+ */
+@RestController
+public class SearchController {
+
+    private final SearchService search;
+
+    public SearchController(SearchService search) {
+        this.search = search;
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<?> search(
+            @RequestParam(value = "index", required = false) String index,
+            @RequestParam(value = "jar", required = false) String jar,
+            @RequestParam(value = "mode", defaultValue = "cfr") String mode,
+            @RequestParam("q") String query,
+            @RequestParam(value = "kind", defaultValue = "any") String kind,
+            @RequestParam(value = "limit", defaultValue = "50") int limit
+    ) throws IOException {
+        if (query.isBlank()) return ResponseEntity.badRequest().body(Map.of("error", "q required"));
+        String name = index != null ? index
+                : jar != null ? jar.toLowerCase(Locale.ROOT) + ":" + mode.toLowerCase(Locale.ROOT) : null;
+        if (name == null) return ResponseEntity.badRequest().body(Map.of("error", "index or jar required"));
+        TermKind termKind;
+        try {
+            termKind = TermKind.parse(kind);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "unknown kind", "kind", kind,
+                    "kinds", Arrays.stream(TermKind.values()).map(TermKind::label).toList()));
+        }
+
+        Map<String, Object> result = search.search(name, query.strip(), termKind, limit);
+        if (result == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "no such result", "index", name,
+                    "advice", "decompile the JAR with this mode first; needs the disk cache"));
+        }
+        return ResponseEntity.ok(result);
+    }
+}
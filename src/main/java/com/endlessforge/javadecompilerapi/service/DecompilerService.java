@@ -1,32 +1,75 @@
 package com.endlessforge.javadecompilerapi.service;
 
+import com.endlessforge.javadecompilerapi.service.cache.CacheKey;
+import com.endlessforge.javadecompilerapi.service.cache.DecompilationCache;
+import com.endlessforge.javadecompilerapi.service.cache.PinnedArchive;
 import com.endlessforge.javadecompilerapi.service.cfr.CfrAdapter;
 import com.endlessforge.javadecompilerapi.service.external.ExternalToolAdapter;
+import com.endlessforge.javadecompilerapi.service.incremental.ClassHashes;
 import com.endlessforge.javadecompilerapi.service.jadx.JadxAdapter;
+import com.endlessforge.javadecompilerapi.service.library.Classpath;
+import com.endlessforge.javadecompilerapi.service.linemap.LineMapService;
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import com.endlessforge.javadecompilerapi.service.nested.NestedArchives;
+import com.endlessforge.javadecompilerapi.service.nested.NestedFilter;
+import com.endlessforge.javadecompilerapi.service.output.OutputEncoders;
+import com.endlessforge.javadecompilerapi.service.output.OutputFormat;
+import com.endlessforge.javadecompilerapi.service.output.OutputWriter;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompileContext;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompileWorkerPool;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+import com.endlessforge.javadecompilerapi.service.pipeline.EntrySink;
 import com.endlessforge.javadecompilerapi.service.procyon.ProcyonAdapter;
+import com.endlessforge.javadecompilerapi.service.race.RaceDecompiler;
+import com.endlessforge.javadecompilerapi.util.ClassFiles;
+import com.endlessforge.javadecompilerapi.util.ClassSelector;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
-import java.nio.file.StandardCopyOption;
 
 @Service
 public class DecompilerService {
 
+    /** Lists the classes replaced with a stub after a timeout; only present when there are any. */
+    public static final String MANIFEST_ENTRY = "decompile-manifest.json";
+
     private final CfrAdapter cfr;
     private final ProcyonAdapter procyon;
     private final JadxAdapter jadx;
     private final ExternalToolAdapter externalAdapter;
+    private final RaceDecompiler race;
+    private final NestedArchives nested;
+    private final DecompilationCache cache;
+    private final DecompileMetrics metrics;
+    private final ObjectMapper mapper;
+    private final OutputEncoders encoders;
+    private final DecompileWorkerPool workers;
 
-    public DecompilerService(CfrAdapter cfr, ProcyonAdapter procyon, JadxAdapter jadx, ExternalToolAdapter externalAdapter) {
+    public DecompilerService(@Lazy CfrAdapter cfr, @Lazy ProcyonAdapter procyon, @Lazy JadxAdapter jadx,
+                             ExternalToolAdapter externalAdapter,
+                             RaceDecompiler race, NestedArchives nested, DecompilationCache cache, DecompileMetrics metrics, ObjectMapper mapper,
+                             OutputEncoders encoders, DecompileWorkerPool workers) {
         this.cfr = cfr;
         this.procyon = procyon;
         this.jadx = jadx;
         this.externalAdapter = externalAdapter;
+        this.race = race;
+        this.nested = nested;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.mapper = mapper;
+        this.encoders = encoders;
+        this.workers = workers;
     }
 
     /**
@@ -34,27 +77,89 @@ public class DecompilerService {
      * returns a map with keys: mode, className, source
      */
     public Map<String,Object> decompileSingleClass(MultipartFile file, String mode, String className) throws IOException {
+        return decompileSingleClass(file, mode, className, Classpath.EMPTY);
+    }
+
+    /** Same, with the class's references resolved against {@code classpath} (embedded engines only). */
+    public Map<String,Object> decompileSingleClass(MultipartFile file, String mode, String className,
+                                                   Classpath classpath) throws IOException {
         byte[] bytes = file.getBytes();
         String normalizedMode = mode.toLowerCase(Locale.ROOT);
-        String source = null;
-        String usedClassName = className;
+        // a client error, not an engine failure: checked before anything is counted or run
+        String binaryName;
+        try {
+            binaryName = ClassFiles.binaryName(bytes);
+        } catch (IOException e) {
+            throw new InvalidClassFileException(e.getMessage());
+        }
+        metrics.bytesIn("class", bytes.length);
+        Timer.Sample sample = metrics.start();
+        String outcome = "error";
+        try {
+            String usedClassName = className != null && !className.isBlank() ? className : binaryName;
+
+            List<String> options = new ArrayList<>(2);
+            if (className != null) options.add("class=" + className);
+            if (!classpath.isEmpty()) options.add("lib=" + classpath.key());
+            CacheKey key = new CacheKey(DecompilationCache.sha256(bytes), normalizedMode, String.join(";", options));
+            String source = cache.getSource(key);
+            if (source != null) {
+                outcome = "cached";
+                return result(normalizedMode, usedClassName, source);
+            }
+
+            String engine = null;
+            // engines are CPU-bound and go to the interactive pool (race queues one task per engine
+            // there itself); an external tool is waited on from the request thread, which may be virtual
+            if (RaceDecompiler.isRaceMode(normalizedMode)) {
+                RaceDecompiler.ClassResult raced = race.decompileClass(bytes, normalizedMode, className, classpath);
+                source = raced.source();
+                engine = raced.engine();
+            } else if (isExternalMode(normalizedMode)) {
+                source = decompileClass(bytes, normalizedMode, className, classpath);
+            } else {
+                source = workers.runInteractive(() -> decompileClass(bytes, normalizedMode, className, classpath));
+            }
+            if (source != null) {
+                outcome = "ok";
+                metrics.classesDecompiled(normalizedMode, 1);
+                metrics.bytesOut("class", normalizedMode, source.getBytes(StandardCharsets.UTF_8).length);
+            }
 
+            // external tools report failures as text in the source, so keep them out of the cache
+            if (source != null && !isExternalMode(normalizedMode)) cache.putSource(key, source);
+            if (engine == null) return result(normalizedMode, usedClassName, source);
+            // race and best: which engine's source this is
+            Map<String, Object> raced = new LinkedHashMap<>(result(normalizedMode, usedClassName, source));
+            raced.put("engine", engine);
+            return raced;
+        } finally {
+            if (outcome.equals("error")) metrics.classesFailed(normalizedMode, 1);
+            metrics.request(sample, "class", normalizedMode, outcome);
+        }
+    }
+
+    private String decompileClass(byte[] bytes, String normalizedMode, String className, Classpath classpath) throws IOException {
+        String source;
         switch (normalizedMode) {
             case "cfr":
-                source = cfr.decompileClass(bytes, className);
+                source = cfr.decompileClass(bytes, className, classpath);
                 break;
             case "procyon":
-                source = procyon.decompileClass(bytes, className);
+                source = procyon.decompileClass(bytes, className, classpath);
                 break;
             case "jadx":
-                source = jadx.decompileClass(bytes, className);
+                source = jadx.decompileClass(bytes, className, classpath);
                 break;
             default:
                 // fallback to external tool invocation (jars in ./tools)
                 source = externalAdapter.decompileClassWithExternalTool(bytes, normalizedMode, className);
                 break;
         }
+        return source;
+    }
 
+    private Map<String,Object> result(String normalizedMode, String usedClassName, String source) {
         return Map.of(
                 "ok", source != null,
                 "mode", normalizedMode,
@@ -63,68 +168,275 @@ public class DecompilerService {
         );
     }
 
+    /**
+     * Moves the upload into a fresh temp directory and hashes it there. The container has already
+     * spooled the part to disk, so {@link MultipartFile#transferTo(File)} renames that file instead
+     * of writing a second copy; engines then read classes from it entry by entry.
+     */
+    public UploadedJar receiveJar(MultipartFile file) throws IOException {
+        Path tmpDir = Files.createTempDirectory("decompile-jar-");
+        String name = file.getOriginalFilename() != null && !file.getOriginalFilename().isBlank()
+                ? Paths.get(file.getOriginalFilename()).getFileName().toString() : "uploaded.jar";
+        Path jarPath = tmpDir.resolve(name);
+
+        long start = System.nanoTime();
+        try {
+            // the File overload goes through Part.write (a rename); transferTo(Path) always copies
+            file.transferTo(jarPath.toFile());
+            String sha256 = DecompilationCache.sha256(jarPath);
+            metrics.upload(System.nanoTime() - start, Files.size(jarPath));
+            return new UploadedJar(tmpDir, jarPath, sha256);
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(tmpDir.toFile());
+            throw e;
+        }
+    }
+
     /**
      * Decompile a JAR. If targetClass is null, returns a zip file containing all sources.
      * If targetClass present, returns zip with a single file or the single source content file (but for simplicity we zip).
+     * Results are looked up by SHA-256 of the upload first; a cached archive is returned as-is, pinned.
+     * Open the result with {@link #openResult} so temporary archives are removed and cached ones
+     * unpinned after download.
      */
-    public File decompileJar(MultipartFile file, String mode, String targetClass) throws IOException {
-        Path tmpDir = Files.createTempDirectory("decompile-jar-");
-        Path jarPath = tmpDir.resolve(file.getOriginalFilename() != null ? file.getOriginalFilename() : "uploaded.jar");
+    public PinnedArchive decompileJar(MultipartFile file, String mode, String targetClass) throws IOException {
+        return decompileJar(receiveJar(file), mode, targetClass);
+    }
+
+    /** {@link #decompileJar(MultipartFile, String, String)} for an upload already received; consumes it. */
+    public PinnedArchive decompileJar(UploadedJar upload, String mode, String targetClass) throws IOException {
+        return decompileJar(upload, mode, targetClass, null, Classpath.EMPTY, false, OutputFormat.ZIP);
+    }
+
+    /**
+     * Same, with fat JAR / WAR units limited by {@code nestedFilter} (null: all), references
+     * resolved against the libraries of {@code classpath}, a line map next to every source when
+     * {@code lineMaps}, and the result encoded as {@code format}.
+     */
+    public PinnedArchive decompileJar(UploadedJar upload, String mode, String targetClass, NestedFilter nestedFilter,
+                                      Classpath classpath, boolean lineMaps, OutputFormat format) throws IOException {
+        try {
+            return decompileUpload(upload, mode, targetClass, nestedFilter, format,
+                    new DecompileContext(classpath, lineMaps));
+        } finally {
+            Files.deleteIfExists(upload.jar());
+            // empty once the result was served from or moved into the cache
+            upload.dir().toFile().delete();
+        }
+    }
 
-        try (InputStream in = file.getInputStream()) {
-            Files.copy(in, jarPath, StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * Decompiles a received upload into {@code format}: either the cache entry, pinned until the
+     * result is closed, or a file in the upload's directory when the result is not cacheable.
+     * Progress is reported through {@code ctx}, which also carries the library classpath.
+     */
+    public PinnedArchive decompileUpload(UploadedJar upload, String mode, String targetClass, NestedFilter nestedFilter,
+                                OutputFormat format, DecompileContext ctx) throws IOException {
+        String normalizedMode = mode.toLowerCase(Locale.ROOT);
+        File zipFile = upload.dir().resolve("decompiled-" + normalizedMode + format.extension()).toFile();
+        Timer.Sample sample = metrics.start();
+        String outcome = "error";
+        try {
+            try (OutputStream out = new FileOutputStream(zipFile)) {
+                PinnedArchive cached = writeJarResult(upload, normalizedMode, targetClass, nestedFilter, format, out, ctx);
+                if (cached != null) {
+                    zipFile.delete();
+                    outcome = "cached";
+                    return cached;
+                }
+            }
+            metrics.bytesOut("jar", normalizedMode, zipFile.length());
+            outcome = "ok";
+            return storeResult(upload, normalizedMode, targetClass, nestedFilter, format, zipFile.toPath(), ctx);
+        } finally {
+            metrics.request(sample, "jar", normalizedMode, outcome);
         }
+    }
 
+    /**
+     * Streaming variant: the result is written to {@code out} as classes finish. A failing write
+     * (client gone) cancels the remaining work. The upload is deleted when this returns.
+     * With the disk cache enabled the stream is also teed into a file and cached once complete.
+     */
+    public void streamJar(UploadedJar upload, String mode, String targetClass, NestedFilter nestedFilter,
+                          Classpath classpath, boolean lineMaps, OutputFormat format, OutputStream out) throws IOException {
         String normalizedMode = mode.toLowerCase(Locale.ROOT);
-        File zipFile = tmpDir.resolve("decompiled-" + normalizedMode + ".zip").toFile();
-
-        // OPTIMIZATION: Stream directly to Zip, bypassing intermediate files
-        try (FileOutputStream fos = new FileOutputStream(zipFile);
-             ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(fos))) {
-
-            // Set compression level to STORE (0) or FAST (1) to save CPU?
-            // Actually, default is fine, but if CPU is the bottleneck, reducing compression helps.
-            zos.setLevel(1);
-
-            switch (normalizedMode) {
-                case "cfr":
-                    cfr.decompileJarToZip(jarPath.toFile(), zos, targetClass);
-                    break;
-                case "procyon":
-                    procyon.decompileJarToZip(jarPath.toFile(), zos, targetClass);
-                    break;
-                case "jadx":
-                    jadx.decompileJarToZip(jarPath.toFile(), zos, targetClass);
-                    break;
-                default:
-                    // External adapters still need disk I/O because they are CLI tools
-                    // This will remain slow, but that's unavoidable for "external" mode.
-                    File outDir = Files.createTempDirectory("ext-out-").toFile();
-                    externalAdapter.decompileJarWithExternalTool(jarPath.toFile(), outDir, normalizedMode, targetClass);
-                    zipDirectory(outDir, zos); // Helper to zip the folder if external was used
-                    break;
+        Timer.Sample sample = metrics.start();
+        String outcome = "error";
+        CountingOutputStream counted = new CountingOutputStream(out);
+        DecompileContext ctx = new DecompileContext(classpath, lineMaps);
+        try {
+            Path tee = cache.isDiskEnabled() && !isExternalMode(normalizedMode)
+                    ? upload.dir().resolve("decompiled-" + normalizedMode + format.extension()) : null;
+            try (OutputStream fileOut = tee == null ? null : Files.newOutputStream(tee);
+                 PinnedArchive cached = writeJarResult(upload, normalizedMode, targetClass, nestedFilter, format,
+                         fileOut == null ? counted : new TeeOutputStream(counted, fileOut), ctx)) {
+                if (cached != null) {
+                    Files.copy(cached.path(), counted);
+                    outcome = "cached";
+                    return;
+                }
             }
+            outcome = "ok";
+            if (tee != null) storeResult(upload, normalizedMode, targetClass, nestedFilter, format, tee, ctx).close();
+        } finally {
+            metrics.bytesOut("jar", normalizedMode, counted.getByteCount());
+            metrics.request(sample, "jar", normalizedMode, outcome);
+            upload.delete();
         }
+    }
+
+    /**
+     * Opens a result of {@link #decompileJar} and takes it over: on close temporary archives are
+     * deleted and cached ones unpinned. The result is released too when it cannot be opened.
+     */
+    public InputStream openResult(PinnedArchive result) throws IOException {
+        File zip = result.path().toFile();
+        try {
+            return new FileInputStream(zip) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        release(result);
+                    }
+                }
+            };
+        } catch (IOException e) {
+            release(result);
+            throw e;
+        }
+    }
+
+    /** Gives up a result without reading it, e.g. when the response fails before it is opened. */
+    public void release(PinnedArchive result) {
+        result.close();
+        if (!result.cached()) FileUtils.deleteQuietly(result.path().getParent().toFile());
+    }
+
+    /**
+     * Writes the result for {@code upload} into {@code out}, unless a finished one is cached:
+     * then nothing is written and it is returned, pinned.
+     */
+    private PinnedArchive writeJarResult(UploadedJar upload, String normalizedMode, String targetClass, NestedFilter nestedFilter,
+                                OutputFormat format, OutputStream out, DecompileContext ctx) throws IOException {
+        ClassSelector selector = ClassSelector.parse(targetClass);
+        CacheKey jarKey = CacheKey.of(upload.sha256(), normalizedMode);
+
+        PinnedArchive cached = cache.pinArchive(cacheKey(upload, normalizedMode, selector, nestedFilter, ctx, format));
+        if (cached != null) return cached;
+
+        // OPTIMIZATION: Stream directly to the result, bypassing intermediate files
+        try (OutputWriter writer = encoders.open(format, out)) {
+
+            // the whole JAR may already be decompiled: pull the named entries out of it
+            if (selector != null && selector.isExact() && nestedFilter == null && ctx.classpath().isEmpty() && !ctx.lineMaps()
+                    && writeCachedClasses(jarKey, selector, writer)) return null;
+
+            File jarFile = upload.jar().toFile();
+            if (!isExternalMode(normalizedMode)) {
+                long start = System.nanoTime();
+                DecompileMetrics.TimedSink sink = new DecompileMetrics.TimedSink(writer);
+                if (NestedArchives.isNested(jarFile, nestedFilter)) {
+                    nested.decompile(jarFile, upload.dir(), selector, nestedFilter,
+                            (unit, unitSelector, unitSink, unitCtx) -> decompileArchive(unit, normalizedMode, unitSelector, unitSink, unitCtx),
+                            sink, ctx);
+                } else {
+                    decompileArchive(jarFile, normalizedMode, selector, sink, ctx);
+                }
+                metrics.stages(normalizedMode, System.nanoTime() - start, sink.nanos());
+                if (!ctx.abandoned().isEmpty()) {
+                    writer.put(new DecompiledEntry(MANIFEST_ENTRY,
+                            mapper.writeValueAsBytes(Map.of("mode", normalizedMode, "abandoned", ctx.abandoned()))));
+                }
+            } else {
+                // External adapters still need disk I/O because they are CLI tools
+                // This will remain slow, but that's unavoidable for "external" mode.
+                File outDir = Files.createTempDirectory("ext-out-").toFile();
+                try {
+                    externalAdapter.decompileJarWithExternalTool(jarFile, outDir, normalizedMode, targetClass);
+                    writeDirectory(outDir, writer); // Helper to pack the folder if external was used
+                } finally {
+                    FileUtils.deleteQuietly(outDir);
+                }
+            }
+        }
+        return null;
+    }
 
-        return zipFile;
+    /**
+     * Decompiles (the selected classes of) an archive with an embedded engine into {@code sink}.
+     * No caching; callers decide what to keep.
+     */
+    public void decompileArchive(File jarFile, String normalizedMode, ClassSelector selector, EntrySink sink,
+                                 DecompileContext ctx) throws IOException {
+        switch (normalizedMode) {
+            case "cfr" -> cfr.decompileJarTo(jarFile, sink, selector, ctx);
+            case "procyon" -> procyon.decompileJarTo(jarFile, sink, selector, ctx);
+            case "jadx" -> jadx.decompileJarTo(jarFile, sink, selector, ctx);
+            case "race", "best" -> race.decompileArchive(jarFile, normalizedMode, selector, sink, ctx);
+            default -> throw new IllegalArgumentException("not an embedded mode: " + normalizedMode);
+        }
+    }
+
+    /** Writes every selected class from the cached whole-JAR result; false (nothing written) unless all are there. */
+    private boolean writeCachedClasses(CacheKey jarKey, ClassSelector selector, OutputWriter writer) throws IOException {
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (String internalName : selector.classes()) {
+            String source = cache.findClassSource(jarKey, internalName.replace('/', '.'));
+            if (source == null) return false;
+            sources.put(internalName + ".java", source);
+        }
+        for (Map.Entry<String, String> e : sources.entrySet()) {
+            writer.put(DecompiledEntry.source(e.getKey(), e.getValue()));
+        }
+        return true;
+    }
+
+    private PinnedArchive storeResult(UploadedJar upload, String normalizedMode, String targetClass, NestedFilter nestedFilter,
+                                      OutputFormat format, Path zip, DecompileContext ctx) throws IOException {
+        // same as single classes: a broken external run must not be served again from the cache,
+        // nor one with timed-out classes, which may well finish on a less loaded retry
+        if (isExternalMode(normalizedMode) || !ctx.abandoned().isEmpty()) return PinnedArchive.unpinned(zip);
+        ClassSelector selector = ClassSelector.parse(targetClass);
+        // a whole-JAR result can be the base of a later incremental run, which diffs against these
+        if (selector == null && nestedFilter == null && ctx.classpath().isEmpty() && cache.isDiskEnabled()) {
+            cache.storeClassHashes(upload.sha256(), ClassHashes.of(upload.jar()));
+        }
+        return cache.storeArchive(cacheKey(upload, normalizedMode, selector, nestedFilter, ctx, format), zip);
+    }
+
+    private static CacheKey cacheKey(UploadedJar upload, String normalizedMode, ClassSelector selector,
+                                     NestedFilter nestedFilter, DecompileContext ctx, OutputFormat format) {
+        CacheKey jarKey = CacheKey.of(upload.sha256(), normalizedMode);
+        List<String> options = new ArrayList<>(5);
+        if (selector != null) options.add("class=" + selector);
+        if (nestedFilter != null) options.add("nested=" + nestedFilter);
+        if (!ctx.classpath().isEmpty()) options.add("lib=" + ctx.classpath().key());
+        if (ctx.lineMaps()) options.add(LineMapService.CACHE_OPTION);
+        // zip and zip-store share an extension; the option hash tells them apart
+        if (format != OutputFormat.ZIP) options.add("format=" + format.label());
+        return (options.isEmpty() ? jarKey : jarKey.withOptions(String.join(";", options))).withFormat(format);
+    }
+
+    public static boolean isExternalMode(String normalizedMode) {
+        return switch (normalizedMode) {
+            case "cfr", "procyon", "jadx", "race", "best" -> false;
+            default -> true;
+        };
     }
 
     // Helper strictly for the External adapter fallback
-    private void zipDirectory(File sourceDir, ZipOutputStream zs) throws IOException {
+    private void writeDirectory(File sourceDir, OutputWriter writer) throws IOException {
         Path pp = sourceDir.toPath();
         if (!Files.exists(pp)) return;
         Files.walk(pp).filter(p -> !Files.isDirectory(p)).forEach(path -> {
-            ZipEntry zipEntry = new ZipEntry(pp.relativize(path).toString());
             try {
-                zs.putNextEntry(zipEntry);
-                Files.copy(path, zs);
-                zs.closeEntry();
+                writer.put(new DecompiledEntry(pp.relativize(path).toString(), Files.readAllBytes(path)));
             } catch (IOException e) {
                 throw new UncheckedIOException(e);
             }
         });
     }
-
-
-
 }
@@ -0,0 +1,9 @@
+package com.endlessforge.javadecompilerapi.service;
+
+/** An upload to {@code /decompile/class} that is not a readable class file; answered 400. */
+public class InvalidClassFileException extends RuntimeException {
+
+    public InvalidClassFileException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,16 @@
+package com.endlessforge.javadecompilerapi.service;
+
+import org.apache.commons.io.FileUtils;
+
+import java.nio.file.Path;
+
+/**
+ * A received JAR upload: private temp directory, the JAR inside it, and the SHA-256
+ * of its bytes. Whoever holds it calls {@link #delete()} when done.
+ */
+public record UploadedJar(Path dir, Path jar, String sha256) {
+
+    public void delete() {
+        FileUtils.deleteQuietly(dir.toFile());
+    }
+}
@@ -0,0 +1,269 @@
+package com.endlessforge.javadecompilerapi.service.admission;
+
+import com.endlessforge.javadecompilerapi.service.UploadedJar;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides whether a decompilation may start now. A request is admitted when its mode is below
+ * its concurrency limit ({@code decompiler.admission.mode-limits}, else {@code default-limit})
+ * and its {@link Workload#estimate} fits in what is left of the memory budget. A request larger
+ * than the whole budget runs only when nothing else holds any of it.
+ * <p>
+ * Otherwise it waits, up to {@code queue-timeout}, among at most {@code queue-limit} waiters of
+ * its own priority, so queued background jobs never cost an HTTP request its place. A full queue is rejected at once (429) and a timed-out wait with 503, both with a
+ * {@code Retry-After} derived from how long permits are held on average.
+ * <p>
+ * Waiters are let in by {@link Priority} first, then by fair queuing across clients (each client's
+ * next turn comes after its previous grants, but it saves up no credit while idle), then by
+ * arrival: one client's burst of JARs cannot crowd out another's, and a waiter that cannot start
+ * yet (its mode is full) does not hold up one behind it that can. Single classes may use
+ * {@code interactive-reserve} slots above a mode's limit.
+ */
+@Component
+public class AdmissionControl implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(AdmissionControl.class);
+
+    private final boolean enabled;
+    private final Map<String, Integer> modeLimits;
+    private final int defaultLimit;
+    private final long memoryBudget;
+    private final int queueLimit;
+    private final Duration queueTimeout;
+    private final int interactiveReserve;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Map<String, Integer> running = new HashMap<>();
+    private final List<Waiter> waiters = new ArrayList<>();
+    // start-time fair queuing: a client's next grant is due at the later of its own finish tag and
+    // the clock, which moves to the tag of each grant; clients at or behind the clock are dropped
+    private final Map<String, Long> finishTags = new HashMap<>();
+    private long virtualClock;
+    private final Comparator<Waiter> order = Comparator.comparing(Waiter::priority)
+            .thenComparingLong(w -> startTag(w.client()))
+            .thenComparingLong(Waiter::seq);
+    private long arrivals;
+    private long reserved;
+    private int active;
+    // moving average of how long a permit is held, for Retry-After
+    private double avgHoldNanos = TimeUnit.SECONDS.toNanos(5);
+
+    private final AtomicLong rejectedQueueFull = new AtomicLong();
+    private final AtomicLong rejectedTimeout = new AtomicLong();
+
+    public AdmissionControl(@Value("${decompiler.admission.enabled:true}") boolean enabled,
+                            @Value("${decompiler.admission.mode-limits:jadx=1,procyon=2,cfr=2}") String modeLimits,
+                            @Value("${decompiler.admission.default-limit:2}") int defaultLimit,
+                            @Value("${decompiler.admission.memory-budget:0}") long memoryBudget,
+                            @Value("${decompiler.admission.queue-limit:16}") int queueLimit,
+                            @Value("${decompiler.admission.queue-timeout:PT15S}") Duration queueTimeout,
+                            @Value("${decompiler.admission.interactive-reserve:1}") int interactiveReserve) {
+        this.enabled = enabled;
+        this.modeLimits = parseLimits(modeLimits);
+        this.defaultLimit = Math.max(1, defaultLimit);
+        // 0: 60% of the heap, leaving the rest to Spring, Tomcat buffers and the result cache
+        this.memoryBudget = memoryBudget > 0 ? memoryBudget : Runtime.getRuntime().maxMemory() / 10 * 6;
+        this.queueLimit = Math.max(0, queueLimit);
+        this.queueTimeout = queueTimeout;
+        this.interactiveReserve = Math.max(0, interactiveReserve);
+        log.info("admission: mode limits {} (+{} interactive), default {}, memory budget {} MB, queue {} x {}",
+                this.modeLimits, this.interactiveReserve, this.defaultLimit, this.memoryBudget / (1024 * 1024),
+                this.queueLimit, queueTimeout);
+    }
+
+    /** A request waiting for a permit. */
+    private record Waiter(Priority priority, String client, String mode, long estimate, long seq) {}
+
+    /** Held while a request decompiles; closing it lets the next waiter in. */
+    public final class Permit implements AutoCloseable {
+
+        private final String mode;
+        private final long estimate;
+        private final long grantedAt = System.nanoTime();
+        private boolean closed;
+
+        private Permit(String mode, long estimate) {
+            this.mode = mode;
+            this.estimate = estimate;
+        }
+
+        @Override
+        public void close() {
+            if (mode == null) return;
+            lock.lock();
+            try {
+                if (closed) return;
+                closed = true;
+                running.merge(mode, -1, Integer::sum);
+                reserved -= estimate;
+                active--;
+                avgHoldNanos = 0.8 * avgHoldNanos + 0.2 * (System.nanoTime() - grantedAt);
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Admits a request from an HTTP handler, waiting in the bounded queue if needed. {@code client}
+     * identifies who sent it (an API key or address) for fair sharing.
+     *
+     * @throws AdmissionRejectedException when the queue is full or the wait times out
+     */
+    public Permit admit(Priority priority, String client, String mode, Workload workload) throws InterruptedIOException {
+        return acquire(priority, client, mode, workload, true);
+    }
+
+    /** {@link #admit} for a received JAR; the upload is deleted when the request is turned away. */
+    public Permit admit(Priority priority, String client, String mode, UploadedJar upload) throws IOException {
+        try {
+            return admit(priority, client, mode, Workload.ofJar(upload));
+        } catch (IOException | RuntimeException e) {
+            upload.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Admits queued background work (jobs): waits as long as it takes, outside the HTTP queue
+     * limit, since the job queue already bounds how many can be waiting.
+     */
+    public Permit await(String client, String mode, Workload workload) throws InterruptedIOException {
+        return acquire(Priority.BACKGROUND, client, mode, workload, false);
+    }
+
+    private Permit acquire(Priority priority, String client, String mode, Workload workload, boolean bounded)
+            throws InterruptedIOException {
+        if (!enabled) return new Permit(null, 0);
+        long estimate = workload.estimate(mode);
+        lock.lock();
+        try {
+            Waiter me = new Waiter(priority, client, mode, estimate, arrivals++);
+            if (!next(me)) {
+                if (bounded && waiting(priority) >= queueLimit) {
+                    rejectedQueueFull.incrementAndGet();
+                    throw new AdmissionRejectedException("too many requests waiting", mode, true, retryAfter());
+                }
+                waiters.add(me);
+                try {
+                    long remaining = queueTimeout.toNanos();
+                    while (!next(me)) {
+                        if (!bounded) {
+                            released.await();
+                        } else if (remaining <= 0) {
+                            rejectedTimeout.incrementAndGet();
+                            throw new AdmissionRejectedException("timed out waiting for capacity", mode, false, retryAfter());
+                        } else {
+                            remaining = released.awaitNanos(remaining);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted waiting for admission");
+                } finally {
+                    waiters.remove(me);
+                    // whoever ranks next among the rest may be able to start now
+                    if (!waiters.isEmpty()) released.signalAll();
+                }
+            }
+            running.merge(mode, 1, Integer::sum);
+            virtualClock = startTag(client);
+            finishTags.put(client, virtualClock + 1);
+            finishTags.values().removeIf(tag -> tag <= virtualClock);
+            reserved += estimate;
+            active++;
+            return new Permit(mode, estimate);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int waiting(Priority priority) {
+        int n = 0;
+        for (Waiter w : waiters) {
+            if (w.priority() == priority) n++;
+        }
+        return n;
+    }
+
+    private long startTag(String client) {
+        return Math.max(virtualClock, finishTags.getOrDefault(client, 0L));
+    }
+
+    /** Whether {@code w} may start now: it fits, and no waiter ranked before it fits as well. */
+    private boolean next(Waiter w) {
+        if (!fits(w)) return false;
+        for (Waiter other : waiters) {
+            if (other != w && order.compare(other, w) < 0 && fits(other)) return false;
+        }
+        return true;
+    }
+
+    private boolean fits(Waiter w) {
+        int limit = modeLimits.getOrDefault(w.mode(), defaultLimit) + (w.priority() == Priority.INTERACTIVE ? interactiveReserve : 0);
+        if (running.getOrDefault(w.mode(), 0) >= limit) return false;
+        return reserved == 0 || reserved + w.estimate() <= memoryBudget;
+    }
+
+    /** Roughly when the queue ahead will have drained, from the average hold time; 1 s to 5 min. */
+    private Duration retryAfter() {
+        double nanos = avgHoldNanos * (waiters.size() + 1) / Math.max(1, active);
+        long seconds = (long) Math.ceil(nanos / 1e9);
+        return Duration.ofSeconds(Math.min(300, Math.max(1, seconds)));
+    }
+
+    private static Map<String, Integer> parseLimits(String spec) {
+        Map<String, Integer> limits = new HashMap<>();
+        for (String item : spec.split(",")) {
+            String[] kv = item.trim().split("=");
+            if (kv.length == 2) limits.put(kv[0].trim().toLowerCase(Locale.ROOT), Math.max(1, Integer.parseInt(kv[1].trim())));
+        }
+        return limits;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("decompiler.admission.active", this, a -> a.read(() -> a.active)).register(registry);
+        Gauge.builder("decompiler.admission.waiting", this, a -> a.read(() -> a.waiters.size())).register(registry);
+        Gauge.builder("decompiler.admission.reserved", this, a -> a.read(() -> a.reserved))
+                .baseUnit("bytes").description("Estimated heap held by admitted requests").register(registry);
+        Gauge.builder("decompiler.admission.budget", this, a -> a.memoryBudget).baseUnit("bytes").register(registry);
+        FunctionCounter.builder("decompiler.admission.rejected", rejectedQueueFull, AtomicLong::get)
+                .tag("reason", "queue-full").register(registry);
+        FunctionCounter.builder("decompiler.admission.rejected", rejectedTimeout, AtomicLong::get)
+                .tag("reason", "timeout").register(registry);
+    }
+
+    private double read(LongSupplier value) {
+        lock.lock();
+        try {
+            return value.getAsLong();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
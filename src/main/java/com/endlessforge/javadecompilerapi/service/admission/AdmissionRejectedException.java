@@ -0,0 +1,33 @@
+package com.endlessforge.javadecompilerapi.service.admission;
+
+import java.time.Duration;
+
+/**
+ * A request turned away by {@link AdmissionControl}: {@code queueFull} when no wait slot was
+ * left (answered 429), otherwise the wait for capacity timed out (answered 503).
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final String mode;
+    private final boolean queueFull;
+    private final Duration retryAfter;
+
+    public AdmissionRejectedException(String message, String mode, boolean queueFull, Duration retryAfter) {
+        super(message);
+        this.mode = mode;
+        this.queueFull = queueFull;
+        this.retryAfter = retryAfter;
+    }
+
+    public String mode() {
+        return mode;
+    }
+
+    public boolean queueFull() {
+        return queueFull;
+    }
+
+    public Duration retryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,14 @@
+package com.endlessforge.javadecompilerapi.service.admission;
+
+/** Scheduling class of a request; {@link AdmissionControl} lets waiters of earlier classes in first. */
+public enum Priority {
+
+    /** A single class someone is waiting on; may use {@code interactive-reserve} slots above the mode limit. */
+    INTERACTIVE,
+
+    /** Whole JARs, batches and incremental runs answered within the request. */
+    BULK,
+
+    /** Queued jobs, polled for later. */
+    BACKGROUND
+}
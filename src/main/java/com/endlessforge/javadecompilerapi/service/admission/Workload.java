@@ -0,0 +1,49 @@
+package com.endlessforge.javadecompilerapi.service.admission;
+
+import com.endlessforge.javadecompilerapi.service.DecompilerService;
+import com.endlessforge.javadecompilerapi.service.UploadedJar;
+import com.endlessforge.javadecompilerapi.util.JarClasses;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.zip.ZipFile;
+
+/**
+ * Size of one request as admission control sees it: input bytes and number of classes.
+ * {@link #estimate} turns that into heap bytes. The figures are deliberately rough upper bounds
+ * (JADX holds the whole archive as nodes, CFR and Procyon load types per batch, external tools
+ * work in their own JVM); the budget they are checked against is configurable.
+ */
+public record Workload(long bytes, int classes) {
+
+    private static final long MB = 1024 * 1024;
+
+    public static Workload ofClass(long bytes) {
+        return new Workload(bytes, 1);
+    }
+
+    /**
+     * A batch before it is read: the size of its parts, one class per uploaded file and, for an
+     * archive of loose classes, one per KiB compressed.
+     */
+    public static Workload ofBatch(long fileBytes, int files, long archiveBytes) {
+        return new Workload(fileBytes + archiveBytes, files + (int) Math.min(Integer.MAX_VALUE - files, archiveBytes / 1024));
+    }
+
+    /** Reads the class count from the central directory; nothing is inflated. */
+    public static Workload ofJar(UploadedJar upload) throws IOException {
+        try (ZipFile zip = new ZipFile(upload.jar().toFile())) {
+            return new Workload(Files.size(upload.jar()), JarClasses.allClasses(zip).size());
+        }
+    }
+
+    public long estimate(String mode) {
+        if (DecompilerService.isExternalMode(mode)) return 4 * MB;
+        return switch (mode) {
+            // every engine holds its own state for the same input
+            case "race", "best" -> estimate("cfr") + estimate("procyon") + estimate("jadx");
+            case "jadx" -> 32 * MB + 24 * bytes + 48 * 1024L * classes;
+            default -> 16 * MB + 4 * bytes + 16 * 1024L * classes;
+        };
+    }
+}
@@ -0,0 +1,18 @@
+package com.endlessforge.javadecompilerapi.service.batch;
+
+import java.io.IOException;
+
+/** A batch whose classes add up to more than {@code decompiler.batch.max-bytes}; collecting stops there. */
+public class BatchTooLargeException extends IOException {
+
+    private final long maxBytes;
+
+    public BatchTooLargeException(long maxBytes) {
+        super("batch classes add up to more than " + maxBytes + " bytes (decompiler.batch.max-bytes)");
+        this.maxBytes = maxBytes;
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+}
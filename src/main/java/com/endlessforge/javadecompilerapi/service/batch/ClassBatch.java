@@ -0,0 +1,43 @@
+package com.endlessforge.javadecompilerapi.service.batch;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class files collected from one batch request, written to a temporary JAR until the response
+ * body runs; {@link #close()} deletes it.
+ *
+ * @param jar      the accepted classes, stored under their internal names in upload order
+ * @param items    one entry per uploaded file, including the ones that were rejected
+ * @param classes  number of classes in {@code jar}
+ * @param bytes    their total size
+ */
+public record ClassBatch(Path jar, List<Item> items, int classes, long bytes) implements Closeable {
+
+    /** One uploaded file: its name in the request, the class it holds (if readable) and why it was not accepted. */
+    public record Item(String name, String internalName, String error) {
+
+        Map<String, Object> describe(String status) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("name", name);
+            if (internalName != null) m.put("className", internalName.replace('/', '.'));
+            m.put("status", status);
+            if (error != null) m.put("error", error);
+            return m;
+        }
+    }
+
+    public boolean isEmpty() {
+        return classes == 0;
+    }
+
+    @Override
+    public void close() {
+        FileUtils.deleteQuietly(jar.getParent().toFile());
+    }
+}
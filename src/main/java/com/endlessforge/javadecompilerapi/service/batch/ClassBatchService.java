@@ -0,0 +1,260 @@
+package com.endlessforge.javadecompilerapi.service.batch;
+
+import com.endlessforge.javadecompilerapi.service.DecompilerService;
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import com.endlessforge.javadecompilerapi.service.output.OutputEncoders;
+import com.endlessforge.javadecompilerapi.service.output.OutputFormat;
+import com.endlessforge.javadecompilerapi.service.output.OutputWriter;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompileContext;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+import com.endlessforge.javadecompilerapi.service.pipeline.EntrySink;
+import com.endlessforge.javadecompilerapi.util.ClassFiles;
+import com.endlessforge.javadecompilerapi.util.JarClasses;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import com.endlessforge.javadecompilerapi.util.ClassTooLargeException;
+import org.apache.commons.io.FileUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Decompiles many loose classes in one go. The classes are packed into a temporary archive as
+ * they are read (never all on the heap at once, and no more than {@code decompiler.batch.max-bytes}) and
+ * run through the same engine path as a JAR, so they share one type-loading context and
+ * references between them resolve. Every uploaded item gets a status: {@code ok}, {@code nested}
+ * (emitted inside its outer class), {@code timeout} (replaced by a stub when its class or the
+ * request ran out of time), {@code failed} or {@code rejected} (not a readable class file).
+ */
+@Service
+public class ClassBatchService {
+
+    private static final String STATUS_ENTRY = "batch-status.json";
+
+    private final DecompilerService decompilerService;
+    private final ObjectMapper mapper;
+    private final DecompileMetrics metrics;
+    private final OutputEncoders encoders;
+    private final long maxClassBytes;
+    private final long maxBatchBytes;
+
+    public ClassBatchService(DecompilerService decompilerService, ObjectMapper mapper, DecompileMetrics metrics,
+                             OutputEncoders encoders,
+                             @Value("${decompiler.class.max-bytes:8388608}") long maxClassBytes,
+                             @Value("${decompiler.batch.max-bytes:67108864}") long maxBatchBytes) {
+        this.decompilerService = decompilerService;
+        this.mapper = mapper;
+        this.metrics = metrics;
+        this.encoders = encoders;
+        this.maxClassBytes = maxClassBytes;
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * Reads the uploaded class files and/or the loose classes of {@code archive} into a temporary
+     * JAR, one class on the heap at a time. Names come from the constant pool, not from file names;
+     * a second copy of the same class, and a class larger than {@code decompiler.class.max-bytes}, is
+     * rejected. Throws {@link BatchTooLargeException} as soon as the classes add up to more than
+     * {@code decompiler.batch.max-bytes}. The caller closes the returned batch.
+     */
+    public ClassBatch collect(List<MultipartFile> files, MultipartFile archive) throws IOException {
+        Path dir = Files.createTempDirectory("batch-");
+        Path jar = dir.resolve("classes.jar");
+        Collector collector = new Collector();
+        try {
+            try (ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(jar)))) {
+                zos.setLevel(0); // read back once, right away
+                if (files != null) {
+                    for (MultipartFile file : files) {
+                        if (file.getSize() > maxClassBytes) {
+                            String name = file.getOriginalFilename();
+                            collector.items.add(new ClassBatch.Item(name, null, new ClassTooLargeException(name, maxClassBytes).getMessage()));
+                            continue;
+                        }
+                        collector.add(zos, file.getOriginalFilename(), file.getBytes());
+                    }
+                }
+                if (archive != null && !archive.isEmpty()) {
+                    try (ZipInputStream zin = new ZipInputStream(new BufferedInputStream(archive.getInputStream()))) {
+                        ZipEntry entry;
+                        while ((entry = zin.getNextEntry()) != null) {
+                            String name = entry.getName();
+                            if (entry.isDirectory() || !name.endsWith(".class") || name.startsWith("META-INF/")) continue;
+                            byte[] bytes;
+                            try {
+                                bytes = JarClasses.read(zin, entry, maxClassBytes);
+                            } catch (ClassTooLargeException e) {
+                                collector.items.add(new ClassBatch.Item(name, null, e.getMessage()));
+                                continue;
+                            }
+                            collector.add(zos, name, bytes);
+                        }
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            FileUtils.deleteQuietly(dir.toFile());
+            throw e;
+        }
+        return new ClassBatch(jar, collector.items, collector.names.size(), collector.bytes);
+    }
+
+    /** What {@link #collect} has accepted so far. */
+    private final class Collector {
+        final List<ClassBatch.Item> items = new ArrayList<>();
+        final Set<String> names = new HashSet<>();
+        long bytes;
+
+        void add(ZipOutputStream zos, String name, byte[] classBytes) throws IOException {
+            String internalName;
+            try {
+                internalName = ClassFiles.internalName(classBytes);
+            } catch (IOException e) {
+                items.add(new ClassBatch.Item(name, null, e.getMessage()));
+                return;
+            } catch (RuntimeException e) {
+                items.add(new ClassBatch.Item(name, null, "malformed class file: " + e));
+                return;
+            }
+            if (!names.add(internalName)) {
+                items.add(new ClassBatch.Item(name, internalName, "duplicate class in batch"));
+                return;
+            }
+            bytes += classBytes.length;
+            if (bytes > maxBatchBytes) throw new BatchTooLargeException(maxBatchBytes);
+            zos.putNextEntry(new ZipEntry(internalName + ".class"));
+            zos.write(classBytes);
+            zos.closeEntry();
+            items.add(new ClassBatch.Item(name, internalName, null));
+        }
+    }
+
+    /**
+     * NDJSON: one line per decompiled source file as it finishes ({@code status: ok} with {@code source}),
+     * then one line for every item that did not produce a source file of its own.
+     */
+    public void writeNdjson(ClassBatch batch, String mode, OutputStream out) throws IOException {
+        Map<String, ClassBatch.Item> byInternalName = itemsByInternalName(batch);
+        OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+        DecompileContext ctx = new DecompileContext();
+        Set<String> produced = run(batch, mode, ctx, new EntrySink() {
+            @Override
+            public void put(DecompiledEntry entry) throws IOException {
+                String internalName = entry.path().substring(0, entry.path().length() - ".java".length());
+                Map<String, Object> line = new LinkedHashMap<>();
+                ClassBatch.Item item = byInternalName.get(internalName);
+                if (item != null) line.put("name", item.name());
+                line.put("className", internalName.replace('/', '.'));
+                line.put("path", entry.path());
+                // a stub is recorded as abandoned before it is written
+                line.put("status", timedOut(ctx).contains(internalName) ? "timeout" : "ok");
+                line.put("source", new String(entry.content(), StandardCharsets.UTF_8));
+                writeLine(buffered, line);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                buffered.flush();
+            }
+        });
+        Set<String> timedOut = timedOut(ctx);
+        for (ClassBatch.Item item : batch.items()) {
+            String status = status(item, produced, timedOut);
+            // a timed-out class has its line already
+            if (!status.equals("ok") && !(status.equals("timeout") && produced.contains(item.internalName() + ".java"))) {
+                writeLine(buffered, describe(item, status));
+            }
+        }
+        buffered.flush();
+    }
+
+    /**
+     * ZIP ({@code zip} or {@code zip-store}, encoded like JAR results): the source files, followed by
+     * {@value #STATUS_ENTRY} with the status of every item.
+     */
+    public void writeZip(ClassBatch batch, String mode, OutputFormat format, OutputStream out) throws IOException {
+        if (!format.isZip()) throw new IllegalArgumentException("not a zip format: " + format.label());
+        try (OutputWriter writer = encoders.open(format, out)) {
+            DecompileContext ctx = new DecompileContext();
+            Set<String> produced = run(batch, mode, ctx, writer);
+            Set<String> timedOut = timedOut(ctx);
+            List<Map<String, Object>> statuses = new ArrayList<>();
+            for (ClassBatch.Item item : batch.items()) statuses.add(describe(item, status(item, produced, timedOut)));
+            writer.put(new DecompiledEntry(STATUS_ENTRY, mapper.writeValueAsBytes(statuses)));
+        }
+    }
+
+    /**
+     * Runs the engine over the batch and returns the paths of the source files it produced, stubs
+     * included; {@code ctx} lists the classes that were stubbed.
+     */
+    private Set<String> run(ClassBatch batch, String mode, DecompileContext ctx, EntrySink sink) throws IOException {
+        Set<String> produced = new HashSet<>();
+        if (batch.isEmpty()) return produced;
+        metrics.bytesIn("batch", batch.bytes());
+        Timer.Sample sample = metrics.start();
+        String outcome = "error";
+        try {
+            decompilerService.decompileArchive(batch.jar().toFile(), mode, null, new EntrySink() {
+                @Override
+                public void put(DecompiledEntry entry) throws IOException {
+                    produced.add(entry.path());
+                    sink.put(entry);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    sink.flush();
+                }
+            }, ctx);
+            outcome = "ok";
+        } finally {
+            metrics.request(sample, "batch", mode, outcome);
+        }
+        return produced;
+    }
+
+    private static String status(ClassBatch.Item item, Set<String> produced, Set<String> timedOut) {
+        if (item.error() != null) return "rejected";
+        String outer = JarClasses.outerOf(item.internalName());
+        if (timedOut.contains(outer)) return "timeout";
+        if (produced.contains(item.internalName() + ".java")) return "ok";
+        if (!outer.equals(item.internalName()) && produced.contains(outer + ".java")) return "nested";
+        return "failed";
+    }
+
+    /** Internal names of the top-level classes replaced by stubs. */
+    private static Set<String> timedOut(DecompileContext ctx) {
+        Set<String> names = new HashSet<>();
+        for (DecompileContext.Abandoned a : ctx.abandoned()) names.add(a.className().replace('.', '/'));
+        return names;
+    }
+
+    private static Map<String, Object> describe(ClassBatch.Item item, String status) {
+        Map<String, Object> m = item.describe(status);
+        if (status.equals("nested")) m.put("outer", JarClasses.outerOf(item.internalName()).replace('/', '.'));
+        return m;
+    }
+
+    private static Map<String, ClassBatch.Item> itemsByInternalName(ClassBatch batch) {
+        Map<String, ClassBatch.Item> m = new HashMap<>();
+        for (ClassBatch.Item item : batch.items()) {
+            if (item.error() == null) m.put(item.internalName(), item);
+        }
+        return m;
+    }
+
+    private void writeLine(OutputStream out, Map<String, Object> line) throws IOException {
+        out.write(mapper.writeValueAsBytes(line));
+        out.write('\n');
+    }
+}
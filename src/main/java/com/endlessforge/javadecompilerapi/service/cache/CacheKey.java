@@ -0,0 +1,45 @@
+package com.endlessforge.javadecompilerapi.service.cache;
+
+import com.endlessforge.javadecompilerapi.service.output.OutputFormat;
+
+import java.util.Locale;
+
+/**
+ * Identifies one decompilation result: SHA-256 of the uploaded bytes, the mode,
+ * a normalized option string ("" when the defaults were used) and the encoding the result is stored in.
+ */
+public record CacheKey(String contentHash, String mode, String options, OutputFormat format) {
+
+    public CacheKey {
+        mode = mode.toLowerCase(Locale.ROOT);
+        options = options == null ? "" : options;
+        format = format == null ? OutputFormat.ZIP : format;
+    }
+
+    public CacheKey(String contentHash, String mode, String options) {
+        this(contentHash, mode, options, OutputFormat.ZIP);
+    }
+
+    public static CacheKey of(String contentHash, String mode) {
+        return new CacheKey(contentHash, mode, "");
+    }
+
+    public CacheKey withOptions(String options) {
+        return new CacheKey(contentHash, mode, options, format);
+    }
+
+    public CacheKey withFormat(OutputFormat format) {
+        return new CacheKey(contentHash, mode, options, format);
+    }
+
+    /** File name of the archive inside the per-hash directory of the disk tier, ending in the format's extension. */
+    public String archiveName() {
+        if (options.isEmpty()) return "decompiled-" + mode + format.extension();
+        return "decompiled-" + mode + "-" + DecompilationCache.sha256(options).substring(0, 12) + format.extension();
+    }
+
+    /** Rough heap footprint used when the key sits in the memory tier. */
+    int weight() {
+        return 64 + 2 * (contentHash.length() + mode.length() + options.length());
+    }
+}
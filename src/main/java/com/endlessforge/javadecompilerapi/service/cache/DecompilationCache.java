@@ -0,0 +1,500 @@
+package com.endlessforge.javadecompilerapi.service.cache;
+
+import com.endlessforge.javadecompilerapi.service.output.OutputFormat;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Content-addressed result cache.
+ *
+ * Two tiers:
+ *  - memory: weight-bounded LRU of decompiled sources (single classes and classes pulled out of JAR results)
+ *  - disk (optional): finished results under {@code <dir>/<sha256>/decompiled-<mode>[-opts]<format extension>}
+ *    ({@code .zip}, {@code .tar.zst}, {@code .ndjson}), served as-is,
+ *    next to {@code classes.tsv} (class name and SHA-256 per class) for incremental runs against that JAR.
+ *    Files derived from an archive ({@link #storeSidecar sidecars}, e.g. its search index) share its
+ *    name up to the extension, count towards its size and are evicted with it.
+ *    Archives handed out by the {@code pin} lookups are not evicted until their {@link PinnedArchive} is closed.
+ */
+@Component
+public class DecompilationCache implements MeterBinder {
+
+    private static final String CLASS_INDEX = "classes.tsv";
+
+    private final boolean enabled;
+    private final long memoryMaxBytes;
+    private final Path diskDir;
+    private final long diskMaxBytes;
+
+    // access-ordered so iteration starts at the least recently used entry
+    private final LinkedHashMap<CacheKey, byte[]> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+
+    private final LinkedHashMap<Path, Long> diskEntries = new LinkedHashMap<>(64, 0.75f, true);
+    private long diskBytes;
+    // archive -> open PinnedArchive handles; guarded by diskEntries
+    private final Map<Path, Integer> pins = new HashMap<>();
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong memoryMisses = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong diskMisses = new AtomicLong();
+    private final AtomicLong memoryEvictions = new AtomicLong();
+    private final AtomicLong diskEvictions = new AtomicLong();
+
+    public DecompilationCache(@Value("${decompiler.cache.enabled:true}") boolean enabled,
+                              @Value("${decompiler.cache.memory-max-bytes:33554432}") long memoryMaxBytes,
+                              @Value("${decompiler.cache.disk.enabled:true}") boolean diskEnabled,
+                              @Value("${decompiler.cache.disk.dir:${java.io.tmpdir}/decompiler-cache}") String diskDir,
+                              @Value("${decompiler.cache.disk.max-bytes:268435456}") long diskMaxBytes) throws IOException {
+        this.enabled = enabled;
+        this.memoryMaxBytes = memoryMaxBytes;
+        this.diskDir = enabled && diskEnabled ? Paths.get(diskDir) : null;
+        this.diskMaxBytes = diskMaxBytes;
+        if (this.diskDir != null) loadDiskIndex();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isDiskEnabled() {
+        return diskDir != null;
+    }
+
+    // ---- memory tier ----
+
+    public String getSource(CacheKey key) {
+        if (!enabled) return null;
+        byte[] bytes;
+        synchronized (memory) {
+            bytes = memory.get(key);
+        }
+        (bytes == null ? memoryMisses : memoryHits).incrementAndGet();
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public void putSource(CacheKey key, String source) {
+        if (!enabled || source == null) return;
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        long weight = bytes.length + key.weight();
+        if (weight > memoryMaxBytes / 4) return; // one entry must not flush the whole tier
+
+        synchronized (memory) {
+            byte[] previous = memory.put(key, bytes);
+            if (previous != null) memoryBytes -= previous.length + key.weight();
+            memoryBytes += weight;
+
+            Iterator<Map.Entry<CacheKey, byte[]>> it = memory.entrySet().iterator();
+            while (memoryBytes > memoryMaxBytes && it.hasNext()) {
+                Map.Entry<CacheKey, byte[]> eldest = it.next();
+                memoryBytes -= eldest.getValue().length + eldest.getKey().weight();
+                it.remove();
+                memoryEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    // ---- disk tier ----
+
+    /**
+     * Returns the stored archive for {@code key}, or null. Only an answer for now: to read the
+     * archive, {@link #pinArchive pin} it instead.
+     */
+    public Path findArchive(CacheKey key) {
+        if (diskDir == null) return null;
+        synchronized (diskEntries) {
+            Path p = archivePath(key);
+            return diskEntries.containsKey(p) && Files.exists(p) ? p : null;
+        }
+    }
+
+    /** Returns the stored archive for {@code key}, kept on disk until the returned handle is closed; null on a miss. */
+    public PinnedArchive pinArchive(CacheKey key) {
+        if (diskDir == null) return null;
+        return pin(archivePath(key));
+    }
+
+    /**
+     * Same for the stored ZIP archive named {@code <sha256>:<mode>[-<options hash>]} ({@link #resultName}),
+     * for callers that only kept the name. Other encodings have no such name: nothing reads them back.
+     */
+    public PinnedArchive pinResult(String name) {
+        int colon = name.indexOf(':');
+        if (diskDir == null || colon < 0) return null;
+        String contentHash = name.substring(0, colon);
+        String archiveName = "decompiled-" + name.substring(colon + 1) + OutputFormat.ZIP.extension();
+        if (!contentHash.matches("[0-9a-f]{64}") || !archiveName.matches("decompiled-[a-z0-9-]+\\.zip")) return null;
+        return pin(diskDir.resolve(contentHash).resolve(archiveName));
+    }
+
+    /** The name clients use for a stored archive: content hash and archive name, without the fixed parts. */
+    public static String resultName(Path archive) {
+        return archive.getParent().getFileName() + ":" + baseName(archive).substring("decompiled-".length());
+    }
+
+    /** True for a stored ZIP, the only encoding whose entries can be read back. */
+    public static boolean isZip(Path archive) {
+        return archive.getFileName().toString().endsWith(OutputFormat.ZIP.extension());
+    }
+
+    /** An archive's name without its extension; modes and option hashes contain no dots. */
+    private static String baseName(Path archive) {
+        String name = archive.getFileName().toString();
+        int dot = name.indexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    /** True for a file the disk tier stores results as, rather than a sidecar, class index or temp file. */
+    private static boolean isArchive(Path p) {
+        String name = p.getFileName().toString();
+        if (!name.startsWith("decompiled-") || name.indexOf('.') < 0) return false;
+        String extension = name.substring(name.indexOf('.'));
+        for (OutputFormat format : OutputFormat.values()) {
+            if (format.extension().equals(extension)) return true;
+        }
+        return false;
+    }
+
+    // checked and pinned under one lock: eviction cannot delete the file between lookup and read
+    private PinnedArchive pin(Path p) {
+        synchronized (diskEntries) {
+            if (diskEntries.get(p) == null || !Files.exists(p)) {
+                Long size = diskEntries.remove(p);
+                if (size != null) diskBytes -= size;
+                diskMisses.incrementAndGet();
+                return null;
+            }
+            pins.merge(p, 1, Integer::sum);
+        }
+        diskHits.incrementAndGet();
+        return new PinnedArchive(p, this);
+    }
+
+    void unpin(Path p) {
+        synchronized (diskEntries) {
+            pins.computeIfPresent(p, (k, n) -> n == 1 ? null : n - 1);
+            // whatever was skipped while pinned may be over budget now
+            evictDisk(null);
+        }
+    }
+
+    /**
+     * Moves a finished archive into the disk tier. Returns the stored archive, pinned, or the
+     * original unpinned when the disk tier is disabled or the move failed.
+     */
+    public PinnedArchive storeArchive(CacheKey key, Path zip) {
+        if (diskDir == null) return PinnedArchive.unpinned(zip);
+        Path target = archivePath(key);
+        Path tmp = null;
+        try {
+            Files.createDirectories(target.getParent());
+            // temp name first: readers only ever see a complete archive under the final name
+            tmp = Files.createTempFile(target.getParent(), "store-", ".tmp");
+            Files.move(zip, tmp, StandardCopyOption.REPLACE_EXISTING);
+            // whatever was derived from an archive stored here before is stale now
+            deleteSidecars(target);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long size = Files.size(target);
+            synchronized (diskEntries) {
+                Long previous = diskEntries.put(target, size);
+                if (previous != null) diskBytes -= previous;
+                diskBytes += size;
+                pins.merge(target, 1, Integer::sum);
+                evictDisk(null);
+            }
+            return new PinnedArchive(target, this);
+        } catch (IOException e) {
+            try {
+                if (tmp != null && Files.exists(tmp) && !Files.exists(zip)) Files.move(tmp, zip);
+                else if (tmp != null) Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // nothing left to serve from either place; the caller's open will fail loudly
+            }
+            return PinnedArchive.unpinned(zip);
+        }
+    }
+
+    /** Where the sidecar with {@code extension} of a stored archive lives. */
+    public static Path sidecar(Path archive, String extension) {
+        return archive.resolveSibling(baseName(archive) + "." + extension);
+    }
+
+    /**
+     * Moves {@code written} next to the stored {@code archive} as its sidecar with {@code extension}.
+     * Returns false (and deletes {@code written}) when the archive has left the cache meanwhile;
+     * a sidecar already in place is kept.
+     */
+    public boolean storeSidecar(Path archive, String extension, Path written) throws IOException {
+        Path target = sidecar(archive, extension);
+        synchronized (diskEntries) {
+            Long size = diskEntries.get(archive);
+            if (size == null || Files.exists(target)) {
+                Files.deleteIfExists(written);
+                return size != null;
+            }
+            Files.move(written, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long added = Files.size(target);
+            diskEntries.put(archive, size + added);
+            diskBytes += added;
+            evictDisk(archive);
+        }
+        return true;
+    }
+
+    /**
+     * Records the class hashes of the JAR with content hash {@code jarHash}; kept while any of its
+     * archives is. Written once, since the same bytes always have the same classes.
+     */
+    public void storeClassHashes(String jarHash, Map<String, String> hashes) {
+        if (diskDir == null) return;
+        Path target = diskDir.resolve(jarHash).resolve(CLASS_INDEX);
+        if (Files.exists(target)) return;
+        StringBuilder sb = new StringBuilder(hashes.size() * 112);
+        hashes.forEach((name, hash) -> sb.append(name).append('\t').append(hash).append('\n'));
+        Path tmp = null;
+        try {
+            Files.createDirectories(target.getParent());
+            tmp = Files.createTempFile(target.getParent(), "classes-", ".tmp");
+            Files.writeString(tmp, sb);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                if (tmp != null) Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // a stray temp file is only wasted space
+            }
+        }
+    }
+
+    /** Class hashes recorded by {@link #storeClassHashes}, or null. */
+    public Map<String, String> findClassHashes(String jarHash) {
+        if (diskDir == null) return null;
+        Path index = diskDir.resolve(jarHash).resolve(CLASS_INDEX);
+        try (Stream<String> lines = Files.lines(index)) {
+            Map<String, String> hashes = new TreeMap<>();
+            lines.forEach(line -> {
+                int tab = line.indexOf('\t');
+                if (tab > 0) hashes.put(line.substring(0, tab), line.substring(tab + 1));
+            });
+            return hashes;
+        } catch (IOException | UncheckedIOException e) {
+            return null;
+        }
+    }
+
+    /** True if {@code p} lives in the disk tier (and must not be deleted by callers). */
+    public boolean holds(Path p) {
+        return diskDir != null && p.toAbsolutePath().normalize().startsWith(diskDir.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Per-class lookup against a previously decompiled JAR: memory first, then the
+     * full archive stored for {@code jarKey}. Returns null if neither has the class.
+     */
+    public String findClassSource(CacheKey jarKey, String className) {
+        if (!enabled) return null;
+        CacheKey classKey = jarKey.withOptions("class=" + className);
+        String source = getSource(classKey);
+        if (source != null) return source;
+
+        try (PinnedArchive archive = pinArchive(jarKey)) {
+            if (archive == null) return null;
+            source = readEntry(archive.path(), className.replace('.', '/') + ".java");
+        } catch (IOException e) {
+            return null;
+        }
+        if (source != null) putSource(classKey, source);
+        return source;
+    }
+
+    private static String readEntry(Path archive, String name) throws IOException {
+        try (ZipFile zf = new ZipFile(archive.toFile())) {
+            ZipEntry entry = zf.getEntry(name);
+            if (entry == null) return null;
+            try (InputStream in = zf.getInputStream(entry)) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", enabled);
+        synchronized (memory) {
+            m.put("memoryEntries", memory.size());
+            m.put("memoryBytes", memoryBytes);
+        }
+        m.put("memoryMaxBytes", memoryMaxBytes);
+        m.put("memoryHits", memoryHits.get());
+        m.put("memoryMisses", memoryMisses.get());
+        m.put("memoryEvictions", memoryEvictions.get());
+        m.put("diskEnabled", diskDir != null);
+        synchronized (diskEntries) {
+            m.put("diskEntries", diskEntries.size());
+            m.put("diskBytes", diskBytes);
+        }
+        m.put("diskMaxBytes", diskMaxBytes);
+        m.put("diskHits", diskHits.get());
+        m.put("diskMisses", diskMisses.get());
+        m.put("diskEvictions", diskEvictions.get());
+        return m;
+    }
+
+    /** The numbers of {@link #stats()} as meters, tagged by tier. */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("decompiler.cache.size", this, c -> {
+            synchronized (c.memory) {
+                return c.memoryBytes;
+            }
+        }).tag("tier", "memory").baseUnit("bytes").register(registry);
+        Gauge.builder("decompiler.cache.size", this, c -> {
+            synchronized (c.diskEntries) {
+                return c.diskBytes;
+            }
+        }).tag("tier", "disk").baseUnit("bytes").register(registry);
+        counter(registry, "decompiler.cache.hits", "memory", memoryHits);
+        counter(registry, "decompiler.cache.misses", "memory", memoryMisses);
+        counter(registry, "decompiler.cache.evictions", "memory", memoryEvictions);
+        counter(registry, "decompiler.cache.hits", "disk", diskHits);
+        counter(registry, "decompiler.cache.misses", "disk", diskMisses);
+        counter(registry, "decompiler.cache.evictions", "disk", diskEvictions);
+    }
+
+    private static void counter(MeterRegistry registry, String name, String tier, AtomicLong value) {
+        FunctionCounter.builder(name, value, AtomicLong::get).tag("tier", tier).register(registry);
+    }
+
+    private Path archivePath(CacheKey key) {
+        return diskDir.resolve(key.contentHash()).resolve(key.archiveName());
+    }
+
+    // caller holds diskEntries; pinned archives are skipped and go once unpinned
+    private void evictDisk(Path keep) {
+        Iterator<Map.Entry<Path, Long>> it = diskEntries.entrySet().iterator();
+        while (diskBytes > diskMaxBytes && it.hasNext()) {
+            Map.Entry<Path, Long> eldest = it.next();
+            if (eldest.getKey().equals(keep) || pins.containsKey(eldest.getKey())) continue;
+            try {
+                Files.deleteIfExists(eldest.getKey());
+                deleteSidecars(eldest.getKey());
+                deleteIfOnlyIndexLeft(eldest.getKey().getParent());
+            } catch (IOException ignored) {
+                // still drop it from the index; a stale file is only wasted space
+            }
+            diskBytes -= eldest.getValue();
+            it.remove();
+            diskEvictions.incrementAndGet();
+        }
+    }
+
+    /** Sidecars of {@code archive} present on disk. */
+    private static List<Path> sidecars(Path archive) throws IOException {
+        if (!Files.isDirectory(archive.getParent())) return List.of();
+        String prefix = sidecar(archive, "").toString();
+        try (Stream<Path> s = Files.list(archive.getParent())) {
+            return s.filter(p -> p.toString().startsWith(prefix) && !isArchive(p)).toList();
+        }
+    }
+
+    private static void deleteSidecars(Path archive) throws IOException {
+        for (Path p : sidecars(archive)) Files.deleteIfExists(p);
+    }
+
+    /** Removes a per-hash directory once its last archive is gone; the class index alone is useless. */
+    private static void deleteIfOnlyIndexLeft(Path dir) throws IOException {
+        try (Stream<Path> s = Files.list(dir)) {
+            if (s.anyMatch(DecompilationCache::isArchive)) return;
+        }
+        Files.deleteIfExists(dir.resolve(CLASS_INDEX));
+        Files.deleteIfExists(dir);
+    }
+
+    private void loadDiskIndex() throws IOException {
+        Files.createDirectories(diskDir);
+        List<Path> archives;
+        try (Stream<Path> s = Files.walk(diskDir, 2)) {
+            archives = s.filter(DecompilationCache::isArchive)
+                    .sorted(Comparator.comparingLong(DecompilationCache::lastModified))
+                    .toList();
+        }
+        synchronized (diskEntries) {
+            for (Path p : archives) {
+                long size = Files.size(p) + sidecarBytes(p);
+                diskEntries.put(p, size);
+                diskBytes += size;
+            }
+            evictDisk(null);
+        }
+    }
+
+    private static long sidecarBytes(Path archive) throws IOException {
+        long total = 0;
+        for (Path p : sidecars(archive)) total += Files.size(p);
+        return total;
+    }
+
+    private static long lastModified(Path p) {
+        try {
+            return Files.getLastModifiedTime(p).toMillis();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ---- hashing ----
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public static String sha256(byte[] bytes) {
+        return HexFormat.of().formatHex(newDigest().digest(bytes));
+    }
+
+    public static String sha256(String s) {
+        return sha256(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Hashes a file through its channel with one small buffer, whatever its size. */
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return hex(digest);
+    }
+
+    public static String hex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,41 @@
+package com.endlessforge.javadecompilerapi.service.cache;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A result archive that stays where it is until closed: either one of the disk tier, pinned
+ * against eviction by the lookup that found it, or a file outside the cache, for which
+ * closing does nothing. Closing twice is harmless.
+ */
+public final class PinnedArchive implements Closeable {
+
+    private final Path path;
+    private final DecompilationCache cache; // null when not in the disk tier
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    PinnedArchive(Path path, DecompilationCache cache) {
+        this.path = path;
+        this.cache = cache;
+    }
+
+    /** A file the cache does not manage; the caller deletes it when done. */
+    public static PinnedArchive unpinned(Path path) {
+        return new PinnedArchive(path, null);
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    /** True if the archive lives in the disk tier (and must not be deleted by callers). */
+    public boolean cached() {
+        return cache != null;
+    }
+
+    @Override
+    public void close() {
+        if (cache != null && closed.compareAndSet(false, true)) cache.unpin(path);
+    }
+}
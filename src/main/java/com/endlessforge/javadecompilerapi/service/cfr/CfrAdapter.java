@@ -1,25 +1,69 @@
 package com.endlessforge.javadecompilerapi.service.cfr;
 
+import com.endlessforge.javadecompilerapi.service.library.Classpath;
+import com.endlessforge.javadecompilerapi.service.linemap.LineMap;
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompileContext;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompilePipeline;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+import com.endlessforge.javadecompilerapi.service.pipeline.EntrySink;
+import com.endlessforge.javadecompilerapi.util.ClassFiles;
+import com.endlessforge.javadecompilerapi.util.ClassSelector;
+import com.endlessforge.javadecompilerapi.util.JarClasses;
 import org.benf.cfr.reader.api.CfrDriver;
+import org.benf.cfr.reader.api.ClassFileSource;
 import org.benf.cfr.reader.api.OutputSinkFactory;
 import org.benf.cfr.reader.api.SinkReturns;
+import org.benf.cfr.reader.util.getopt.Options;
+import org.benf.cfr.reader.util.getopt.OptionsImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.ZipFile;
 
 @Component
+@Lazy
 public class CfrAdapter {
 
+    private static final Logger log = LoggerFactory.getLogger(CfrAdapter.class);
+
+    /** Built once: parsing the option map is part of every driver's setup otherwise. Loads CFR on first use only. */
+    private static final class Settings {
+        static final Options OPTIONS = new OptionsImpl(Map.of(
+                "clobber", "true" // Don't check for file existence
+        ));
+        // same, plus the bytecode offsets of statements, which line maps are joined on
+        static final Options OPTIONS_WITH_LINES = new OptionsImpl(Map.of(
+                "clobber", "true",
+                "trackbytecodeloc", "true"
+        ));
+    }
+
+    private final DecompilePipeline pipeline;
+    private final DecompileMetrics metrics;
+    private final long maxClassBytes;
+
+    public CfrAdapter(DecompilePipeline pipeline, DecompileMetrics metrics,
+                      @Value("${decompiler.class.max-bytes:8388608}") long maxClassBytes) {
+        this.pipeline = pipeline;
+        this.metrics = metrics;
+        this.maxClassBytes = maxClassBytes;
+    }
+
     public String decompileClass(byte[] classBytes, String providedClassName) throws IOException {
-        File tmp = File.createTempFile("cfr-class-", ".class");
-        try (FileOutputStream fos = new FileOutputStream(tmp)) {
-            fos.write(classBytes);
-            fos.flush();
-        }
+        return decompileClass(classBytes, providedClassName, Classpath.EMPTY);
+    }
+
+    /** One class, with types it references looked up in {@code classpath} before the JDK. */
+    public String decompileClass(byte[] classBytes, String providedClassName, Classpath classpath) throws IOException {
+        // served straight from memory; the name comes from the constant pool, not the caller
+        InMemoryClassFileSource source = new InMemoryClassFileSource();
+        String path = source.add(ClassFiles.internalName(classBytes), classBytes);
 
         final StringBuilder sb = new StringBuilder();
 
@@ -47,38 +91,72 @@ public class CfrAdapter {
             }
         };
 
-        CfrDriver driver = new CfrDriver.Builder().withOutputSink(mySink).build();
-        driver.analyse(Collections.singletonList(tmp.getAbsolutePath()));
-        tmp.delete();
+        CfrDriver driver = new CfrDriver.Builder()
+                .withClassFileSource(PlatformClassFileSource.INSTANCE.under(LibraryClassFileSource.over(source, classpath)))
+                .withOutputSink(mySink)
+                .withBuiltOptions(Settings.OPTIONS)
+                .build();
+        driver.analyse(Collections.singletonList(path));
         return sb.toString();
     }
 
-    public void decompileJarToZip(File jarFile, ZipOutputStream zos, String targetClass) {
-        OutputSinkFactory sinkFactory = new SinkFactoryToZip(zos);
+    public void decompileJarTo(File jarFile, EntrySink sink, ClassSelector selector, DecompileContext ctx) throws IOException {
+        try (ZipFile zip = new ZipFile(jarFile)) {
+            // referenced types (nested classes included) are read from the archive only when CFR asks
+            ClassFileSource source = PlatformClassFileSource.INSTANCE.under(
+                    LibraryClassFileSource.over(new ZipClassFileSource(zip, maxClassBytes), ctx.classpath()));
+            List<String> classes = selector == null ? JarClasses.topLevelClasses(zip) : selector.topLevelClasses(zip);
+            // one driver per batch: CFR caches parsed JDK/library types per driver, so batches amortise that
+            List<List<String>> batches = JarClasses.chunk(classes, pipeline.workerCount() * 2, 256);
+            pipeline.write("cfr", batches, name -> name, (batch, progress) -> decompileBatch(source, batch, progress, ctx), sink, ctx);
+        }
+    }
 
-        // Options to reduce memory/cpu usage
-        Map<String, String> options = new HashMap<>();
-        options.put("clobber", "true"); // Don't check for file existence
+    private void decompileBatch(ClassFileSource source, List<String> internalNames,
+                                DecompilePipeline.Progress<String> progress, DecompileContext ctx) {
+        SinkFactoryToEntries sinkFactory = new SinkFactoryToEntries(ctx.lineMaps());
 
         CfrDriver driver = new CfrDriver.Builder()
+                .withClassFileSource(source)
                 .withOutputSink(sinkFactory)
-                .withOptions(options)
+                .withBuiltOptions(ctx.lineMaps() ? Settings.OPTIONS_WITH_LINES : Settings.OPTIONS)
                 .build();
 
-        List<String> toAnalyse = Collections.singletonList(jarFile.getAbsolutePath());
-        driver.analyse(toAnalyse);
+        // one class per analyse call (CFR builds its state per path either way) so the pipeline
+        // can time each class on its own
+        for (String name : internalNames) {
+            if (Thread.currentThread().isInterrupted()) break; // batch was cancelled (e.g. client left)
+            if (ctx.skips(name)) continue;
+            progress.begin(name);
+            driver.analyse(Collections.singletonList(name + ".class"));
+            sinkFactory.entries.forEach(progress::add);
+            sinkFactory.entries.clear();
+            sinkFactory.lines = new LineMap.Builder(); // left over when CFR failed before the source
+        }
+        metrics.classesFailed("cfr", sinkFactory.failures);
     }
 
-
-
-    static class SinkFactoryToZip implements OutputSinkFactory {
-        private final ZipOutputStream zos;
-
-        SinkFactoryToZip(ZipOutputStream zos) { this.zos = zos; }
+    /**
+     * Collects decompiled sources into a worker-local list; the pipeline does the writing.
+     * Classes CFR gives up on entirely arrive on the exception sink and are counted. With
+     * {@code lineMaps}, the per-method mappings CFR reports before a class's source are joined
+     * into a {@link LineMap} written ahead of it.
+     */
+    static class SinkFactoryToEntries implements OutputSinkFactory {
+        final List<DecompiledEntry> entries = new ArrayList<>();
+        final boolean lineMaps;
+        LineMap.Builder lines = new LineMap.Builder();
+        int failures;
+
+        SinkFactoryToEntries(boolean lineMaps) {
+            this.lineMaps = lineMaps;
+        }
 
         @Override public List<SinkClass> getSupportedSinks(SinkType sinkType, Collection<SinkClass> available) {
             // We only care about the decompiled source
             if (sinkType == SinkType.JAVA) return Collections.singletonList(SinkClass.DECOMPILED);
+            if (sinkType == SinkType.EXCEPTION) return Collections.singletonList(SinkClass.EXCEPTION_MESSAGE);
+            if (sinkType == SinkType.LINENUMBER && lineMaps) return Collections.singletonList(SinkClass.LINE_NUMBER_MAPPING);
             return Collections.emptyList();
         }
 
@@ -87,22 +165,42 @@ public class CfrAdapter {
                 return x -> {
                     if (x instanceof SinkReturns.Decompiled) {
                         SinkReturns.Decompiled dd = (SinkReturns.Decompiled) x;
-                        String path = dd.getPackageName().replace('.', '/') + "/" + dd.getClassName() + ".java";
-
-                        // ZOS is not thread-safe, and CFR might be multi-threaded
-                        synchronized (zos) {
-                            try {
-                                zos.putNextEntry(new ZipEntry(path));
-                                zos.write(dd.getJava().getBytes(StandardCharsets.UTF_8));
-                                zos.closeEntry();
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
-                        }
+                        String pkg = dd.getPackageName();
+                        String path = (pkg == null || pkg.isEmpty() ? "" : pkg.replace('.', '/') + "/") + dd.getClassName() + ".java";
+                        if (lineMaps && !lines.isEmpty()) entries.add(lines.build().entry(path));
+                        lines = new LineMap.Builder();
+                        entries.add(DecompiledEntry.source(path, dd.getJava()));
+                    }
+                };
+            }
+            if (sinkType == SinkType.LINENUMBER && sinkClass == SinkClass.LINE_NUMBER_MAPPING) {
+                return x -> {
+                    if (x instanceof SinkReturns.LineNumberMapping m) addMethod(m);
+                };
+            }
+            if (sinkType == SinkType.EXCEPTION && sinkClass == SinkClass.EXCEPTION_MESSAGE) {
+                return x -> {
+                    if (x instanceof SinkReturns.ExceptionMessage) {
+                        SinkReturns.ExceptionMessage em = (SinkReturns.ExceptionMessage) x;
+                        log.warn("cfr failed on {}: {}", em.getPath(), em.getMessage());
+                        failures++;
                     }
                 };
             }
             return t -> {};
         }
+
+        /**
+         * Both of CFR's maps are keyed by bytecode offset: statements' decompiled lines, and the class
+         * file's own LineNumberTable. A statement belongs to the table entry at or before its offset.
+         */
+        private void addMethod(SinkReturns.LineNumberMapping m) {
+            NavigableMap<Integer, Integer> classFile = m.getClassFileMappings();
+            if (classFile == null || m.getMappings() == null) return;
+            for (Map.Entry<Integer, Integer> statement : m.getMappings().entrySet()) {
+                Map.Entry<Integer, Integer> original = classFile.floorEntry(statement.getKey());
+                if (original != null) lines.add(original.getValue(), statement.getValue());
+            }
+        }
     }
-}
\ No newline at end of file
+}
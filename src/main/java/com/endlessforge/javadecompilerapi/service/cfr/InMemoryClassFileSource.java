@@ -0,0 +1,44 @@
+package com.endlessforge.javadecompilerapi.service.cfr;
+
+import org.benf.cfr.reader.api.ClassFileSource;
+import org.benf.cfr.reader.bytecode.analysis.parse.utils.Pair;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serves class bytes to CFR from memory. Paths we don't hold return null so the layered
+ * source falls back to {@link PlatformClassFileSource} (JDK classes).
+ */
+class InMemoryClassFileSource implements ClassFileSource {
+
+    private final Map<String, byte[]> classes = new HashMap<>();
+
+    /** Registers a class by internal name and returns the path to pass to {@code analyse}. */
+    String add(String internalName, byte[] bytes) {
+        String path = internalName + ".class";
+        classes.put(path, bytes);
+        return path;
+    }
+
+    @Override
+    public void informAnalysisRelativePathDetail(String usePath, String classFilePath) {
+    }
+
+    @Override
+    public Collection<String> addJar(String jarPath) {
+        return null;
+    }
+
+    @Override
+    public String getPossiblyRenamedPath(String path) {
+        return null;
+    }
+
+    @Override
+    public Pair<byte[], String> getClassFileContent(String path) {
+        byte[] bytes = classes.get(path);
+        return bytes == null ? null : Pair.make(bytes, path);
+    }
+}
@@ -0,0 +1,51 @@
+package com.endlessforge.javadecompilerapi.service.cfr;
+
+import com.endlessforge.javadecompilerapi.service.library.Classpath;
+import org.benf.cfr.reader.api.ClassFileSource;
+import org.benf.cfr.reader.bytecode.analysis.parse.utils.Pair;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * The request's classes first, then the library JARs on its {@link Classpath}. Library bytes come
+ * from the store's shared cache; CFR still parses them once per analysed class.
+ */
+class LibraryClassFileSource implements ClassFileSource {
+
+    private final ClassFileSource request;
+    private final Classpath classpath;
+
+    LibraryClassFileSource(ClassFileSource request, Classpath classpath) {
+        this.request = request;
+        this.classpath = classpath;
+    }
+
+    /** {@code request} itself when there are no libraries. */
+    static ClassFileSource over(ClassFileSource request, Classpath classpath) {
+        return classpath.isEmpty() ? request : new LibraryClassFileSource(request, classpath);
+    }
+
+    @Override
+    public void informAnalysisRelativePathDetail(String usePath, String classFilePath) {
+        request.informAnalysisRelativePathDetail(usePath, classFilePath);
+    }
+
+    @Override
+    public Collection<String> addJar(String jarPath) {
+        return request.addJar(jarPath);
+    }
+
+    @Override
+    public String getPossiblyRenamedPath(String path) {
+        return request.getPossiblyRenamedPath(path);
+    }
+
+    @Override
+    public Pair<byte[], String> getClassFileContent(String path) throws IOException {
+        Pair<byte[], String> own = request.getClassFileContent(path);
+        if (own != null) return own;
+        byte[] bytes = classpath.classFile(path);
+        return bytes == null ? null : Pair.make(bytes, path);
+    }
+}
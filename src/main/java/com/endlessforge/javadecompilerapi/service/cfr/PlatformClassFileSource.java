@@ -0,0 +1,82 @@
+package com.endlessforge.javadecompilerapi.service.cfr;
+
+import org.benf.cfr.reader.api.ClassFileSource;
+import org.benf.cfr.reader.bytecode.analysis.parse.utils.Pair;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JDK and application-classpath classes for CFR, shared by every driver. Replaces CFR's default
+ * source, which indexes every jar on {@code java.class.path} again for each driver it builds.
+ * Bytes are read through the class loader (no class is loaded) and kept up to {@link #MAX_CACHED}.
+ */
+class PlatformClassFileSource implements ClassFileSource {
+
+    static final PlatformClassFileSource INSTANCE = new PlatformClassFileSource();
+
+    private static final int MAX_CACHED = 4096;
+
+    private final ClassLoader loader = PlatformClassFileSource.class.getClassLoader();
+    private final Map<String, byte[]> cache = new ConcurrentHashMap<>();
+
+    private PlatformClassFileSource() {}
+
+    /** {@code request} first, this source for whatever it does not hold. */
+    ClassFileSource under(ClassFileSource request) {
+        return new ClassFileSource() {
+            @Override
+            public void informAnalysisRelativePathDetail(String usePath, String classFilePath) {
+                request.informAnalysisRelativePathDetail(usePath, classFilePath);
+            }
+
+            @Override
+            public Collection<String> addJar(String jarPath) {
+                return request.addJar(jarPath);
+            }
+
+            @Override
+            public String getPossiblyRenamedPath(String path) {
+                String renamed = request.getPossiblyRenamedPath(path);
+                return renamed != null ? renamed : path;
+            }
+
+            @Override
+            public Pair<byte[], String> getClassFileContent(String path) throws IOException {
+                Pair<byte[], String> own = request.getClassFileContent(path);
+                return own != null ? own : PlatformClassFileSource.this.getClassFileContent(path);
+            }
+        };
+    }
+
+    @Override
+    public void informAnalysisRelativePathDetail(String usePath, String classFilePath) {
+    }
+
+    @Override
+    public Collection<String> addJar(String jarPath) {
+        return null;
+    }
+
+    @Override
+    public String getPossiblyRenamedPath(String path) {
+        return path;
+    }
+
+    @Override
+    public Pair<byte[], String> getClassFileContent(String path) throws IOException {
+        byte[] bytes = cache.get(path);
+        if (bytes == null) {
+            try (InputStream in = loader.getResourceAsStream(path)) {
+                // CFR expects an IOException for classes it cannot find and carries on without them
+                if (in == null) throw new IOException("No such file " + path);
+                bytes = in.readAllBytes();
+            }
+            if (cache.size() < MAX_CACHED) cache.put(path, bytes);
+        }
+        return Pair.make(bytes, path);
+    }
+}
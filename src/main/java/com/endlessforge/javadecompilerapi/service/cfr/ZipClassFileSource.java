@@ -0,0 +1,57 @@
+package com.endlessforge.javadecompilerapi.service.cfr;
+
+import com.endlessforge.javadecompilerapi.util.ClassTooLargeException;
+import com.endlessforge.javadecompilerapi.util.JarClasses;
+import org.benf.cfr.reader.api.ClassFileSource;
+import org.benf.cfr.reader.bytecode.analysis.parse.utils.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Serves classes to CFR straight out of an open archive. ZipFile reads are thread-safe,
+ * so one instance can back several drivers running on different workers.
+ */
+class ZipClassFileSource implements ClassFileSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ZipClassFileSource.class);
+
+    private final ZipFile zip;
+    private final long maxClassBytes;
+
+    ZipClassFileSource(ZipFile zip, long maxClassBytes) {
+        this.zip = zip;
+        this.maxClassBytes = maxClassBytes;
+    }
+
+    @Override
+    public void informAnalysisRelativePathDetail(String usePath, String classFilePath) {
+    }
+
+    @Override
+    public Collection<String> addJar(String jarPath) {
+        return null;
+    }
+
+    @Override
+    public String getPossiblyRenamedPath(String path) {
+        return null;
+    }
+
+    @Override
+    public Pair<byte[], String> getClassFileContent(String path) throws IOException {
+        ZipEntry entry = zip.getEntry(path);
+        if (entry == null) return null;
+        try {
+            return Pair.make(JarClasses.read(zip, entry, maxClassBytes), path);
+        } catch (ClassTooLargeException e) {
+            // CFR reports the failure without its message
+            log.warn("cfr: skipping {}", e.getMessage());
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.endlessforge.javadecompilerapi.service.engine;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Set of reusable engine contexts. A context is used by one thread at a time:
+ * {@link #use} blocks until one is idle, so engines whose state is not thread-safe
+ * can still keep it between requests.
+ * <p>
+ * A thread the pipeline gave up on keeps its context until the engine returns. When a caller has
+ * waited {@link #STALL_MILLIS} without one coming back, the pool adds a context, up to twice its size.
+ */
+public class EnginePool<C> {
+
+    @FunctionalInterface
+    public interface Task<C, R> {
+        R run(C context) throws IOException;
+    }
+
+    static final long STALL_MILLIS = 10_000;
+
+    private final BlockingQueue<C> idle;
+    private final List<C> all = new CopyOnWriteArrayList<>();
+    private final int maxSize;
+    private final Supplier<C> factory;
+
+    public EnginePool(int size, Supplier<C> factory) {
+        this.maxSize = size * 2;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+        this.factory = factory;
+        for (int i = 0; i < size; i++) {
+            C context = factory.get();
+            all.add(context);
+            idle.add(context);
+        }
+    }
+
+    public int size() {
+        return all.size();
+    }
+
+    public <R> R use(Task<C, R> task) throws IOException {
+        C context;
+        try {
+            context = idle.poll(STALL_MILLIS, TimeUnit.MILLISECONDS);
+            if (context == null) context = grow();
+            if (context == null) context = idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for an engine context");
+        }
+        try {
+            return task.run(context);
+        } finally {
+            idle.add(context);
+        }
+    }
+
+    /** A new context for the caller, or null when the pool is at its maximum size. */
+    private synchronized C grow() {
+        if (all.size() >= maxSize) return null;
+        C context = factory.get();
+        all.add(context);
+        return context;
+    }
+
+    /**
+     * Runs {@code task} once on every context, e.g. to warm each one up.
+     * Contexts are kept out of the pool until all have been visited.
+     */
+    public void forEach(Task<C, ?> task) throws IOException {
+        List<C> taken = new ArrayList<>(all.size());
+        try {
+            while (taken.size() < all.size()) {
+                C context = idle.take();
+                taken.add(context);
+                task.run(context);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for an engine context");
+        } finally {
+            idle.addAll(taken);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.endlessforge.javadecompilerapi.service.engine;
+
+import com.endlessforge.javadecompilerapi.service.cfr.CfrAdapter;
+import com.endlessforge.javadecompilerapi.service.jadx.JadxAdapter;
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import com.endlessforge.javadecompilerapi.service.procyon.ProcyonAdapter;
+import com.endlessforge.javadecompilerapi.util.JarClasses;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decompiles one of our own classes through the engines in {@code decompiler.engines.warm-up}
+ * ({@code true}: all, {@code false}: none) once the application is up, so class loading, JIT and
+ * the pooled JDK type layers are paid before the first real request. It runs on a thread of its
+ * own; until it is done this indicator, part of the readiness group, reports OUT_OF_SERVICE.
+ * Adapters of engines left out are lazy beans, created when a request first needs one.
+ */
+@Component
+public class EngineWarmup implements HealthIndicator {
+
+    private static final Logger log = LoggerFactory.getLogger(EngineWarmup.class);
+
+    /** The embedded engines, in the order {@code true} warms them up. */
+    public static final List<String> ENGINES = List.of("cfr", "procyon", "jadx");
+
+    @FunctionalInterface
+    private interface Step {
+        void run(byte[] sample) throws Exception;
+    }
+
+    private final ObjectProvider<CfrAdapter> cfr;
+    private final ObjectProvider<ProcyonAdapter> procyon;
+    private final ObjectProvider<JadxAdapter> jadx;
+    private final DecompileMetrics metrics;
+    private final List<String> engines;
+    // engine -> outcome, written by the warm-up thread and read by health checks
+    private final Map<String, String> outcomes = new LinkedHashMap<>();
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    public EngineWarmup(ObjectProvider<CfrAdapter> cfr, ObjectProvider<ProcyonAdapter> procyon,
+                        ObjectProvider<JadxAdapter> jadx, DecompileMetrics metrics,
+                        @Value("${decompiler.engines.warm-up:true}") String engines) {
+        this.cfr = cfr;
+        this.procyon = procyon;
+        this.jadx = jadx;
+        this.metrics = metrics;
+        this.engines = parseEngines(engines);
+        for (String engine : this.engines) outcomes.put(engine, "pending");
+        if (this.engines.isEmpty()) done.countDown();
+    }
+
+    public List<String> engines() {
+        return engines;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (engines.isEmpty()) return;
+        Thread t = new Thread(this::warmAll, "engine-warmup");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Waits until every configured engine has been warmed up (or failed to); false on timeout. */
+    public boolean await(Duration timeout) throws InterruptedException {
+        return done.await(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Health health() {
+        Map<String, String> details;
+        synchronized (outcomes) {
+            details = new LinkedHashMap<>(outcomes);
+        }
+        // an engine that failed to warm up is still ready: its first request pays the cost or reports the error
+        return (done.getCount() == 0 ? Health.up() : Health.outOfService()).withDetails(details).build();
+    }
+
+    private void warmAll() {
+        try {
+            byte[] sample = sampleClass();
+            for (String engine : engines) {
+                switch (engine) {
+                    case "cfr" -> run(engine, sample, b -> cfr.getObject().decompileClass(b, null));
+                    case "procyon" -> run(engine, sample, b -> procyon.getObject().warmUp(b));
+                    case "jadx" -> run(engine, sample, b -> jadx.getObject().decompileClass(b, null));
+                }
+            }
+        } catch (IOException e) {
+            log.warn("engine warm-up skipped: {}", e.toString());
+            synchronized (outcomes) {
+                outcomes.replaceAll((engine, outcome) -> "skipped");
+            }
+        } finally {
+            done.countDown();
+        }
+    }
+
+    private void run(String engine, byte[] sample, Step step) {
+        long start = System.nanoTime();
+        String outcome;
+        try {
+            step.run(sample);
+            long nanos = System.nanoTime() - start;
+            metrics.engineWarmedUp(engine, nanos);
+            outcome = "warm in " + nanos / 1_000_000 + " ms";
+            log.info("warmed up {} in {} ms", engine, nanos / 1_000_000);
+        } catch (Exception | LinkageError e) {
+            outcome = "failed: " + e;
+            log.warn("warm-up of {} failed: {}", engine, e.toString());
+        }
+        synchronized (outcomes) {
+            outcomes.put(engine, outcome);
+        }
+    }
+
+    private static List<String> parseEngines(String spec) {
+        String s = spec.trim().toLowerCase(Locale.ROOT);
+        if (s.equals("true")) return ENGINES;
+        if (s.isEmpty() || s.equals("false")) return List.of();
+        List<String> engines = new ArrayList<>();
+        for (String item : s.split(",")) {
+            String engine = item.trim();
+            if (!ENGINES.contains(engine)) log.warn("decompiler.engines.warm-up: unknown engine '{}' ignored", engine);
+            else if (!engines.contains(engine)) engines.add(engine);
+        }
+        return List.copyOf(engines);
+    }
+
+    /** A small class of ours that touches collections and zip types, read as plain bytes. */
+    private static byte[] sampleClass() throws IOException {
+        try (InputStream in = JarClasses.class.getResourceAsStream("JarClasses.class")) {
+            if (in == null) throw new IOException("JarClasses.class not on the classpath");
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.endlessforge.javadecompilerapi.service.engine;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.time.Duration;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The workload the {@code cds} build profile records its AppCDS archive from: once the configured
+ * engines are warm, the first {@code decompiler.training.classes} classes of the bundled commons-io
+ * are decompiled through the HTTP API (one class, the slice as a JAR, the slice streamed) with every
+ * warmed-up engine, so the archive covers controllers, encoders and the pipeline as well as the
+ * engines. Exits the JVM when done, which is when {@code -XX:ArchiveClassesAtExit} writes the archive.
+ */
+@Component
+@ConditionalOnProperty(name = "decompiler.training.enabled", havingValue = "true")
+public class TrainingRun {
+
+    private static final Logger log = LoggerFactory.getLogger(TrainingRun.class);
+
+    private static final Duration WARM_UP_TIMEOUT = Duration.ofMinutes(5);
+
+    private final EngineWarmup warmup;
+    private final WebServerApplicationContext context;
+    private final int classes;
+
+    public TrainingRun(EngineWarmup warmup, WebServerApplicationContext context,
+                       @Value("${decompiler.training.classes:40}") int classes) {
+        this.warmup = warmup;
+        this.context = context;
+        this.classes = classes;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void train() {
+        Thread t = new Thread(this::runAndExit, "training-run");
+        t.start();
+    }
+
+    private void runAndExit() {
+        int code = 0;
+        try {
+            if (!warmup.await(WARM_UP_TIMEOUT)) throw new IllegalStateException("engine warm-up did not finish");
+            Map<String, byte[]> corpus = corpus();
+            byte[] jar = jar(corpus);
+            RestClient http = RestClient.create("http://localhost:" + context.getWebServer().getPort());
+            long start = System.nanoTime();
+            for (String engine : warmup.engines()) {
+                post(http, "/decompile/class?mode=" + engine, "Sample.class", corpus.values().iterator().next());
+                post(http, "/decompile/jar?mode=" + engine, "corpus.jar", jar);
+                post(http, "/decompile/jar?stream=true&lines=true&mode=" + engine, "corpus.jar", jar);
+            }
+            log.info("training run: {} classes through {} in {} ms", corpus.size(), warmup.engines(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            log.error("training run failed", e);
+            code = 1;
+        }
+        int exitCode = code;
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+
+    private static void post(RestClient http, String uri, String filename, byte[] content) {
+        MultiValueMap<String, Object> parts = new LinkedMultiValueMap<>();
+        parts.add("file", new ByteArrayResource(content) {
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+        });
+        http.post().uri(uri)
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(parts)
+                .retrieve()
+                // an engine that cannot handle a class still loaded its code on the way; keep training
+                .onStatus(HttpStatusCode::isError, (request, response) ->
+                        log.warn("training run: {} answered {}", uri, response.getStatusCode()))
+                .body(byte[].class);
+    }
+
+    /** The first {@code classes} top-level classes of the commons-io JAR on our classpath. */
+    private Map<String, byte[]> corpus() throws IOException, URISyntaxException {
+        CodeSource source = IOUtils.class.getProtectionDomain().getCodeSource();
+        if (source == null || !"file".equals(source.getLocation().getProtocol())) {
+            throw new IOException("commons-io is not a plain file on the classpath; run from an extracted jar");
+        }
+        Map<String, byte[]> corpus = new LinkedHashMap<>();
+        try (JarFile jar = new JarFile(Path.of(source.getLocation().toURI()).toFile())) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements() && corpus.size() < classes) {
+                JarEntry e = entries.nextElement();
+                String name = e.getName();
+                if (!name.endsWith(".class") || name.contains("$") || name.startsWith("META-INF/")) continue;
+                corpus.put(name, jar.getInputStream(e).readAllBytes());
+            }
+        }
+        if (corpus.isEmpty()) throw new IOException("no classes found in " + source.getLocation());
+        return corpus;
+    }
+
+    private static byte[] jar(Map<String, byte[]> corpus) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, byte[]> e : corpus.entrySet()) {
+                zip.putNextEntry(new ZipEntry(e.getKey()));
+                zip.write(e.getValue());
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
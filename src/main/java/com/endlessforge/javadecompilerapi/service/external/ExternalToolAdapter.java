@@ -1,134 +1,124 @@
 package com.endlessforge.javadecompilerapi.service.external;
 
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import com.endlessforge.javadecompilerapi.util.ModeDetector;
 import org.apache.commons.io.FileUtils;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Fallback adapter: if a library is not available, try running a tool jar in ./tools/
- * Tools expected:
- *  - fernflower.jar
- *  - forgeflower.jar
- *  - procyon-decompiler.jar (if library not embedded)
- *  - jd-cli.jar
- *  - jad binary (native)
+ * Fallback adapter: runs the tool in ./tools/ that {@link ModeDetector} detected for the mode
+ * (jd-cli.jar, fernflower.jar or forgeflower.jar, the native jad binary).
  *
- * This runs a process; since Spring Boot runs inside one JVM, occasional process invocation is acceptable,
- * but for heavy workloads prefer embedding libraries.
+ * Tool jars run on long-lived worker JVMs from {@link ExternalWorkerPool}; the native jad binary
+ * is still started per call. For heavy workloads prefer embedding libraries.
  */
 @Component
 public class ExternalToolAdapter {
 
-    private final File toolsDir = new File("tools");
+    private final ExternalWorkerPool workers;
+    private final DecompileMetrics metrics;
+    private final ModeDetector modes;
 
-    public String decompileClassWithExternalTool(byte[] classBytes, String mode, String className) throws IOException {
-        // writes class to temp file and runs jar tool with appropriate args, tries common jar names
-        File tmp = Files.createTempFile("external-class-", ".class").toFile();
-        try (FileOutputStream fos = new FileOutputStream(tmp)) {
-            fos.write(classBytes);
-        }
+    public ExternalToolAdapter(ExternalWorkerPool workers, DecompileMetrics metrics, ModeDetector modes) {
+        this.workers = workers;
+        this.metrics = metrics;
+        this.modes = modes;
+    }
 
-        File toolJar = findToolJarForMode(mode);
+    public String decompileClassWithExternalTool(byte[] classBytes, String mode, String className) throws IOException {
+        File toolJar = modes.toolFile(mode);
         if (toolJar == null) {
             return "external tool not installed for mode=" + mode;
         }
 
-        // Example default: java -jar tool.jar <class-file> -o <outdir>  (actual args vary per tool)
+        // CLI tools only read files, so this path still needs a temp file; both it and the
+        // output dir are removed in the finally block even when the tool fails
+        File tmp = Files.createTempFile("external-class-", ".class").toFile();
         File outDir = Files.createTempDirectory("ext-out-").toFile();
-        ProcessBuilder pb = new ProcessBuilder("java", "-jar", toolJar.getAbsolutePath(), tmp.getAbsolutePath(), outDir.getAbsolutePath());
-        pb.redirectErrorStream(true);
-        Process p = pb.start();
-        String output = readStream(p.getInputStream());
         try {
-            int code = p.waitFor();
-            if (code != 0) {
-                return "tool failed: " + output;
-            }
-            // try to find .java file in outDir
-            File[] files = FileUtils.listFiles(outDir, new String[]{"java"}, true).toArray(new File[0]);
-            if (files.length > 0) {
-                return FileUtils.readFileToString(files[0], "UTF-8");
-            } else {
-                return "no java output from tool";
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return "interrupted";
+            Files.write(tmp.toPath(), classBytes);
+            return runClassTool(toolJar, tmp, outDir);
         } finally {
             tmp.delete();
+            FileUtils.deleteQuietly(outDir);
         }
     }
 
-    public void decompileJarWithExternalTool(File jarFile, File outDir, String mode, String targetClass) throws IOException {
-        File toolJar = findToolJarForMode(mode);
-        if (toolJar == null) throw new IOException("tool jar not found for mode " + mode);
-
-        // generic invocation (most tools accept input jar and output dir)
-        ProcessBuilder pb = new ProcessBuilder("java", "-jar", toolJar.getAbsolutePath(), jarFile.getAbsolutePath(), outDir.getAbsolutePath());
-        pb.redirectErrorStream(true);
-        Process p = pb.start();
-        try (InputStream is = p.getInputStream()) { readStream(is); }
+    private String runClassTool(File toolJar, File tmp, File outDir) throws IOException {
         try {
-            p.waitFor();
-        } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
-    }
-
-    private File runJarTool(String toolJarName, File inputFile) throws Exception {
-        File outputDir = Files.createTempDirectory("ext-decompile").toFile();
-
-        List<String> command = new ArrayList<>();
-        command.add("java");
-        command.add("-jar");
-        command.add("tools/" + toolJarName);
-
-        if (toolJarName.contains("fernflower")) {
-            command.add(inputFile.getAbsolutePath());
-            command.add(outputDir.getAbsolutePath());
-        } else if (toolJarName.contains("jd-cli")) {
-            command.add(inputFile.getAbsolutePath());
-            command.add("-od");
-            command.add(outputDir.getAbsolutePath());
-        } else {
-            throw new IllegalArgumentException("Unsupported external tool: " + toolJarName);
+            runTool(toolJar, tmp, outDir);
+        } catch (InterruptedIOException e) {
+            return "interrupted";
+        } catch (IOException e) {
+            return "tool failed: " + e.getMessage();
         }
-
-        ProcessBuilder pb = new ProcessBuilder(command);
-        pb.redirectErrorStream(true);
-
-        Process process = pb.start();
-        int exitCode = process.waitFor();
-
-        if (exitCode != 0) {
-            throw new RuntimeException("External tool failed with exit code: " + exitCode);
+        // try to find .java file in outDir
+        File[] files = FileUtils.listFiles(outDir, new String[]{"java"}, true).toArray(new File[0]);
+        if (files.length > 0) {
+            return FileUtils.readFileToString(files[0], "UTF-8");
+        } else {
+            return "no java output from tool";
         }
-
-        return outputDir;
     }
 
-    private File findToolJarForMode(String mode) {
-        String nm = mode.toLowerCase(Locale.ROOT);
-        if ("fernflower".equals(nm)) return fileIfExists("fernflower.jar");
-        if ("forgeflower".equals(nm)) return fileIfExists("forgeflower.jar");
-        if ("procyon".equals(nm)) return fileIfExists("procyon-decompiler.jar");
-        if ("jdcore".equals(nm) || "jd".equals(nm)) return fileIfExists("jd-cli.jar");
-        if ("jad".equals(nm)) return fileIfExists("jad"); // native
-        return null;
+    public void decompileJarWithExternalTool(File jarFile, File outDir, String mode, String targetClass) throws IOException {
+        File toolJar = modes.toolFile(mode);
+        if (toolJar == null) throw new IOException("tool jar not found for mode " + mode);
+        if (!modes.supportsJar(mode)) throw new IOException(mode + " only decompiles single classes");
+        runTool(toolJar, jarFile, outDir);
     }
 
-    private File fileIfExists(String name) {
-        File f = new File(toolsDir, name);
-        return f.exists() ? f : null;
+    /** Java tools run on a pooled worker JVM; only the native jad binary is still forked per call. */
+    private void runTool(File tool, File input, File outDir) throws IOException {
+        if (tool.getName().endsWith(".jar")) {
+            workers.run(tool, toolArguments(tool.getName(), input, outDir));
+            return;
+        }
+        // output goes to a file: reading a pipe would block on a hung process before any timeout applies
+        File log = Files.createTempFile("ext-out-", ".log").toFile();
+        ProcessBuilder pb = new ProcessBuilder(tool.getAbsolutePath(), "-o", "-r", "-sjava", "-d", outDir.getAbsolutePath(), input.getAbsolutePath());
+        pb.redirectErrorStream(true).redirectOutput(log);
+        long start = System.nanoTime();
+        Process p = pb.start();
+        metrics.toolSpawn(tool.getName(), System.nanoTime() - start);
+        try {
+            Duration timeout = workers.jobTimeout();
+            if (!p.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                p.destroyForcibly();
+                metrics.toolRun(tool.getName(), "timeout", System.nanoTime() - start);
+                throw new IOException(tool.getName() + " timed out after " + timeout.toMillis() + " ms; process killed");
+            }
+            int exit = p.exitValue();
+            metrics.toolRun(tool.getName(), exit == 0 ? "ok" : "error", System.nanoTime() - start);
+            if (exit != 0) throw new IOException(tool.getName() + " failed: " + FileUtils.readFileToString(log, "UTF-8"));
+        } catch (InterruptedException e) {
+            p.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted");
+        } finally {
+            log.delete();
+        }
     }
 
-    private String readStream(InputStream is) throws IOException {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            is.transferTo(baos);
-            return baos.toString("UTF-8");
+    /** Command-line arguments per tool, as its main class expects them. */
+    private static List<String> toolArguments(String toolJarName, File input, File outDir) {
+        List<String> args = new ArrayList<>();
+        if (toolJarName.contains("jd-cli")) {
+            args.add("-od");
+            args.add(outDir.getAbsolutePath());
+            args.add(input.getAbsolutePath());
+        } else {
+            // fernflower/forgeflower and the generic case: <input> <outdir>
+            args.add(input.getAbsolutePath());
+            args.add(outDir.getAbsolutePath());
         }
+        return args;
     }
 }
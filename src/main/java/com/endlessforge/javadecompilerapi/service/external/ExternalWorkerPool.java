@@ -0,0 +1,199 @@
+package com.endlessforge.javadecompilerapi.service.external;
+
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import io.micrometer.core.instrument.Gauge;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.jar.JarFile;
+
+/**
+ * Long-lived JVMs for the Java-based tools in ./tools, so a request pays a method call instead
+ * of a JVM start and a cold JIT. Per tool jar at most {@code decompiler.external.workers-per-tool}
+ * workers exist; each is replaced after {@code recycle-after} jobs and killed when a job exceeds
+ * {@code job-timeout}. Every {@code health-interval} one idle worker per tool is pinged.
+ */
+@Component
+public class ExternalWorkerPool {
+
+    private static final Logger log = LoggerFactory.getLogger(ExternalWorkerPool.class);
+
+    private static final Duration START_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration PING_TIMEOUT = Duration.ofSeconds(5);
+
+    private final int workersPerTool;
+    private final int recycleAfter;
+    private final Duration jobTimeout;
+    private final List<String> jvmOptions;
+    private final DecompileMetrics metrics;
+
+    private final Map<File, Semaphore> permits = new ConcurrentHashMap<>();
+    private final Map<File, BlockingQueue<ToolWorker>> idle = new ConcurrentHashMap<>();
+    private volatile Path workerClasses;
+
+    public ExternalWorkerPool(@Value("${decompiler.external.workers-per-tool:1}") int workersPerTool,
+                              @Value("${decompiler.external.recycle-after:50}") int recycleAfter,
+                              @Value("${decompiler.external.job-timeout:PT2M}") Duration jobTimeout,
+                              @Value("${decompiler.external.jvm-options:}") String jvmOptions,
+                              DecompileMetrics metrics) {
+        this.workersPerTool = Math.max(1, workersPerTool);
+        this.recycleAfter = Math.max(1, recycleAfter);
+        this.jobTimeout = jobTimeout;
+        this.jvmOptions = jvmOptions.isBlank() ? List.of() : List.of(jvmOptions.trim().split("\\s+"));
+        this.metrics = metrics;
+    }
+
+    /** How long one tool run may take; also applied to the natively forked jad. */
+    public Duration jobTimeout() {
+        return jobTimeout;
+    }
+
+    /**
+     * Runs {@code toolJar}'s main class with {@code args} on a pooled worker.
+     *
+     * @throws IOException when the tool reports an error, times out (the worker is killed) or its JVM dies
+     */
+    public void run(File toolJar, List<String> args) throws IOException {
+        File key = toolJar.getAbsoluteFile();
+        Semaphore permit = permits.computeIfAbsent(key, this::newPermits);
+        try {
+            permit.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for a " + toolJar.getName() + " worker");
+        }
+
+        ToolWorker worker = null;
+        boolean reusable = false;
+        String outcome = "error";
+        long start = 0;
+        try {
+            worker = idleWorker(key);
+            if (worker == null) worker = start(key);
+            start = System.nanoTime();
+            String error = worker.run(args, jobTimeout);
+            reusable = worker.jobs() < recycleAfter;
+            if (error != null) throw new IOException(toolJar.getName() + " failed: " + error);
+            outcome = "ok";
+        } catch (TimeoutException e) {
+            outcome = "timeout";
+            throw new IOException(toolJar.getName() + " timed out after " + jobTimeout.toMillis() + " ms; worker killed");
+        } finally {
+            if (start != 0) metrics.toolRun(toolJar.getName(), outcome, System.nanoTime() - start);
+            if (worker != null) {
+                if (reusable && worker.isAlive()) idle.get(key).add(worker);
+                else worker.destroy();
+            }
+            permit.release();
+        }
+    }
+
+    /** First use of a tool: its permits, plus gauges for callers waiting on them and idle workers. */
+    private Semaphore newPermits(File key) {
+        Semaphore permit = new Semaphore(workersPerTool);
+        Gauge.builder("decompiler.external.waiting", permit, Semaphore::getQueueLength)
+                .tag("tool", key.getName()).register(metrics.registry());
+        Gauge.builder("decompiler.external.idle", idle, m -> m.containsKey(key) ? m.get(key).size() : 0)
+                .tag("tool", key.getName()).register(metrics.registry());
+        return permit;
+    }
+
+    private ToolWorker idleWorker(File key) {
+        BlockingQueue<ToolWorker> queue = idle.computeIfAbsent(key, k -> new LinkedBlockingQueue<>());
+        ToolWorker worker;
+        while ((worker = queue.poll()) != null) {
+            if (worker.isAlive()) return worker;
+            worker.destroy();
+        }
+        return null;
+    }
+
+    private ToolWorker start(File toolJar) throws IOException {
+        String mainClass;
+        try (JarFile jar = new JarFile(toolJar)) {
+            mainClass = jar.getManifest() == null ? null : jar.getManifest().getMainAttributes().getValue("Main-Class");
+        }
+        if (mainClass == null) throw new IOException(toolJar.getName() + " has no Main-Class");
+
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(workerClasses() + File.pathSeparator + toolJar.getPath());
+        command.add(ToolWorkerMain.class.getName());
+        command.add(mainClass);
+
+        long start = System.nanoTime();
+        ToolWorker worker = new ToolWorker(toolJar, command, START_TIMEOUT);
+        long nanos = System.nanoTime() - start;
+        metrics.toolSpawn(toolJar.getName(), nanos);
+        log.info("started {} worker in {} ms", toolJar.getName(), nanos / 1_000_000);
+        return worker;
+    }
+
+    /**
+     * The worker JVM cannot see our classes inside the Boot jar, so {@link ToolWorkerMain}'s
+     * class file is copied out once into a private directory that goes on its classpath.
+     */
+    private Path workerClasses() throws IOException {
+        Path dir = workerClasses;
+        if (dir != null) return dir;
+        synchronized (this) {
+            if (workerClasses != null) return workerClasses;
+            dir = Files.createTempDirectory("tool-worker-");
+            String resource = ToolWorkerMain.class.getName().replace('.', '/') + ".class";
+            Path target = dir.resolve(resource);
+            Files.createDirectories(target.getParent());
+            try (InputStream in = ToolWorkerMain.class.getClassLoader().getResourceAsStream(resource)) {
+                if (in == null) throw new IOException(resource + " not found");
+                Files.copy(in, target);
+            }
+            workerClasses = dir;
+            return dir;
+        }
+    }
+
+    /** Pings idle workers; one that does not answer is killed and replaced on next use. */
+    @Scheduled(fixedDelayString = "${decompiler.external.health-interval:PT30S}")
+    void checkHealth() {
+        idle.forEach((key, queue) -> {
+            Semaphore permit = permits.get(key);
+            // skip busy tools: a worker in use is covered by the job timeout
+            if (permit == null || !permit.tryAcquire()) return;
+            try {
+                ToolWorker worker = queue.poll();
+                if (worker == null) return;
+                if (worker.ping(PING_TIMEOUT)) {
+                    queue.add(worker);
+                } else {
+                    log.warn("{} worker did not answer a ping; killed", key.getName());
+                    worker.destroy();
+                }
+            } finally {
+                permit.release();
+            }
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        idle.values().forEach(queue -> queue.forEach(ToolWorker::destroy));
+        if (workerClasses != null) FileUtils.deleteQuietly(workerClasses.toFile());
+    }
+}
@@ -0,0 +1,110 @@
+package com.endlessforge.javadecompilerapi.service.external;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Host side of one worker JVM running {@link ToolWorkerMain}. Used by one job at a time.
+ * Replies are read by a daemon thread so every call can wait with a timeout.
+ */
+final class ToolWorker {
+
+    private final File toolJar;
+    private final Process process;
+    private final Writer commands;
+    private final BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+    private int jobs;
+
+    ToolWorker(File toolJar, List<String> command, Duration startTimeout) throws IOException {
+        this.toolJar = toolJar;
+        this.process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        this.commands = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+
+        Thread reader = new Thread(this::readReplies, "tool-worker-" + process.pid());
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            String ready = await(startTimeout);
+            if (!"READY".equals(ready)) throw new IOException("worker for " + toolJar.getName() + " did not start: " + ready);
+        } catch (IOException | TimeoutException e) {
+            destroy();
+            throw e instanceof IOException io ? io : new IOException("worker for " + toolJar.getName() + " did not start in time");
+        }
+    }
+
+    File toolJar() {
+        return toolJar;
+    }
+
+    int jobs() {
+        return jobs;
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /** Runs the tool's main with {@code args}; returns null on success, the tool's error otherwise. */
+    String run(List<String> args, Duration timeout) throws IOException, TimeoutException {
+        jobs++;
+        String reply = call("RUN\t" + String.join("\t", args), timeout);
+        if (reply.equals("OK")) return null;
+        return reply.startsWith("ERR ") ? reply.substring(4) : reply;
+    }
+
+    boolean ping(Duration timeout) {
+        try {
+            return "PONG".equals(call("PING", timeout));
+        } catch (IOException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    void destroy() {
+        process.destroyForcibly();
+    }
+
+    private String call(String line, Duration timeout) throws IOException, TimeoutException {
+        replies.clear();
+        commands.write(line);
+        commands.write('\n');
+        commands.flush();
+        return await(timeout);
+    }
+
+    private String await(Duration timeout) throws IOException, TimeoutException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            while (true) {
+                // short polls so a worker killed by its tool (System.exit) is noticed right away
+                String reply = replies.poll(100, TimeUnit.MILLISECONDS);
+                if (reply != null) return reply;
+                if (!process.isAlive() && replies.isEmpty()) {
+                    throw new IOException(toolJar.getName() + " worker exited with code " + process.exitValue());
+                }
+                if (System.nanoTime() > deadline) throw new TimeoutException();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for " + toolJar.getName());
+        }
+    }
+
+    private void readReplies() {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) replies.add(line);
+        } catch (IOException ignored) {
+            // process gone; await() notices through isAlive()
+        }
+    }
+}
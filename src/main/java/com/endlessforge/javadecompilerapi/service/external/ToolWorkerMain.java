@@ -0,0 +1,55 @@
+package com.endlessforge.javadecompilerapi.service.external;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Entry point of a long-lived tool JVM started by {@link ExternalWorkerPool}. It runs with only
+ * its own class file and the tool jar on the classpath, so it stays a single class: no lambdas,
+ * no nested classes, no dependencies.
+ *
+ * Protocol, one UTF-8 line each way over stdin/stdout:
+ *  - on start the worker prints {@code READY}
+ *  - {@code PING} is answered with {@code PONG}
+ *  - {@code RUN<TAB>arg<TAB>arg...} calls the tool's main class and answers {@code OK} or {@code ERR <message>}
+ */
+public final class ToolWorkerMain {
+
+    private ToolWorkerMain() {}
+
+    public static void main(String[] args) throws Exception {
+        PrintStream protocol = new PrintStream(new FileOutputStream(FileDescriptor.out), true, "UTF-8");
+        // tools print progress to System.out; keep it off the protocol stream
+        System.setOut(System.err);
+
+        Method toolMain = Class.forName(args[0]).getMethod("main", String[].class);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        protocol.println("READY");
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.equals("PING")) {
+                protocol.println("PONG");
+            } else if (line.startsWith("RUN\t")) {
+                String[] parts = line.split("\t", -1);
+                try {
+                    toolMain.invoke(null, (Object) Arrays.copyOfRange(parts, 1, parts.length));
+                    protocol.println("OK");
+                } catch (InvocationTargetException e) {
+                    protocol.println("ERR " + describe(e.getCause()));
+                } catch (Throwable t) {
+                    protocol.println("ERR " + describe(t));
+                }
+            } else {
+                protocol.println("ERR unknown command");
+            }
+        }
+    }
+
+    private static String describe(Throwable t) {
+        return String.valueOf(t).replace('\n', ' ').replace('\r', ' ');
+    }
+}
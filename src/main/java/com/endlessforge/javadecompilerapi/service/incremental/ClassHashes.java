@@ -0,0 +1,55 @@
+package com.endlessforge.javadecompilerapi.service.incremental;
+
+import com.endlessforge.javadecompilerapi.service.cache.DecompilationCache;
+import com.endlessforge.javadecompilerapi.util.JarClasses;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * SHA-256 of every class in an archive, and the source units they make up: a top-level class
+ * with all its nested classes, since that is what one decompiled source file is built from.
+ */
+public final class ClassHashes {
+
+    private ClassHashes() {}
+
+    /** Internal name to hex SHA-256 of the class file, for every class {@link JarClasses#allClasses} lists. */
+    public static SortedMap<String, String> of(Path jar) throws IOException {
+        SortedMap<String, String> hashes = new TreeMap<>();
+        MessageDigest digest = DecompilationCache.newDigest();
+        byte[] buffer = new byte[8192];
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            for (String name : JarClasses.allClasses(zip)) {
+                ZipEntry entry = zip.getEntry(name + ".class");
+                try (InputStream in = new DigestInputStream(zip.getInputStream(entry), digest)) {
+                    while (in.read(buffer) >= 0) {
+                        // digest only
+                    }
+                }
+                hashes.put(name, DecompilationCache.hex(digest));
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Groups classes into source units keyed by the top-level class: nested classes join their
+     * outer class when it is present, and stand alone otherwise (as {@link JarClasses#topLevel} does).
+     */
+    public static Map<String, SortedMap<String, String>> units(Map<String, String> hashes) {
+        Map<String, SortedMap<String, String>> units = new TreeMap<>();
+        for (Map.Entry<String, String> e : hashes.entrySet()) {
+            String outer = JarClasses.outerOf(e.getKey());
+            String unit = hashes.containsKey(outer) ? outer : e.getKey();
+            units.computeIfAbsent(unit, u -> new TreeMap<>()).put(e.getKey(), e.getValue());
+        }
+        return units;
+    }
+}
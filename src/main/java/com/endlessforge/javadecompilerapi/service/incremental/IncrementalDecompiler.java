@@ -0,0 +1,168 @@
+package com.endlessforge.javadecompilerapi.service.incremental;
+
+import com.endlessforge.javadecompilerapi.service.DecompilerService;
+import com.endlessforge.javadecompilerapi.service.UploadedJar;
+import com.endlessforge.javadecompilerapi.service.cache.CacheKey;
+import com.endlessforge.javadecompilerapi.service.cache.DecompilationCache;
+import com.endlessforge.javadecompilerapi.service.cache.PinnedArchive;
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompileContext;
+import com.endlessforge.javadecompilerapi.util.ClassSelector;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Decompiles a new version of a JAR against the stored whole-JAR result of an earlier version:
+ * only source units whose classes changed are decompiled, the rest is copied from the base
+ * archive still compressed. Needs the disk cache, which keeps the base's class hashes.
+ */
+@Service
+public class IncrementalDecompiler {
+
+    public static final String MANIFEST_ENTRY = "incremental-manifest.json";
+
+    private final DecompilerService decompilerService;
+    private final DecompilationCache cache;
+    private final DecompileMetrics metrics;
+    private final ObjectMapper mapper;
+    private final int zipLevel;
+
+    public IncrementalDecompiler(DecompilerService decompilerService, DecompilationCache cache, DecompileMetrics metrics,
+                                 ObjectMapper mapper, @Value("${decompiler.output.zip-level:1}") int zipLevel) {
+        this.decompilerService = decompilerService;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.mapper = mapper;
+        this.zipLevel = zipLevel;
+    }
+
+    /** True when the JAR with SHA-256 {@code baseHash} was decompiled whole with {@code mode} and is still stored. */
+    public boolean hasBase(String baseHash, String mode) {
+        return cache.findClassHashes(baseHash) != null && cache.findArchive(CacheKey.of(baseHash, mode)) != null;
+    }
+
+    /**
+     * Returns the full result for {@code upload} (stored in the cache like a normal run), or with
+     * {@code delta} only the added and changed sources plus {@value #MANIFEST_ENTRY}. Consumes the
+     * upload; open the result with {@link DecompilerService#openResult}.
+     */
+    public PinnedArchive decompile(UploadedJar upload, String mode, String baseHash, boolean delta) throws IOException {
+        Timer.Sample sample = metrics.start();
+        String outcome = "error";
+        try {
+            PinnedArchive result;
+            Map<String, String> baseHashes = cache.findClassHashes(baseHash);
+            // pinned while its sources are copied; also the result when nothing changed
+            PinnedArchive baseArchive = cache.pinArchive(CacheKey.of(baseHash, mode));
+            if (baseHashes == null || baseArchive == null) {
+                if (baseArchive != null) baseArchive.close();
+                throw new FileNotFoundException("no stored " + mode + " result for base " + baseHash);
+            }
+            if (!delta && baseHash.equals(upload.sha256())) {
+                result = baseArchive;
+            } else {
+                try (baseArchive) {
+                    result = build(upload, mode, baseHashes, baseArchive.path(), baseHash, delta);
+                }
+            }
+            outcome = "ok";
+            return result;
+        } finally {
+            metrics.request(sample, "incremental", mode, outcome);
+            if ("ok".equals(outcome)) {
+                Files.deleteIfExists(upload.jar());
+                // empty unless a delta archive was written there
+                upload.dir().toFile().delete();
+            } else {
+                upload.delete();
+            }
+        }
+    }
+
+    private PinnedArchive build(UploadedJar upload, String mode, Map<String, String> baseHashes, Path baseArchive,
+                                String baseHash, boolean delta) throws IOException {
+        SortedMap<String, String> hashes = ClassHashes.of(upload.jar());
+        cache.storeClassHashes(upload.sha256(), hashes);
+        UnitDiff diff = UnitDiff.of(ClassHashes.units(baseHashes), ClassHashes.units(hashes));
+
+        Path zip = upload.dir().resolve((delta ? "delta-" : "decompiled-") + mode + ".zip");
+        Set<String> produced = new HashSet<>();
+        DecompileContext ctx = new DecompileContext();
+        int reused = 0;
+        try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(zip)) {
+            zos.setLevel(zipLevel);
+            if (!delta) reused = copyUnchanged(baseArchive, diff.unchanged(), zos);
+            if (!diff.dirty().isEmpty()) {
+                decompilerService.decompileArchive(upload.jar().toFile(), mode, ClassSelector.of(diff.dirty()), entry -> {
+                    zos.putArchiveEntry(new ZipArchiveEntry(entry.path()));
+                    zos.write(entry.content());
+                    zos.closeArchiveEntry();
+                    produced.add(entry.path());
+                }, ctx);
+            }
+            if (delta) {
+                zos.putArchiveEntry(new ZipArchiveEntry(MANIFEST_ENTRY));
+                zos.write(mapper.writeValueAsBytes(manifest(mode, baseHash, upload.sha256(), diff, produced, ctx)));
+                zos.closeArchiveEntry();
+            } else if (!ctx.abandoned().isEmpty()) {
+                zos.putArchiveEntry(new ZipArchiveEntry(DecompilerService.MANIFEST_ENTRY));
+                zos.write(mapper.writeValueAsBytes(Map.of("mode", mode, "abandoned", ctx.abandoned())));
+                zos.closeArchiveEntry();
+            }
+        }
+        metrics.sourcesReused(mode, reused);
+        // stubs of timed-out classes must not become the base of later runs
+        return delta || !ctx.abandoned().isEmpty()
+                ? PinnedArchive.unpinned(zip) : cache.storeArchive(CacheKey.of(upload.sha256(), mode), zip);
+    }
+
+    /** Raw copy of the base's sources for unchanged units: no inflate, no deflate. */
+    private static int copyUnchanged(Path baseArchive, List<String> units, ZipArchiveOutputStream zos) throws IOException {
+        int copied = 0;
+        try (ZipFile base = new ZipFile(baseArchive.toFile())) {
+            for (String unit : units) {
+                ZipArchiveEntry entry = base.getEntry(unit + ".java");
+                if (entry == null) continue; // the base run produced nothing for it either
+                zos.addRawArchiveEntry(entry, base.getRawInputStream(entry));
+                copied++;
+            }
+        }
+        return copied;
+    }
+
+    private static Map<String, Object> manifest(String mode, String baseHash, String targetHash, UnitDiff diff,
+                                                Set<String> produced, DecompileContext ctx) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("mode", mode);
+        m.put("base", baseHash);
+        m.put("target", targetHash);
+        m.put("added", sources(diff.added()));
+        m.put("changed", sources(diff.changed()));
+        m.put("removed", sources(diff.removed()));
+        m.put("unchanged", diff.unchanged().size());
+        List<String> failed = new ArrayList<>();
+        for (String path : sources(diff.dirty())) {
+            if (!produced.contains(path)) failed.add(path);
+        }
+        m.put("failed", failed);
+        m.put("abandoned", ctx.abandoned());
+        return m;
+    }
+
+    private static List<String> sources(List<String> units) {
+        List<String> paths = new ArrayList<>(units.size());
+        for (String unit : units) paths.add(unit + ".java");
+        return paths;
+    }
+}
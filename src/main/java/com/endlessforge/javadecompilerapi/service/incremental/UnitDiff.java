@@ -0,0 +1,36 @@
+package com.endlessforge.javadecompilerapi.service.incremental;
+
+import java.util.*;
+
+/**
+ * Source units (see {@link ClassHashes#units}) of a new JAR compared with a base. A unit is
+ * changed when any of its classes was added, removed or modified, so an edited nested or
+ * anonymous class re-decompiles the outer source file it is emitted into.
+ */
+record UnitDiff(List<String> added, List<String> changed, List<String> removed, List<String> unchanged) {
+
+    static UnitDiff of(Map<String, SortedMap<String, String>> base, Map<String, SortedMap<String, String>> target) {
+        List<String> added = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+        List<String> unchanged = new ArrayList<>();
+        for (Map.Entry<String, SortedMap<String, String>> e : target.entrySet()) {
+            SortedMap<String, String> before = base.get(e.getKey());
+            if (before == null) added.add(e.getKey());
+            else if (before.equals(e.getValue())) unchanged.add(e.getKey());
+            else changed.add(e.getKey());
+        }
+        List<String> removed = new ArrayList<>();
+        for (String unit : base.keySet()) {
+            if (!target.containsKey(unit)) removed.add(unit);
+        }
+        return new UnitDiff(added, changed, removed, unchanged);
+    }
+
+    /** Units that have to be decompiled: added and changed. */
+    List<String> dirty() {
+        List<String> dirty = new ArrayList<>(added.size() + changed.size());
+        dirty.addAll(added);
+        dirty.addAll(changed);
+        return dirty;
+    }
+}
@@ -1,75 +1,176 @@
 package com.endlessforge.javadecompilerapi.service.jadx;
 
+import com.endlessforge.javadecompilerapi.service.library.Classpath;
+import com.endlessforge.javadecompilerapi.service.linemap.LineMap;
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompileContext;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompilePipeline;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+import com.endlessforge.javadecompilerapi.service.pipeline.EntrySink;
+import com.endlessforge.javadecompilerapi.util.ClassFiles;
+import com.endlessforge.javadecompilerapi.util.ClassSelector;
+import com.endlessforge.javadecompilerapi.util.ClassTooLargeException;
+import com.endlessforge.javadecompilerapi.util.JarClasses;
+import jadx.api.ICodeInfo;
 import jadx.api.JadxArgs;
 import jadx.api.JadxDecompiler;
 import jadx.api.JavaClass;
+import jadx.plugins.input.java.JavaClassReader;
+import jadx.plugins.input.java.JavaInputLoader;
+import jadx.plugins.input.java.JavaInputPlugin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.Set;
+import java.util.zip.ZipFile;
 
 @Component
+@Lazy
 public class JadxAdapter {
 
+    private static final Logger log = LoggerFactory.getLogger(JadxAdapter.class);
+
+    private final DecompilePipeline pipeline;
+    private final DecompileMetrics metrics;
+    private final long maxClassBytes;
+
+    public JadxAdapter(DecompilePipeline pipeline, DecompileMetrics metrics,
+                       @Value("${decompiler.class.max-bytes:8388608}") long maxClassBytes) {
+        this.pipeline = pipeline;
+        this.metrics = metrics;
+        this.maxClassBytes = maxClassBytes;
+    }
+
     public String decompileClass(byte[] classBytes, String providedName) throws IOException {
-        // easiest approach: write jar or class to temp file and run jadx in-memory
-        File tmp = java.nio.file.Files.createTempFile("jadx-in-", ".class").toFile();
-        java.nio.file.Files.write(tmp.toPath(), classBytes);
+        return decompileClass(classBytes, providedName, Classpath.EMPTY);
+    }
+
+    /** One class; {@code classpath}'s libraries are loaded next to it so its references resolve. */
+    public String decompileClass(byte[] classBytes, String providedName, Classpath classpath) throws IOException {
+        // feed the bytes through the java-input plugin's in-memory loader; no input files at all
+        String internalName = ClassFiles.internalName(classBytes);
+        String fileName = internalName + ".class";
 
         JadxArgs args = new JadxArgs();
-        args.getInputFiles().add(tmp);
         args.setSkipResources(true);
         args.setOutDirSrc(null); // we don't need to write to disk
+        args.getInputFiles().addAll(classpath.files());
         try (JadxDecompiler jadx = new JadxDecompiler(args)) {
+            jadx.addCustomCodeLoader(JavaInputPlugin.loadSingleClass(classBytes, fileName));
             jadx.load();
             List<JavaClass> classes = jadx.getClasses();
             StringBuilder sb = new StringBuilder();
             for (JavaClass c : classes) {
+                if (!classpath.isEmpty() && !internalName(c).equals(internalName)) continue;
                 sb.append("// Class: ").append(c.getFullName()).append("\n");
                 sb.append(c.getCode()).append("\n\n");
             }
-            tmp.delete();
             return sb.toString();
         } catch (Exception e) {
-            tmp.delete();
             throw new IOException("jadx failure: " + e.getMessage(), e);
         }
     }
 
-    public void decompileJarToZip(File jarFile, ZipOutputStream zos, String targetClass) {
+    public void decompileJarTo(File jarFile, EntrySink sink, ClassSelector selector, DecompileContext ctx) throws IOException {
         JadxArgs args = new JadxArgs();
-        args.getInputFiles().add(jarFile);
         args.setSkipResources(true);
-        // Reduce thread count to 1 for 0.1 CPU environments to prevent context switching overload
-        args.setThreadsCount(1);
+        // follows the worker pool, which is already 1 in 0.1 CPU environments
+        args.setThreadsCount(pipeline.workerCount());
 
         try (JadxDecompiler jadx = new JadxDecompiler(args)) {
+            if (selector == null) {
+                args.getInputFiles().add(jarFile);
+            } else {
+                // jadx cannot resolve types lazily, so feed it just the selection (with nested classes)
+                // instead of loading the whole archive; other references stay unresolved like JDK-less ones
+                jadx.addCustomCodeLoader(JavaInputPlugin.load(loader -> readSelection(jarFile, selector, loader)));
+            }
+            // jadx has no classpath: libraries are inputs too, loaded (not decompiled) for their types
+            Classpath classpath = ctx.classpath();
+            args.getInputFiles().addAll(classpath.files());
             jadx.load();
 
-            for (JavaClass cls : jadx.getClasses()) {
-                if (targetClass != null && !targetClass.isBlank()) {
-                    if (!cls.getFullName().equals(targetClass)) continue;
+            List<JavaClass> classes = jadx.getClasses();
+            if (!classpath.isEmpty()) {
+                Set<String> own = ownClasses(jarFile, selector);
+                classes = classes.stream().filter(c -> own.contains(internalName(c))).toList();
+            }
+            // jadx groups dependent classes into batches meant to be decompiled on one thread each
+            List<List<JavaClass>> batches = jadx.getDecompileScheduler().buildBatches(classes);
+            if (!classpath.isEmpty()) {
+                // batches pull in the library classes they depend on; those are not output
+                Set<JavaClass> requested = new HashSet<>(classes);
+                batches = batches.stream()
+                        .map(batch -> batch.stream().filter(requested::contains).toList())
+                        .filter(batch -> !batch.isEmpty())
+                        .toList();
+            }
+            pipeline.write("jadx", batches, JadxAdapter::internalName, (batch, progress) -> decompileBatch(batch, progress, ctx), sink, ctx);
+        }
+    }
+
+    private List<JavaClassReader> readSelection(File jarFile, ClassSelector selector, JavaInputLoader loader) {
+        List<JavaClassReader> readers = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(jarFile)) {
+            for (String name : selector.classesWithNested(zip)) {
+                String entryName = name + ".class";
+                try {
+                    readers.add(loader.loadClass(JarClasses.read(zip, zip.getEntry(entryName), maxClassBytes), entryName));
+                } catch (ClassTooLargeException e) {
+                    log.warn("jadx: skipping {}", e.getMessage());
                 }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return readers;
+    }
 
-                String code = cls.getCode(); // Decompile happens here
-                String path = cls.getFullName().replace('.', '/') + ".java";
+    /** Top-level internal names of the request's own classes, to tell them from library classes. */
+    private static Set<String> ownClasses(File jarFile, ClassSelector selector) throws IOException {
+        try (ZipFile zip = new ZipFile(jarFile)) {
+            return new HashSet<>(selector == null ? JarClasses.topLevelClasses(zip) : selector.topLevelClasses(zip));
+        }
+    }
 
-                synchronized (zos) {
-                    try {
-                        zos.putNextEntry(new ZipEntry(path));
-                        zos.write(code.getBytes(StandardCharsets.UTF_8));
-                        zos.closeEntry();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+    private static String internalName(JavaClass cls) {
+        return cls.getRawName().replace('.', '/');
+    }
+
+    private void decompileBatch(List<JavaClass> batch, DecompilePipeline.Progress<JavaClass> progress, DecompileContext ctx) {
+        for (JavaClass cls : batch) {
+            if (Thread.currentThread().isInterrupted()) break; // batch was cancelled (e.g. client left)
+            if (ctx.skips(internalName(cls))) {
+                cls.unload();
+                continue;
+            }
+            progress.begin(cls);
+            try {
+                ICodeInfo code = cls.getCodeInfo(); // Decompile happens here
+                String path = cls.getFullName().replace('.', '/') + ".java";
+                if (ctx.lineMaps()) {
+                    // jadx keys its mapping by decompiled line
+                    LineMap.Builder lines = new LineMap.Builder();
+                    code.getCodeMetadata().getLineMapping().forEach((decompiled, original) -> lines.add(original, decompiled));
+                    if (!lines.isEmpty()) progress.add(lines.build().entry(path));
                 }
+                progress.add(DecompiledEntry.source(path, code.getCodeStr()));
+            } catch (Exception | StackOverflowError e) {
+                // one bad class must not take the rest of its batch with it
+                log.warn("jadx failed on {}: {}", cls.getFullName(), e.toString());
+                metrics.classesFailed("jadx", 1);
+            } finally {
+                cls.unload(); // the entry holds the text now; drop jadx's copy of the code
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
     }
 
@@ -97,7 +198,7 @@ public class JadxAdapter {
                 // jadx saved to outDir/jadx-out -> copy to outDir
             }
         } catch (Exception e) {
-            // log
+            log.warn("jadx failed on {}: {}", jarFile, e.toString());
         }
     }
 }
@@ -0,0 +1,114 @@
+package com.endlessforge.javadecompilerapi.service.job;
+
+import com.endlessforge.javadecompilerapi.service.UploadedJar;
+import com.endlessforge.javadecompilerapi.service.library.Classpath;
+import com.endlessforge.javadecompilerapi.service.nested.NestedFilter;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompileContext;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One asynchronous JAR decompilation. Mutable state is only written by the job thread
+ * and read by status polls, hence the volatiles.
+ */
+public class DecompileJob {
+
+    public enum Status { QUEUED, RUNNING, DONE, FAILED }
+
+    private final String id;
+    private final String mode;
+    private final String targetClass;
+    private final String client;
+    private final NestedFilter nestedFilter;
+    private final UploadedJar upload;
+    private final boolean indexRequested;
+    private final DecompileContext ctx;
+    private final Instant submittedAt = Instant.now();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile Path result;
+    private volatile String error;
+    private volatile String searchIndex;
+    private volatile String lineMapsArtifact;
+
+    DecompileJob(String id, String mode, String targetClass, NestedFilter nestedFilter, Classpath classpath,
+                 boolean lineMaps, boolean indexRequested, String client, UploadedJar upload) {
+        this.id = id;
+        this.mode = mode;
+        this.targetClass = targetClass;
+        this.client = client;
+        this.nestedFilter = nestedFilter;
+        this.upload = upload;
+        this.indexRequested = indexRequested;
+        this.ctx = new DecompileContext(classpath, lineMaps);
+    }
+
+    public String id() { return id; }
+    public String mode() { return mode; }
+    public String targetClass() { return targetClass; }
+    public NestedFilter nestedFilter() { return nestedFilter; }
+    public Status status() { return status; }
+    public Path result() { return result; }
+    public Instant finishedAt() { return finishedAt; }
+
+    UploadedJar upload() { return upload; }
+    DecompileContext context() { return ctx; }
+    String client() { return client; }
+    boolean indexRequested() { return indexRequested; }
+
+    void searchIndex(String name) {
+        searchIndex = name;
+    }
+
+    void lineMapsArtifact(String name) {
+        lineMapsArtifact = name;
+    }
+
+    void started() {
+        startedAt = Instant.now();
+        status = Status.RUNNING;
+    }
+
+    void succeeded(Path result) {
+        this.result = result;
+        finishedAt = Instant.now();
+        status = Status.DONE;
+    }
+
+    void failed(String error) {
+        this.error = error;
+        finishedAt = Instant.now();
+        status = Status.FAILED;
+    }
+
+    public Map<String, Object> describe() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("id", id);
+        m.put("status", status);
+        m.put("mode", mode);
+        if (targetClass != null) m.put("className", targetClass);
+        if (nestedFilter != null) m.put("nested", nestedFilter.toString());
+        if (!ctx.classpath().isEmpty()) m.put("libraries", ctx.classpath().hashes());
+        m.put("classesDone", ctx.classesDone());
+        m.put("classesTotal", ctx.classesTotal());
+        m.put("submittedAt", submittedAt.toString());
+        if (startedAt != null) {
+            m.put("startedAt", startedAt.toString());
+            Instant end = finishedAt != null ? finishedAt : Instant.now();
+            long millis = Math.max(1, Duration.between(startedAt, end).toMillis());
+            m.put("elapsedMs", millis);
+            m.put("classesPerSecond", Math.round(ctx.classesDone() * 10000.0 / millis) / 10.0);
+        }
+        if (finishedAt != null) m.put("finishedAt", finishedAt.toString());
+        if (searchIndex != null) m.put("searchIndex", searchIndex);
+        if (lineMapsArtifact != null) m.put("lineMaps", lineMapsArtifact);
+        if (error != null) m.put("error", error);
+        return m;
+    }
+}
@@ -0,0 +1,166 @@
+package com.endlessforge.javadecompilerapi.service.job;
+
+import com.endlessforge.javadecompilerapi.service.DecompilerService;
+import com.endlessforge.javadecompilerapi.service.UploadedJar;
+import com.endlessforge.javadecompilerapi.service.admission.AdmissionControl;
+import com.endlessforge.javadecompilerapi.service.admission.Workload;
+import com.endlessforge.javadecompilerapi.service.cache.PinnedArchive;
+import com.endlessforge.javadecompilerapi.service.library.Classpath;
+import com.endlessforge.javadecompilerapi.service.linemap.LineMapService;
+import com.endlessforge.javadecompilerapi.service.nested.NestedFilter;
+import com.endlessforge.javadecompilerapi.service.output.OutputFormat;
+import com.endlessforge.javadecompilerapi.service.search.SearchService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs JAR decompilations off the request thread. A small fixed set of job threads drains a
+ * bounded queue; when the queue is full {@link #submit} throws {@link RejectedExecutionException}.
+ * Finished jobs and their output are dropped after {@code decompiler.jobs.ttl}.
+ */
+@Service
+public class JobService implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(JobService.class);
+
+    private final DecompilerService decompilerService;
+    private final AdmissionControl admission;
+    private final SearchService search;
+    private final LineMapService lineMaps;
+    private final ThreadPoolExecutor executor;
+    private final Duration ttl;
+    private final Map<String, DecompileJob> jobs = new ConcurrentHashMap<>();
+
+    public JobService(DecompilerService decompilerService, AdmissionControl admission, SearchService search,
+                      LineMapService lineMaps,
+                      @Value("${decompiler.jobs.concurrency:1}") int concurrency,
+                      @Value("${decompiler.jobs.queue-limit:8}") int queueLimit,
+                      @Value("${decompiler.jobs.ttl:PT30M}") Duration ttl) {
+        this.decompilerService = decompilerService;
+        this.admission = admission;
+        this.search = search;
+        this.lineMaps = lineMaps;
+        this.ttl = ttl;
+        AtomicInteger n = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueLimit), r -> {
+            Thread t = new Thread(r, "decompile-job-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Queues a received upload. The job owns the upload and {@code classpath} from here on, also when rejected.
+     * With {@code lineMaps} sources come with line maps; with {@code index} the result is also indexed for search.
+     * {@code client} is who submitted it, for fair sharing among background work.
+     */
+    public DecompileJob submit(UploadedJar upload, String mode, String targetClass, NestedFilter nestedFilter,
+                               Classpath classpath, boolean lineMaps, boolean index, String client) {
+        DecompileJob job = new DecompileJob(UUID.randomUUID().toString(), mode, targetClass, nestedFilter, classpath,
+                lineMaps, index, client, upload);
+        jobs.put(job.id(), job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id());
+            upload.delete();
+            classpath.close();
+            throw e;
+        }
+        return job;
+    }
+
+    public DecompileJob get(String id) {
+        return jobs.get(id);
+    }
+
+    public int queued() {
+        return executor.getQueue().size();
+    }
+
+    private void run(DecompileJob job) {
+        job.started();
+        UploadedJar upload = job.upload();
+        // jobs share the memory budget with synchronous requests but wait for it without a deadline
+        try (AdmissionControl.Permit permit = admission.await(job.client(), job.mode().toLowerCase(Locale.ROOT),
+                Workload.ofJar(upload))) {
+            // pinned while indexed and linked; the job's own link outlives eviction
+            try (PinnedArchive zip = decompilerService.decompileUpload(upload, job.mode(), job.targetClass(),
+                    job.nestedFilter(), OutputFormat.ZIP, job.context())) {
+                if (job.indexRequested()) job.searchIndex(search.index(zip.path()));
+                if (job.context().lineMaps()) job.lineMapsArtifact(lineMaps.artifact(zip.path()));
+                job.succeeded(ownCopy(upload, zip.path()));
+            }
+        } catch (Exception | LinkageError e) {
+            log.warn("job {} failed: {}", job.id(), e.toString());
+            job.failed(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        } finally {
+            // the libraries are only read while decompiling
+            job.context().classpath().close();
+            try {
+                Files.deleteIfExists(upload.jar());
+            } catch (IOException ignored) {
+                // removed with the rest of the job directory at expiry
+            }
+        }
+    }
+
+    /**
+     * Cached results can be evicted while the job is still downloadable, so the job keeps its own
+     * link to the file (a hard link where the filesystem allows it, otherwise a copy).
+     */
+    private static Path ownCopy(UploadedJar upload, Path zip) throws IOException {
+        if (zip.startsWith(upload.dir())) return zip;
+        Path own = upload.dir().resolve(zip.getFileName());
+        try {
+            Files.createLink(own, zip);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(zip, own);
+        }
+        return own;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("decompiler.jobs.queued", this, JobService::queued).register(registry);
+        Gauge.builder("decompiler.jobs.running", executor, ThreadPoolExecutor::getActiveCount).register(registry);
+        Gauge.builder("decompiler.jobs.retained", jobs, Map::size)
+                .description("Jobs kept for polling or download until they expire").register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${decompiler.jobs.cleanup-interval:PT1M}")
+    void expire() {
+        Instant cutoff = Instant.now().minus(ttl);
+        jobs.values().removeIf(job -> {
+            Instant finished = job.finishedAt();
+            if (finished == null || finished.isAfter(cutoff)) return false;
+            job.upload().delete();
+            return true;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+        jobs.values().forEach(job -> job.upload().delete());
+    }
+}
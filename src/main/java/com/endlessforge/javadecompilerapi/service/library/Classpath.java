@@ -0,0 +1,64 @@
+package com.endlessforge.javadecompilerapi.service.library;
+
+import java.io.Closeable;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Library JARs one request decompiles against, in lookup order. Reads go through the
+ * {@link LibraryStore}, so every request and engine naming a library shares its open archive
+ * and the cached class bytes. The libraries are pinned in the store until {@link #close()}, so
+ * eviction cannot close or delete one while the request reads it.
+ */
+public final class Classpath implements Closeable {
+
+    public static final Classpath EMPTY = new Classpath(null, List.of(), List.of());
+
+    private final LibraryStore store;
+    private final List<String> hashes;
+    private final List<Path> files;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    Classpath(LibraryStore store, List<String> hashes, List<Path> files) {
+        this.store = store;
+        this.hashes = hashes;
+        this.files = files;
+    }
+
+    public boolean isEmpty() {
+        return hashes.isEmpty();
+    }
+
+    public List<String> hashes() {
+        return hashes;
+    }
+
+    /** SHA-256 digests in order, comma-separated; identifies the classpath in cache keys. */
+    public String key() {
+        return String.join(",", hashes);
+    }
+
+    /** Bytes of {@code path} ({@code org/acme/Foo.class}) from the first library holding it, or null. */
+    public byte[] classFile(String path) {
+        // once closed the libraries may be evicted under us
+        if (released.get()) return null;
+        for (String hash : hashes) {
+            byte[] bytes = store.classFile(hash, path);
+            if (bytes != null) return bytes;
+        }
+        return null;
+    }
+
+    /** The stored archives, for engines that only take input files (JADX). */
+    public List<File> files() {
+        return files.stream().map(Path::toFile).toList();
+    }
+
+    /** Unpins the libraries; a second close does nothing. */
+    @Override
+    public void close() {
+        if (store != null && released.compareAndSet(false, true)) store.unpin(hashes);
+    }
+}
@@ -0,0 +1,16 @@
+package com.endlessforge.javadecompilerapi.service.library;
+
+/** An uploaded library that is not a readable JAR with classes in it; answered 400. */
+public class InvalidLibraryException extends RuntimeException {
+
+    private final String fileName;
+
+    public InvalidLibraryException(String message, String fileName) {
+        super(message);
+        this.fileName = fileName;
+    }
+
+    public String fileName() {
+        return fileName;
+    }
+}
@@ -0,0 +1,321 @@
+package com.endlessforge.javadecompilerapi.service.library;
+
+import com.endlessforge.javadecompilerapi.service.cache.DecompilationCache;
+import com.endlessforge.javadecompilerapi.util.JarClasses;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Library JARs that requests decompile against, stored once by SHA-256 as
+ * {@code <dir>/<sha256>.jar} and evicted least recently used beyond {@code decompiler.libraries.max-bytes}.
+ * <p>
+ * A library is opened on first use and stays open: its central directory is the class index every
+ * request and engine shares. Class bytes read from libraries are kept in one LRU bounded by
+ * {@code decompiler.libraries.class-cache-bytes}, so a dependency's common types are inflated once,
+ * not per request and engine.
+ * <p>
+ * A {@link Classpath} pins its libraries until it is closed: eviction skips pinned libraries and
+ * closes and deletes them once the last request using them has ended.
+ */
+@Component
+public class LibraryStore implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(LibraryStore.class);
+
+    /** One stored library; {@code zip} is opened on first use and closed on eviction. Guarded by {@code libraries}. */
+    private static final class Library {
+        final String sha256;
+        final Path file;
+        final long size;
+        ZipFile zip;
+        // open Classpaths naming it; not evicted while positive
+        int pins;
+
+        Library(String sha256, Path file, long size) {
+            this.sha256 = sha256;
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    private final Path dir;
+    private final long maxBytes;
+    private final long classCacheMaxBytes;
+    private final long maxClassBytes;
+
+    // access-ordered so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Library> libraries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final LinkedHashMap<String, byte[]> classes = new LinkedHashMap<>(256, 0.75f, true);
+    private long classBytes;
+
+    private final AtomicLong classHits = new AtomicLong();
+    private final AtomicLong classMisses = new AtomicLong();
+
+    public LibraryStore(@Value("${decompiler.libraries.dir:${java.io.tmpdir}/decompiler-libraries}") String dir,
+                        @Value("${decompiler.libraries.max-bytes:536870912}") long maxBytes,
+                        @Value("${decompiler.libraries.class-cache-bytes:67108864}") long classCacheMaxBytes,
+                        @Value("${decompiler.class.max-bytes:8388608}") long maxClassBytes) throws IOException {
+        this.dir = Paths.get(dir);
+        this.maxBytes = maxBytes;
+        this.classCacheMaxBytes = classCacheMaxBytes;
+        this.maxClassBytes = maxClassBytes;
+        Files.createDirectories(this.dir);
+        loadIndex();
+    }
+
+    /**
+     * Stores an uploaded library (a no-op when the same bytes are already stored) and returns its SHA-256.
+     *
+     * @throws InvalidLibraryException when it is not a JAR with classes
+     */
+    public String store(MultipartFile file) throws IOException {
+        return store(file, false);
+    }
+
+    /** With {@code pin}, the stored library comes back pinned; the caller {@link #unpin unpins} it. */
+    private String store(MultipartFile file, boolean pin) throws IOException {
+        Path received = Files.createTempFile(dir, "upload-", ".tmp");
+        try {
+            file.transferTo(received);
+            try (ZipFile zip = new ZipFile(received.toFile())) {
+                if (JarClasses.allClasses(zip).isEmpty()) {
+                    throw new InvalidLibraryException("library has no classes", file.getOriginalFilename());
+                }
+            } catch (ZipException e) {
+                throw new InvalidLibraryException("library is not a JAR", file.getOriginalFilename());
+            }
+            String sha256 = DecompilationCache.sha256(received);
+            Path target = dir.resolve(sha256 + ".jar");
+            synchronized (libraries) {
+                Library library = libraries.get(sha256);
+                if (library == null) {
+                    Files.move(received, target, StandardCopyOption.REPLACE_EXISTING);
+                    library = new Library(sha256, target, Files.size(target));
+                    libraries.put(sha256, library);
+                    bytes += library.size;
+                    evict(sha256);
+                }
+                if (pin) library.pins++;
+            }
+            return sha256;
+        } finally {
+            Files.deleteIfExists(received);
+        }
+    }
+
+    public boolean contains(String sha256) {
+        synchronized (libraries) {
+            return libraries.containsKey(sha256);
+        }
+    }
+
+    /**
+     * The classpath of a request: {@code hashes} (comma-separated SHA-256 digests of stored libraries,
+     * may be blank) followed by {@code uploads}, which are stored first. Close it when the request ends.
+     */
+    public Classpath classpath(String hashes, List<MultipartFile> uploads) throws IOException {
+        List<String> all = new ArrayList<>();
+        if (hashes != null) {
+            for (String hash : hashes.split(",")) {
+                if (!hash.isBlank()) all.add(hash.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        // uploads stay pinned until the classpath holds them, so the next upload cannot evict them first
+        List<String> uploaded = new ArrayList<>();
+        try {
+            if (uploads != null) {
+                for (MultipartFile upload : uploads) {
+                    if (!upload.isEmpty()) uploaded.add(store(upload, true));
+                }
+            }
+            all.addAll(uploaded);
+            return classpath(all);
+        } finally {
+            unpin(uploaded);
+        }
+    }
+
+    /**
+     * The stored libraries in {@code hashes}, in order, as one classpath, pinned until it is closed.
+     *
+     * @throws UnknownLibraryException naming the first hash that is not stored
+     */
+    public Classpath classpath(List<String> hashes) {
+        if (hashes.isEmpty()) return Classpath.EMPTY;
+        List<Path> files = new ArrayList<>(hashes.size());
+        synchronized (libraries) {
+            List<Library> found = new ArrayList<>(hashes.size());
+            for (String hash : hashes) {
+                Library library = libraries.get(hash);
+                if (library == null) throw new UnknownLibraryException(hash);
+                found.add(library);
+            }
+            for (Library library : found) {
+                library.pins++;
+                files.add(library.file);
+            }
+        }
+        return new Classpath(this, List.copyOf(hashes), files);
+    }
+
+    /** Releases one pin on each of {@code hashes}; whatever was skipped while pinned may be evicted now. */
+    void unpin(List<String> hashes) {
+        if (hashes.isEmpty()) return;
+        synchronized (libraries) {
+            for (String hash : hashes) {
+                Library library = libraries.get(hash);
+                if (library != null && library.pins > 0) library.pins--;
+            }
+            evict(null);
+        }
+    }
+
+    public List<Map<String, Object>> list() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        synchronized (libraries) {
+            // newest use first; iterating does not count as access
+            List<Library> ordered = new ArrayList<>(libraries.values());
+            Collections.reverse(ordered);
+            for (Library library : ordered) {
+                list.add(Map.of("sha256", library.sha256, "size", library.size));
+            }
+        }
+        return list;
+    }
+
+    /** Bytes of {@code path} ({@code org/acme/Foo.class}) in library {@code sha256}; null when it has no such entry. */
+    byte[] classFile(String sha256, String path) {
+        String key = sha256 + '!' + path;
+        synchronized (classes) {
+            byte[] cached = classes.get(key);
+            if (cached != null) {
+                classHits.incrementAndGet();
+                return cached;
+            }
+        }
+        byte[] read;
+        try {
+            ZipFile zip = open(sha256);
+            ZipEntry entry = zip == null ? null : zip.getEntry(path);
+            if (entry == null) return null;
+            classMisses.incrementAndGet();
+            read = JarClasses.read(zip, entry, maxClassBytes);
+        } catch (IOException e) {
+            // a corrupt or oversized entry (the library itself is pinned by the asking classpath):
+            // the type stays unresolved, as without the library
+            log.debug("library {}: cannot read {}: {}", sha256, path, e.toString());
+            return null;
+        }
+        synchronized (classes) {
+            if (classes.put(key, read) == null) classBytes += read.length + key.length();
+            Iterator<Map.Entry<String, byte[]>> it = classes.entrySet().iterator();
+            while (classBytes > classCacheMaxBytes && it.hasNext()) {
+                Map.Entry<String, byte[]> eldest = it.next();
+                classBytes -= eldest.getValue().length + eldest.getKey().length();
+                it.remove();
+            }
+        }
+        return read;
+    }
+
+    private ZipFile open(String sha256) throws IOException {
+        synchronized (libraries) {
+            Library library = libraries.get(sha256);
+            if (library == null) return null;
+            if (library.zip == null) library.zip = new ZipFile(library.file.toFile());
+            return library.zip;
+        }
+    }
+
+    /**
+     * Drops least recently used libraries until under the limit; {@code keep} is the one just stored.
+     * Pinned libraries are skipped and go once unpinned. Caller holds {@code libraries}.
+     */
+    private void evict(String keep) {
+        Iterator<Library> it = libraries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Library eldest = it.next();
+            if (eldest.sha256.equals(keep) || eldest.pins > 0) continue;
+            it.remove();
+            bytes -= eldest.size;
+            close(eldest);
+            try {
+                Files.deleteIfExists(eldest.file);
+            } catch (IOException e) {
+                log.warn("cannot delete evicted library {}: {}", eldest.file, e.toString());
+            }
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) {
+                String name = p.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.deleteIfExists(p); // an upload interrupted by a restart
+                } else if (name.matches("[0-9a-f]{64}\\.jar")) {
+                    long size = Files.size(p);
+                    libraries.put(name.substring(0, 64), new Library(name.substring(0, 64), p, size));
+                    bytes += size;
+                }
+            }
+        }
+    }
+
+    private static void close(Library library) {
+        if (library.zip == null) return;
+        try {
+            library.zip.close();
+        } catch (IOException ignored) {
+        }
+        library.zip = null;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        synchronized (libraries) {
+            libraries.values().forEach(LibraryStore::close);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("decompiler.libraries.bytes", this, s -> s.read(() -> s.bytes)).baseUnit("bytes").register(registry);
+        Gauge.builder("decompiler.libraries.count", this, s -> s.read(() -> s.libraries.size())).register(registry);
+        Gauge.builder("decompiler.libraries.class-cache.bytes", this, s -> {
+            synchronized (s.classes) {
+                return s.classBytes;
+            }
+        }).baseUnit("bytes").register(registry);
+        FunctionCounter.builder("decompiler.libraries.class-cache.requests", classHits, AtomicLong::get)
+                .tag("result", "hit").register(registry);
+        FunctionCounter.builder("decompiler.libraries.class-cache.requests", classMisses, AtomicLong::get)
+                .tag("result", "miss").register(registry);
+    }
+
+    private double read(LongSupplier value) {
+        synchronized (libraries) {
+            return value.getAsLong();
+        }
+    }
+}
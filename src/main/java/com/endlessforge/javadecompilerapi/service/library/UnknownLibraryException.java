@@ -0,0 +1,16 @@
+package com.endlessforge.javadecompilerapi.service.library;
+
+/** A request named a library that is not (or no longer) in the {@link LibraryStore}; answered 404. */
+public class UnknownLibraryException extends RuntimeException {
+
+    private final String sha256;
+
+    public UnknownLibraryException(String sha256) {
+        super("library not found");
+        this.sha256 = sha256;
+    }
+
+    public String sha256() {
+        return sha256;
+    }
+}
@@ -0,0 +1,156 @@
+package com.endlessforge.javadecompilerapi.service.linemap;
+
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maps the line numbers of a class file's LineNumberTable (what stack traces show) to lines of
+ * its decompiled source, for one source file including its nested classes. Stored next to the
+ * source as an entry of its own:
+ * <pre>
+ *   magic (4 bytes), pair count
+ *   per pair: original line delta, decompiled line delta (zigzag)   varints, original lines ascending
+ * </pre>
+ */
+public final class LineMap {
+
+    /** Suffix of line map entries; {@code a/b/C.java} has its map in {@code a/b/C.linemap}. */
+    public static final String SUFFIX = ".linemap";
+
+    private static final int MAGIC = 0x4c4d3031; // "LM01"
+
+    /** Farthest an unmapped original line may be from the mapped line it is resolved to. */
+    private static final int MAX_GAP = 3;
+
+    /** Where an original line went; {@code exact} is false when only a nearby line was mapped. */
+    public record Match(int line, boolean exact) {}
+
+    private final int[] original;
+    private final int[] decompiled;
+
+    private LineMap(int[] original, int[] decompiled) {
+        this.original = original;
+        this.decompiled = decompiled;
+    }
+
+    public static boolean isEntry(String path) {
+        return path.endsWith(SUFFIX);
+    }
+
+    /** Name of the map entry belonging to the source entry {@code sourcePath}. */
+    public static String entryName(String sourcePath) {
+        String base = sourcePath.endsWith(".java") ? sourcePath.substring(0, sourcePath.length() - ".java".length()) : sourcePath;
+        return base + SUFFIX;
+    }
+
+    public int size() {
+        return original.length;
+    }
+
+    /**
+     * The decompiled line of {@code originalLine}, or null when nothing is mapped. A line without a
+     * mapping of its own (a statement the engine merged into the one before) goes to the mapped line
+     * just above it; further away that would likely be another method, so it stays unresolved.
+     */
+    public Match resolve(int originalLine) {
+        int i = Arrays.binarySearch(original, originalLine);
+        if (i >= 0) return new Match(decompiled[i], true);
+        int below = -i - 2;
+        if (below < 0 || originalLine - original[below] > MAX_GAP) return null;
+        return new Match(decompiled[below], false);
+    }
+
+    /** This map as the entry for {@code sourcePath}. */
+    public DecompiledEntry entry(String sourcePath) {
+        return new DecompiledEntry(entryName(sourcePath), encode());
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 + 3 * original.length);
+        for (int shift = 24; shift >= 0; shift -= 8) out.write(MAGIC >>> shift);
+        writeVarint(out, original.length);
+        int prevOriginal = 0;
+        int prevDecompiled = 0;
+        for (int i = 0; i < original.length; i++) {
+            writeVarint(out, original[i] - prevOriginal);
+            int delta = decompiled[i] - prevDecompiled;
+            writeVarint(out, (delta << 1) ^ (delta >> 31));
+            prevOriginal = original[i];
+            prevDecompiled = decompiled[i];
+        }
+        return out.toByteArray();
+    }
+
+    public static LineMap decode(byte[] bytes) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        try {
+            if (in.getInt() != MAGIC) throw new IOException("not a line map");
+            int n = readVarint(in);
+            if (n < 0 || n > bytes.length) throw new IOException("corrupt line map");
+            int[] original = new int[n];
+            int[] decompiled = new int[n];
+            int prevOriginal = 0;
+            int prevDecompiled = 0;
+            for (int i = 0; i < n; i++) {
+                prevOriginal += readVarint(in);
+                int zigzag = readVarint(in);
+                prevDecompiled += (zigzag >>> 1) ^ -(zigzag & 1);
+                original[i] = prevOriginal;
+                decompiled[i] = prevDecompiled;
+            }
+            return new LineMap(original, decompiled);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated line map", e);
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7f) != 0) {
+            out.write((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+    }
+
+    /** Collects pairs as an engine reports them; an original line keeps its lowest decompiled line. */
+    public static final class Builder {
+
+        private final TreeMap<Integer, Integer> lines = new TreeMap<>();
+
+        public Builder add(int originalLine, int decompiledLine) {
+            if (originalLine > 0 && decompiledLine > 0) lines.merge(originalLine, decompiledLine, Math::min);
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return lines.isEmpty();
+        }
+
+        public LineMap build() {
+            int[] original = new int[lines.size()];
+            int[] decompiled = new int[lines.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Integer> e : lines.entrySet()) {
+                original[i] = e.getKey();
+                decompiled[i++] = e.getValue();
+            }
+            return new LineMap(original, decompiled);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.endlessforge.javadecompilerapi.service.linemap;
+
+import com.endlessforge.javadecompilerapi.service.cache.CacheKey;
+import com.endlessforge.javadecompilerapi.service.cache.DecompilationCache;
+import com.endlessforge.javadecompilerapi.service.cache.PinnedArchive;
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Resolves stack frames against a cached result decompiled with line maps: every frame's line is
+ * looked up in the {@link LineMap} of its top-level class, and the decompiled line returned with its
+ * text. Nothing is decompiled; a call reads one map and one source per distinct file.
+ */
+@Service
+public class LineMapService {
+
+    /** Most frames one call resolves; the rest of a longer trace is reported as skipped. */
+    public static final int MAX_FRAMES = 1000;
+
+    /** Option of results decompiled with line maps in their cache key. */
+    public static final String CACHE_OPTION = "lines";
+
+    private static final String NO_LINE_MAP = "no line map";
+
+    private final DecompilationCache cache;
+    private final DecompileMetrics metrics;
+
+    public LineMapService(DecompilationCache cache, DecompileMetrics metrics) {
+        this.cache = cache;
+        this.metrics = metrics;
+    }
+
+    /** The name to resolve frames against for a result archive, or null when it is not a ZIP in the disk cache. */
+    public String artifact(Path archive) {
+        return cache.holds(archive) && DecompilationCache.isZip(archive) ? DecompilationCache.resultName(archive) : null;
+    }
+
+    /** The artifact of a whole-JAR ZIP result of {@code mode} decompiled with line maps and no libraries. */
+    public static String wholeJarArtifact(String sha256, String mode) {
+        CacheKey key = CacheKey.of(sha256, mode).withOptions(CACHE_OPTION);
+        return DecompilationCache.resultName(Path.of(sha256, key.archiveName()));
+    }
+
+    /**
+     * Resolves the frames among {@code lines} (other lines of a pasted trace are ignored) against the
+     * result {@code artifact} ({@link #artifact}). Returns null when there is no such result.
+     */
+    public Map<String, Object> resolve(String artifact, List<String> lines) throws IOException {
+        long start = System.nanoTime();
+        List<Map<String, Object>> frames = new ArrayList<>();
+        int resolved = 0;
+        int skipped = 0;
+        boolean unmapped = false;
+        try (PinnedArchive archive = cache.pinResult(artifact);
+             ZipFile zip = archive == null ? null : new ZipFile(archive.path().toFile())) {
+            if (zip == null) return null;
+            Result files = new Result(zip);
+            for (String line : lines) {
+                StackFrame frame = StackFrame.parse(line);
+                if (frame == null) continue;
+                if (frames.size() >= MAX_FRAMES) {
+                    skipped++;
+                    continue;
+                }
+                Map<String, Object> result = resolve(frame, files);
+                if (result.containsKey("sourceLine")) resolved++;
+                else if (NO_LINE_MAP.equals(result.get("error"))) unmapped = true;
+                frames.add(result);
+            }
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("artifact", artifact);
+            out.put("resolved", resolved);
+            out.put("unresolved", frames.size() - resolved);
+            if (skipped > 0) out.put("skipped", skipped);
+            out.put("frames", frames);
+            if (unmapped) out.put("advice", "decompile the JAR with lines=true to record line maps");
+            metrics.linesResolved(frames.size(), System.nanoTime() - start);
+            return out;
+        }
+    }
+
+    private static Map<String, Object> resolve(StackFrame frame, Result files) throws IOException {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("class", frame.className());
+        m.put("method", frame.method());
+        if (frame.line() > 0) m.put("line", frame.line());
+        String source = files.source(frame.topLevelInternalName());
+        if (source == null) {
+            m.put("error", "class not in result");
+            return m;
+        }
+        m.put("source", source);
+        if (frame.line() <= 0) {
+            m.put("error", "frame has no line number");
+            return m;
+        }
+        LineMap map = files.lineMap(source);
+        if (map == null) {
+            m.put("error", NO_LINE_MAP);
+            return m;
+        }
+        LineMap.Match match = map.resolve(frame.line());
+        if (match == null) {
+            // engines do not map everything (CFR leaves out nested classes' methods, for one)
+            m.put("error", "line not mapped by the engine");
+            return m;
+        }
+        m.put("sourceLine", match.line());
+        m.put("exact", match.exact());
+        String code = files.line(source, match.line());
+        if (code != null) m.put("code", code.strip());
+        return m;
+    }
+
+    /** Entries of one result, read at most once per call. */
+    private static final class Result {
+
+        private final ZipFile zip;
+        // "a/b/C" -> source entry, for results of fat JARs whose entries sit under a unit prefix
+        private Map<String, String> bySuffix;
+        private final Map<String, LineMap> maps = new HashMap<>();
+        private final Map<String, String[]> sources = new HashMap<>();
+
+        Result(ZipFile zip) {
+            this.zip = zip;
+        }
+
+        String source(String internalName) {
+            String path = internalName + ".java";
+            if (zip.getEntry(path) != null) return path;
+            if (bySuffix == null) index();
+            return bySuffix.get(internalName);
+        }
+
+        private void index() {
+            bySuffix = new HashMap<>();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (!name.endsWith(".java")) continue;
+                // every path suffix that could be a top-level class name; the first unit wins
+                for (int slash = name.indexOf('/'); slash >= 0; slash = name.indexOf('/', slash + 1)) {
+                    bySuffix.putIfAbsent(name.substring(slash + 1, name.length() - ".java".length()), name);
+                }
+            }
+        }
+
+        LineMap lineMap(String source) throws IOException {
+            if (maps.containsKey(source)) return maps.get(source);
+            ZipEntry entry = zip.getEntry(LineMap.entryName(source));
+            LineMap map = entry == null ? null : LineMap.decode(read(entry));
+            maps.put(source, map);
+            return map;
+        }
+
+        String line(String source, int line) throws IOException {
+            String[] lines = sources.get(source);
+            if (lines == null) {
+                lines = new String(read(zip.getEntry(source)), StandardCharsets.UTF_8).split("\n", -1);
+                sources.put(source, lines);
+            }
+            return line >= 1 && line <= lines.length ? lines[line - 1] : null;
+        }
+
+        private byte[] read(ZipEntry entry) throws IOException {
+            try (InputStream in = zip.getInputStream(entry)) {
+                return in.readAllBytes();
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.endlessforge.javadecompilerapi.service.linemap;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One {@code at ...} line of a Java stack trace. Module and class loader prefixes
+ * ({@code java.base/}, {@code app//}) are dropped; {@code line} is -1 without a line number.
+ */
+public record StackFrame(String className, String method, String file, int line) {
+
+    private static final Pattern FRAME = Pattern.compile(
+            "^\\s*(?:at\\s+)?(?:[^\\s(]*/)?([^\\s/(]+)\\.([^\\s./(]+)\\(([^:)]*)(?::(\\d+))?\\)\\s*$");
+
+    /** The frame on {@code line}, or null when it is something else ({@code Caused by:}, {@code ... 3 more}). */
+    public static StackFrame parse(String line) {
+        Matcher m = FRAME.matcher(line);
+        if (!m.matches()) return null;
+        int number;
+        try {
+            number = m.group(4) == null ? -1 : Integer.parseInt(m.group(4));
+        } catch (NumberFormatException e) {
+            number = -1;
+        }
+        return new StackFrame(m.group(1), m.group(2), m.group(3), number);
+    }
+
+    /** Internal name of the top-level class, whose source file holds the frame's code. */
+    public String topLevelInternalName() {
+        int dollar = className.indexOf('$');
+        return (dollar > 0 ? className.substring(0, dollar) : className).replace('.', '/');
+    }
+}
@@ -0,0 +1,208 @@
+package com.endlessforge.javadecompilerapi.service.metrics;
+
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+import com.endlessforge.javadecompilerapi.service.pipeline.EntrySink;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Names and tags of the service's own meters, in one place. Queue and cache gauges are bound
+ * by the components that own them; HTTP timings come from Spring's {@code http.server.requests}.
+ * <ul>
+ *   <li>{@code decompiler.requests} (mode, kind, outcome): one per class, JAR or batch request</li>
+ *   <li>{@code decompiler.stage} (mode, stage): JAR time split into {@code decompile} and {@code write}</li>
+ *   <li>{@code decompiler.upload}: receiving a JAR upload onto disk</li>
+ *   <li>{@code decompiler.classes} (mode, result): source files produced and classes that failed</li>
+ *   <li>{@code decompiler.classes.abandoned} (mode, reason): classes replaced with a stub after a timeout</li>
+ *   <li>{@code decompiler.race.wins} (mode, engine, result): whose source a race or best run kept, {@code passed}
+ *       or {@code fallback} when no engine's output passed the quality check</li>
+ *   <li>{@code decompiler.incremental.reused} (mode): sources copied from a base result instead of decompiled</li>
+ *   <li>{@code decompiler.bytes.in} (kind), {@code decompiler.bytes.out} (mode, kind)</li>
+ *   <li>{@code decompiler.external.spawn} (tool), {@code decompiler.external.runs} (tool, outcome)</li>
+ *   <li>{@code decompiler.search.index}: building the search index of a result, {@code decompiler.search.queries} (kind)</li>
+ *   <li>{@code decompiler.linemaps.resolve}: resolving a stack trace against a result's line maps, and
+ *       {@code decompiler.linemaps.frames} in them</li>
+ *   <li>{@code decompiler.engines.warmup} (engine): warming an engine up after startup</li>
+ *   <li>{@code decompiler.temp.disk}: bytes under this service's temp directories</li>
+ * </ul>
+ */
+@Component
+public class DecompileMetrics {
+
+    /** Prefixes of the temp directories and files the service creates under java.io.tmpdir. */
+    private static final List<String> TEMP_PREFIXES =
+            List.of("decompile-jar-", "ext-out-", "external-class-", "batch-", "tool-worker-");
+
+    private final MeterRegistry registry;
+    private final Path tempDir = Path.of(System.getProperty("java.io.tmpdir"));
+
+    public DecompileMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("decompiler.temp.disk", this, DecompileMetrics::tempDiskBytes)
+                .baseUnit("bytes")
+                .description("Bytes in upload, output and tool directories under java.io.tmpdir")
+                .register(registry);
+    }
+
+    public MeterRegistry registry() {
+        return registry;
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    /** @param outcome {@code ok}, {@code cached} or {@code error} */
+    public void request(Timer.Sample sample, String kind, String mode, String outcome) {
+        sample.stop(registry.timer("decompiler.requests", "kind", kind, "mode", mode, "outcome", outcome));
+    }
+
+    /** Splits a JAR run: {@code totalNanos} minus the time spent writing output is the decompile stage. */
+    public void stages(String mode, long totalNanos, long writeNanos) {
+        registry.timer("decompiler.stage", "mode", mode, "stage", "decompile")
+                .record(Math.max(0, totalNanos - writeNanos), TimeUnit.NANOSECONDS);
+        registry.timer("decompiler.stage", "mode", mode, "stage", "write").record(writeNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void upload(long nanos, long bytes) {
+        registry.timer("decompiler.upload").record(nanos, TimeUnit.NANOSECONDS);
+        bytesIn("jar", bytes);
+    }
+
+    public void classesDecompiled(String mode, int n) {
+        if (n > 0) registry.counter("decompiler.classes", "mode", mode, "result", "ok").increment(n);
+    }
+
+    public void classesFailed(String mode, int n) {
+        if (n > 0) registry.counter("decompiler.classes", "mode", mode, "result", "failed").increment(n);
+    }
+
+    /** @param reason {@code class-timeout} or {@code request-timeout} */
+    public void classAbandoned(String mode, String reason) {
+        registry.counter("decompiler.classes.abandoned", "mode", mode, "reason", reason).increment();
+    }
+
+    public void raceWin(String mode, String engine, boolean passed) {
+        registry.counter("decompiler.race.wins", "mode", mode, "engine", engine, "result", passed ? "passed" : "fallback")
+                .increment();
+    }
+
+    public void sourcesReused(String mode, int n) {
+        if (n > 0) registry.counter("decompiler.incremental.reused", "mode", mode).increment(n);
+    }
+
+    public void bytesIn(String kind, long bytes) {
+        summary("decompiler.bytes.in", "kind", kind).record(bytes);
+    }
+
+    public void bytesOut(String kind, String mode, long bytes) {
+        summary("decompiler.bytes.out", "kind", kind, "mode", mode).record(bytes);
+    }
+
+    /** Time from starting an external tool's process until it can take work. */
+    public void toolSpawn(String tool, long nanos) {
+        registry.timer("decompiler.external.spawn", "tool", tool).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** @param outcome {@code ok}, {@code error} or {@code timeout} */
+    public void toolRun(String tool, String outcome, long nanos) {
+        registry.timer("decompiler.external.runs", "tool", tool, "outcome", outcome).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void searchIndexed(long nanos) {
+        registry.timer("decompiler.search.index").record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** @param kind a term kind or {@code any} */
+    public void searchQuery(String kind, long nanos) {
+        registry.timer("decompiler.search.queries", "kind", kind).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** One stack trace resolved against line maps, with {@code frames} frames in it. */
+    public void linesResolved(int frames, long nanos) {
+        registry.timer("decompiler.linemaps.resolve").record(nanos, TimeUnit.NANOSECONDS);
+        registry.counter("decompiler.linemaps.frames").increment(frames);
+    }
+
+    public void engineWarmedUp(String engine, long nanos) {
+        registry.timer("decompiler.engines.warmup", "engine", engine).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private DistributionSummary summary(String name, String... tags) {
+        return DistributionSummary.builder(name).baseUnit("bytes").tags(tags).register(registry);
+    }
+
+    private double tempDiskBytes() {
+        long total = 0;
+        try (Stream<Path> entries = Files.list(tempDir)) {
+            for (Path p : (Iterable<Path>) entries::iterator) {
+                String name = p.getFileName().toString();
+                if (TEMP_PREFIXES.stream().anyMatch(name::startsWith)) total += sizeOf(p);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            return Double.NaN;
+        }
+        return total;
+    }
+
+    /** Size of a file or tree; entries removed while walking (finished requests) are skipped. */
+    private static long sizeOf(Path p) {
+        try (Stream<Path> files = Files.walk(p)) {
+            return files.mapToLong(f -> {
+                try {
+                    return Files.isRegularFile(f) ? Files.size(f) : 0;
+                } catch (IOException e) {
+                    return 0;
+                }
+            }).sum();
+        } catch (IOException | UncheckedIOException e) {
+            return 0;
+        }
+    }
+
+    /** Passes entries through to {@code target} and adds up the time spent writing them. */
+    public static final class TimedSink implements EntrySink {
+
+        private final EntrySink target;
+        private long nanos;
+
+        public TimedSink(EntrySink target) {
+            this.target = target;
+        }
+
+        public long nanos() {
+            return nanos;
+        }
+
+        @Override
+        public void put(DecompiledEntry entry) throws IOException {
+            long start = System.nanoTime();
+            try {
+                target.put(entry);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = System.nanoTime();
+            try {
+                target.flush();
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+    }
+}
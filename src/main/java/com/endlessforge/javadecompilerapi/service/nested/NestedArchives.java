@@ -0,0 +1,475 @@
+package com.endlessforge.javadecompilerapi.service.nested;
+
+import com.endlessforge.javadecompilerapi.service.cache.DecompilationCache;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompileContext;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+import com.endlessforge.javadecompilerapi.service.pipeline.EntrySink;
+import com.endlessforge.javadecompilerapi.util.ClassSelector;
+import com.endlessforge.javadecompilerapi.util.JarClasses;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Spring Boot fat JARs and WARs: the application classes under {@code BOOT-INF/classes} or
+ * {@code WEB-INF/classes}, the libraries under {@code BOOT-INF/lib}, {@code WEB-INF/lib} (any nested
+ * {@code .jar}, recursively up to {@value #MAX_DEPTH} levels) and the classes at the root are each
+ * decompiled as a unit of their own, so references resolve within the unit. Output paths mirror the
+ * nesting ({@code BOOT-INF/lib/dep.jar/org/dep/Foo.java}), and {@value #MANIFEST_ENTRY} lists every
+ * unit with what happened to it.
+ * <p>
+ * The engines open archives as files, so each unit is spilled into the request's directory when it
+ * is scheduled and deleted when it is done: classes directories as a raw copy of their entries
+ * (nothing re-compressed), nested JARs as their bytes, which Spring Boot stores uncompressed. No
+ * spill may exceed {@code decompiler.nested.max-entry-bytes}, nor all of a request's together
+ * {@code decompiler.nested.max-spill-bytes}; a unit over either fails. Up to
+ * {@code decompiler.nested.parallel-archives} units run at a time on the shared worker pool;
+ * libraries whose SHA-256 is listed in {@code decompiler.nested.skip-sha256} are left out.
+ */
+@Service
+public class NestedArchives {
+
+    private static final Logger log = LoggerFactory.getLogger(NestedArchives.class);
+
+    public static final String MANIFEST_ENTRY = "nested-manifest.json";
+    static final int MAX_DEPTH = 3;
+    private static final List<String> CLASS_ROOTS = List.of("BOOT-INF/classes/", "WEB-INF/classes/");
+
+    /** Decompiles one archive (or the selected classes of it) with the request's engine. */
+    @FunctionalInterface
+    public interface ArchiveDecompiler {
+        void decompile(File jar, ClassSelector selector, EntrySink sink, DecompileContext ctx) throws IOException;
+    }
+
+    /**
+     * One step of the walk, run on a driver when the scheduler reaches it: a unit to decompile, or a
+     * nested archive to spill and look into. Returns the steps found. {@code report} is its line in
+     * the manifest; a nested archive's line is only listed when it fails.
+     */
+    private record Step(Map<String, Object> report, boolean unit, Callable<List<Step>> work) {}
+
+    /** An archive units are read from; a spilled one is deleted once the last step reading it is done. */
+    private static final class Source {
+        final File file;
+        final boolean spilled;
+        final AtomicInteger readers = new AtomicInteger();
+
+        Source(File file, boolean spilled) {
+            this.file = file;
+            this.spilled = spilled;
+        }
+
+        void release() {
+            if (readers.decrementAndGet() <= 0 && spilled) file.delete();
+        }
+    }
+
+    /** A spill over {@code decompiler.nested.max-entry-bytes} or the request's {@code decompiler.nested.max-spill-bytes}. */
+    private static final class SpillLimitException extends IOException {
+        SpillLimitException(String message) {
+            super(message);
+        }
+    }
+
+    /** Bytes one request has spilled so far. */
+    private final class SpillBudget {
+        private final AtomicLong spilled = new AtomicLong();
+
+        /** Accounts for {@code n} more bytes of a spill that has reached {@code entryBytes}. */
+        void charge(long entryBytes, long n) throws SpillLimitException {
+            if (entryBytes > maxEntryBytes) {
+                throw new SpillLimitException("over " + maxEntryBytes + " bytes when spilled (decompiler.nested.max-entry-bytes)");
+            }
+            if (spilled.addAndGet(n) > maxSpillBytes) {
+                throw new SpillLimitException("request spilled over " + maxSpillBytes + " bytes (decompiler.nested.max-spill-bytes)");
+            }
+        }
+    }
+
+    private final Set<String> skipHashes;
+    private final int parallelArchives;
+    private final long maxEntryBytes;
+    private final long maxSpillBytes;
+    private final ObjectMapper mapper;
+    private final ExecutorService drivers;
+
+    public NestedArchives(@Value("${decompiler.nested.skip-sha256:}") String skipHashes,
+                          @Value("${decompiler.nested.parallel-archives:2}") int parallelArchives,
+                          @Value("${decompiler.nested.max-entry-bytes:134217728}") long maxEntryBytes,
+                          @Value("${decompiler.nested.max-spill-bytes:536870912}") long maxSpillBytes,
+                          ObjectMapper mapper) {
+        this.skipHashes = new HashSet<>();
+        for (String hash : skipHashes.split(",")) {
+            if (!hash.isBlank()) this.skipHashes.add(hash.trim().toLowerCase(Locale.ROOT));
+        }
+        this.parallelArchives = Math.max(1, parallelArchives);
+        this.maxEntryBytes = maxEntryBytes;
+        this.maxSpillBytes = maxSpillBytes;
+        this.mapper = mapper;
+        AtomicInteger n = new AtomicInteger();
+        this.drivers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "nested-driver-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Whether {@code jar} is decompiled unit by unit: a fat JAR or WAR (entries under
+     * {@code BOOT-INF/} or {@code WEB-INF/}), or any JAR when units are selected with {@code filter}.
+     * A plain JAR that merely ships a {@code .jar} resource is decompiled whole. Read from the
+     * central directory only.
+     */
+    public static boolean isNested(File jar, NestedFilter filter) throws IOException {
+        if (filter != null) return true;
+        try (java.util.zip.ZipFile zip = new java.util.zip.ZipFile(jar)) {
+            return zip.stream().anyMatch(e -> e.getName().startsWith("BOOT-INF/") || e.getName().startsWith("WEB-INF/"));
+        }
+    }
+
+    /**
+     * Decompiles every unit of {@code jar} accepted by {@code filter} (null: all) into {@code sink},
+     * then adds the manifest. {@code selector} applies within each unit. Each unit is spilled into
+     * {@code workDir} when it is scheduled and deleted when it is done. A unit that fails, also by
+     * going over the spill limits, is reported in the manifest and the rest carry on; a failing
+     * write to {@code sink} stops everything.
+     */
+    public void decompile(File jar, Path workDir, ClassSelector selector, NestedFilter filter,
+                          ArchiveDecompiler engine, EntrySink sink, DecompileContext ctx) throws IOException {
+        Path spillDir = Files.createTempDirectory(workDir, "nested-");
+        try {
+            List<Map<String, Object>> report = Collections.synchronizedList(new ArrayList<>());
+            SharedSink shared = new SharedSink(sink);
+            Walk walk = new Walk(selector, filter, spillDir, engine, shared, ctx, report);
+            walk.run(walk.expand(new Source(jar, false), "", null, 0));
+            List<Map<String, Object>> units = new ArrayList<>(report);
+            // steps finish in any order; the manifest follows the archive's tree
+            units.sort(Comparator.comparing(line -> (String) line.get("path")));
+            shared.put(DecompiledEntry.source(MANIFEST_ENTRY, mapper.writeValueAsString(Map.of("units", units))));
+        } finally {
+            FileUtils.deleteQuietly(spillDir.toFile());
+        }
+    }
+
+    /** The state of one request's walk through its archive tree. */
+    private final class Walk {
+        final ClassSelector selector;
+        final NestedFilter filter;
+        final Path spillDir;
+        final ArchiveDecompiler engine;
+        final SharedSink sink;
+        final DecompileContext ctx;
+        final List<Map<String, Object>> report;
+        final SpillBudget budget = new SpillBudget();
+
+        Walk(ClassSelector selector, NestedFilter filter, Path spillDir, ArchiveDecompiler engine, SharedSink sink,
+             DecompileContext ctx, List<Map<String, Object>> report) {
+            this.selector = selector;
+            this.filter = filter;
+            this.spillDir = spillDir;
+            this.engine = engine;
+            this.sink = sink;
+            this.ctx = ctx;
+            this.report = report;
+        }
+
+        /**
+         * Finds the units of {@code archive}, whose own path in the output is {@code prefix};
+         * {@code sha256} is set for nested archives. Classes directories and nested archives are
+         * left in it until their step runs; {@code archive} is released once they all have.
+         */
+        List<Step> expand(Source archive, String prefix, String sha256, int depth) throws IOException {
+            List<Step> steps = new ArrayList<>();
+            try (ZipFile zip = new ZipFile(archive.file)) {
+                List<String> rootClasses = new ArrayList<>();
+                Set<String> roots = new LinkedHashSet<>();
+                List<String> jars = new ArrayList<>();
+                for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+                    String name = entry.getName();
+                    if (entry.isDirectory()) continue;
+                    String root = classRoot(name);
+                    if (root != null) {
+                        if (name.endsWith(".class")) roots.add(root);
+                    } else if (name.endsWith(".jar")) {
+                        jars.add(name);
+                    } else if (name.endsWith(".class") && !name.startsWith("META-INF/")) {
+                        rootClasses.add(name.substring(0, name.length() - ".class".length()));
+                    }
+                }
+
+                String rootPath = prefix.isEmpty() ? "/" : prefix.substring(0, prefix.length() - 1);
+                Map<String, Object> rootLine = line(rootPath, depth == 0 ? "root" : "jar");
+                if (sha256 != null) rootLine.put("sha256", sha256);
+                if (!rootClasses.isEmpty()) {
+                    report.add(rootLine);
+                    if (filter != null && !filter.accepts(rootPath)) {
+                        skipped(rootLine, "excluded");
+                    } else {
+                        // the classes directories sit in the same archive: name the root classes explicitly
+                        List<String> top = JarClasses.topLevel(rootClasses);
+                        if (selector != null) top.removeIf(name -> !selector.matches(name));
+                        if (top.isEmpty()) {
+                            skipped(rootLine, "no selected classes");
+                        } else {
+                            ClassSelector unitSelector = roots.isEmpty() ? selector : ClassSelector.of(top);
+                            steps.add(new Step(rootLine, true, () -> {
+                                try {
+                                    engine.decompile(archive.file, unitSelector, sink.prefixed(prefix), ctx);
+                                } finally {
+                                    archive.release();
+                                }
+                                return List.of();
+                            }));
+                        }
+                    }
+                } else if (depth > 0 && roots.isEmpty() && jars.isEmpty()) {
+                    report.add(skipped(rootLine, "no classes"));
+                }
+
+                for (String root : roots) {
+                    String path = prefix + root.substring(0, root.length() - 1);
+                    Map<String, Object> line = line(path, "classes");
+                    report.add(line);
+                    if (filter != null && !filter.accepts(path)) {
+                        skipped(line, "excluded");
+                        continue;
+                    }
+                    steps.add(new Step(line, true, () -> {
+                        try {
+                            File spilled = Files.createTempFile(spillDir, "classes-", ".jar").toFile();
+                            try {
+                                spillClasses(archive.file, root, spilled, budget);
+                                engine.decompile(spilled, selector, sink.prefixed(path + "/"), ctx);
+                            } finally {
+                                spilled.delete();
+                            }
+                        } finally {
+                            archive.release();
+                        }
+                        return List.of();
+                    }));
+                }
+
+                for (String name : jars) {
+                    String path = prefix + name;
+                    if (filter != null && !filter.reaches(path)) {
+                        report.add(skipped(line(path, "jar"), "excluded"));
+                        continue;
+                    }
+                    if (depth + 1 > MAX_DEPTH) {
+                        report.add(skipped(line(path, "jar"), "nested too deep"));
+                        continue;
+                    }
+                    steps.add(new Step(line(path, "jar"), false, () -> {
+                        File spilled = Files.createTempFile(spillDir, "jar-", ".jar").toFile();
+                        String hash;
+                        try {
+                            hash = spillJar(archive.file, name, spilled, budget);
+                        } catch (IOException | RuntimeException e) {
+                            spilled.delete();
+                            throw e;
+                        } finally {
+                            archive.release();
+                        }
+                        if (skipHashes.contains(hash)) {
+                            spilled.delete();
+                            Map<String, Object> line = line(path, "jar");
+                            line.put("sha256", hash);
+                            report.add(skipped(line, "known library"));
+                            return List.of();
+                        }
+                        return expand(new Source(spilled, true), path + "/", hash, depth + 1);
+                    }));
+                }
+            } catch (IOException | RuntimeException e) {
+                archive.readers.set(0);
+                archive.release();
+                throw e;
+            }
+            // every step found reads the archive; a nested one only spilled to reach what is inside goes now
+            archive.readers.set(steps.size());
+            if (steps.isEmpty()) archive.release();
+            return steps;
+        }
+
+        /** Runs the steps, and the steps they find, at most {@code parallelArchives} at a time. */
+        private void run(List<Step> steps) throws IOException {
+            CompletionService<List<Step>> completion = new ExecutorCompletionService<>(drivers);
+            Deque<Step> queue = new ArrayDeque<>(steps);
+            Map<Future<List<Step>>, Step> running = new HashMap<>();
+            try {
+                while (!queue.isEmpty() || !running.isEmpty()) {
+                    while (running.size() < parallelArchives && !queue.isEmpty()) {
+                        Step step = queue.poll();
+                        running.put(completion.submit(step.work()), step);
+                    }
+                    Future<List<Step>> done = completion.take();
+                    Step step = running.remove(done);
+                    try {
+                        // depth first: what a spilled archive holds runs before the next archive is spilled
+                        List<Step> found = done.get();
+                        for (int i = found.size() - 1; i >= 0; i--) queue.addFirst(found.get(i));
+                        if (step.unit()) step.report().put("status", "decompiled");
+                    } catch (ExecutionException e) {
+                        if (sink.failure != null) throw sink.failure;
+                        Throwable cause = e.getCause();
+                        log.warn("nested unit {} failed: {}", step.report().get("path"), cause.toString());
+                        step.report().put("status", "failed");
+                        step.report().put("reason", cause instanceof SpillLimitException ? cause.getMessage() : cause.toString());
+                        if (!step.unit()) report.add(step.report());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted waiting for nested archives");
+            } finally {
+                for (Future<?> f : running.keySet()) f.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Copies the class entries under {@code root} of {@code archive} into a new archive without it,
+     * compressed bytes as they are.
+     */
+    private static void spillClasses(File archive, String root, File target, SpillBudget budget) throws IOException {
+        try (ZipFile zip = new ZipFile(archive)) {
+            List<ZipArchiveEntry> entries = new ArrayList<>();
+            long bytes = 0;
+            for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+                if (entry.isDirectory() || !entry.getName().startsWith(root) || !entry.getName().endsWith(".class")) continue;
+                entries.add(entry);
+                bytes += entry.getCompressedSize();
+            }
+            // raw copies: the central directory says exactly how much gets written
+            budget.charge(bytes, bytes);
+            try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(target)) {
+                for (ZipArchiveEntry entry : entries) {
+                    ZipArchiveEntry renamed = new ZipArchiveEntry(entry.getName().substring(root.length()));
+                    renamed.setMethod(entry.getMethod());
+                    renamed.setCrc(entry.getCrc());
+                    renamed.setSize(entry.getSize());
+                    renamed.setCompressedSize(entry.getCompressedSize());
+                    out.addRawArchiveEntry(renamed, zip.getRawInputStream(entry));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes entry {@code name} of {@code archive} to {@code target}, charging {@code budget} as it
+     * goes (the sizes an entry claims are not trusted); returns the SHA-256 of its bytes.
+     */
+    private static String spillJar(File archive, String name, File target, SpillBudget budget) throws IOException {
+        MessageDigest digest = DecompilationCache.newDigest();
+        try (ZipFile zip = new ZipFile(archive);
+             InputStream in = new DigestInputStream(zip.getInputStream(zip.getEntry(name)), digest);
+             OutputStream out = Files.newOutputStream(target.toPath())) {
+            byte[] buffer = new byte[64 * 1024];
+            long written = 0;
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                written += n;
+                budget.charge(written, n);
+                out.write(buffer, 0, n);
+            }
+        }
+        return DecompilationCache.hex(digest);
+    }
+
+    private static String classRoot(String entryName) {
+        for (String root : CLASS_ROOTS) {
+            if (entryName.startsWith(root)) return root;
+        }
+        return null;
+    }
+
+    private static Map<String, Object> line(String path, String kind) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("path", path);
+        line.put("kind", kind);
+        return line;
+    }
+
+    private static Map<String, Object> skipped(Map<String, Object> line, String reason) {
+        line.put("status", "skipped");
+        line.put("reason", reason);
+        return line;
+    }
+
+    /**
+     * Lets several pipelines write into one sink (see {@link EntrySink}: otherwise single-threaded)
+     * and remembers when the sink itself failed, which ends the whole request. A lock rather than
+     * a monitor: a virtual thread holding a monitor while it writes would pin its carrier.
+     */
+    private static final class SharedSink {
+
+        private final EntrySink target;
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile IOException failure;
+
+        SharedSink(EntrySink target) {
+            this.target = target;
+        }
+
+        void put(DecompiledEntry entry) throws IOException {
+            lock.lock();
+            try {
+                target.put(entry);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void flush() throws IOException {
+            lock.lock();
+            try {
+                target.flush();
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        EntrySink prefixed(String prefix) {
+            return new EntrySink() {
+                @Override
+                public void put(DecompiledEntry entry) throws IOException {
+                    SharedSink.this.put(prefix.isEmpty() ? entry : new DecompiledEntry(prefix + entry.path(), entry.content()));
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    SharedSink.this.flush();
+                }
+            };
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        drivers.shutdownNow();
+    }
+}
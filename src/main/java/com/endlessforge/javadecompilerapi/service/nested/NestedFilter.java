@@ -0,0 +1,95 @@
+package com.endlessforge.javadecompilerapi.service.nested;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code include}/{@code exclude} parameters of JAR requests for fat JARs and WARs: comma-separated
+ * unit paths as they appear in the archive ({@code BOOT-INF/classes}, {@code WEB-INF/lib/*.jar},
+ * {@code BOOT-INF/lib/spring-**}, {@code /} for classes at the archive root). A pattern without
+ * wildcards also matches everything below it. A unit is decompiled when it matches an include
+ * (or none are given) and no exclude.
+ */
+public final class NestedFilter {
+
+    private final List<String> include;
+    private final List<String> exclude;
+    private final List<Pattern> includePatterns;
+    private final List<Pattern> excludePatterns;
+
+    private NestedFilter(List<String> include, List<String> exclude) {
+        this.include = include;
+        this.exclude = exclude;
+        this.includePatterns = include.stream().map(NestedFilter::compile).toList();
+        this.excludePatterns = exclude.stream().map(NestedFilter::compile).toList();
+    }
+
+    /** Parses both lists; null when both are blank, meaning every unit. */
+    public static NestedFilter parse(String include, String exclude) {
+        List<String> in = split(include);
+        List<String> ex = split(exclude);
+        return in.isEmpty() && ex.isEmpty() ? null : new NestedFilter(in, ex);
+    }
+
+    /** Whether the unit at {@code path} (no trailing slash; {@code /} for the archive root) is decompiled. */
+    public boolean accepts(String path) {
+        if (!includePatterns.isEmpty() && includePatterns.stream().noneMatch(p -> p.matcher(path).matches())) return false;
+        return excludePatterns.stream().noneMatch(p -> p.matcher(path).matches());
+    }
+
+    /**
+     * Whether the nested archive at {@code path} has to be opened: it is accepted itself, or an
+     * include may match something inside it that no exclude rules out.
+     */
+    public boolean reaches(String path) {
+        if (accepts(path)) return true;
+        if (excludePatterns.stream().anyMatch(p -> p.matcher(path).matches())) return false;
+        // the matcher running out of input means a longer path below this one could still match
+        return includePatterns.stream().anyMatch(p -> {
+            Matcher m = p.matcher(path + "/");
+            return m.matches() || m.hitEnd();
+        });
+    }
+
+    /** Normalized form, part of the cache key. */
+    @Override
+    public String toString() {
+        return "include=" + String.join(",", include) + ";exclude=" + String.join(",", exclude);
+    }
+
+    private static List<String> split(String spec) {
+        List<String> items = new ArrayList<>();
+        if (spec == null) return items;
+        for (String part : spec.split(",")) {
+            String item = part.trim();
+            if (item.length() > 1 && item.endsWith("/")) item = item.substring(0, item.length() - 1);
+            if (!item.isEmpty()) items.add(item);
+        }
+        return items;
+    }
+
+    /** {@code **} crosses directories, {@code *} and {@code ?} do not; a plain path matches its subtree. */
+    private static Pattern compile(String glob) {
+        if (glob.equals("/")) return Pattern.compile("/");
+        if (glob.indexOf('*') < 0 && glob.indexOf('?') < 0) {
+            return Pattern.compile(Pattern.quote(glob) + "(/.*)?");
+        }
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,273 @@
+package com.endlessforge.javadecompilerapi.service.output;
+
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.util.Native;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Opens {@link OutputWriter}s for JAR results. Compressing formats are encoded on an
+ * {@code output-encoder} thread fed through a bounded queue, so deflate / zstd run while the
+ * workers decompile the next batch instead of on the pipeline's calling thread.
+ * {@code tar.zst} is only offered where zstd-jni's native library loads (it needs glibc).
+ */
+@Component
+public class OutputEncoders {
+
+    private static final Logger log = LoggerFactory.getLogger(OutputEncoders.class);
+
+    /** Finished entries that may wait for the encoder before the pipeline blocks. */
+    private static final int QUEUE_ENTRIES = 256;
+
+    private final int zipLevel;
+    private final int zstdLevel;
+    private final ObjectMapper mapper;
+    private final ExecutorService encoders;
+    private final boolean zstd;
+
+    public OutputEncoders(@Value("${decompiler.output.zip-level:1}") int zipLevel,
+                          @Value("${decompiler.output.zstd-level:9}") int zstdLevel,
+                          ObjectMapper mapper) {
+        this.zipLevel = zipLevel;
+        this.zstdLevel = zstdLevel;
+        this.mapper = mapper;
+        AtomicInteger n = new AtomicInteger();
+        this.encoders = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "output-encoder-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.zstd = loadZstd();
+    }
+
+    private static boolean loadZstd() {
+        try {
+            Native.load();
+            return true;
+        } catch (LinkageError | RuntimeException e) {
+            log.warn("zstd native library not loadable here, tar.zst results disabled: {}", e.toString());
+            return false;
+        }
+    }
+
+    /** Whether {@code format} can be encoded on this host. */
+    public boolean isAvailable(OutputFormat format) {
+        return format != OutputFormat.TAR_ZST || zstd;
+    }
+
+    /** Labels of the formats {@link #isAvailable available} here. */
+    public List<String> labels() {
+        return Arrays.stream(OutputFormat.values()).filter(this::isAvailable).map(OutputFormat::label).toList();
+    }
+
+    /** A writer encoding {@code format} into {@code out}; closing it finishes the result and closes {@code out}. */
+    public OutputWriter open(OutputFormat format, OutputStream out) throws IOException {
+        if (!isAvailable(format)) throw new IOException("format not available here: " + format.label());
+        OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+        return switch (format) {
+            case ZIP -> new Offloaded(zip(buffered, false));
+            case ZIP_STORE -> zip(buffered, true);
+            case TAR_ZST -> new Offloaded(tarZst(buffered));
+            case NDJSON -> ndjson(buffered);
+        };
+    }
+
+    private OutputWriter zip(OutputStream out, boolean store) {
+        ZipOutputStream zos = new ZipOutputStream(out);
+        // 0 (store) to 9; the default 1 keeps deflate cheap on a small CPU share
+        zos.setLevel(zipLevel);
+        return new OutputWriter() {
+            @Override
+            public void put(DecompiledEntry entry) throws IOException {
+                ZipEntry ze = new ZipEntry(entry.path());
+                if (store) {
+                    CRC32 crc = new CRC32();
+                    crc.update(entry.content());
+                    ze.setMethod(ZipEntry.STORED);
+                    ze.setSize(entry.content().length);
+                    ze.setCompressedSize(entry.content().length);
+                    ze.setCrc(crc.getValue());
+                }
+                zos.putNextEntry(ze);
+                zos.write(entry.content());
+                zos.closeEntry();
+            }
+
+            @Override
+            public void flush() throws IOException {
+                zos.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                zos.close();
+            }
+        };
+    }
+
+    private OutputWriter tarZst(OutputStream out) throws IOException {
+        TarArchiveOutputStream tar = new TarArchiveOutputStream(new ZstdCompressorOutputStream(out, zstdLevel),
+                StandardCharsets.UTF_8.name());
+        tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        return new OutputWriter() {
+            @Override
+            public void put(DecompiledEntry entry) throws IOException {
+                TarArchiveEntry te = new TarArchiveEntry(entry.path());
+                te.setSize(entry.content().length);
+                tar.putArchiveEntry(te);
+                tar.write(entry.content());
+                tar.closeArchiveEntry();
+            }
+
+            @Override
+            public void flush() throws IOException {
+                tar.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                tar.close();
+            }
+        };
+    }
+
+    private OutputWriter ndjson(OutputStream out) {
+        return new OutputWriter() {
+            @Override
+            public void put(DecompiledEntry entry) throws IOException {
+                out.write(mapper.writeValueAsBytes(
+                        new SourceLine(entry.path(), new String(entry.content(), StandardCharsets.UTF_8))));
+                out.write('\n');
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        };
+    }
+
+    /** One NDJSON record. */
+    record SourceLine(String path, String source) {}
+
+    @PreDestroy
+    void shutdown() {
+        encoders.shutdownNow();
+    }
+
+    /**
+     * Runs {@code target} on an encoder thread. A failure there (client gone, disk full) is
+     * reported by the next {@link #put}; the encoder keeps taking entries so the pipeline never
+     * blocks on a dead consumer.
+     */
+    private final class Offloaded implements OutputWriter {
+
+        private static final Object FLUSH = new Object();
+        private static final Object END = new Object();
+
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_ENTRIES);
+        private final Future<?> drain;
+        private volatile IOException failure;
+
+        Offloaded(OutputWriter target) {
+            this.drain = encoders.submit(() -> {
+                drain(target);
+                return null;
+            });
+        }
+
+        private void drain(OutputWriter target) throws InterruptedException {
+            try {
+                Object item;
+                while ((item = queue.take()) != END) {
+                    if (failure != null) continue;
+                    try {
+                        if (item == FLUSH) target.flush();
+                        else target.put((DecompiledEntry) item);
+                    } catch (IOException e) {
+                        failure = e;
+                    } catch (RuntimeException e) {
+                        failure = new IOException(e);
+                    }
+                }
+            } finally {
+                try {
+                    target.close();
+                } catch (IOException e) {
+                    if (failure == null) failure = e;
+                }
+            }
+        }
+
+        @Override
+        public void put(DecompiledEntry entry) throws IOException {
+            hand(entry);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            hand(FLUSH);
+        }
+
+        private void hand(Object item) throws IOException {
+            IOException failed = failure;
+            if (failed != null) throw new IOException("writing the result failed: " + failed.getMessage(), failed);
+            try {
+                while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                    if (drain.isDone()) throw new IOException("output encoder stopped");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted handing output to the encoder");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                while (!queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                    if (drain.isDone()) break;
+                }
+                drain.get();
+            } catch (InterruptedException e) {
+                drain.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted finishing the result");
+            } catch (ExecutionException e) {
+                throw new IOException("output encoder failed", e.getCause());
+            }
+            if (failure != null) throw failure;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.endlessforge.javadecompilerapi.service.output;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Encodings of a JAR result. {@code zip} deflates at {@code decompiler.output.zip-level};
+ * {@code zip-store} leaves sources uncompressed for clients on fast links; {@code tar.zst} trades
+ * CPU for the smallest download; {@code ndjson} is one {@code {"path", "source"}} record per line.
+ */
+public enum OutputFormat {
+    ZIP("zip", ".zip", "application/zip"),
+    ZIP_STORE("zip-store", ".zip", "application/zip"),
+    TAR_ZST("tar.zst", ".tar.zst", "application/zstd"),
+    NDJSON("ndjson", ".ndjson", "application/x-ndjson");
+
+    private final String label;
+    private final String extension;
+    private final String mediaType;
+
+    OutputFormat(String label, String extension, String mediaType) {
+        this.label = label;
+        this.extension = extension;
+        this.mediaType = mediaType;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    public String mediaType() {
+        return mediaType;
+    }
+
+    /** Whether results can be read back as a ZIP (cached class lookups, search indexing). */
+    public boolean isZip() {
+        return this == ZIP || this == ZIP_STORE;
+    }
+
+    public static List<String> labels() {
+        return Arrays.stream(values()).map(OutputFormat::label).toList();
+    }
+
+    /** {@code zip} when blank. */
+    public static OutputFormat parse(String label) {
+        if (label == null || label.isBlank()) return ZIP;
+        String normalized = label.strip().toLowerCase(Locale.ROOT);
+        return Arrays.stream(values()).filter(f -> f.label.equals(normalized)).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("unknown format: " + label));
+    }
+}
@@ -0,0 +1,13 @@
+package com.endlessforge.javadecompilerapi.service.output;
+
+import com.endlessforge.javadecompilerapi.service.pipeline.EntrySink;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/** An {@link EntrySink} that encodes a whole result; {@link #close()} finishes it and closes the stream. */
+public interface OutputWriter extends EntrySink, Closeable {
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,115 @@
+package com.endlessforge.javadecompilerapi.service.pipeline;
+
+import com.endlessforge.javadecompilerapi.service.library.Classpath;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Per-request state handed down from the service to the adapters and the pipeline.
+ * Progress counters are written by the pipeline and read by whoever polls (the job API).
+ */
+public class DecompileContext {
+
+    /** A class the pipeline gave up on and replaced with a stub; {@code reason} is {@code class-timeout} or {@code request-timeout}. */
+    public record Abandoned(String className, String engine, String reason) {}
+
+    /** State every view of one request shares (see {@link #skipping}). */
+    private static final class Shared {
+        final AtomicInteger classesTotal = new AtomicInteger();
+        final AtomicInteger classesDone = new AtomicInteger();
+        // System.nanoTime() by which the request must be done; 0 until the first pipeline run starts the clock
+        final AtomicLong deadline = new AtomicLong();
+        final List<Abandoned> abandoned = new ArrayList<>();
+        final Classpath classpath;
+        final boolean lineMaps;
+
+        Shared(Classpath classpath, boolean lineMaps) {
+            this.classpath = classpath;
+            this.lineMaps = lineMaps;
+        }
+    }
+
+    private final Shared shared;
+    private final Predicate<String> skip;
+
+    public DecompileContext() {
+        this(Classpath.EMPTY);
+    }
+
+    /** A request decompiled against the library JARs of {@code classpath}. */
+    public DecompileContext(Classpath classpath) {
+        this(classpath, false);
+    }
+
+    /** Same, with adapters adding a {@code LineMap} entry next to every source when {@code lineMaps}. */
+    public DecompileContext(Classpath classpath, boolean lineMaps) {
+        this(new Shared(classpath, lineMaps), name -> false);
+    }
+
+    private DecompileContext(Shared shared, Predicate<String> skip) {
+        this.shared = shared;
+        this.skip = skip;
+    }
+
+    /**
+     * Same progress counters, but adapters leave out top-level classes (internal names) matching
+     * {@code skip}: several engines racing on one archive stop on classes another one already did.
+     */
+    public DecompileContext skipping(Predicate<String> skip) {
+        return new DecompileContext(shared, skip);
+    }
+
+    public boolean skips(String internalName) {
+        return skip.test(internalName);
+    }
+
+    public Classpath classpath() {
+        return shared.classpath;
+    }
+
+    /** Whether sources come with a {@code LineMap} entry each, put before the source. */
+    public boolean lineMaps() {
+        return shared.lineMaps;
+    }
+
+    public int classesTotal() {
+        return shared.classesTotal.get();
+    }
+
+    public int classesDone() {
+        return shared.classesDone.get();
+    }
+
+    /** Classes replaced by stubs so far, in the order they were given up on. */
+    public List<Abandoned> abandoned() {
+        synchronized (shared.abandoned) {
+            return List.copyOf(shared.abandoned);
+        }
+    }
+
+    void addTotal(int n) {
+        shared.classesTotal.addAndGet(n);
+    }
+
+    void addDone(int n) {
+        shared.classesDone.addAndGet(n);
+    }
+
+    void abandon(Abandoned a) {
+        synchronized (shared.abandoned) {
+            shared.abandoned.add(a);
+        }
+    }
+
+    /** The request's deadline in {@link System#nanoTime()} terms, started on first call; zero {@code budget} means none. */
+    long deadline(Duration budget) {
+        if (budget.isZero() || budget.isNegative()) return Long.MAX_VALUE;
+        shared.deadline.compareAndSet(0, System.nanoTime() + budget.toNanos());
+        return shared.deadline.get();
+    }
+}
@@ -0,0 +1,347 @@
+package com.endlessforge.javadecompilerapi.service.pipeline;
+
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Fans batches of classes out over the worker pool and writes
+ * the finished entries from the calling thread, so the output has exactly one writer and
+ * workers never block on each other.
+ * <p>
+ * A class still running after {@code decompiler.timeouts.class}, and whatever is unfinished when
+ * the request's {@code decompiler.timeouts.request} runs out, is written as a stub and listed in
+ * {@link DecompileContext#abandoned()}. Engines cannot be stopped from outside: the stuck worker
+ * is interrupted and left to finish on its own while the pool lends a replacement thread, and the
+ * classes its batch had not started yet are queued again.
+ * <p>
+ * Every class boundary ({@link Progress#begin}) is a preemption point where the worker may
+ * {@linkplain DecompileWorkerPool#yieldToInteractive yield} to single-class requests.
+ */
+@Component
+public class DecompilePipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(DecompilePipeline.class);
+
+    // how often the writer looks for overdue classes while no batch completes
+    private static final long CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** Decompiles one batch of classes. Runs on a worker thread and reports through {@code progress}. */
+    @FunctionalInterface
+    public interface BatchDecompiler<T> {
+        void decompile(List<T> batch, Progress<T> progress) throws Exception;
+    }
+
+    /** What a batch tells the pipeline, which keeps the per-class clock from it. */
+    public interface Progress<T> {
+
+        /**
+         * Starts the clock for {@code item}, after yielding to interactive requests if they need the CPU;
+         * throws {@link CancellationException} once the batch was given up on.
+         */
+        void begin(T item);
+
+        /** A finished output file. */
+        void add(DecompiledEntry entry);
+    }
+
+    private final DecompileWorkerPool workers;
+    private final DecompileMetrics metrics;
+    private final Duration classTimeout;
+    private final Duration requestTimeout;
+
+    public DecompilePipeline(DecompileWorkerPool workers, DecompileMetrics metrics,
+                             @Value("${decompiler.timeouts.class:PT30S}") Duration classTimeout,
+                             @Value("${decompiler.timeouts.request:PT5M}") Duration requestTimeout) {
+        this.workers = workers;
+        this.metrics = metrics;
+        this.classTimeout = classTimeout;
+        this.requestTimeout = requestTimeout;
+    }
+
+    public int workerCount() {
+        return workers.size();
+    }
+
+    /**
+     * Runs {@code work} for every batch and writes the results into {@code sink}.
+     * A batch that throws is logged, counted as failed classes of {@code engine} and skipped; a
+     * failing write cancels whatever is still queued. {@code nameOf} gives an item's internal
+     * class name for stubs.
+     * At most two batches per worker are in flight, which bounds the buffered output.
+     *
+     * @return number of entries written
+     */
+    public <T> int write(String engine, List<List<T>> batches, Function<T, String> nameOf, BatchDecompiler<T> work,
+                         EntrySink sink, DecompileContext ctx) throws IOException {
+        CompletionService<Void> completion = new ExecutorCompletionService<>(workers.executor());
+        Map<Future<Void>, Run<T>> pending = new HashMap<>();
+        Deque<List<T>> queue = new ArrayDeque<>(batches);
+        Writer<T> out = new Writer<>(engine, nameOf, sink, ctx);
+        int maxInFlight = workers.size() * 2;
+        long classNanos = classTimeout.isZero() || classTimeout.isNegative() ? Long.MAX_VALUE : classTimeout.toNanos();
+        long deadline = ctx.deadline(requestTimeout);
+        ctx.addTotal(batches.stream().mapToInt(List::size).sum());
+
+        try {
+            while (!queue.isEmpty() || !pending.isEmpty()) {
+                while (pending.size() < maxInFlight && !queue.isEmpty()) {
+                    Run<T> run = new Run<>(queue.poll(), workers);
+                    pending.put(submit(engine, completion, run, work), run);
+                }
+
+                long wait = Math.min(deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime(),
+                        classNanos == Long.MAX_VALUE ? Long.MAX_VALUE : CHECK_NANOS);
+                Future<Void> done = completion.poll(Math.max(0, wait), TimeUnit.NANOSECONDS);
+                if (done != null) {
+                    Run<T> run = pending.remove(done);
+                    if (run == null) continue; // the cancelled future of a batch given up on below
+                    checkWorker(engine, done, run);
+                    // engines occasionally emit the same type twice; ZipOutputStream rejects duplicates
+                    out.entries(run.entries());
+                    // push finished classes out now: time-to-first-byte for streamed responses,
+                    // and a gone client surfaces here as an IOException that cancels the rest
+                    sink.flush();
+                    ctx.addDone(run.batch.size());
+                    continue;
+                }
+
+                long now = System.nanoTime();
+                if (now >= deadline) {
+                    // out of time: keep what is finished, stub the rest
+                    int left = 0;
+                    for (Map.Entry<Future<Void>, Run<T>> e : pending.entrySet()) {
+                        Run<T> run = e.getValue();
+                        left += run.batch.size();
+                        // taken before the cancel: the interrupted worker clears its current item on the way out
+                        List<T> unfinished = run.abandon();
+                        e.getKey().cancel(true);
+                        out.entries(run.entries());
+                        for (T item : unfinished) out.stub(item, "request-timeout", requestTimeout);
+                    }
+                    pending.clear();
+                    for (List<T> batch : queue) {
+                        left += batch.size();
+                        for (T item : batch) out.stub(item, "request-timeout", requestTimeout);
+                    }
+                    queue.clear();
+                    sink.flush();
+                    ctx.addDone(left);
+                    break;
+                }
+
+                for (Iterator<Map.Entry<Future<Void>, Run<T>>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+                    Map.Entry<Future<Void>, Run<T>> e = it.next();
+                    Run<T> run = e.getValue();
+                    T hung = run.overdue(now, classNanos);
+                    if (hung == null) continue;
+                    it.remove();
+                    run.abandon();
+                    e.getKey().cancel(true);
+                    log.warn("{}: {} still running after {}; replaced with a stub", engine, nameOf.apply(hung), classTimeout);
+                    out.entries(run.entries());
+                    out.stub(hung, "class-timeout", classTimeout);
+                    List<T> notBegun = run.notBegun();
+                    ctx.addDone(run.batch.size() - notBegun.size());
+                    // counted in the total already; done once the new batch completes
+                    if (!notBegun.isEmpty()) queue.addFirst(notBegun);
+                }
+                sink.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("decompilation interrupted");
+        } finally {
+            for (Future<?> f : pending.keySet()) f.cancel(true);
+            metrics.classesDecompiled(engine, out.sources);
+        }
+        return out.written.size();
+    }
+
+    private <T> Future<Void> submit(String engine, CompletionService<Void> completion, Run<T> run,
+                                    BatchDecompiler<T> work) {
+        return completion.submit(() -> {
+            try {
+                work.decompile(run.batch, run);
+            } catch (Exception | LinkageError e) {
+                if (!run.isAbandoned()) {
+                    log.warn("{}: decompilation of a batch of {} classes failed: {}", engine, run.batch.size(), e.toString());
+                    metrics.classesFailed(engine, run.unfinished().size());
+                }
+            } finally {
+                run.exit();
+            }
+            return null;
+        });
+    }
+
+    /** The batch body already catches; this is an Error escaping the engine (e.g. StackOverflowError). */
+    private void checkWorker(String engine, Future<Void> f, Run<?> run) throws InterruptedException {
+        try {
+            f.get();
+        } catch (ExecutionException e) {
+            log.warn("{}: decompilation worker failed: {}", engine, e.getCause().toString());
+            metrics.classesFailed(engine, run.unfinished().size());
+        }
+    }
+
+    /** Placeholder source for a class given up on. The wording is what race modes recognise as a failure. */
+    static String stubSource(String engine, String internalName, String reason, Duration limit) {
+        int slash = internalName.lastIndexOf('/');
+        StringBuilder sb = new StringBuilder()
+                .append("/*\n")
+                .append(" * Decompilation timed out: ").append(engine).append(" did not finish ")
+                .append(internalName.replace('/', '.')).append(" within ").append(limit).append(" (").append(reason).append(").\n")
+                .append(" * The class was skipped; decompile it on its own or with another mode.\n")
+                .append(" */\n");
+        if (slash > 0) sb.append("package ").append(internalName.substring(0, slash).replace('/', '.')).append(";\n");
+        return sb.toString();
+    }
+
+    /** Writer-thread side: duplicate filtering, stubs, and bookkeeping of abandoned classes. */
+    private final class Writer<T> {
+
+        final String engine;
+        final Function<T, String> nameOf;
+        final EntrySink sink;
+        final DecompileContext ctx;
+        final Set<String> written = new HashSet<>();
+        // source files among them; the rest are side entries such as line maps
+        int sources;
+
+        Writer(String engine, Function<T, String> nameOf, EntrySink sink, DecompileContext ctx) {
+            this.engine = engine;
+            this.nameOf = nameOf;
+            this.sink = sink;
+            this.ctx = ctx;
+        }
+
+        void entries(List<DecompiledEntry> entries) throws IOException {
+            for (DecompiledEntry entry : entries) {
+                if (written.add(entry.path())) put(entry);
+            }
+        }
+
+        /**
+         * Writes a stub for {@code item}, unless its source is out already: the item a worker is
+         * still on when time runs out may have just finished. It is recorded as abandoned once it
+         * stands as the source (see {@link EntrySink#stub}).
+         */
+        void stub(T item, String reason, Duration limit) throws IOException {
+            String name = nameOf.apply(item);
+            if (ctx.skips(name)) return; // another engine has it (race modes)
+            String path = name + ".java";
+            if (written.contains(path)) return;
+            written.add(path);
+            sink.stub(DecompiledEntry.source(path, stubSource(engine, name, reason, limit)), () -> {
+                ctx.abandon(new DecompileContext.Abandoned(name.replace('/', '.'), engine, reason));
+                metrics.classAbandoned(engine, reason);
+            });
+            sources++;
+        }
+
+        private void put(DecompiledEntry entry) throws IOException {
+            sink.put(entry);
+            if (entry.path().endsWith(".java")) sources++;
+        }
+    }
+
+    /**
+     * One submitted batch. The worker reports into it; the writer reads it and may abandon it.
+     * Entries added after that are dropped.
+     */
+    private static final class Run<T> implements Progress<T> {
+
+        final List<T> batch;
+        private final DecompileWorkerPool workers;
+        private final Set<T> begun = new HashSet<>();
+        private final List<DecompiledEntry> entries = new ArrayList<>();
+        private T current;
+        private long currentSince;
+        private boolean abandoned;
+        private boolean exited;
+        private boolean stranded;
+
+        Run(List<T> batch, DecompileWorkerPool workers) {
+            this.batch = batch;
+            this.workers = workers;
+        }
+
+        @Override
+        public void begin(T item) {
+            synchronized (this) {
+                // the previous item is done; no clock runs while the worker yields
+                current = null;
+            }
+            workers.yieldToInteractive();
+            synchronized (this) {
+                if (abandoned) throw new CancellationException("batch abandoned");
+                begun.add(item);
+                current = item;
+                currentSince = System.nanoTime();
+            }
+        }
+
+        @Override
+        public synchronized void add(DecompiledEntry entry) {
+            if (!abandoned) entries.add(entry);
+        }
+
+        synchronized List<DecompiledEntry> entries() {
+            return new ArrayList<>(entries);
+        }
+
+        /** The item in progress when it has been running longer than {@code limitNanos}. */
+        synchronized T overdue(long now, long limitNanos) {
+            return current != null && now - currentSince > limitNanos ? current : null;
+        }
+
+        synchronized boolean isAbandoned() {
+            return abandoned;
+        }
+
+        /** Items never started, in batch order. */
+        synchronized List<T> notBegun() {
+            List<T> rest = new ArrayList<>();
+            for (T item : batch) {
+                if (!begun.contains(item)) rest.add(item);
+            }
+            return rest;
+        }
+
+        /** The item in progress plus the ones never started. */
+        synchronized List<T> unfinished() {
+            List<T> rest = notBegun();
+            if (current != null) rest.add(0, current);
+            return rest;
+        }
+
+        /**
+         * Gives up on the batch and returns its {@link #unfinished} items; a worker stuck inside an
+         * item gets a stand-in thread until it returns.
+         */
+        synchronized List<T> abandon() {
+            abandoned = true;
+            if (!exited && current != null) stranded = workers.strand();
+            return unfinished();
+        }
+
+        synchronized void exit() {
+            exited = true;
+            current = null;
+            if (stranded) {
+                stranded = false;
+                workers.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.endlessforge.javadecompilerapi.service.pipeline;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared, bounded pool that runs per-class decompilation for every request.
+ * Size comes from {@code decompiler.workers}; 0 means one worker per available CPU,
+ * which is 1 inside the 0.1-CPU container.
+ * <p>
+ * Single-class requests run their engine on a second pool of the same size ({@link #runInteractive}),
+ * not on the request thread, which may be virtual. While any do, one worker per such request pauses
+ * at its next class boundary, for at most {@code decompiler.workers.yield-max} at a time, so bulk
+ * work does not take the CPU they need.
+ */
+@Component
+public class DecompileWorkerPool implements MeterBinder {
+
+    private final int size;
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor interactiveExecutor;
+    private final long yieldMaxNanos;
+    // workers still inside an engine on a batch the pipeline has given up on
+    private int stranded;
+
+    private final Object yieldLock = new Object();
+    private int interactive;
+    private int yielding;
+    private final AtomicLong yields = new AtomicLong();
+
+    public DecompileWorkerPool(@Value("${decompiler.workers:0}") int configured,
+                               @Value("${decompiler.workers.yield-max:PT2S}") Duration yieldMax) {
+        this.size = configured > 0 ? configured : Math.max(1, Runtime.getRuntime().availableProcessors());
+        this.yieldMaxNanos = yieldMax.isNegative() ? 0 : yieldMax.toNanos();
+        AtomicInteger n = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "decompile-worker-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger m = new AtomicInteger();
+        this.interactiveExecutor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "decompile-interactive-" + m.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public ExecutorService executor() {
+        return executor;
+    }
+
+    /**
+     * A batch was abandoned while its worker is stuck in an engine, which cannot be stopped from
+     * outside: adds a thread so the pool keeps {@link #size()} threads doing useful work. Returns
+     * false, adding nothing, once {@code size} threads are stranded already.
+     */
+    public synchronized boolean strand() {
+        if (stranded >= size) return false;
+        stranded++;
+        executor.setMaximumPoolSize(size + stranded);
+        executor.setCorePoolSize(size + stranded);
+        return true;
+    }
+
+    /** The stranded work has ended; the extra thread exits once idle. */
+    public synchronized void release() {
+        stranded--;
+        executor.setCorePoolSize(size + stranded);
+        executor.setMaximumPoolSize(size + stranded);
+    }
+
+    public synchronized int stranded() {
+        return stranded;
+    }
+
+    /**
+     * Runs a single-class request's engine work on an interactive thread and waits for it; bulk
+     * workers yield meanwhile. Failures of {@code work} are rethrown as they are.
+     */
+    public <V> V runInteractive(Callable<V> work) throws IOException {
+        FutureTask<V> f = new FutureTask<>(work);
+        interactiveExecutor().execute(f);
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for the decompiler");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error error) throw error;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Runs tasks on the interactive threads, counted as single-class work while they run, for
+     * callers that wait on several at once (the race modes run each engine as one task).
+     */
+    public Executor interactiveExecutor() {
+        return task -> interactiveExecutor.execute(() -> {
+            interactiveStarted();
+            try {
+                task.run();
+            } finally {
+                interactiveEnded();
+            }
+        });
+    }
+
+    private void interactiveStarted() {
+        synchronized (yieldLock) {
+            interactive++;
+        }
+    }
+
+    private void interactiveEnded() {
+        synchronized (yieldLock) {
+            interactive--;
+            yieldLock.notifyAll();
+        }
+    }
+
+    /**
+     * Preemption point between two classes of bulk work: returns at once unless interactive requests
+     * are running and fewer workers than there are of them already wait here.
+     */
+    public void yieldToInteractive() {
+        synchronized (yieldLock) {
+            if (yieldMaxNanos == 0 || interactive == 0 || yielding >= interactive) return;
+            yielding++;
+            yields.incrementAndGet();
+            try {
+                long end = System.nanoTime() + yieldMaxNanos;
+                long left;
+                while (interactive > 0 && (left = end - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(yieldLock, left);
+                }
+            } catch (InterruptedException e) {
+                // the batch is being given up on; the caller finds out
+                Thread.currentThread().interrupt();
+            } finally {
+                yielding--;
+            }
+        }
+    }
+
+    private int yielding() {
+        synchronized (yieldLock) {
+            return yielding;
+        }
+    }
+
+    private int interactive() {
+        synchronized (yieldLock) {
+            return interactive;
+        }
+    }
+
+    /** Batches waiting for a worker, workers busy with one, workers stuck on abandoned ones, single classes, and yields. */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("decompiler.workers.queued", executor, e -> e.getQueue().size()).register(registry);
+        Gauge.builder("decompiler.workers.active", executor, ThreadPoolExecutor::getActiveCount).register(registry);
+        Gauge.builder("decompiler.workers.size", this, DecompileWorkerPool::size).register(registry);
+        Gauge.builder("decompiler.workers.stranded", this, DecompileWorkerPool::stranded).register(registry);
+        Gauge.builder("decompiler.workers.interactive", this, DecompileWorkerPool::interactive)
+                .description("Single-class requests running on the interactive pool").register(registry);
+        Gauge.builder("decompiler.workers.yielding", this, DecompileWorkerPool::yielding).register(registry);
+        FunctionCounter.builder("decompiler.workers.yields", yields, AtomicLong::get)
+                .description("Class boundaries at which a worker paused for interactive requests").register(registry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+        interactiveExecutor.shutdownNow();
+    }
+}
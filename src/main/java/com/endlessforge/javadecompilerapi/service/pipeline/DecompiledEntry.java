@@ -0,0 +1,11 @@
+package com.endlessforge.javadecompilerapi.service.pipeline;
+
+import java.nio.charset.StandardCharsets;
+
+/** One finished output file, buffered by the worker that produced it. */
+public record DecompiledEntry(String path, byte[] content) {
+
+    public static DecompiledEntry source(String path, String source) {
+        return new DecompiledEntry(path, source.getBytes(StandardCharsets.UTF_8));
+    }
+}
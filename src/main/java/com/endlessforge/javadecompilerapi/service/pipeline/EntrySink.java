@@ -0,0 +1,43 @@
+package com.endlessforge.javadecompilerapi.service.pipeline;
+
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Where the pipeline puts finished entries. Only ever called from the pipeline's calling
+ * thread, so implementations need no locking.
+ */
+public interface EntrySink {
+
+    void put(DecompiledEntry entry) throws IOException;
+
+    /**
+     * A stub for a class the pipeline gave up on; {@code abandon} records that, and runs before the
+     * stub is written. Sinks that only hold it as a candidate (race modes) run it if the stub wins.
+     */
+    default void stub(DecompiledEntry entry, Runnable abandon) throws IOException {
+        abandon.run();
+        put(entry);
+    }
+
+    /** Called after each batch: push what is buffered to the client. */
+    default void flush() throws IOException {
+    }
+
+    static EntrySink zip(ZipOutputStream zos) {
+        return new EntrySink() {
+            @Override
+            public void put(DecompiledEntry entry) throws IOException {
+                zos.putNextEntry(new ZipEntry(entry.path()));
+                zos.write(entry.content());
+                zos.closeEntry();
+            }
+
+            @Override
+            public void flush() throws IOException {
+                zos.flush();
+            }
+        };
+    }
+}
@@ -0,0 +1,27 @@
+package com.endlessforge.javadecompilerapi.service.procyon;
+
+import com.strobel.assembler.metadata.ITypeLoader;
+import com.strobel.assembler.metadata.MetadataSystem;
+import com.strobel.assembler.metadata.TypeDefinition;
+
+/**
+ * MetadataSystem that resolves its own loader's types first and asks a parent for the rest.
+ * The parent is a long-lived layer over the JDK/classpath, so JDK types are read once per
+ * pooled context instead of once per request; request types never leak into it.
+ */
+class LayeredMetadataSystem extends MetadataSystem {
+
+    private final LayeredMetadataSystem parent;
+
+    LayeredMetadataSystem(ITypeLoader typeLoader, LayeredMetadataSystem parent) {
+        super(typeLoader);
+        this.parent = parent;
+    }
+
+    @Override
+    protected TypeDefinition resolveType(String descriptor, boolean mightBePrimitive) {
+        TypeDefinition own = super.resolveType(descriptor, mightBePrimitive);
+        if (own != null || parent == null) return own;
+        return parent.resolveType(descriptor, mightBePrimitive);
+    }
+}
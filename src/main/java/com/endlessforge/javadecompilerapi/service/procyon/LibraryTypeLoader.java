@@ -0,0 +1,25 @@
+package com.endlessforge.javadecompilerapi.service.procyon;
+
+import com.endlessforge.javadecompilerapi.service.library.Classpath;
+import com.strobel.assembler.metadata.Buffer;
+import com.strobel.assembler.metadata.ITypeLoader;
+
+/** Procyon type loader over a request's library JARs, reading through the store's shared class cache. */
+final class LibraryTypeLoader implements ITypeLoader {
+
+    private final Classpath classpath;
+
+    LibraryTypeLoader(Classpath classpath) {
+        this.classpath = classpath;
+    }
+
+    @Override
+    public boolean tryLoadType(String internalName, Buffer buffer) {
+        byte[] bytes = classpath.classFile(internalName + ".class");
+        if (bytes == null) return false;
+        buffer.reset(bytes.length);
+        buffer.putByteArray(bytes, 0, bytes.length);
+        buffer.position(0);
+        return true;
+    }
+}
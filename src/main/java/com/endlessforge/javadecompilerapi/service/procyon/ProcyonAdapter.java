@@ -1,99 +1,155 @@
 package com.endlessforge.javadecompilerapi.service.procyon;
 
+import com.endlessforge.javadecompilerapi.service.engine.EnginePool;
+import com.endlessforge.javadecompilerapi.service.library.Classpath;
+import com.endlessforge.javadecompilerapi.service.linemap.LineMap;
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompileContext;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompilePipeline;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+import com.endlessforge.javadecompilerapi.service.pipeline.EntrySink;
+import com.endlessforge.javadecompilerapi.util.ClassSelector;
+import com.endlessforge.javadecompilerapi.util.JarClasses;
+import com.strobel.decompiler.DecompilationOptions;
 import com.strobel.decompiler.Decompiler;
+import com.strobel.decompiler.ITextOutput;
 import com.strobel.decompiler.PlainTextOutput;
 import com.strobel.decompiler.DecompilerSettings;
+import com.strobel.decompiler.languages.LineNumberPosition;
+import com.strobel.decompiler.languages.TypeDecompilationResults;
 import com.strobel.assembler.metadata.ArrayTypeLoader;
+import com.strobel.assembler.metadata.DeobfuscationUtilities;
 import com.strobel.assembler.metadata.JarTypeLoader;
 import com.strobel.assembler.metadata.CompositeTypeLoader;
 import com.strobel.assembler.metadata.ITypeLoader;
+import com.strobel.assembler.metadata.MetadataSystem;
+import com.strobel.assembler.metadata.TypeDefinition;
+import com.strobel.assembler.metadata.TypeReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.*;
 import java.util.jar.JarFile;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 @Component
+@Lazy
 public class ProcyonAdapter {
 
+    private static final Logger log = LoggerFactory.getLogger(ProcyonAdapter.class);
+
+    private final DecompilePipeline pipeline;
+    private final EnginePool<ProcyonContext> contexts;
+    private final DecompileMetrics metrics;
+
+    public ProcyonAdapter(DecompilePipeline pipeline, DecompileMetrics metrics,
+                          @Value("${decompiler.engines.pool-size:0}") int poolSize) {
+        this.pipeline = pipeline;
+        this.metrics = metrics;
+        this.contexts = new EnginePool<>(poolSize > 0 ? poolSize : pipeline.workerCount(), ProcyonContext::new);
+    }
+
     public String decompileClass(byte[] classBytes, String providedClassName) throws IOException {
-        StringWriter writer = new StringWriter();
-        PlainTextOutput output = new PlainTextOutput(writer);
-        DecompilerSettings settings = DecompilerSettings.javaDefaults();
+        return decompileClass(classBytes, providedClassName, Classpath.EMPTY);
+    }
 
+    /** One class, with types it references looked up in {@code classpath} before the JDK. */
+    public String decompileClass(byte[] classBytes, String providedClassName, Classpath classpath) throws IOException {
         // Fix 1: ArrayTypeLoader requires the bytes in the constructor in 0.6.0
         ArrayTypeLoader arrayLoader = new ArrayTypeLoader(classBytes);
-        settings.setTypeLoader(arrayLoader);
 
-        String internalName = providedClassName;
-        if (internalName == null || internalName.isBlank()) {
-            File tmp = Files.createTempFile("procyon-class-", ".class").toFile();
-            try (FileOutputStream fos = new FileOutputStream(tmp)) {
-                fos.write(classBytes);
-            }
-            Decompiler.decompile(tmp.getAbsolutePath(), output, settings);
-            tmp.delete();
-        } else {
-            Decompiler.decompile(internalName.replace('.', '/'), output, settings);
+        // the uploaded bytes decide the name; a mismatching providedClassName would just fail to load
+        String internalName;
+        try {
+            internalName = arrayLoader.getClassNameFromArray();
+        } catch (IllegalStateException e) {
+            throw new IOException("procyon: cannot read class name: " + e.getMessage(), e);
         }
 
-        return writer.toString();
+        // JDK types come from the context's shared layer so signatures aren't left unresolved
+        return contexts.use(ctx -> {
+            StringWriter writer = new StringWriter();
+            decompile(ctx.metadataFor(arrayLoader, classpath), internalName, new PlainTextOutput(writer), ctx.options());
+            return writer.toString();
+        });
     }
 
-    public void decompileJarToZip(File jarFile, ZipOutputStream zos, String targetClass) {
-        try {
-            DecompilerSettings settings = DecompilerSettings.javaDefaults();
-            JarTypeLoader jarLoader = new JarTypeLoader(new JarFile(jarFile));
-            settings.setTypeLoader(new CompositeTypeLoader(jarLoader));
-
-            try (JarFile jf = new JarFile(jarFile)) {
-                Enumeration<java.util.jar.JarEntry> en = jf.entries();
-                while (en.hasMoreElements()) {
-                    java.util.jar.JarEntry entry = en.nextElement();
-                    if (entry.isDirectory() || !entry.getName().endsWith(".class")) continue;
-
-                    String internal = entry.getName().replaceAll("\\.class$", "");
+    /** Decompiles {@code classBytes} once on every pooled context so each has its JDK layer loaded. */
+    public void warmUp(byte[] classBytes) throws IOException {
+        String internalName = new ArrayTypeLoader(classBytes).getClassNameFromArray();
+        contexts.forEach(ctx -> {
+            decompile(ctx.metadataFor(new ArrayTypeLoader(classBytes)), internalName,
+                    new PlainTextOutput(new StringWriter()), ctx.options());
+            return null;
+        });
+    }
 
-                    if (targetClass != null && !targetClass.isBlank()) {
-                        if (!internal.replace('/', '.').equals(targetClass)) continue;
-                    }
+    public void decompileJarTo(File jarFile, EntrySink sink, ClassSelector selector, DecompileContext ctx) throws IOException {
+        try (JarFile jf = new JarFile(jarFile)) {
+            // JarTypeLoader reads referenced and nested types on demand, so a selection only costs its own classes
+            List<String> classes = selector == null ? JarClasses.topLevelClasses(jf) : selector.topLevelClasses(jf);
+            List<List<String>> batches = JarClasses.chunk(classes, pipeline.workerCount() * 4, 64);
+            pipeline.write("procyon", batches, name -> name, (batch, progress) -> contexts.use(pc -> {
+                decompileBatch(pc, jf, batch, progress, ctx);
+                return null;
+            }), sink, ctx);
+        }
+    }
 
-                    try {
-                        StringWriter writer = new StringWriter();
-                        Decompiler.decompile(internal, new PlainTextOutput(writer), settings);
-
-                        String path = internal + ".java";
-                        synchronized (zos) {
-                            zos.putNextEntry(new ZipEntry(path));
-                            zos.write(writer.toString().getBytes(StandardCharsets.UTF_8));
-                            zos.closeEntry();
-                        }
-                    } catch (Throwable t) {
-                        // Log error
-                    }
+    private void decompileBatch(ProcyonContext pc, JarFile jf, List<String> internalNames,
+                                DecompilePipeline.Progress<String> progress, DecompileContext ctx) {
+        // the batch's own types live in a MetadataSystem of their own (not thread-safe, dropped after
+        // the batch); types resolved for one class are reused by the next instead of re-read per class
+        MetadataSystem metadata = pc.metadataFor(new JarTypeLoader(jf), ctx.classpath());
+        for (String internal : internalNames) {
+            if (Thread.currentThread().isInterrupted()) break; // batch was cancelled (e.g. client left)
+            if (ctx.skips(internal)) continue;
+            progress.begin(internal);
+            try {
+                StringWriter writer = new StringWriter();
+                TypeDecompilationResults results = decompile(metadata, internal, new PlainTextOutput(writer), pc.options());
+                if (ctx.lineMaps() && results != null) {
+                    LineMap.Builder lines = new LineMap.Builder();
+                    for (LineNumberPosition p : results.getLineNumberPositions()) lines.add(p.getOriginalLine(), p.getEmittedLine());
+                    if (!lines.isEmpty()) progress.add(lines.build().entry(internal + ".java"));
                 }
+                progress.add(DecompiledEntry.source(internal + ".java", writer.toString()));
+            } catch (Throwable t) {
+                log.warn("procyon failed on {}: {}", internal, t.toString());
+                metrics.classesFailed("procyon", 1);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
     }
 
+    /**
+     * Same steps as {@link Decompiler#decompile}, but against a caller-owned MetadataSystem and prebuilt
+     * options. Returns the line positions Procyon recorded, or null when the class did not load.
+     */
+    private static TypeDecompilationResults decompile(MetadataSystem metadata, String internalName, ITextOutput output,
+                                                      DecompilationOptions options) {
+        TypeReference type = metadata.lookupType(internalName);
+        TypeDefinition resolved;
+        if (type == null || (resolved = type.resolve()) == null) {
+            output.writeLine("!!! ERROR: Failed to load class %s.", internalName);
+            return null;
+        }
+        DeobfuscationUtilities.processType(resolved);
+        return options.getSettings().getLanguage().decompileType(resolved, output, options);
+    }
+
     public void decompileJar(File jarFile, File outDir, String targetClass) {
         try {
             DecompilerSettings settings = DecompilerSettings.javaDefaults();
 
-            // Fix 2: JarTypeLoader requires a JarFile object
-            JarTypeLoader jarLoader = new JarTypeLoader(new JarFile(jarFile));
-
-            // Fix 3: Proper initialization of CompositeTypeLoader
-            ITypeLoader composite = new CompositeTypeLoader(jarLoader);
-            settings.setTypeLoader(composite);
-
             try (JarFile jf = new JarFile(jarFile)) {
+                // Fix 2: JarTypeLoader requires a JarFile object; share the one we enumerate
+                // Fix 3: Proper initialization of CompositeTypeLoader
+                ITypeLoader composite = new CompositeTypeLoader(new JarTypeLoader(jf));
+                settings.setTypeLoader(composite);
+
                 Enumeration<java.util.jar.JarEntry> en = jf.entries();
                 while (en.hasMoreElements()) {
                     java.util.jar.JarEntry entry = en.nextElement();
@@ -117,12 +173,13 @@ public class ProcyonAdapter {
                             fw.write(writer.toString());
                         }
                     } catch (Throwable t) {
-                        // Log failure inside the output file
+                        log.warn("procyon failed on {}: {}", internal, t.toString());
+                        metrics.classesFailed("procyon", 1);
                     }
                 }
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            log.warn("procyon could not read {}: {}", jarFile, e.toString());
         }
     }
 }
\ No newline at end of file
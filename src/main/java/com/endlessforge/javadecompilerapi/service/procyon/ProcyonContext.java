@@ -0,0 +1,57 @@
+package com.endlessforge.javadecompilerapi.service.procyon;
+
+import com.endlessforge.javadecompilerapi.service.library.Classpath;
+import com.strobel.assembler.metadata.ClasspathTypeLoader;
+import com.strobel.assembler.metadata.ITypeLoader;
+import com.strobel.decompiler.DecompilationOptions;
+import com.strobel.decompiler.DecompilerSettings;
+import com.strobel.decompiler.languages.java.JavaFormattingOptions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One pooled Procyon setup: settings built once and the JDK/classpath type layer that
+ * outlives requests. Per use only a thin {@link LayeredMetadataSystem} over the request's
+ * classes is created and dropped afterwards, which is the reset between uses.
+ * <p>
+ * Library classpaths get a layer of their own between the two, kept for the
+ * {@value #LIBRARY_LAYERS} most recently used ones: library types parsed for one request are
+ * there for the next request naming the same libraries.
+ */
+final class ProcyonContext {
+
+    static final int LIBRARY_LAYERS = 4;
+
+    private final LayeredMetadataSystem platform = new LayeredMetadataSystem(new ClasspathTypeLoader(), null);
+    private final Map<String, LayeredMetadataSystem> libraries = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LayeredMetadataSystem> eldest) {
+            return size() > LIBRARY_LAYERS;
+        }
+    };
+    private final DecompilationOptions options = new DecompilationOptions();
+
+    ProcyonContext() {
+        DecompilerSettings settings = DecompilerSettings.javaDefaults();
+        settings.setJavaFormattingOptions(JavaFormattingOptions.createDefault());
+        options.setSettings(settings);
+        options.setFullDecompilation(true);
+    }
+
+    DecompilationOptions options() {
+        return options;
+    }
+
+    LayeredMetadataSystem metadataFor(ITypeLoader requestLoader) {
+        return new LayeredMetadataSystem(requestLoader, platform);
+    }
+
+    /** The request's classes over {@code classpath}'s library layer over the JDK. */
+    LayeredMetadataSystem metadataFor(ITypeLoader requestLoader, Classpath classpath) {
+        if (classpath.isEmpty()) return metadataFor(requestLoader);
+        LayeredMetadataSystem layer = libraries.computeIfAbsent(classpath.key(),
+                key -> new LayeredMetadataSystem(new LibraryTypeLoader(classpath), platform));
+        return new LayeredMetadataSystem(requestLoader, layer);
+    }
+}
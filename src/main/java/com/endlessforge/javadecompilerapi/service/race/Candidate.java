@@ -0,0 +1,38 @@
+package com.endlessforge.javadecompilerapi.service.race;
+
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One engine's output for a source file; {@code rank} is the engine's place in the tie-break order.
+ * A stub for a class the engine gave up on carries {@code abandon}, run only if the stub is settled.
+ */
+record Candidate(String engine, int rank, DecompiledEntry entry, SourceQuality.Verdict verdict, Runnable abandon) {
+
+    static Candidate of(String engine, int rank, DecompiledEntry entry) {
+        return new Candidate(engine, rank, entry,
+                SourceQuality.assess(new String(entry.content(), StandardCharsets.UTF_8)), null);
+    }
+
+    static Candidate stub(String engine, int rank, DecompiledEntry entry, Runnable abandon) {
+        return new Candidate(engine, rank, entry,
+                SourceQuality.assess(new String(entry.content(), StandardCharsets.UTF_8)), abandon);
+    }
+
+    boolean isStub() {
+        return abandon != null;
+    }
+
+    String source() {
+        return new String(entry.content(), StandardCharsets.UTF_8);
+    }
+
+    boolean betterThan(Candidate other) {
+        // whatever an engine did produce beats a placeholder
+        if (isStub() != other.isStub()) return !isStub();
+        if (verdict.betterThan(other.verdict)) return true;
+        if (other.verdict.betterThan(verdict)) return false;
+        return rank < other.rank;
+    }
+}
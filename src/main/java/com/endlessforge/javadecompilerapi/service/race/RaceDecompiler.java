@@ -0,0 +1,182 @@
+package com.endlessforge.javadecompilerapi.service.race;
+
+import com.endlessforge.javadecompilerapi.service.cfr.CfrAdapter;
+import com.endlessforge.javadecompilerapi.service.jadx.JadxAdapter;
+import com.endlessforge.javadecompilerapi.service.library.Classpath;
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompileContext;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompileWorkerPool;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+import com.endlessforge.javadecompilerapi.service.pipeline.EntrySink;
+import com.endlessforge.javadecompilerapi.service.procyon.ProcyonAdapter;
+import com.endlessforge.javadecompilerapi.util.ClassSelector;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code race} and {@code best} modes: CFR, Procyon and JADX work on the same input at once.
+ * {@code race} keeps, per source file, the first result that passes {@link SourceQuality}, and
+ * the other engines skip that class; {@code best} waits for all three and keeps the passing one
+ * with the fewest warnings. When nothing passes, the least bad result is returned.
+ * <p>
+ * For a single class, each engine runs as one task on the worker pool's interactive threads and
+ * the request thread collects them. For an archive, each engine is driven from a race-driver
+ * thread, never from a decompile worker: a worker that waits on batches it queued behind itself
+ * deadlocks a one-worker pool. Drivers only queue batches and collect results, so the worker pool
+ * still bounds the CPU spent, and there are at most three per worker.
+ */
+@Service
+public class RaceDecompiler {
+
+    private static final Logger log = LoggerFactory.getLogger(RaceDecompiler.class);
+
+    /** Engines taking part, in tie-break order. */
+    public static final List<String> ENGINES = List.of("cfr", "procyon", "jadx");
+
+    /** Outcome for one class; {@code engine} is null when no engine produced any source. */
+    public record ClassResult(String engine, String source, boolean passed) {}
+
+    private final CfrAdapter cfr;
+    private final ProcyonAdapter procyon;
+    private final JadxAdapter jadx;
+    private final DecompileMetrics metrics;
+    private final DecompileWorkerPool workers;
+    private final ExecutorService drivers;
+
+    public RaceDecompiler(@Lazy CfrAdapter cfr, @Lazy ProcyonAdapter procyon, @Lazy JadxAdapter jadx,
+                          DecompileMetrics metrics, DecompileWorkerPool workers) {
+        this.cfr = cfr;
+        this.procyon = procyon;
+        this.jadx = jadx;
+        this.metrics = metrics;
+        this.workers = workers;
+        AtomicInteger n = new AtomicInteger();
+        // one archive race per worker at once; later ones queue until a race finishes
+        int threads = ENGINES.size() * workers.size();
+        this.drivers = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "race-driver-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        ((ThreadPoolExecutor) drivers).allowCoreThreadTimeOut(true);
+    }
+
+    public static boolean isRaceMode(String normalizedMode) {
+        return "race".equals(normalizedMode) || "best".equals(normalizedMode);
+    }
+
+    public ClassResult decompileClass(byte[] classBytes, String mode, String className) throws IOException {
+        return decompileClass(classBytes, mode, className, Classpath.EMPTY);
+    }
+
+    /** Runs the engines on the worker pool's interactive threads and waits for them on the calling thread. */
+    public ClassResult decompileClass(byte[] classBytes, String mode, String className, Classpath classpath) throws IOException {
+        CompletionService<Candidate> completion = new ExecutorCompletionService<>(workers.interactiveExecutor());
+        List<Future<Candidate>> runs = new ArrayList<>(ENGINES.size());
+        for (int rank = 0; rank < ENGINES.size(); rank++) {
+            String engine = ENGINES.get(rank);
+            int r = rank;
+            runs.add(completion.submit(() ->
+                    Candidate.of(engine, r, DecompiledEntry.source(engine, classSource(engine, classBytes, className, classpath)))));
+        }
+
+        Candidate best = null;
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                Candidate c;
+                try {
+                    c = completion.take().get();
+                } catch (ExecutionException e) {
+                    log.debug("{}: an engine failed: {}", mode, e.getCause().toString());
+                    continue;
+                }
+                if (best == null || c.betterThan(best)) best = c;
+                if ("race".equals(mode) && c.verdict().passed()) break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for the engines");
+        } finally {
+            // engines that ignore the interrupt run to the end and their result is dropped
+            for (Future<?> run : runs) run.cancel(true);
+        }
+        if (best == null) return new ClassResult(null, null, false);
+        metrics.raceWin(mode, best.engine(), best.verdict().passed());
+        return new ClassResult(best.engine(), best.source(), best.verdict().passed());
+    }
+
+    /**
+     * Races the engines over (the selected classes of) an archive into {@code sink}. Losing
+     * engines are not interrupted, since they may be inside a write to {@code sink}; they skip
+     * every class that is already settled instead.
+     */
+    public void decompileArchive(File jarFile, String mode, ClassSelector selector, EntrySink sink,
+                                 DecompileContext ctx) throws IOException {
+        RaceSink race = new RaceSink(sink, mode, ENGINES.size(), metrics);
+        DecompileContext engineCtx = ctx.skipping(race::isSettled);
+        List<Future<?>> runs = new ArrayList<>(ENGINES.size());
+        for (int rank = 0; rank < ENGINES.size(); rank++) {
+            String engine = ENGINES.get(rank);
+            EntrySink engineSink = race.forEngine(engine, rank);
+            runs.add(drivers.submit(() -> {
+                archive(engine, jarFile, selector, engineSink, engineCtx);
+                return null;
+            }));
+        }
+
+        int failed = 0;
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                try {
+                    runs.get(i).get();
+                } catch (ExecutionException e) {
+                    // the output is gone: the other engines fail on their next write as well
+                    if (race.failure() != null) throw race.failure();
+                    failed++;
+                    log.warn("{}: {} failed on {}: {}", mode, ENGINES.get(i), jarFile.getName(), e.getCause().toString());
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> run : runs) run.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for the engines");
+        }
+        if (failed == ENGINES.size()) throw new IOException("every engine failed on " + jarFile.getName());
+        race.finish();
+    }
+
+    private String classSource(String engine, byte[] classBytes, String className, Classpath classpath) throws IOException {
+        return switch (engine) {
+            case "cfr" -> cfr.decompileClass(classBytes, className, classpath);
+            case "procyon" -> procyon.decompileClass(classBytes, className, classpath);
+            case "jadx" -> jadx.decompileClass(classBytes, className, classpath);
+            default -> throw new IllegalArgumentException(engine);
+        };
+    }
+
+    private void archive(String engine, File jarFile, ClassSelector selector, EntrySink sink,
+                         DecompileContext ctx) throws IOException {
+        switch (engine) {
+            case "cfr" -> cfr.decompileJarTo(jarFile, sink, selector, ctx);
+            case "procyon" -> procyon.decompileJarTo(jarFile, sink, selector, ctx);
+            case "jadx" -> jadx.decompileJarTo(jarFile, sink, selector, ctx);
+            default -> throw new IllegalArgumentException(engine);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        drivers.shutdownNow();
+    }
+}
@@ -0,0 +1,163 @@
+package com.endlessforge.javadecompilerapi.service.race;
+
+import com.endlessforge.javadecompilerapi.service.linemap.LineMap;
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+import com.endlessforge.javadecompilerapi.service.pipeline.EntrySink;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Where every engine of one race writes. Each source file is settled once: in {@code race} mode
+ * by the first result that passes, in {@code best} mode when all engines have reported it. Only
+ * the settled result reaches {@code target}. The engines' pipelines call in from their own
+ * threads, so writes are serialized here and {@code target} still sees one writer at a time.
+ * An engine's line map arrives ahead of its source and is written only with that source. A stub
+ * for a class an engine timed out on is a candidate like any other (one that never passes): the
+ * class is recorded as abandoned only if the stub is what gets settled.
+ */
+final class RaceSink {
+
+    private final EntrySink target;
+    private final String mode;
+    private final boolean firstWins;
+    private final int engines;
+    private final DecompileMetrics metrics;
+
+    // target is written while holding it; a virtual thread parked on a monitor would pin its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    // read without the lock by the engines' skip checks
+    private final Set<String> settled = ConcurrentHashMap.newKeySet();
+    private final Map<String, Candidate> pending = new HashMap<>();
+    private final Map<String, Integer> reports = new HashMap<>();
+    // unit -> engine -> that engine's line map, until the unit is settled
+    private final Map<String, Map<String, DecompiledEntry>> lineMaps = new HashMap<>();
+    private IOException failure;
+
+    RaceSink(EntrySink target, String mode, int engines, DecompileMetrics metrics) {
+        this.target = target;
+        this.mode = mode;
+        this.firstWins = "race".equals(mode);
+        this.engines = engines;
+        this.metrics = metrics;
+    }
+
+    EntrySink forEngine(String engine, int rank) {
+        return new EntrySink() {
+            @Override
+            public void put(DecompiledEntry entry) throws IOException {
+                if (LineMap.isEntry(entry.path())) offerLines(engine, entry);
+                else offer(Candidate.of(engine, rank, entry));
+            }
+
+            @Override
+            public void stub(DecompiledEntry entry, Runnable abandon) throws IOException {
+                offer(Candidate.stub(engine, rank, entry, abandon));
+            }
+
+            @Override
+            public void flush() throws IOException {
+                RaceSink.this.flush();
+            }
+        };
+    }
+
+    /** Whether the top-level class {@code internalName} has its source already; the others skip it. */
+    boolean isSettled(String internalName) {
+        return settled.contains(internalName);
+    }
+
+    /** The write failure that ended the race (client gone), if any. */
+    IOException failure() {
+        lock.lock();
+        try {
+            return failure;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void offerLines(String engine, DecompiledEntry entry) {
+        String path = entry.path();
+        String unit = path.substring(0, path.length() - LineMap.SUFFIX.length());
+        lock.lock();
+        try {
+            if (!settled.contains(unit)) lineMaps.computeIfAbsent(unit, u -> new HashMap<>()).put(engine, entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void offer(Candidate c) throws IOException {
+        String unit = unitOf(c.entry().path());
+        lock.lock();
+        try {
+            if (settled.contains(unit)) return;
+            if (firstWins && c.verdict().passed()) {
+                settle(unit, c);
+                return;
+            }
+            Candidate best = pending.get(unit);
+            if (best == null || c.betterThan(best)) pending.put(unit, c);
+            if (!firstWins && reports.merge(unit, 1, Integer::sum) >= engines) settle(unit, pending.get(unit));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flush() throws IOException {
+        lock.lock();
+        try {
+            flushLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Once every engine is done: writes the best of what is left, failing results included. */
+    void finish() throws IOException {
+        lock.lock();
+        try {
+            for (Map.Entry<String, Candidate> e : new ArrayList<>(pending.entrySet())) settle(e.getKey(), e.getValue());
+            flushLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLocked() throws IOException {
+        if (failure != null) throw failure;
+        try {
+            target.flush();
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+    }
+
+    private void settle(String unit, Candidate c) throws IOException {
+        settled.add(unit);
+        pending.remove(unit);
+        reports.remove(unit);
+        Map<String, DecompiledEntry> maps = lineMaps.remove(unit);
+        if (failure != null) throw failure;
+        // recorded before the stub is written, as outside a race
+        if (c.isStub()) c.abandon().run();
+        try {
+            DecompiledEntry lines = maps == null ? null : maps.get(c.engine());
+            if (lines != null) target.put(lines);
+            target.put(c.entry());
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+        metrics.raceWin(mode, c.engine(), c.verdict().passed());
+    }
+
+    private static String unitOf(String path) {
+        return path.endsWith(".java") ? path.substring(0, path.length() - ".java".length()) : path;
+    }
+}
@@ -0,0 +1,104 @@
+package com.endlessforge.javadecompilerapi.service.race;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Cheap acceptance test for decompiled source: not empty, none of the engines' own failure
+ * markers, and a lexical parse check (comments, literals and bracket nesting all close). The
+ * runtime image is a JRE, so there is no javac to do a real parse.
+ */
+final class SourceQuality {
+
+    /** Text the engines put in place of code they could not decompile. */
+    private static final List<String> FAILURE_MARKERS = List.of(
+            // CFR
+            "This method has failed to decompile",
+            "throw new IllegalStateException(\"Decompilation failed\")",
+            // Procyon
+            "This method could not be decompiled",
+            "An error occurred while decompiling this method",
+            "!!! ERROR",
+            // JADX
+            "JADX ERROR",
+            "Method decompilation failed",
+            "Code decompiled incorrectly",
+            "Method dump skipped",
+            // stub for a class that ran out of time (DecompilePipeline)
+            "Decompilation timed out");
+
+    /** {@code warnings} counts engine warnings (CFR {@code WARNING}, JADX {@code JADX WARN}); fewer is better. */
+    record Verdict(boolean passed, int warnings, String reason) {
+
+        /** Passing beats failing, then fewer warnings. */
+        boolean betterThan(Verdict other) {
+            if (passed != other.passed) return passed;
+            return warnings < other.warnings;
+        }
+    }
+
+    private SourceQuality() {}
+
+    static Verdict assess(String source) {
+        if (source == null || source.isBlank()) return new Verdict(false, 0, "empty");
+        int warnings = count(source, "WARN");
+        for (String marker : FAILURE_MARKERS) {
+            if (source.contains(marker)) return new Verdict(false, warnings, "contains \"" + marker + "\"");
+        }
+        String problem = lexicalProblem(source);
+        if (problem != null) return new Verdict(false, warnings, problem);
+        return new Verdict(true, warnings, "ok");
+    }
+
+    private static int count(String s, String needle) {
+        int n = 0;
+        for (int i = s.indexOf(needle); i >= 0; i = s.indexOf(needle, i + needle.length())) n++;
+        return n;
+    }
+
+    /** First structural problem, or null: unbalanced brackets, unterminated comments or literals. */
+    static String lexicalProblem(String s) {
+        Deque<Character> open = new ArrayDeque<>();
+        int line = 1;
+        int i = 0;
+        int n = s.length();
+        while (i < n) {
+            char c = s.charAt(i);
+            if (c == '\n') {
+                line++;
+                i++;
+            } else if (c == '/' && i + 1 < n && s.charAt(i + 1) == '/') {
+                while (i < n && s.charAt(i) != '\n') i++;
+            } else if (c == '/' && i + 1 < n && s.charAt(i + 1) == '*') {
+                int end = s.indexOf("*/", i + 2);
+                if (end < 0) return "unterminated comment at line " + line;
+                line += count(s.substring(i, end), "\n");
+                i = end + 2;
+            } else if (s.startsWith("\"\"\"", i)) {
+                int end = s.indexOf("\"\"\"", i + 3);
+                while (end > 0 && s.charAt(end - 1) == '\\') end = s.indexOf("\"\"\"", end + 1);
+                if (end < 0) return "unterminated text block at line " + line;
+                line += count(s.substring(i, end), "\n");
+                i = end + 3;
+            } else if (c == '"' || c == '\'') {
+                int j = i + 1;
+                while (j < n && s.charAt(j) != c && s.charAt(j) != '\n') j += s.charAt(j) == '\\' ? 2 : 1;
+                if (j >= n || s.charAt(j) != c) return "unterminated literal at line " + line;
+                i = j + 1;
+            } else {
+                switch (c) {
+                    case '(' -> open.push(')');
+                    case '[' -> open.push(']');
+                    case '{' -> open.push('}');
+                    case ')', ']', '}' -> {
+                        if (open.isEmpty() || open.pop() != c) return "unbalanced '" + c + "' at line " + line;
+                    }
+                    default -> { }
+                }
+                i++;
+            }
+        }
+        return open.isEmpty() ? null : "missing '" + open.peek() + "' at end";
+    }
+}
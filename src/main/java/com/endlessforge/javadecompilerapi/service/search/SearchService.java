@@ -0,0 +1,193 @@
+package com.endlessforge.javadecompilerapi.service.search;
+
+import com.endlessforge.javadecompilerapi.service.cache.DecompilationCache;
+import com.endlessforge.javadecompilerapi.service.cache.PinnedArchive;
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Search over decompiled results without decompiling again. A result archive in the disk cache
+ * gets a {@link SourceIndex} as its {@code .idx} sidecar, built from the archive when the JAR
+ * request asks for it or on the first query, and evicted with the archive. Indexes are named
+ * {@code <jar sha256>:<mode>[-<options>]} after the archive they index.
+ * <p>
+ * The dictionaries of the {@code decompiler.search.open-indexes} most recently queried indexes stay
+ * in memory; a query then reads only the postings it returns plus the source lines for snippets.
+ */
+@Service
+public class SearchService {
+
+    private static final String EXTENSION = "idx";
+    private static final int MAX_SNIPPET = 200;
+
+    private record Opened(SourceIndex index, FileTime modified) {}
+
+    private final DecompilationCache cache;
+    private final DecompileMetrics metrics;
+    private final int maxHits;
+    private final Map<Path, Opened> open;
+
+    public SearchService(DecompilationCache cache, DecompileMetrics metrics,
+                         @Value("${decompiler.search.open-indexes:16}") int openIndexes,
+                         @Value("${decompiler.search.max-hits:500}") int maxHits) {
+        this.cache = cache;
+        this.metrics = metrics;
+        this.maxHits = maxHits;
+        // access-ordered so the least recently queried index is dropped first
+        this.open = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Opened> eldest) {
+                return size() > Math.max(1, openIndexes);
+            }
+        };
+    }
+
+    public int maxHits() {
+        return maxHits;
+    }
+
+    /**
+     * Indexes a result archive unless it already is, and returns the index's name; null when the
+     * archive is not a ZIP in the disk cache (disabled, another encoding, or a result that is never cached).
+     */
+    public String index(Path archive) throws IOException {
+        if (!cache.holds(archive) || !DecompilationCache.isZip(archive)) return null;
+        Path target = DecompilationCache.sidecar(archive, EXTENSION);
+        if (!Files.exists(target)) {
+            long start = System.nanoTime();
+            // concurrent builds of one index are harmless: the cache keeps the first
+            Path tmp = Files.createTempFile(archive.getParent(), "index-", ".tmp");
+            try {
+                SourceIndex.build(archive, tmp);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            if (!cache.storeSidecar(archive, EXTENSION, tmp)) return null;
+            metrics.searchIndexed(System.nanoTime() - start);
+        }
+        return DecompilationCache.resultName(archive);
+    }
+
+    /**
+     * Looks {@code query} up in the index named {@code indexName} (see {@link #index}), indexing the
+     * archive first when needed. Returns null when there is no such result in the cache.
+     *
+     * @param kind null for every kind
+     */
+    public Map<String, Object> search(String indexName, String query, TermKind kind, int limit) throws IOException {
+        // pinned: the archive and its index stay until the snippets are read
+        try (PinnedArchive pinned = cache.pinResult(indexName)) {
+            return pinned == null ? null : search(pinned.path(), indexName, query, kind, limit);
+        }
+    }
+
+    private Map<String, Object> search(Path archive, String indexName, String query, TermKind kind, int limit)
+            throws IOException {
+        long start = System.nanoTime();
+        if (index(archive) == null) {
+            forget(archive);
+            return null;
+        }
+        SourceIndex index = opened(DecompilationCache.sidecar(archive, EXTENSION));
+
+        int max = Math.max(1, Math.min(limit, maxHits));
+        List<SourceIndex.Match> matches = index.find(query, kind);
+        long total = 0;
+        List<Hit> hits = new ArrayList<>();
+        try (FileChannel channel = index.channel()) {
+            for (SourceIndex.Match match : matches) {
+                total += match.count();
+                if (hits.size() >= max) continue;
+                int[] pairs = index.postings(channel, match, max - hits.size());
+                for (int j = 0; j < pairs.length; j += 2) {
+                    hits.add(new Hit(index.file(pairs[j]), pairs[j + 1], match.kind(), match.term()));
+                }
+            }
+        }
+        hits.sort(Comparator.comparing(Hit::file).thenComparingInt(Hit::line));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("index", indexName);
+        result.put("query", query);
+        result.put("kind", kind == null ? "any" : kind.label());
+        result.put("files", index.fileCount());
+        result.put("total", total);
+        result.put("truncated", total > hits.size());
+        result.put("classes", hits.stream().map(h -> className(h.file())).distinct().toList());
+        result.put("hits", withSnippets(archive, hits));
+        metrics.searchQuery(kind == null ? "any" : kind.label(), System.nanoTime() - start);
+        return result;
+    }
+
+    private record Hit(String file, int line, TermKind kind, String term) {}
+
+    private List<Map<String, Object>> withSnippets(Path archive, List<Hit> hits) throws IOException {
+        List<Map<String, Object>> out = new ArrayList<>(hits.size());
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            String file = null;
+            String[] lines = new String[0];
+            for (Hit hit : hits) {
+                if (!hit.file().equals(file)) {
+                    file = hit.file();
+                    ZipEntry entry = zip.getEntry(file);
+                    try (InputStream in = entry == null ? InputStream.nullInputStream() : zip.getInputStream(entry)) {
+                        lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n", -1);
+                    }
+                }
+                String snippet = hit.line() <= lines.length ? lines[hit.line() - 1].strip() : "";
+                Map<String, Object> m = new LinkedHashMap<>();
+                m.put("class", className(hit.file()));
+                m.put("file", hit.file());
+                m.put("line", hit.line());
+                m.put("kind", hit.kind().label());
+                m.put("term", hit.term());
+                m.put("snippet", snippet.length() > MAX_SNIPPET ? snippet.substring(0, MAX_SNIPPET) : snippet);
+                out.add(m);
+            }
+        }
+        return out;
+    }
+
+    /** Top-level class of a source path; units of fat JARs and WARs are prefixed with their own path. */
+    private static String className(String file) {
+        int nested = file.lastIndexOf(".jar/");
+        String path = nested < 0 ? file : file.substring(nested + ".jar/".length());
+        for (String root : List.of("BOOT-INF/classes/", "WEB-INF/classes/")) {
+            if (path.startsWith(root)) path = path.substring(root.length());
+        }
+        return path.substring(0, path.length() - ".java".length()).replace('/', '.');
+    }
+
+    private SourceIndex opened(Path file) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(file);
+        synchronized (open) {
+            Opened o = open.get(file);
+            if (o != null && o.modified().equals(modified)) return o.index();
+        }
+        // a rebuilt index (the archive was stored again) has a new timestamp
+        SourceIndex index = SourceIndex.open(file);
+        synchronized (open) {
+            open.put(file, new Opened(index, modified));
+        }
+        return index;
+    }
+
+    private void forget(Path archive) {
+        synchronized (open) {
+            open.remove(DecompilationCache.sidecar(archive, EXTENSION));
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.endlessforge.javadecompilerapi.service.search;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Inverted index over the sources of one result archive, kept in a file next to it:
+ * <pre>
+ *   magic, file count, file paths          the archive's .java entries; a posting's file is an index here
+ *   postings                               per term: (file delta, line) varint pairs, files ascending
+ *   dictionary                             per term: kind, text, postings offset, length and count
+ *   dictionary offset (8 bytes)
+ * </pre>
+ * Terms are sorted case-insensitively. Opening reads the paths and the dictionary; postings are
+ * read from the file per query, so an open index costs its dictionary only.
+ */
+final class SourceIndex {
+
+    private static final int MAGIC = 0x4a445831; // "JDX1"
+
+    /** A term of the dictionary that matched a query. */
+    record Match(TermKind kind, String term, int count, long offset, int length) {}
+
+    private final Path file;
+    private final String[] files;
+    private final String[] keys;    // lower-cased terms, sorted
+    private final String[] terms;
+    private final byte[] kinds;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] counts;
+
+    private SourceIndex(Path file, String[] files, String[] terms, byte[] kinds, long[] offsets, int[] lengths, int[] counts) {
+        this.file = file;
+        this.files = files;
+        this.terms = terms;
+        this.kinds = kinds;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.counts = counts;
+        this.keys = new String[terms.length];
+        for (int i = 0; i < terms.length; i++) keys[i] = terms[i].toLowerCase(Locale.ROOT);
+    }
+
+    // ---- building ----
+
+    /** Postings of one term while building: (file, line) pairs, in the order the sources were read. */
+    private static final class Postings {
+        final TermKind kind;
+        final String term;
+        int[] data = new int[4];
+        int size;
+
+        Postings(TermKind kind, String term) {
+            this.kind = kind;
+            this.term = term;
+        }
+
+        void add(int file, int line) {
+            if (size > 0 && data[size - 2] == file && data[size - 1] == line) return;
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = file;
+            data[size++] = line;
+        }
+    }
+
+    /** Indexes every {@code .java} entry of {@code archive} into {@code target}; returns the number of terms. */
+    static int build(Path archive, Path target) throws IOException {
+        List<String> files = new ArrayList<>();
+        Map<String, Postings> postings = new HashMap<>();
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                if (entry.isDirectory() || !entry.getName().endsWith(".java")) continue;
+                String source;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    source = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                }
+                int fileId = files.size();
+                files.add(entry.getName());
+                SourceScanner.scan(source, (kind, term, line) ->
+                        postings.computeIfAbsent(kind.ordinal() + "\0" + term, key -> new Postings(kind, term)).add(fileId, line));
+            }
+        }
+
+        List<Postings> sorted = new ArrayList<>(postings.values());
+        sorted.sort(Comparator.comparing((Postings p) -> p.term.toLowerCase(Locale.ROOT))
+                .thenComparing(p -> p.term)
+                .thenComparing(p -> p.kind));
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(files.size());
+            for (String f : files) out.writeUTF(f);
+
+            long[] offsets = new long[sorted.size()];
+            int[] lengths = new int[sorted.size()];
+            for (int i = 0; i < sorted.size(); i++) {
+                Postings p = sorted.get(i);
+                offsets[i] = out.size();
+                int prevFile = 0;
+                int prevLine = 0;
+                for (int j = 0; j < p.size; j += 2) {
+                    int f = p.data[j];
+                    int line = p.data[j + 1];
+                    writeVarint(out, f - prevFile);
+                    writeVarint(out, f == prevFile && j > 0 ? line - prevLine : line);
+                    prevFile = f;
+                    prevLine = line;
+                }
+                lengths[i] = (int) (out.size() - offsets[i]);
+            }
+
+            long dictionary = out.size();
+            out.writeInt(sorted.size());
+            for (int i = 0; i < sorted.size(); i++) {
+                Postings p = sorted.get(i);
+                out.writeByte(p.kind.ordinal());
+                out.writeUTF(p.term);
+                out.writeInt((int) offsets[i]);
+                out.writeInt(lengths[i]);
+                out.writeInt(p.size / 2);
+            }
+            out.writeLong(dictionary);
+        }
+        return sorted.size();
+    }
+
+    private static void writeVarint(DataOutput out, int v) throws IOException {
+        while ((v & ~0x7f) != 0) {
+            out.writeByte((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    // ---- reading ----
+
+    static SourceIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer trailer = ByteBuffer.allocate(8);
+            channel.read(trailer, channel.size() - 8);
+            long dictionary = trailer.flip().getLong();
+
+            String[] files;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+                if (in.readInt() != MAGIC) throw new IOException("not a search index: " + file);
+                files = new String[in.readInt()];
+                for (int i = 0; i < files.length; i++) files[i] = in.readUTF();
+            }
+
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel.position(dictionary)), 64 * 1024))) {
+                int n = in.readInt();
+                String[] terms = new String[n];
+                byte[] kinds = new byte[n];
+                long[] offsets = new long[n];
+                int[] lengths = new int[n];
+                int[] counts = new int[n];
+                for (int i = 0; i < n; i++) {
+                    kinds[i] = in.readByte();
+                    terms[i] = in.readUTF();
+                    offsets[i] = in.readInt() & 0xffffffffL;
+                    lengths[i] = in.readInt();
+                    counts[i] = in.readInt();
+                }
+                return new SourceIndex(file, files, terms, kinds, offsets, lengths, counts);
+            }
+        }
+    }
+
+    int fileCount() {
+        return files.length;
+    }
+
+    int termCount() {
+        return terms.length;
+    }
+
+    String file(int id) {
+        return files[id];
+    }
+
+    /**
+     * Terms matching {@code query}, case-insensitively: the whole term, or with {@code *} (any run of
+     * characters) and {@code ?} as wildcards. {@code kind} null matches every kind.
+     */
+    List<Match> find(String query, TermKind kind) {
+        String key = query.toLowerCase(Locale.ROOT);
+        List<Match> matches = new ArrayList<>();
+        if (key.indexOf('*') < 0 && key.indexOf('?') < 0) {
+            for (int i = firstAtLeast(key); i < keys.length && keys[i].equals(key); i++) add(matches, i, kind);
+            return matches;
+        }
+        // a literal prefix narrows the scan to its range of the sorted dictionary
+        int wildcard = Math.min(key.indexOf('*') < 0 ? key.length() : key.indexOf('*'),
+                key.indexOf('?') < 0 ? key.length() : key.indexOf('?'));
+        String prefix = key.substring(0, wildcard);
+        Pattern pattern = glob(key);
+        for (int i = firstAtLeast(prefix); i < keys.length && keys[i].startsWith(prefix); i++) {
+            if (pattern.matcher(keys[i]).matches()) add(matches, i, kind);
+        }
+        return matches;
+    }
+
+    /** Position of the first key not sorting before {@code key}. */
+    private int firstAtLeast(String key) {
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private void add(List<Match> matches, int i, TermKind kind) {
+        TermKind k = TermKind.values()[kinds[i]];
+        if (kind == null || kind == k) matches.add(new Match(k, terms[i], counts[i], offsets[i], lengths[i]));
+    }
+
+    /** Reads the (file, line) pairs of {@code match}, at most {@code limit} of them. */
+    int[] postings(FileChannel channel, Match match, int limit) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(match.length());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, match.offset() + buffer.position()) < 0) throw new EOFException(file.toString());
+        }
+        buffer.flip();
+        int n = Math.min(limit, match.count());
+        int[] pairs = new int[n * 2];
+        int f = 0;
+        int line = 0;
+        for (int j = 0; j < n; j++) {
+            int fileDelta = readVarint(buffer);
+            int lineValue = readVarint(buffer);
+            line = fileDelta == 0 && j > 0 ? line + lineValue : lineValue;
+            f += fileDelta;
+            pairs[2 * j] = f;
+            pairs[2 * j + 1] = line;
+        }
+        return pairs;
+    }
+
+    FileChannel channel() throws IOException {
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+    }
+
+    private static Pattern glob(String key) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : key.toCharArray()) {
+            if (c == '*') regex.append(".*");
+            else if (c == '?') regex.append('.');
+            else regex.append(Pattern.quote(String.valueOf(c)));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+}
@@ -0,0 +1,297 @@
+package com.endlessforge.javadecompilerapi.service.search;
+
+import java.util.*;
+
+/**
+ * Pulls the terms out of one decompiled source: declared types, methods (name and parameter
+ * types) and fields, string literals, and every identifier. A tokenizer plus a few rules about
+ * what follows what at class-body level, which is all decompiler output needs; members of
+ * anonymous and local classes count as identifiers only.
+ */
+final class SourceScanner {
+
+    /** Receives terms in source order. */
+    @FunctionalInterface
+    interface TermSink {
+        void term(TermKind kind, String term, int line);
+    }
+
+    // longer string constants are cut; nobody searches for a whole paragraph
+    static final int MAX_TERM_LENGTH = 200;
+
+    private static final Set<String> KEYWORDS = Set.of(
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+            "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+            "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+            "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp",
+            "super", "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void",
+            "volatile", "while", "true", "false", "null", "var", "record", "yield", "sealed", "permits");
+
+    // words after which a name followed by "(" or "=" is not being declared
+    private static final Set<String> NOT_A_TYPE = Set.of(
+            "new", "return", "throw", "else", "case", "extends", "implements", "throws", "permits",
+            "package", "import", "assert", "instanceof", "yield", "default");
+
+    private static final Set<String> TYPE_KEYWORDS = Set.of("class", "interface", "enum", "record");
+
+    private record Token(String text, int line, boolean ident) {}
+
+    /** A type whose body is open at brace depth {@code depth}. */
+    private record Scope(String name, String simpleName, int depth, boolean isEnum) {}
+
+    private SourceScanner() {}
+
+    static void scan(String source, TermSink out) {
+        declarations(tokenize(source, out), out);
+    }
+
+    /** Splits {@code source} into tokens; string and char literals are reported here and left as a placeholder. */
+    private static List<Token> tokenize(String src, TermSink out) {
+        List<Token> tokens = new ArrayList<>(src.length() / 4);
+        int n = src.length();
+        int line = 1;
+        int i = 0;
+        while (i < n) {
+            char c = src.charAt(i);
+            if (c == '\n') {
+                line++;
+                i++;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '/' && i + 1 < n && src.charAt(i + 1) == '/') {
+                while (i < n && src.charAt(i) != '\n') i++;
+            } else if (c == '/' && i + 1 < n && src.charAt(i + 1) == '*') {
+                int end = src.indexOf("*/", i + 2);
+                end = end < 0 ? n : end + 2;
+                line += count(src, i, end, '\n');
+                i = end;
+            } else if (src.startsWith("\"\"\"", i)) {
+                int end = i + 3;
+                while (end < n && !src.startsWith("\"\"\"", end)) end += src.charAt(end) == '\\' ? 2 : 1;
+                String text = src.substring(i + 3, Math.min(end, n)).strip().replaceAll("\\s+", " ");
+                if (!text.isEmpty()) out.term(TermKind.STRING, cut(text), line);
+                tokens.add(new Token("\"\"", line, false));
+                end = Math.min(n, end + 3);
+                line += count(src, i, end, '\n');
+                i = end;
+            } else if (c == '"' || c == '\'') {
+                int end = i + 1;
+                while (end < n && src.charAt(end) != c && src.charAt(end) != '\n') end += src.charAt(end) == '\\' ? 2 : 1;
+                if (c == '"' && end > i + 1) out.term(TermKind.STRING, cut(src.substring(i + 1, Math.min(end, n))), line);
+                tokens.add(new Token(String.valueOf(c) + c, line, false));
+                i = Math.min(n, end + 1);
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int end = i + 1;
+                while (end < n && Character.isJavaIdentifierPart(src.charAt(end))) end++;
+                tokens.add(new Token(src.substring(i, end), line, true));
+                i = end;
+            } else if (Character.isDigit(c)) {
+                int end = i + 1;
+                while (end < n && (Character.isLetterOrDigit(src.charAt(end)) || src.charAt(end) == '_'
+                        || src.charAt(end) == '.' && end + 1 < n && Character.isDigit(src.charAt(end + 1)))) end++;
+                tokens.add(new Token("0", line, false));
+                i = end;
+            } else if (src.startsWith("...", i)) {
+                tokens.add(new Token("...", line, false));
+                i += 3;
+            } else {
+                tokens.add(new Token(String.valueOf(c), line, false));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static void declarations(List<Token> tokens, TermSink out) {
+        String pkg = "";
+        Deque<Scope> scopes = new ArrayDeque<>();
+        int depth = 0;
+        int parens = 0;
+        Token pendingType = null;   // declared type whose body has not opened yet
+        boolean pendingEnum = false;
+        boolean memberHeader = false; // between a method's name and its body (throws lists)
+        boolean enumConstants = false;
+
+        for (int k = 0; k < tokens.size(); k++) {
+            Token t = tokens.get(k);
+            String text = t.text;
+            Token prev = k > 0 ? tokens.get(k - 1) : null;
+            Token next = k + 1 < tokens.size() ? tokens.get(k + 1) : null;
+
+            if (t.ident && !KEYWORDS.contains(text)) out.term(TermKind.IDENTIFIER, text, t.line);
+
+            switch (text) {
+                case "(" -> parens++;
+                case ")" -> parens = Math.max(0, parens - 1);
+                case "{" -> {
+                    depth++;
+                    if (pendingType != null) {
+                        Scope outer = scopes.peek();
+                        String name = outer != null ? outer.name + "." + pendingType.text
+                                : pkg.isEmpty() ? pendingType.text : pkg + "." + pendingType.text;
+                        scopes.push(new Scope(name, pendingType.text, depth, pendingEnum));
+                        enumConstants = pendingEnum;
+                        pendingType = null;
+                    }
+                    memberHeader = false;
+                }
+                case "}" -> {
+                    if (!scopes.isEmpty() && scopes.peek().depth == depth) scopes.pop();
+                    depth--;
+                }
+                case ";" -> {
+                    memberHeader = false;
+                    if (!scopes.isEmpty() && scopes.peek().depth == depth) enumConstants = false;
+                }
+                default -> {}
+            }
+
+            if (depth == 0 && parens == 0 && (text.equals("package") || text.equals("import"))) {
+                String name = qualifiedName(tokens, k + 1);
+                if (text.equals("package")) pkg = name;
+                else if (name.contains(".")) out.term(TermKind.IDENTIFIER, name, t.line);
+                continue;
+            }
+
+            if (TYPE_KEYWORDS.contains(text) && next != null && next.ident && parens == 0
+                    && (prev == null || !prev.text.equals("."))) {
+                Scope outer = scopes.peek();
+                // a local or anonymous class has no name worth qualifying; its members are skipped below
+                if (outer == null || outer.depth == depth) {
+                    String qualified = outer != null ? outer.name + "." + next.text
+                            : pkg.isEmpty() ? next.text : pkg + "." + next.text;
+                    out.term(TermKind.CLASS, next.text, next.line);
+                    if (!qualified.equals(next.text)) out.term(TermKind.CLASS, qualified, next.line);
+                    pendingType = next;
+                    pendingEnum = text.equals("enum");
+                }
+                continue;
+            }
+
+            Scope scope = scopes.peek();
+            if (scope == null || depth != scope.depth || parens != 0 || pendingType != null || memberHeader
+                    || !t.ident || KEYWORDS.contains(text) || next == null || prev == null) continue;
+
+            boolean afterType = prev.ident && !NOT_A_TYPE.contains(prev.text) || prev.text.equals(">") || prev.text.equals("]");
+            boolean enumConstant = enumConstants && (prev.text.equals("{") || prev.text.equals(","));
+            switch (next.text) {
+                case "(" -> {
+                    if (enumConstant) {
+                        out.term(TermKind.FIELD, text, t.line);
+                    } else if (afterType || text.equals(scope.simpleName)) {
+                        out.term(TermKind.METHOD, text, t.line);
+                        String signature = signature(tokens, k);
+                        if (signature != null) out.term(TermKind.METHOD, signature, t.line);
+                        memberHeader = true;
+                    }
+                }
+                case "=", ";", "," -> {
+                    if (afterType || enumConstant) out.term(TermKind.FIELD, text, t.line);
+                }
+                case "{" -> {
+                    if (enumConstant) out.term(TermKind.FIELD, text, t.line);
+                }
+                default -> {}
+            }
+        }
+    }
+
+    /** {@code a.b.C} starting at {@code from}, up to the {@code ;}; wildcards and {@code static} left out. */
+    private static String qualifiedName(List<Token> tokens, int from) {
+        StringBuilder sb = new StringBuilder();
+        for (int k = from; k < tokens.size() && !tokens.get(k).text.equals(";"); k++) {
+            Token t = tokens.get(k);
+            if (t.text.equals("static") || t.text.equals("*")) continue;
+            sb.append(t.text);
+        }
+        String name = sb.toString();
+        return name.endsWith(".") ? name.substring(0, name.length() - 1) : name;
+    }
+
+    /** {@code name(Type,Type)} for the method named at {@code k}, parameter names and annotations left out. */
+    private static String signature(List<Token> tokens, int k) {
+        List<List<Token>> params = new ArrayList<>();
+        List<Token> param = new ArrayList<>();
+        int parens = 0;
+        int angles = 0;
+        int i = k + 1;
+        for (; i < tokens.size(); i++) {
+            Token t = tokens.get(i);
+            switch (t.text) {
+                case "(" -> {
+                    if (parens++ == 0) continue;
+                }
+                case ")" -> {
+                    if (--parens == 0) {
+                        if (!param.isEmpty()) params.add(param);
+                        break;
+                    }
+                }
+                case "<" -> angles++;
+                case ">" -> angles--;
+                case "," -> {
+                    if (parens == 1 && angles == 0) {
+                        params.add(param);
+                        param = new ArrayList<>();
+                        continue;
+                    }
+                }
+                default -> {}
+            }
+            if (parens == 0) break;
+            param.add(t);
+        }
+        if (i >= tokens.size()) return null;
+
+        StringBuilder sb = new StringBuilder(tokens.get(k).text).append('(');
+        for (int p = 0; p < params.size(); p++) {
+            if (p > 0) sb.append(',');
+            sb.append(parameterType(params.get(p)));
+        }
+        return cut(sb.append(')').toString());
+    }
+
+    private static String parameterType(List<Token> param) {
+        List<Token> type = new ArrayList<>();
+        for (int i = 0; i < param.size(); i++) {
+            Token t = param.get(i);
+            if (t.text.equals("@")) {
+                // annotation: the (dotted) name and an argument list
+                i++;
+                while (i + 2 < param.size() && param.get(i + 1).text.equals(".")) i += 2;
+                if (i + 1 < param.size() && param.get(i + 1).text.equals("(")) {
+                    int parens = 0;
+                    do {
+                        i++;
+                        if (param.get(i).text.equals("(")) parens++;
+                        else if (param.get(i).text.equals(")")) parens--;
+                    } while (parens > 0 && i + 1 < param.size());
+                }
+            } else if (!t.text.equals("final")) {
+                type.add(t);
+            }
+        }
+        // the parameter's name comes last
+        if (type.size() > 1 && type.get(type.size() - 1).ident) type.remove(type.size() - 1);
+        StringBuilder sb = new StringBuilder();
+        Token last = null;
+        for (Token t : type) {
+            if (last != null && last.ident && t.ident) sb.append(' ');
+            sb.append(t.text);
+            last = t;
+        }
+        return sb.toString();
+    }
+
+    private static String cut(String term) {
+        return term.length() > MAX_TERM_LENGTH ? term.substring(0, MAX_TERM_LENGTH) : term;
+    }
+
+    private static int count(String s, int from, int to, char c) {
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) == c) n++;
+        }
+        return n;
+    }
+}
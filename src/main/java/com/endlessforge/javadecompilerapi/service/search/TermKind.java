@@ -0,0 +1,18 @@
+package com.endlessforge.javadecompilerapi.service.search;
+
+import java.util.Locale;
+
+/** What an indexed term is; the ordinal is its code in index files, so only append. */
+public enum TermKind {
+    CLASS, METHOD, FIELD, STRING, IDENTIFIER;
+
+    public String label() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /** {@code class}, {@code method}, ...; null for {@code any}. */
+    public static TermKind parse(String label) {
+        if (label == null || label.equalsIgnoreCase("any")) return null;
+        return valueOf(label.toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,59 @@
+package com.endlessforge.javadecompilerapi.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Minimal class-file header reader: just enough of the constant pool to find the class name,
+ * so in-memory engines can be handed bytes without a temp file to name them.
+ */
+public final class ClassFiles {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private ClassFiles() {}
+
+    /**
+     * Internal name (e.g. {@code com/foo/Bar}) from the this_class constant. Anything that is not a
+     * well-formed class header, truncated input included, is an IOException.
+     */
+    public static String internalName(byte[] classBytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classBytes));
+        if (in.readInt() != MAGIC) throw new IOException("not a class file (bad magic)");
+        in.readUnsignedShort(); // minor
+        in.readUnsignedShort(); // major
+
+        int count = in.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classNameIndex = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1 -> utf8[i] = in.readUTF();
+                case 7 -> classNameIndex[i] = in.readUnsignedShort();
+                case 8, 16, 19, 20 -> in.readUnsignedShort();
+                case 15 -> in.skipBytes(3);
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> in.readInt();
+                case 5, 6 -> {
+                    in.readLong();
+                    i++; // long and double take two slots
+                }
+                default -> throw new IOException("bad constant pool tag " + tag + " at " + i);
+            }
+        }
+
+        in.readUnsignedShort(); // access flags
+        int thisClass = in.readUnsignedShort();
+        int nameIndex = thisClass > 0 && thisClass < count ? classNameIndex[thisClass] : 0;
+        if (nameIndex <= 0 || nameIndex >= count || utf8[nameIndex] == null) {
+            throw new IOException("bad this_class index " + thisClass);
+        }
+        return utf8[nameIndex];
+    }
+
+    /** Dotted binary name (e.g. {@code com.foo.Bar$Inner}). */
+    public static String binaryName(byte[] classBytes) throws IOException {
+        return internalName(classBytes).replace('/', '.');
+    }
+}
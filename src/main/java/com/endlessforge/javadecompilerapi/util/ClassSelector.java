@@ -0,0 +1,109 @@
+package com.endlessforge.javadecompilerapi.util;
+
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The {@code className} parameter of JAR requests: a comma-separated list of classes
+ * ({@code org.acme.Foo}, {@code org/acme/Foo}, {@code org.acme.Foo$Bar}) and package prefixes
+ * ({@code org.acme.*}, which includes sub-packages). Nested classes select their outermost class,
+ * since engines emit them inside its source file.
+ */
+public final class ClassSelector {
+
+    private final SortedSet<String> classes = new TreeSet<>();  // internal names of top-level classes
+    private final SortedSet<String> packages = new TreeSet<>(); // internal prefixes ending in '/'
+
+    private ClassSelector() {}
+
+    /** Parses {@code spec}; null when it is blank, meaning the whole archive. */
+    public static ClassSelector parse(String spec) {
+        if (spec == null || spec.isBlank()) return null;
+        ClassSelector selector = new ClassSelector();
+        for (String part : spec.split(",")) {
+            String item = part.trim();
+            if (item.endsWith(".class")) item = item.substring(0, item.length() - ".class".length());
+            item = item.replace('.', '/');
+            if (item.isEmpty()) continue;
+            if (item.equals("*")) return null;
+            if (item.endsWith("/*") || item.endsWith("/")) {
+                selector.packages.add(item.substring(0, item.lastIndexOf('/') + 1));
+            } else {
+                selector.classes.add(JarClasses.outerOf(item));
+            }
+        }
+        return selector.classes.isEmpty() && selector.packages.isEmpty() ? null : selector;
+    }
+
+    /**
+     * Exactly the given top-level classes, taken as they are (no {@code $} folding). Unlike
+     * {@link #parse}, an empty collection selects nothing.
+     */
+    public static ClassSelector of(Collection<String> topLevelInternalNames) {
+        ClassSelector selector = new ClassSelector();
+        selector.classes.addAll(topLevelInternalNames);
+        return selector;
+    }
+
+    /** Only named classes, no package prefixes. */
+    public boolean isExact() {
+        return packages.isEmpty();
+    }
+
+    /** Internal names of the explicitly named (top-level) classes. */
+    public Set<String> classes() {
+        return Collections.unmodifiableSet(classes);
+    }
+
+    /** True for selected classes and anything nested in them. */
+    public boolean matches(String internalName) {
+        String outer = JarClasses.outerOf(internalName);
+        if (classes.contains(outer)) return true;
+        for (String prefix : packages) {
+            if (outer.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Selected top-level classes present in {@code zip}. Named classes are looked up in the
+     * central directory one by one; only package prefixes walk the entry list. Nothing is inflated.
+     */
+    public List<String> topLevelClasses(ZipFile zip) {
+        if (isExact()) {
+            List<String> found = new ArrayList<>(classes.size());
+            for (String name : classes) {
+                if (zip.getEntry(name + ".class") != null) found.add(name);
+            }
+            return found;
+        }
+        List<String> selected = new ArrayList<>();
+        for (String name : JarClasses.allClasses(zip)) {
+            if (matches(name)) selected.add(name);
+        }
+        return JarClasses.topLevel(selected);
+    }
+
+    /** Selected classes including their nested classes, for engines that need every class file fed in. */
+    public List<String> classesWithNested(ZipFile zip) {
+        List<String> selected = new ArrayList<>();
+        Enumeration<? extends ZipEntry> en = zip.entries();
+        while (en.hasMoreElements()) {
+            String name = en.nextElement().getName();
+            if (!name.endsWith(".class") || name.startsWith("META-INF/")) continue;
+            String internal = name.substring(0, name.length() - ".class".length());
+            if (matches(internal)) selected.add(internal);
+        }
+        return selected;
+    }
+
+    /** Stable form for cache keys: the single class as given for one class, sorted items otherwise. */
+    @Override
+    public String toString() {
+        List<String> items = new ArrayList<>();
+        for (String name : classes) items.add(name.replace('/', '.'));
+        for (String prefix : packages) items.add(prefix.replace('/', '.') + "*");
+        return String.join(",", items);
+    }
+}
@@ -0,0 +1,11 @@
+package com.endlessforge.javadecompilerapi.util;
+
+import java.io.IOException;
+
+/** An archive entry larger than {@code decompiler.class.max-bytes}; it is skipped, never read onto the heap. */
+public class ClassTooLargeException extends IOException {
+
+    public ClassTooLargeException(String name, long maxBytes) {
+        super(name + " is larger than " + maxBytes + " bytes (decompiler.class.max-bytes)");
+    }
+}
@@ -0,0 +1,98 @@
+package com.endlessforge.javadecompilerapi.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Class listings read from an archive's central directory (no entry is inflated).
+ */
+public final class JarClasses {
+
+    private JarClasses() {}
+
+    /** Internal names of all classes in the archive, in central-directory order. */
+    public static List<String> allClasses(ZipFile zip) {
+        List<String> names = new ArrayList<>();
+        Enumeration<? extends ZipEntry> en = zip.entries();
+        while (en.hasMoreElements()) {
+            ZipEntry entry = en.nextElement();
+            String name = entry.getName();
+            if (entry.isDirectory() || !name.endsWith(".class")) continue;
+            if (name.startsWith("META-INF/")) continue; // multi-release copies, module-info of versions
+            names.add(name.substring(0, name.length() - ".class".length()));
+        }
+        return names;
+    }
+
+    /**
+     * Internal names of top-level classes only. A {@code $} class whose outer class is present
+     * is skipped: every engine emits nested types inside the outer source file.
+     */
+    public static List<String> topLevelClasses(ZipFile zip) {
+        return topLevel(allClasses(zip));
+    }
+
+    public static List<String> topLevel(Collection<String> internalNames) {
+        Set<String> all = new HashSet<>(internalNames);
+        List<String> top = new ArrayList<>();
+        for (String name : internalNames) {
+            String outer = outerOf(name);
+            if (outer.equals(name) || !all.contains(outer)) top.add(name);
+        }
+        return top;
+    }
+
+    /** Outermost enclosing class name by the {@code $} convention; the name itself if it has none. */
+    public static String outerOf(String internalName) {
+        int slash = internalName.lastIndexOf('/');
+        int dollar = internalName.indexOf('$', slash + 1);
+        return dollar > 0 ? internalName.substring(0, dollar) : internalName;
+    }
+
+    /** {@link #read(InputStream, ZipEntry, long)} of an entry of {@code zip}. */
+    public static byte[] read(ZipFile zip, ZipEntry entry, long maxBytes) throws IOException {
+        try (InputStream in = zip.getInputStream(entry)) {
+            return read(in, entry, maxBytes);
+        }
+    }
+
+    /**
+     * Inflates one entry of at most {@code maxBytes}. When the archive records the size, the
+     * array is allocated at exactly that size, so the bytes are copied once instead of through
+     * the growing buffers of {@link InputStream#readAllBytes()}; the recorded size is only
+     * trusted up to {@code maxBytes}, and an entry inflating past it is refused as well.
+     *
+     * @throws ClassTooLargeException when the entry is, or claims to be, larger than {@code maxBytes}
+     */
+    public static byte[] read(InputStream in, ZipEntry entry, long maxBytes) throws IOException {
+        long limit = Math.min(maxBytes, Integer.MAX_VALUE - 9);
+        long size = entry.getSize();
+        if (size > limit) throw new ClassTooLargeException(entry.getName(), maxBytes);
+        if (size < 0) {
+            byte[] bytes = in.readNBytes((int) limit + 1);
+            if (bytes.length > limit) throw new ClassTooLargeException(entry.getName(), maxBytes);
+            return bytes;
+        }
+        byte[] bytes = new byte[(int) size];
+        if (in.readNBytes(bytes, 0, bytes.length) < bytes.length) {
+            throw new EOFException(entry.getName() + " is shorter than its recorded size");
+        }
+        if (in.read() != -1) throw new IOException(entry.getName() + " is longer than its recorded size");
+        return bytes;
+    }
+
+    /** Splits {@code items} into at most {@code parts} contiguous chunks of at most {@code maxChunk}. */
+    public static <T> List<List<T>> chunk(List<T> items, int parts, int maxChunk) {
+        if (items.isEmpty()) return List.of();
+        int size = Math.max(1, Math.min(maxChunk, (items.size() + parts - 1) / Math.max(1, parts)));
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += size) {
+            chunks.add(items.subList(i, Math.min(items.size(), i + size)));
+        }
+        return chunks;
+    }
+}
@@ -1,42 +1,154 @@
 package com.endlessforge.javadecompilerapi.util;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
 
+/**
+ * Registry of decompilation modes. Detection (class lookups, tools/ checks, a {@code java -version}
+ * fork) runs at startup, on {@link #refresh()} and whenever something in tools/ changes;
+ * request-time checks are a map lookup.
+ */
 @Component
 public class ModeDetector {
 
+    private static final Logger log = LoggerFactory.getLogger(ModeDetector.class);
+
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(10);
+
+    /** What a mode can do and where it runs; {@code source} is the library or tool file behind it. */
+    public record Mode(String name, boolean available, boolean inProcess, boolean singleClass, boolean jar, String source) {}
+
+    private final File toolsDir = new File("tools");
+    private final boolean watchTools;
+
+    private volatile Map<String, Mode> modes = Map.of();
+    private volatile boolean javaAvailable;
+    private WatchService watcher;
+
+    public ModeDetector(@Value("${decompiler.modes.watch-tools:true}") boolean watchTools) {
+        this.watchTools = watchTools;
+    }
+
+    @PostConstruct
+    void init() {
+        refresh();
+        if (watchTools) watch();
+    }
+
     public boolean isJavaAvailable() {
-        try {
-            Process p = new ProcessBuilder("java", "-version").start();
-            int c = p.waitFor();
-            return c == 0;
-        } catch (Exception e) {
-            return false;
-        }
+        return javaAvailable;
     }
 
+    /** Mode name to availability, as served by /modes since before capabilities were added. */
     public Map<String, Object> detectAllModes() {
         Map<String, Object> m = new HashMap<>();
-        m.put("cfr", classExists("org.benf.cfr.reader.api.CfrDriver"));
-        m.put("procyon", classExists("com.strobel.decompiler.Decompiler"));
-        m.put("jadx", classExists("jadx.api.JadxDecompiler"));
-        // jdcore/fernflower might be available as libraries or via tools/
-        m.put("jdcore", classExists("org.jd.core.Decompiler") || new File("tools/jd-cli.jar").exists());
-        m.put("fernflower", classExists("org.jetbrains.java.decompiler.main.decompiler.ConsoleDecompiler") || new File("tools/fernflower.jar").exists() || new File("tools/forgeflower.jar").exists());
-        m.put("jad", new File("tools/jad").exists());
-        m.put("java", isJavaAvailable());
+        modes.forEach((name, mode) -> m.put(name, mode.available()));
+        m.put("java", javaAvailable);
         return m;
     }
 
+    public Map<String, Mode> capabilities() {
+        return modes;
+    }
+
     public boolean isModeAvailable(String mode) {
-        return Boolean.TRUE.equals(detectAllModes().getOrDefault(mode.toLowerCase(), false));
+        if ("java".equalsIgnoreCase(mode)) return javaAvailable;
+        Mode m = modes.get(mode.toLowerCase(Locale.ROOT));
+        return m != null && m.available();
+    }
+
+    /** False for modes that only take single classes (jad) and for unknown ones. */
+    public boolean supportsJar(String mode) {
+        Mode m = modes.get(mode.toLowerCase(Locale.ROOT));
+        return m != null && m.jar();
+    }
+
+    /**
+     * The tool file detection picked for an external mode, or null when it has none; the one
+     * place tool files are resolved, so /modes shows what requests run.
+     */
+    public File toolFile(String mode) {
+        Mode m = modes.get(mode.toLowerCase(Locale.ROOT));
+        return m != null && m.available() && !m.inProcess() ? new File(m.source()) : null;
+    }
+
+    /** Re-runs detection and swaps the registry in one step. */
+    public synchronized Map<String, Mode> refresh() {
+        Map<String, Mode> m = new TreeMap<>();
+        m.put("cfr", library("cfr", "org.benf.cfr.reader.api.CfrDriver"));
+        m.put("procyon", library("procyon", "com.strobel.decompiler.Decompiler"));
+        m.put("jadx", library("jadx", "jadx.api.JadxDecompiler"));
+        // all embedded engines on the same input; see RaceDecompiler
+        boolean embedded = m.get("cfr").available() && m.get("procyon").available() && m.get("jadx").available();
+        m.put("race", new Mode("race", embedded, true, true, true, "cfr+procyon+jadx"));
+        m.put("best", new Mode("best", embedded, true, true, true, "cfr+procyon+jadx"));
+        m.put("jdcore", tool("jdcore", true, "jd-cli.jar"));
+        m.put("fernflower", tool("fernflower", true, "fernflower.jar", "forgeflower.jar"));
+        // jad is a native binary that only reads class files
+        m.put("jad", tool("jad", false, "jad"));
+        javaAvailable = probeJava();
+        modes = Collections.unmodifiableMap(m);
+        log.info("decompilation modes: {}", detectAllModes());
+        return modes;
+    }
+
+    private Mode library(String name, String fqcn) {
+        return new Mode(name, classExists(fqcn), true, true, true, fqcn);
+    }
+
+    private Mode tool(String name, boolean jar, String... candidates) {
+        for (String candidate : candidates) {
+            File f = new File(toolsDir, candidate);
+            if (f.exists() && (!candidate.endsWith(".jar") || hasMainClass(f))) {
+                return new Mode(name, true, false, true, jar, f.getPath());
+            }
+        }
+        return new Mode(name, false, false, true, jar, new File(toolsDir, candidates[0]).getPath());
+    }
+
+    /** Tool jars are started by their Main-Class; one without it (a library jar) cannot run. */
+    private static boolean hasMainClass(File jar) {
+        try (JarFile jf = new JarFile(jar)) {
+            return jf.getManifest() != null && jf.getManifest().getMainAttributes().getValue("Main-Class") != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Runs from refreshes and the tools watcher too, so a hung {@code java -version} is killed rather than waited on. */
+    private static boolean probeJava() {
+        Process p = null;
+        try {
+            p = new ProcessBuilder("java", "-version").redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            if (!p.waitFor(PROBE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                p.destroyForcibly();
+                log.warn("java -version did not finish within {} ms; external tools unavailable", PROBE_TIMEOUT.toMillis());
+                return false;
+            }
+            return p.exitValue() == 0;
+        } catch (InterruptedException e) {
+            p.destroyForcibly();
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
     }
 
-    private boolean classExists(String fqcn) {
+    private static boolean classExists(String fqcn) {
         try {
             Class.forName(fqcn);
             return true;
@@ -44,4 +156,38 @@ public class ModeDetector {
             return false;
         }
     }
+
+    private void watch() {
+        if (!toolsDir.isDirectory()) {
+            log.info("{} does not exist; not watching it (use POST /modes/refresh after adding tools)", toolsDir);
+            return;
+        }
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            toolsDir.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            log.warn("cannot watch {}: {}", toolsDir, e.toString());
+            return;
+        }
+        Thread t = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watcher.take();
+                    key.pollEvents();
+                    refresh();
+                    if (!key.reset()) break;
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // shutting down
+            }
+        }, "tools-watch");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @PreDestroy
+    void shutdown() throws IOException {
+        if (watcher != null) watcher.close();
+    }
 }
@@ -0,0 +1,45 @@
+package com.endlessforge.javadecompilerapi.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClientKeysTest {
+
+    private static MockHttpServletRequest request(String address, String key) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(address);
+        if (key != null) request.addHeader("X-Api-Key", key);
+        return request;
+    }
+
+    @Test
+    void unknownKeysFallBackToTheRemoteAddress() {
+        ClientKeys clients = new ClientKeys("X-Api-Key", "", "");
+        assertThat(clients.of(request("10.0.0.1", "made-up"))).isEqualTo("addr:10.0.0.1");
+        assertThat(clients.of(request("10.0.0.1", null))).isEqualTo("addr:10.0.0.1");
+    }
+
+    @Test
+    void configuredKeysAreTrustedFromAnywhere() {
+        ClientKeys clients = new ClientKeys("X-Api-Key", " team-a , team-b", "");
+        assertThat(clients.of(request("10.0.0.1", " team-b "))).isEqualTo("key:team-b");
+        assertThat(clients.of(request("10.0.0.2", "team-c"))).isEqualTo("addr:10.0.0.2");
+    }
+
+    @Test
+    void trustedProxiesPassAnyKeyOn() {
+        ClientKeys clients = new ClientKeys("X-Api-Key", "", "10.0.0.9");
+        assertThat(clients.of(request("10.0.0.9", "user-42"))).isEqualTo("key:user-42");
+        assertThat(clients.of(request("10.0.0.9", "x".repeat(300)))).isEqualTo("key:" + "x".repeat(128));
+        assertThat(clients.of(request("10.0.0.9", null))).isEqualTo("addr:10.0.0.9");
+        assertThat(clients.of(request("10.0.0.1", "user-42"))).isEqualTo("addr:10.0.0.1");
+    }
+
+    @Test
+    void blankHeaderNameIgnoresKeys() {
+        ClientKeys clients = new ClientKeys("", "team-a", "");
+        assertThat(clients.of(request("10.0.0.1", "team-a"))).isEqualTo("addr:10.0.0.1");
+    }
+}
@@ -0,0 +1,182 @@
+package com.endlessforge.javadecompilerapi.service.admission;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdmissionControlTest {
+
+    private static final Workload CLASS = Workload.ofClass(1000);
+
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+    private final BlockingQueue<Granted> granted = new LinkedBlockingQueue<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private record Granted(String name, AdmissionControl.Permit permit) {}
+
+    @AfterEach
+    void stopThreads() {
+        threads.shutdownNow();
+    }
+
+    /** cfr runs one at a time, no interactive reserve, a memory budget nothing comes near. */
+    private AdmissionControl admission(int queueLimit, Duration queueTimeout) {
+        AdmissionControl admission = new AdmissionControl(true, "cfr=1", 1, 1L << 40, queueLimit, queueTimeout, 0);
+        admission.bindTo(registry);
+        return admission;
+    }
+
+    private void queue(AdmissionControl admission, String name, Priority priority, String client) throws InterruptedException {
+        double before = waiting();
+        threads.submit(() -> {
+            AdmissionControl.Permit permit = priority == Priority.BACKGROUND
+                    ? admission.await(client, "cfr", CLASS)
+                    : admission.admit(priority, client, "cfr", CLASS);
+            granted.add(new Granted(name, permit));
+            return null;
+        });
+        // queued in this order, so arrival ties are broken as written
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (waiting() <= before && System.nanoTime() < deadline) Thread.sleep(5);
+        assertThat(waiting()).isGreaterThan(before);
+    }
+
+    private double waiting() {
+        return registry.get("decompiler.admission.waiting").gauge().value();
+    }
+
+    /** Closes {@code first}, then each permit as it is granted, and returns who got them in order. */
+    private List<String> drain(AdmissionControl.Permit first, int count) throws InterruptedException {
+        List<String> order = new ArrayList<>();
+        first.close();
+        for (int i = 0; i < count; i++) {
+            Granted g = granted.poll(5, TimeUnit.SECONDS);
+            assertThat(g).as("grant %d of %d", i + 1, count).isNotNull();
+            order.add(g.name());
+            g.permit().close();
+        }
+        return order;
+    }
+
+    @Test
+    void admitsAtOnceBelowTheLimit() throws Exception {
+        AdmissionControl admission = admission(4, Duration.ofSeconds(1));
+        AdmissionControl.Permit cfr = admission.admit(Priority.BULK, "a", "cfr", CLASS);
+        // another mode has its own limit
+        AdmissionControl.Permit jadx = admission.admit(Priority.BULK, "a", "jadx", CLASS);
+        assertThat(registry.get("decompiler.admission.active").gauge().value()).isEqualTo(2);
+        cfr.close();
+        cfr.close();
+        jadx.close();
+        assertThat(registry.get("decompiler.admission.active").gauge().value()).isZero();
+    }
+
+    @Test
+    void higherPrioritiesGoFirst() throws Exception {
+        AdmissionControl admission = admission(4, Duration.ofSeconds(10));
+        AdmissionControl.Permit running = admission.admit(Priority.BULK, "a", "cfr", CLASS);
+        queue(admission, "job", Priority.BACKGROUND, "a");
+        queue(admission, "jar", Priority.BULK, "a");
+        queue(admission, "class", Priority.INTERACTIVE, "a");
+
+        assertThat(drain(running, 3)).containsExactly("class", "jar", "job");
+    }
+
+    @Test
+    void clientsTakeTurnsWithinAPriority() throws Exception {
+        AdmissionControl admission = admission(8, Duration.ofSeconds(10));
+        AdmissionControl.Permit running = admission.admit(Priority.BULK, "a", "cfr", CLASS);
+        queue(admission, "a1", Priority.BULK, "a");
+        queue(admission, "a2", Priority.BULK, "a");
+        queue(admission, "a3", Priority.BULK, "a");
+        queue(admission, "b1", Priority.BULK, "b");
+        queue(admission, "b2", Priority.BULK, "b");
+
+        // b arrived last but a already holds the running permit
+        assertThat(drain(running, 5)).containsExactly("b1", "a1", "b2", "a2", "a3");
+    }
+
+    @Test
+    void fullQueueIsRejectedAtOnce() throws Exception {
+        AdmissionControl admission = admission(1, Duration.ofSeconds(10));
+        AdmissionControl.Permit running = admission.admit(Priority.BULK, "a", "cfr", CLASS);
+        queue(admission, "jar", Priority.BULK, "a");
+
+        assertThatThrownBy(() -> admission.admit(Priority.BULK, "b", "cfr", CLASS))
+                .isInstanceOfSatisfying(AdmissionRejectedException.class, e -> {
+                    assertThat(e.queueFull()).isTrue();
+                    assertThat(e.retryAfter()).isPositive();
+                });
+        assertThat(registry.get("decompiler.admission.rejected").tag("reason", "queue-full").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(drain(running, 1)).containsExactly("jar");
+    }
+
+    @Test
+    void timedOutWaitIsRejectedAsUnavailable() throws Exception {
+        AdmissionControl admission = admission(4, Duration.ofMillis(100));
+        AdmissionControl.Permit running = admission.admit(Priority.BULK, "a", "cfr", CLASS);
+        assertThatThrownBy(() -> admission.admit(Priority.BULK, "b", "cfr", CLASS))
+                .isInstanceOfSatisfying(AdmissionRejectedException.class, e -> assertThat(e.queueFull()).isFalse());
+        running.close();
+        assertThat(waiting()).isZero();
+    }
+
+    @Test
+    void queuedJobsDoNotCountAgainstTheRequestQueue() throws Exception {
+        AdmissionControl admission = admission(1, Duration.ofSeconds(10));
+        AdmissionControl.Permit running = admission.admit(Priority.BULK, "a", "cfr", CLASS);
+        queue(admission, "job1", Priority.BACKGROUND, "a");
+        queue(admission, "job2", Priority.BACKGROUND, "a");
+        // the queue limit is per priority: background jobs take no request's slot
+        queue(admission, "class", Priority.INTERACTIVE, "b");
+        queue(admission, "jar", Priority.BULK, "b");
+        assertThatThrownBy(() -> admission.admit(Priority.INTERACTIVE, "c", "cfr", CLASS))
+                .isInstanceOfSatisfying(AdmissionRejectedException.class, e -> assertThat(e.queueFull()).isTrue());
+
+        assertThat(drain(running, 4)).containsExactly("class", "jar", "job1", "job2");
+    }
+
+    @Test
+    void singleClassesMayUseTheInteractiveReserve() throws Exception {
+        AdmissionControl admission = new AdmissionControl(true, "cfr=1", 1, 1L << 40, 0, Duration.ZERO, 1);
+        AdmissionControl.Permit jar = admission.admit(Priority.BULK, "a", "cfr", CLASS);
+        AdmissionControl.Permit cls = admission.admit(Priority.INTERACTIVE, "a", "cfr", CLASS);
+        assertThatThrownBy(() -> admission.admit(Priority.BULK, "a", "cfr", CLASS))
+                .isInstanceOf(AdmissionRejectedException.class);
+        cls.close();
+        jar.close();
+    }
+
+    @Test
+    void memoryBudgetHoldsBackWhatDoesNotFit() throws Exception {
+        Workload big = new Workload(100L << 20, 10);
+        long budget = big.estimate("cfr") + big.estimate("cfr") / 2;
+        AdmissionControl admission = new AdmissionControl(true, "cfr=4", 4, budget, 0, Duration.ZERO, 0);
+        AdmissionControl.Permit first = admission.admit(Priority.BULK, "a", "cfr", big);
+        assertThatThrownBy(() -> admission.admit(Priority.BULK, "a", "cfr", big))
+                .isInstanceOf(AdmissionRejectedException.class);
+        first.close();
+        // a request over the whole budget still runs when nothing else holds any of it
+        AdmissionControl.Permit huge = admission.admit(Priority.BULK, "a", "cfr", new Workload(1L << 40, 1));
+        huge.close();
+    }
+
+    @Test
+    void disabledAdmitsEverything() throws Exception {
+        AdmissionControl admission = new AdmissionControl(false, "cfr=1", 1, 1, 0, Duration.ZERO, 0);
+        for (int i = 0; i < 5; i++) admission.admit(Priority.BULK, "a", "cfr", CLASS);
+    }
+}
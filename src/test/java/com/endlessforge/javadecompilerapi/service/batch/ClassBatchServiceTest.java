@@ -0,0 +1,102 @@
+package com.endlessforge.javadecompilerapi.service.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ClassBatchServiceTest {
+
+    /** Only collecting is exercised: nothing here reaches the engines. */
+    private static ClassBatchService service(long maxClassBytes, long maxBatchBytes) {
+        return new ClassBatchService(null, new ObjectMapper(), null, null, maxClassBytes, maxBatchBytes);
+    }
+
+    private static byte[] classBytes(Class<?> type) throws IOException {
+        try (InputStream in = type.getResourceAsStream(type.getName().substring(type.getName().lastIndexOf('.') + 1) + ".class")) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static MultipartFile file(String name, byte[] bytes) {
+        return new MockMultipartFile("files", name, "application/octet-stream", bytes);
+    }
+
+    private static MultipartFile archive(String... namesAndSources) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(out)) {
+            for (int i = 0; i < namesAndSources.length; i += 2) {
+                zos.putNextEntry(new ZipEntry(namesAndSources[i]));
+                zos.write(namesAndSources[i + 1].getBytes());
+                zos.closeEntry();
+            }
+        }
+        return new MockMultipartFile("archive", "classes.zip", "application/zip", out.toByteArray());
+    }
+
+    @Test
+    void writesAcceptedClassesToATemporaryJar() throws IOException {
+        byte[] batch = classBytes(ClassBatch.class);
+        byte[] item = classBytes(ClassBatch.Item.class);
+        Path jar;
+        try (ClassBatch collected = service(1 << 20, 1 << 20).collect(
+                List.of(file("a.class", batch), file("b.class", item), file("c.class", batch), file("d.class", new byte[10])),
+                archive("x/Junk.class", "not a class", "readme.txt", "skipped"))) {
+            jar = collected.jar();
+            assertThat(collected.classes()).isEqualTo(2);
+            assertThat(collected.bytes()).isEqualTo(batch.length + item.length);
+            assertThat(collected.items()).extracting(ClassBatch.Item::name)
+                    .containsExactly("a.class", "b.class", "c.class", "d.class", "x/Junk.class");
+            assertThat(collected.items().get(2).error()).isEqualTo("duplicate class in batch");
+            assertThat(collected.items().get(3).error()).isNotNull();
+            try (ZipFile zip = new ZipFile(jar.toFile())) {
+                assertThat(Collections.list(zip.entries())).extracting(ZipEntry::getName).containsExactly(
+                        "com/endlessforge/javadecompilerapi/service/batch/ClassBatch.class",
+                        "com/endlessforge/javadecompilerapi/service/batch/ClassBatch$Item.class");
+            }
+        }
+        assertThat(Files.exists(jar.getParent())).isFalse();
+    }
+
+    @Test
+    void oversizedClassesAreRejectedOneByOne() throws IOException {
+        byte[] batch = classBytes(ClassBatch.class);
+        try (ClassBatch collected = service(batch.length - 1, 1 << 20).collect(List.of(file("a.class", batch)), null)) {
+            assertThat(collected.isEmpty()).isTrue();
+            assertThat(collected.items()).singleElement().satisfies(i -> assertThat(i.error()).contains("max-bytes"));
+        }
+    }
+
+    @Test
+    void stopsOnceTheClassesExceedTheBatchLimit() throws IOException {
+        byte[] batch = classBytes(ClassBatch.class);
+        byte[] item = classBytes(ClassBatch.Item.class);
+        long before = tempBatches();
+        assertThatThrownBy(() -> service(1 << 20, batch.length + item.length - 1)
+                .collect(List.of(file("a.class", batch), file("b.class", item)), null))
+                .isInstanceOfSatisfying(BatchTooLargeException.class,
+                        e -> assertThat(e.maxBytes()).isEqualTo(batch.length + item.length - 1));
+        // nothing left behind
+        assertThat(tempBatches()).isEqualTo(before);
+    }
+
+    private static long tempBatches() throws IOException {
+        try (var s = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return s.filter(p -> p.getFileName().toString().startsWith("batch-")).count();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.endlessforge.javadecompilerapi.service.cache;
+
+import com.endlessforge.javadecompilerapi.service.output.OutputFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DecompilationCacheTest {
+
+    private static final String HASH_A = "a".repeat(64);
+    private static final String HASH_B = "b".repeat(64);
+
+    @TempDir
+    Path tmp;
+
+    private DecompilationCache cache(long memoryMax, long diskMax) throws IOException {
+        return new DecompilationCache(true, memoryMax, true, tmp.resolve("cache").toString(), diskMax);
+    }
+
+    private Path archive(String name, int size) throws IOException {
+        Path p = tmp.resolve(name);
+        Files.write(p, new byte[size]);
+        return p;
+    }
+
+    @Test
+    void memoryHitAndMiss() throws IOException {
+        DecompilationCache cache = cache(1 << 20, 1 << 20);
+        CacheKey key = CacheKey.of(HASH_A, "cfr");
+        assertThat(cache.getSource(key)).isNull();
+        cache.putSource(key, "class A {}");
+        assertThat(cache.getSource(key)).isEqualTo("class A {}");
+        assertThat(cache.getSource(key.withOptions("class=A"))).isNull();
+        assertThat(cache.getSource(CacheKey.of(HASH_A, "procyon"))).isNull();
+        assertThat(cache.stats()).containsEntry("memoryHits", 1L).containsEntry("memoryMisses", 3L);
+    }
+
+    @Test
+    void memoryEvictsLeastRecentlyUsed() throws IOException {
+        DecompilationCache cache = cache(4000, 1 << 20);
+        CacheKey a = CacheKey.of(HASH_A, "cfr");
+        CacheKey b = CacheKey.of(HASH_B, "cfr");
+        cache.putSource(a, "x".repeat(700));
+        cache.putSource(b, "x".repeat(700));
+        cache.getSource(a); // b is the eldest now
+        cache.putSource(CacheKey.of(HASH_A, "jadx"), "x".repeat(700));
+        cache.putSource(CacheKey.of(HASH_B, "jadx"), "x".repeat(700));
+        cache.putSource(a.withOptions("x"), "x".repeat(700)); // over budget
+        assertThat(cache.getSource(a)).isNotNull();
+        assertThat(cache.getSource(b)).isNull();
+        assertThat((Long) cache.stats().get("memoryEvictions")).isPositive();
+    }
+
+    @Test
+    void memoryRefusesEntriesOverAQuarterOfTheTier() throws IOException {
+        DecompilationCache cache = cache(4096, 1 << 20);
+        CacheKey key = CacheKey.of(HASH_A, "cfr");
+        cache.putSource(key, "x".repeat(2000));
+        assertThat(cache.getSource(key)).isNull();
+    }
+
+    @Test
+    void optionsGetTheirOwnArchiveName() {
+        CacheKey plain = CacheKey.of(HASH_A, "CFR");
+        assertThat(plain.archiveName()).isEqualTo("decompiled-cfr.zip");
+        String withClass = plain.withOptions("class=a/B").archiveName();
+        assertThat(withClass).matches("decompiled-cfr-[0-9a-f]{12}\\.zip");
+        assertThat(plain.withOptions("class=a/C").archiveName()).isNotEqualTo(withClass);
+        assertThat(plain.withOptions("class=a/B").archiveName()).isEqualTo(withClass);
+    }
+
+    @Test
+    void archiveNamesEndInTheirFormatsExtension() {
+        CacheKey plain = CacheKey.of(HASH_A, "cfr");
+        assertThat(plain.withFormat(OutputFormat.ZIP_STORE).withOptions("format=zip-store").archiveName())
+                .matches("decompiled-cfr-[0-9a-f]{12}\\.zip");
+        assertThat(plain.withOptions("format=tar.zst").withFormat(OutputFormat.TAR_ZST).archiveName())
+                .matches("decompiled-cfr-[0-9a-f]{12}\\.tar\\.zst");
+        assertThat(plain.withFormat(OutputFormat.NDJSON).archiveName()).isEqualTo("decompiled-cfr.ndjson");
+    }
+
+    @Test
+    void everyEncodingIsIndexedAndEvictedAfterARestart() throws IOException {
+        CacheKey zst = CacheKey.of(HASH_A, "cfr").withOptions("format=tar.zst").withFormat(OutputFormat.TAR_ZST);
+        Path stored;
+        try (PinnedArchive p = cache(1 << 20, 1 << 20).storeArchive(zst, archive("r.tar.zst", 100))) {
+            stored = p.path();
+            assertThat(DecompilationCache.isZip(p.path())).isFalse();
+        }
+        Path sidecar = DecompilationCache.sidecar(stored, "idx");
+        assertThat(sidecar.getFileName().toString()).isEqualTo(zst.archiveName().replace(".tar.zst", ".idx"));
+        Files.write(sidecar, new byte[10]);
+
+        DecompilationCache reopened = cache(1 << 20, 150);
+        assertThat(reopened.stats()).containsEntry("diskEntries", 1).containsEntry("diskBytes", 110L);
+        reopened.storeArchive(CacheKey.of(HASH_B, "cfr"), archive("b.zip", 100)).close();
+        assertThat(Files.exists(stored)).isFalse();
+        assertThat(Files.exists(sidecar)).isFalse();
+        assertThat(Files.exists(tmp.resolve("cache").resolve(HASH_A))).isFalse();
+    }
+
+    @Test
+    void diskHitAndMiss() throws IOException {
+        DecompilationCache cache = cache(1 << 20, 1 << 20);
+        CacheKey key = CacheKey.of(HASH_A, "cfr");
+        assertThat(cache.pinArchive(key)).isNull();
+
+        try (PinnedArchive stored = cache.storeArchive(key, archive("result.zip", 100))) {
+            assertThat(stored.cached()).isTrue();
+            assertThat(cache.holds(stored.path())).isTrue();
+        }
+        try (PinnedArchive hit = cache.pinArchive(key)) {
+            assertThat(hit).isNotNull();
+            assertThat(Files.size(hit.path())).isEqualTo(100);
+            assertThat(DecompilationCache.resultName(hit.path())).isEqualTo(HASH_A + ":cfr");
+        }
+        try (PinnedArchive byName = cache.pinResult(HASH_A + ":cfr")) {
+            assertThat(byName).isNotNull();
+        }
+        assertThat(cache.pinArchive(key.withOptions("class=a/B"))).isNull();
+        assertThat(cache.pinResult("../" + HASH_A + ":cfr")).isNull();
+    }
+
+    @Test
+    void diskEvictsLeastRecentlyUsed() throws IOException {
+        DecompilationCache cache = cache(1 << 20, 250);
+        CacheKey a = CacheKey.of(HASH_A, "cfr");
+        CacheKey b = CacheKey.of(HASH_B, "cfr");
+        cache.storeArchive(a, archive("a.zip", 100)).close();
+        cache.storeArchive(b, archive("b.zip", 100)).close();
+        cache.pinArchive(a).close(); // a is the most recently used now
+        cache.storeArchive(a.withOptions("class=x/Y"), archive("c.zip", 100)).close();
+
+        assertThat(cache.findArchive(a)).isNotNull();
+        assertThat(cache.findArchive(b)).isNull();
+        assertThat(Files.exists(tmp.resolve("cache").resolve(HASH_B))).isFalse();
+        assertThat(cache.stats()).containsEntry("diskEvictions", 1L);
+    }
+
+    @Test
+    void pinnedArchivesOutliveEvictionUntilClosed() throws IOException {
+        DecompilationCache cache = cache(1 << 20, 150);
+        CacheKey a = CacheKey.of(HASH_A, "cfr");
+        cache.storeArchive(a, archive("a.zip", 100)).close();
+
+        PinnedArchive reading = cache.pinArchive(a);
+        PinnedArchive written = cache.storeArchive(CacheKey.of(HASH_B, "cfr"), archive("b.zip", 100));
+        // over budget, but both are in use
+        assertThat(Files.exists(reading.path())).isTrue();
+        assertThat(Files.exists(written.path())).isTrue();
+
+        reading.close();
+        reading.close(); // a second close must not release anyone else's pin
+        assertThat(Files.exists(reading.path())).isFalse();
+        assertThat(cache.pinArchive(a)).isNull();
+        assertThat(Files.exists(written.path())).isTrue();
+        written.close();
+    }
+
+    @Test
+    void classSourcesComeOutOfStoredArchives() throws IOException {
+        DecompilationCache cache = cache(1 << 20, 1 << 20);
+        CacheKey jar = CacheKey.of(HASH_A, "cfr");
+        Path zip = tmp.resolve("jar.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("a/B.java"));
+            out.write("class B {}".getBytes());
+            out.closeEntry();
+        }
+        cache.storeArchive(jar, zip).close();
+        assertThat(cache.findClassSource(jar, "a.B")).isEqualTo("class B {}");
+        assertThat(cache.findClassSource(jar, "a.C")).isNull();
+        // served from memory once read
+        assertThat(cache.getSource(jar.withOptions("class=a.B"))).isEqualTo("class B {}");
+    }
+
+    @Test
+    void disabledCacheKeepsNothing() throws IOException {
+        DecompilationCache cache = new DecompilationCache(false, 1 << 20, true, tmp.resolve("off").toString(), 1 << 20);
+        CacheKey key = CacheKey.of(HASH_A, "cfr");
+        cache.putSource(key, "class A {}");
+        assertThat(cache.getSource(key)).isNull();
+        Path zip = archive("r.zip", 10);
+        try (PinnedArchive stored = cache.storeArchive(key, zip)) {
+            assertThat(stored.cached()).isFalse();
+            assertThat(stored.path()).isEqualTo(zip);
+        }
+    }
+}
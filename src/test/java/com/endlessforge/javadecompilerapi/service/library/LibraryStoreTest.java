@@ -0,0 +1,106 @@
+package com.endlessforge.javadecompilerapi.service.library;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LibraryStoreTest {
+
+    private static final String CLASSPATH_CLASS = "com/endlessforge/javadecompilerapi/service/library/Classpath.class";
+    private static final String STORE_CLASS = "com/endlessforge/javadecompilerapi/service/library/LibraryStore.class";
+    private static final String UNKNOWN_CLASS = "com/endlessforge/javadecompilerapi/service/library/UnknownLibraryException.class";
+
+    @TempDir
+    Path dir;
+
+    /** A library JAR holding the bytes of one class under {@code entry}; all test libraries have about the same size. */
+    private static MultipartFile library(String entry) throws IOException {
+        byte[] bytes;
+        try (InputStream in = Classpath.class.getResourceAsStream("Classpath.class")) {
+            bytes = in.readAllBytes();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(out)) {
+            zos.putNextEntry(new ZipEntry(entry));
+            zos.write(bytes);
+            zos.closeEntry();
+        }
+        return new MockMultipartFile("lib", "lib.jar", "application/java-archive", out.toByteArray());
+    }
+
+    /** A store with room for one of the test libraries, not two. */
+    private LibraryStore store() throws IOException {
+        long room = Math.max(library(CLASSPATH_CLASS).getSize(),
+                Math.max(library(STORE_CLASS).getSize(), library(UNKNOWN_CLASS).getSize()));
+        // two never fit
+        assertThat(Math.min(library(CLASSPATH_CLASS).getSize(), library(UNKNOWN_CLASS).getSize()) * 2).isGreaterThan(room);
+        return new LibraryStore(dir.toString(), room, 1 << 20, 1 << 20);
+    }
+
+    @Test
+    void pinnedLibrariesOutliveEvictionUntilTheClasspathIsClosed() throws IOException {
+        LibraryStore store = store();
+        Classpath classpath = store.classpath(null, List.of(library(CLASSPATH_CLASS)));
+        String first = classpath.hashes().get(0);
+        assertThat(classpath.classFile(CLASSPATH_CLASS)).isNotNull();
+
+        // over the limit, but the first library is still in use
+        String second = store.store(library(STORE_CLASS));
+        assertThat(store.contains(first)).isTrue();
+        assertThat(classpath.files()).allSatisfy(f -> assertThat(f).exists());
+        assertThat(classpath.classFile(CLASSPATH_CLASS)).isNotNull();
+
+        classpath.close();
+        // unpinned, it goes like any other library
+        String third = store.store(library(UNKNOWN_CLASS));
+        assertThat(store.contains(first)).isFalse();
+        assertThat(store.contains(second)).isFalse();
+        assertThat(store.contains(third)).isTrue();
+        assertThat(dir.resolve(first + ".jar")).doesNotExist();
+        assertThat(classpath.classFile(CLASSPATH_CLASS)).isNull();
+        store.shutdown();
+    }
+
+    @Test
+    void closingTwiceReleasesOnePin() throws IOException {
+        LibraryStore store = store();
+        String hash = store.store(library(CLASSPATH_CLASS));
+        Classpath a = store.classpath(List.of(hash));
+        Classpath b = store.classpath(List.of(hash));
+        a.close();
+        a.close();
+        store.store(library(STORE_CLASS));
+        // b still pins it
+        assertThat(store.contains(hash)).isTrue();
+        assertThat(b.classFile(CLASSPATH_CLASS)).isNotNull();
+        b.close();
+        store.store(library(UNKNOWN_CLASS));
+        assertThat(store.contains(hash)).isFalse();
+        store.shutdown();
+    }
+
+    @Test
+    void unknownHashesPinNothing() throws IOException {
+        LibraryStore store = store();
+        String hash = store.store(library(CLASSPATH_CLASS));
+        assertThatThrownBy(() -> store.classpath(List.of(hash, "0".repeat(64))))
+                .isInstanceOf(UnknownLibraryException.class);
+        store.store(library(STORE_CLASS));
+        assertThat(store.contains(hash)).isFalse();
+        assertThat(Files.exists(dir.resolve(hash + ".jar"))).isFalse();
+        store.shutdown();
+    }
+}
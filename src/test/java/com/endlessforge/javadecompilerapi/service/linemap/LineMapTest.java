@@ -0,0 +1,90 @@
+package com.endlessforge.javadecompilerapi.service.linemap;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LineMapTest {
+
+    private static LineMap map(int... pairs) {
+        LineMap.Builder builder = new LineMap.Builder();
+        for (int i = 0; i < pairs.length; i += 2) builder.add(pairs[i], pairs[i + 1]);
+        return builder.build();
+    }
+
+    private static LineMap roundTrip(LineMap map) throws IOException {
+        return LineMap.decode(map.encode());
+    }
+
+    @Test
+    void resolvesExactAndNearbyLines() {
+        LineMap map = map(10, 20, 12, 25, 30, 8);
+        assertThat(map.resolve(10)).isEqualTo(new LineMap.Match(20, true));
+        assertThat(map.resolve(12)).isEqualTo(new LineMap.Match(25, true));
+        // merged into the mapped line just above, but not from further away than that
+        assertThat(map.resolve(11)).isEqualTo(new LineMap.Match(20, false));
+        assertThat(map.resolve(15)).isEqualTo(new LineMap.Match(25, false));
+        assertThat(map.resolve(16)).isNull();
+        assertThat(map.resolve(9)).isNull();
+        assertThat(map.resolve(33)).isEqualTo(new LineMap.Match(8, false));
+        assertThat(map.resolve(34)).isNull();
+    }
+
+    @Test
+    void builderKeepsTheLowestDecompiledLineAndDropsUnknownLines() {
+        LineMap map = map(5, 40, 5, 30, 5, 35, 0, 1, 6, 0, -1, 3);
+        assertThat(map.size()).isEqualTo(1);
+        assertThat(map.resolve(5)).isEqualTo(new LineMap.Match(30, true));
+        assertThat(new LineMap.Builder().isEmpty()).isTrue();
+    }
+
+    @Test
+    void encodingRoundTripsDecompiledLinesMovingBothWays() throws IOException {
+        // decompiled lines go down as often as up (zigzag deltas), with gaps needing multi-byte varints
+        LineMap map = map(1, 500, 2, 3, 200, 100_000, 201, 1, 70_000, 2_000_000, 70_001, 70_000);
+        LineMap decoded = roundTrip(map);
+        assertThat(decoded.size()).isEqualTo(6);
+        for (int line : new int[] {1, 2, 200, 201, 70_000, 70_001}) {
+            assertThat(decoded.resolve(line)).as("line %d", line).isEqualTo(map.resolve(line));
+        }
+        assertThat(roundTrip(new LineMap.Builder().build()).size()).isZero();
+    }
+
+    @Test
+    void encodingRoundTripsRandomMaps() throws IOException {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            LineMap.Builder builder = new LineMap.Builder();
+            int[] lines = random.ints(random.nextInt(200), 1, 1 << 20).toArray();
+            for (int line : lines) builder.add(line, 1 + random.nextInt(Integer.MAX_VALUE - 1));
+            LineMap map = builder.build();
+            LineMap decoded = roundTrip(map);
+            assertThat(decoded.size()).isEqualTo(map.size());
+            assertThat(Arrays.stream(lines).mapToObj(decoded::resolve).toList())
+                    .isEqualTo(Arrays.stream(lines).mapToObj(map::resolve).toList());
+        }
+    }
+
+    @Test
+    void refusesWhatIsNotALineMap() {
+        byte[] encoded = map(1, 2, 300, 400).encode();
+        assertThatThrownBy(() -> LineMap.decode(new byte[] {1, 2, 3, 4, 0})).hasMessage("not a line map");
+        assertThatThrownBy(() -> LineMap.decode(Arrays.copyOf(encoded, encoded.length - 1)))
+                .isInstanceOf(IOException.class).hasMessage("truncated line map");
+        byte[] tooMany = Arrays.copyOf(encoded, encoded.length);
+        tooMany[4] = 0x7f;
+        assertThatThrownBy(() -> LineMap.decode(tooMany)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void mapEntriesSitNextToTheirSource() {
+        assertThat(LineMap.entryName("a/b/C.java")).isEqualTo("a/b/C.linemap");
+        assertThat(LineMap.isEntry(LineMap.entryName("a/b/C.java"))).isTrue();
+        assertThat(map(1, 1).entry("a/C.java").path()).isEqualTo("a/C.linemap");
+    }
+}
@@ -0,0 +1,147 @@
+package com.endlessforge.javadecompilerapi.service.nested;
+
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+import com.endlessforge.javadecompilerapi.service.pipeline.EntrySink;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NestedArchivesTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @TempDir
+    Path dir;
+
+    /** A ZIP of {@code namesAndContents}; byte arrays are stored, anything else is its string's bytes. */
+    private static byte[] zip(Object... namesAndContents) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(out)) {
+            zos.setLevel(0);
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                zos.putNextEntry(new ZipEntry((String) namesAndContents[i]));
+                Object content = namesAndContents[i + 1];
+                zos.write(content instanceof byte[] bytes ? bytes : content.toString().getBytes());
+                zos.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** A library JAR of {@code padding} incompressible bytes besides its class. */
+    private static byte[] library(int padding) throws IOException {
+        byte[] noise = new byte[padding];
+        new Random(padding).nextBytes(noise);
+        return zip("lib/A.class", "class", "lib/padding.bin", noise);
+    }
+
+    private File write(String name, byte[] bytes) throws IOException {
+        Path file = dir.resolve(name);
+        Files.write(file, bytes);
+        return file.toFile();
+    }
+
+    /** Decompiles with a stand-in engine writing one entry per unit; returns the manifest's units by path. */
+    private Map<String, JsonNode> decompile(NestedArchives nested, File jar, NestedArchives.ArchiveDecompiler engine,
+                                            List<String> written) throws IOException {
+        Path work = Files.createDirectories(dir.resolve("work"));
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        nested.decompile(jar, work, null, null, engine, entry -> entries.put(entry.path(), entry.content()), null);
+        written.addAll(entries.keySet());
+        Map<String, JsonNode> units = new LinkedHashMap<>();
+        for (JsonNode unit : MAPPER.readTree(entries.get(NestedArchives.MANIFEST_ENTRY)).get("units")) {
+            units.put(unit.get("path").asText(), unit);
+        }
+        // nothing spilled is left behind
+        try (var s = Files.list(work)) {
+            assertThat(s).isEmpty();
+        }
+        return units;
+    }
+
+    private static void put(EntrySink sink) throws IOException {
+        sink.put(DecompiledEntry.source("Unit.java", "class Unit {}"));
+    }
+
+    @Test
+    void onlyFatJarLayoutsOrFiltersAreNested() throws IOException {
+        File plain = write("plain.jar", zip("a/A.class", "class", "a/bundled.jar", "jar"));
+        File boot = write("boot.jar", zip("BOOT-INF/classes/a/A.class", "class"));
+        File war = write("app.war", zip("WEB-INF/lib/dep.jar", "jar"));
+        assertThat(NestedArchives.isNested(plain, null)).isFalse();
+        assertThat(NestedArchives.isNested(plain, NestedFilter.parse("/", null))).isTrue();
+        assertThat(NestedArchives.isNested(boot, null)).isTrue();
+        assertThat(NestedArchives.isNested(war, null)).isTrue();
+    }
+
+    @Test
+    void unitsAreSpilledOnlyWhenScheduled() throws IOException {
+        File jar = write("app.jar", zip(
+                "BOOT-INF/classes/app/App.class", "class",
+                "BOOT-INF/lib/a.jar", library(100),
+                "BOOT-INF/lib/b.jar", library(200),
+                "BOOT-INF/lib/c.jar", library(300)));
+        NestedArchives nested = new NestedArchives("", 1, 1 << 20, 1 << 20, MAPPER);
+        List<Integer> spilledAtOnce = new ArrayList<>();
+        List<String> written = new ArrayList<>();
+        Map<String, JsonNode> units = decompile(nested, jar, (unit, selector, sink, ctx) -> {
+            try (var s = Files.list(unit.toPath().getParent())) {
+                spilledAtOnce.add((int) s.count());
+            }
+            put(sink);
+        }, written);
+
+        assertThat(spilledAtOnce).hasSize(4).containsOnly(1);
+        assertThat(units.keySet()).containsExactly(
+                "BOOT-INF/classes", "BOOT-INF/lib/a.jar", "BOOT-INF/lib/b.jar", "BOOT-INF/lib/c.jar");
+        assertThat(units.values()).allSatisfy(u -> assertThat(u.get("status").asText()).isEqualTo("decompiled"));
+        assertThat(written).contains("BOOT-INF/classes/Unit.java", "BOOT-INF/lib/b.jar/Unit.java");
+        nested.shutdown();
+    }
+
+    @Test
+    void aSpillOverTheEntryLimitFailsItsUnit() throws IOException {
+        File jar = write("app.jar", zip(
+                "BOOT-INF/lib/big.jar", library(64 * 1024),
+                "BOOT-INF/lib/small.jar", library(100)));
+        NestedArchives nested = new NestedArchives("", 2, 16 * 1024, 1 << 20, MAPPER);
+        Map<String, JsonNode> units = decompile(nested, jar, (unit, selector, sink, ctx) -> put(sink), new ArrayList<>());
+
+        assertThat(units.get("BOOT-INF/lib/big.jar").get("status").asText()).isEqualTo("failed");
+        assertThat(units.get("BOOT-INF/lib/big.jar").get("reason").asText()).contains("decompiler.nested.max-entry-bytes");
+        assertThat(units.get("BOOT-INF/lib/small.jar").get("status").asText()).isEqualTo("decompiled");
+        nested.shutdown();
+    }
+
+    @Test
+    void spillsStopAtTheRequestLimit() throws IOException {
+        File jar = write("app.jar", zip(
+                "BOOT-INF/lib/a.jar", library(10 * 1024),
+                "BOOT-INF/lib/b.jar", library(10 * 1024),
+                "BOOT-INF/lib/c.jar", library(10 * 1024)));
+        NestedArchives nested = new NestedArchives("", 1, 1 << 20, 25 * 1024, MAPPER);
+        Map<String, JsonNode> units = decompile(nested, jar, (unit, selector, sink, ctx) -> put(sink), new ArrayList<>());
+
+        assertThat(units.get("BOOT-INF/lib/a.jar").get("status").asText()).isEqualTo("decompiled");
+        assertThat(units.get("BOOT-INF/lib/b.jar").get("status").asText()).isEqualTo("decompiled");
+        assertThat(units.get("BOOT-INF/lib/c.jar").get("status").asText()).isEqualTo("failed");
+        assertThat(units.get("BOOT-INF/lib/c.jar").get("reason").asText()).contains("decompiler.nested.max-spill-bytes");
+        nested.shutdown();
+    }
+}
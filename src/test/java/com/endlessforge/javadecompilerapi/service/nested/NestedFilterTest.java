@@ -0,0 +1,86 @@
+package com.endlessforge.javadecompilerapi.service.nested;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NestedFilterTest {
+
+    @Test
+    void blankListsMeanEveryUnit() {
+        assertThat(NestedFilter.parse(null, null)).isNull();
+        assertThat(NestedFilter.parse(" ", ", ,")).isNull();
+    }
+
+    @Test
+    void plainPathsMatchTheirSubtree() {
+        NestedFilter filter = NestedFilter.parse("BOOT-INF/classes/", null);
+        assertThat(filter.accepts("BOOT-INF/classes")).isTrue();
+        assertThat(filter.accepts("BOOT-INF/classes/nested")).isTrue();
+        assertThat(filter.accepts("BOOT-INF/classes2")).isFalse();
+        assertThat(filter.accepts("BOOT-INF/lib/a.jar")).isFalse();
+        assertThat(filter.accepts("/")).isFalse();
+    }
+
+    @Test
+    void singleStarsStayInOneDirectory() {
+        NestedFilter filter = NestedFilter.parse("WEB-INF/lib/*.jar", null);
+        assertThat(filter.accepts("WEB-INF/lib/a.jar")).isTrue();
+        assertThat(filter.accepts("WEB-INF/lib/x/a.jar")).isFalse();
+        assertThat(filter.accepts("WEB-INF/lib/a.jar/BOOT-INF/classes")).isFalse();
+        assertThat(NestedFilter.parse("WEB-INF/lib/?.jar", null).accepts("WEB-INF/lib/ab.jar")).isFalse();
+        assertThat(NestedFilter.parse("WEB-INF/lib/?.jar", null).accepts("WEB-INF/lib/a.jar")).isTrue();
+    }
+
+    @Test
+    void doubleStarsCrossDirectories() {
+        NestedFilter filter = NestedFilter.parse("BOOT-INF/lib/spring-**", null);
+        assertThat(filter.accepts("BOOT-INF/lib/spring-core.jar")).isTrue();
+        assertThat(filter.accepts("BOOT-INF/lib/spring-core.jar/BOOT-INF/classes")).isTrue();
+        assertThat(filter.accepts("BOOT-INF/lib/jackson.jar")).isFalse();
+    }
+
+    @Test
+    void theArchiveRootIsASlash() {
+        NestedFilter filter = NestedFilter.parse("/", null);
+        assertThat(filter.accepts("/")).isTrue();
+        assertThat(filter.accepts("BOOT-INF/classes")).isFalse();
+        assertThat(NestedFilter.parse(null, "/").accepts("/")).isFalse();
+    }
+
+    @Test
+    void excludesWinOverIncludes() {
+        NestedFilter filter = NestedFilter.parse("BOOT-INF/**", "BOOT-INF/lib/*-test.jar, BOOT-INF/classes");
+        assertThat(filter.accepts("BOOT-INF/lib/app.jar")).isTrue();
+        assertThat(filter.accepts("BOOT-INF/lib/app-test.jar")).isFalse();
+        assertThat(filter.accepts("BOOT-INF/classes")).isFalse();
+        assertThat(filter.accepts("BOOT-INF/classes/x")).isFalse();
+
+        NestedFilter onlyExclude = NestedFilter.parse(null, "WEB-INF/lib");
+        assertThat(onlyExclude.accepts("/")).isTrue();
+        assertThat(onlyExclude.accepts("WEB-INF/classes")).isTrue();
+        assertThat(onlyExclude.accepts("WEB-INF/lib/a.jar")).isFalse();
+    }
+
+    @Test
+    void nestedArchivesAreOpenedWhenAnIncludeReachesInside() {
+        NestedFilter inner = NestedFilter.parse("BOOT-INF/lib/app.jar/BOOT-INF/classes", null);
+        assertThat(inner.accepts("BOOT-INF/lib/app.jar")).isFalse();
+        assertThat(inner.reaches("BOOT-INF/lib/app.jar")).isTrue();
+        assertThat(inner.reaches("BOOT-INF/lib/other.jar")).isFalse();
+
+        NestedFilter anyJar = NestedFilter.parse("BOOT-INF/lib/*.jar/BOOT-INF/classes", null);
+        assertThat(anyJar.reaches("BOOT-INF/lib/app.jar")).isTrue();
+        assertThat(anyJar.reaches("WEB-INF/lib/app.jar")).isFalse();
+
+        NestedFilter deep = NestedFilter.parse("**/classes", "BOOT-INF/lib/skip.jar");
+        assertThat(deep.reaches("BOOT-INF/lib/app.jar")).isTrue();
+        assertThat(deep.reaches("BOOT-INF/lib/skip.jar")).isFalse();
+    }
+
+    @Test
+    void normalizedFormIsStable() {
+        assertThat(NestedFilter.parse(" BOOT-INF/classes/ ,WEB-INF/lib/*.jar", "x/").toString())
+                .isEqualTo("include=BOOT-INF/classes,WEB-INF/lib/*.jar;exclude=x");
+    }
+}
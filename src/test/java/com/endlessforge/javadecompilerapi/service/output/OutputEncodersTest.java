@@ -0,0 +1,86 @@
+package com.endlessforge.javadecompilerapi.service.output;
+
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutputEncodersTest {
+
+    private static final Map<String, String> SOURCES = Map.of(
+            "a/B.java", "package a;\n\nclass B {}\n",
+            "a/C.java", "package a;\n\nclass C { String s = \"é\\n\"; }\n",
+            "a/" + "deep/".repeat(40) + "D.java", "class D {}\n");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final OutputEncoders encoders = new OutputEncoders(1, 3, mapper);
+
+    @AfterEach
+    void shutdown() {
+        encoders.shutdown();
+    }
+
+    private byte[] encode(OutputFormat format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputWriter writer = encoders.open(format, out)) {
+            for (Map.Entry<String, String> e : SOURCES.entrySet()) writer.put(DecompiledEntry.source(e.getKey(), e.getValue()));
+            writer.flush();
+        }
+        return out.toByteArray();
+    }
+
+    /** Reads an encoded result back into path -> source. */
+    private Map<String, String> decode(OutputFormat format, byte[] bytes) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        InputStream in = new ByteArrayInputStream(bytes);
+        switch (format) {
+            case ZIP, ZIP_STORE -> {
+                try (ZipInputStream zip = new ZipInputStream(in)) {
+                    for (ZipEntry e; (e = zip.getNextEntry()) != null; ) {
+                        assertThat(e.getMethod()).isEqualTo(format == OutputFormat.ZIP ? ZipEntry.DEFLATED : ZipEntry.STORED);
+                        entries.put(e.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+                    }
+                }
+            }
+            case TAR_ZST -> {
+                try (TarArchiveInputStream tar = new TarArchiveInputStream(new ZstdCompressorInputStream(in))) {
+                    for (TarArchiveEntry e; (e = tar.getNextEntry()) != null; ) {
+                        entries.put(e.getName(), new String(tar.readAllBytes(), StandardCharsets.UTF_8));
+                    }
+                }
+            }
+            case NDJSON -> {
+                for (String line : new String(bytes, StandardCharsets.UTF_8).split("\n")) {
+                    JsonNode record = mapper.readTree(line);
+                    entries.put(record.get("path").asText(), record.get("source").asText());
+                }
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    void everyFormatRoundTrips() throws IOException {
+        for (OutputFormat format : OutputFormat.values()) {
+            assertThat(encoders.isAvailable(format)).as(format.label()).isTrue();
+            assertThat(decode(format, encode(format))).as(format.label()).isEqualTo(SOURCES);
+        }
+        assertThat(encoders.labels()).isEqualTo(OutputFormat.labels());
+    }
+}
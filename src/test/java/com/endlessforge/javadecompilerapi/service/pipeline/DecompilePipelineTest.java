@@ -0,0 +1,152 @@
+package com.endlessforge.javadecompilerapi.service.pipeline;
+
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DecompilePipelineTest {
+
+    private static final String STUB = "Decompilation timed out";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final DecompileWorkerPool workers = new DecompileWorkerPool(2, Duration.ZERO);
+    // what a hung engine waits on; released after each test so stranded workers can exit
+    private final CountDownLatch hang = new CountDownLatch(1);
+    private final Map<String, String> written = new LinkedHashMap<>();
+    private final EntrySink sink = entry -> {
+        String previous = written.put(entry.path(), new String(entry.content(), StandardCharsets.UTF_8));
+        assertThat(previous).as("written twice: %s", entry.path()).isNull();
+    };
+
+    @AfterEach
+    void release() {
+        hang.countDown();
+    }
+
+    private DecompilePipeline pipeline(Duration classTimeout, Duration requestTimeout) {
+        return new DecompilePipeline(workers, new DecompileMetrics(registry), classTimeout, requestTimeout);
+    }
+
+    /** Emits {@code <name>.java} for every item, hanging on those in {@code hangBefore} or {@code hangAfter}. */
+    private DecompilePipeline.BatchDecompiler<String> engine(Set<String> hangBefore, Set<String> hangAfter) {
+        return (batch, progress) -> {
+            for (String name : batch) {
+                progress.begin(name);
+                if (hangBefore.contains(name)) hang.await();
+                progress.add(DecompiledEntry.source(name + ".java", "class " + name + " {}"));
+                if (hangAfter.contains(name)) hang.await();
+            }
+        };
+    }
+
+    private int write(DecompilePipeline pipeline, List<List<String>> batches, DecompilePipeline.BatchDecompiler<String> work,
+                      DecompileContext ctx) throws IOException {
+        return pipeline.write("cfr", batches, Function.identity(), work, sink, ctx);
+    }
+
+    private double abandoned(String reason) {
+        var counter = registry.find("decompiler.classes.abandoned").tag("reason", reason).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    @Test
+    void writesEveryBatchOnceAndDropsDuplicates() throws IOException {
+        DecompileContext ctx = new DecompileContext();
+        int n = write(pipeline(Duration.ZERO, Duration.ZERO), List.of(List.of("p/A", "p/B"), List.of("p/C")),
+                (batch, progress) -> {
+                    for (String name : batch) {
+                        progress.begin(name);
+                        progress.add(DecompiledEntry.source(name + ".java", "class {}"));
+                        progress.add(DecompiledEntry.source("p/Shared.java", "class Shared {}"));
+                    }
+                }, ctx);
+
+        assertThat(written).containsOnlyKeys("p/A.java", "p/B.java", "p/C.java", "p/Shared.java");
+        assertThat(n).isEqualTo(4);
+        assertThat(ctx.classesTotal()).isEqualTo(3);
+        assertThat(ctx.classesDone()).isEqualTo(3);
+        assertThat(ctx.abandoned()).isEmpty();
+    }
+
+    @Test
+    void aFailingBatchLosesOnlyItsOwnClasses() throws IOException {
+        DecompileContext ctx = new DecompileContext();
+        write(pipeline(Duration.ZERO, Duration.ZERO), List.of(List.of("p/A"), List.of("p/Bad"), List.of("p/C")),
+                (batch, progress) -> {
+                    progress.begin(batch.get(0));
+                    if (batch.get(0).equals("p/Bad")) throw new IllegalStateException("engine bug");
+                    progress.add(DecompiledEntry.source(batch.get(0) + ".java", "class {}"));
+                }, ctx);
+
+        assertThat(written).containsOnlyKeys("p/A.java", "p/C.java");
+        assertThat(ctx.abandoned()).isEmpty();
+    }
+
+    @Test
+    void aHungClassIsStubbedAndTheRestOfItsBatchRequeued() throws IOException {
+        DecompileContext ctx = new DecompileContext();
+        write(pipeline(Duration.ofMillis(200), Duration.ZERO), List.of(List.of("p/A", "p/Hung", "p/C")),
+                engine(Set.of("p/Hung"), Set.of()), ctx);
+
+        assertThat(written).containsOnlyKeys("p/A.java", "p/Hung.java", "p/C.java");
+        assertThat(written.get("p/A.java")).isEqualTo("class p/A {}");
+        assertThat(written.get("p/C.java")).isEqualTo("class p/C {}");
+        assertThat(written.get("p/Hung.java")).contains(STUB, "p.Hung", "class-timeout").contains("package p;");
+        assertThat(ctx.abandoned()).containsExactly(new DecompileContext.Abandoned("p.Hung", "cfr", "class-timeout"));
+        assertThat(ctx.classesDone()).isEqualTo(3);
+        assertThat(abandoned("class-timeout")).isEqualTo(1);
+    }
+
+    @Test
+    void theRequestDeadlineStubsOnlyWhatHasNoSource() throws IOException {
+        DecompileContext ctx = new DecompileContext();
+        // p/A is finished but its worker has not moved on when time runs out; p/B never starts
+        write(pipeline(Duration.ZERO, Duration.ofMillis(300)), List.of(List.of("p/A", "p/B"), List.of("p/C", "p/D")),
+                engine(Set.of("p/C"), Set.of("p/A")), ctx);
+
+        assertThat(written).containsOnlyKeys("p/A.java", "p/B.java", "p/C.java", "p/D.java");
+        assertThat(written.get("p/A.java")).isEqualTo("class p/A {}");
+        assertThat(written.get("p/B.java")).contains(STUB, "request-timeout");
+        assertThat(written.get("p/C.java")).contains(STUB);
+        assertThat(ctx.abandoned()).extracting(DecompileContext.Abandoned::className)
+                .containsExactlyInAnyOrder("p.B", "p.C", "p.D");
+        assertThat(ctx.abandoned()).allMatch(a -> a.reason().equals("request-timeout"));
+        assertThat(ctx.classesDone()).isEqualTo(ctx.classesTotal());
+        assertThat(abandoned("request-timeout")).isEqualTo(3);
+    }
+
+    @Test
+    void theDeadlineCoversEveryRunOfOneRequest() throws IOException {
+        DecompileContext ctx = new DecompileContext();
+        DecompilePipeline pipeline = pipeline(Duration.ZERO, Duration.ofMillis(300));
+        write(pipeline, List.of(List.of("p/Hung")), engine(Set.of("p/Hung"), Set.of()), ctx);
+        // a second run for the same request (another engine of a race) starts out of time
+        write(pipeline, List.of(List.of("q/A")), engine(Set.of("q/A"), Set.of()), ctx);
+
+        assertThat(written.get("q/A.java")).contains(STUB);
+        assertThat(ctx.abandoned()).extracting(DecompileContext.Abandoned::className).containsExactly("p.Hung", "q.A");
+    }
+
+    @Test
+    void aFailedWriteEndsTheRun() {
+        DecompileContext ctx = new DecompileContext();
+        assertThatThrownBy(() -> pipeline(Duration.ZERO, Duration.ZERO).write("cfr", List.of(List.of("p/A")),
+                Function.identity(), engine(Set.of(), Set.of()), entry -> {
+                    throw new IOException("client gone");
+                }, ctx)).hasMessage("client gone");
+    }
+}
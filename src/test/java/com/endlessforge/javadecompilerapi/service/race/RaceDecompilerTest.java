@@ -0,0 +1,72 @@
+package com.endlessforge.javadecompilerapi.service.race;
+
+import com.endlessforge.javadecompilerapi.service.cfr.CfrAdapter;
+import com.endlessforge.javadecompilerapi.service.jadx.JadxAdapter;
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompilePipeline;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompileWorkerPool;
+import com.endlessforge.javadecompilerapi.service.procyon.ProcyonAdapter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RaceDecompilerTest {
+
+    private static byte[] bytesOf(Class<?> type) throws IOException {
+        try (InputStream in = type.getResourceAsStream(type.getSimpleName() + ".class")) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** One worker, so one interactive thread: every engine of a single-class race must share it. */
+    private static RaceDecompiler race(DecompileWorkerPool workers) {
+        DecompileMetrics metrics = new DecompileMetrics(new SimpleMeterRegistry());
+        DecompilePipeline pipeline = new DecompilePipeline(workers, metrics, Duration.ofSeconds(30), Duration.ofMinutes(5));
+        long maxClassBytes = 1 << 20;
+        return new RaceDecompiler(new CfrAdapter(pipeline, metrics, maxClassBytes), new ProcyonAdapter(pipeline, metrics, 0),
+                new JadxAdapter(pipeline, metrics, maxClassBytes), metrics, workers);
+    }
+
+    @Test
+    void singleClassesRunOnTheInteractiveThreads() throws IOException {
+        List<String> threads = new ArrayList<>();
+        DecompileWorkerPool workers = new DecompileWorkerPool(1, Duration.ZERO) {
+            @Override
+            public Executor interactiveExecutor() {
+                Executor interactive = super.interactiveExecutor();
+                return task -> interactive.execute(() -> {
+                    synchronized (threads) {
+                        threads.add(Thread.currentThread().getName());
+                    }
+                    task.run();
+                });
+            }
+        };
+        RaceDecompiler race = race(workers);
+
+        RaceDecompiler.ClassResult best = race.decompileClass(bytesOf(RaceSink.class), "best", null);
+        assertThat(best.passed()).isTrue();
+        assertThat(best.engine()).isIn(RaceDecompiler.ENGINES);
+        assertThat(best.source()).contains("class RaceSink");
+        assertThat(threads).hasSize(3).allMatch(name -> name.equals("decompile-interactive-1"));
+
+        RaceDecompiler.ClassResult first = race.decompileClass(bytesOf(RaceSink.class), "race", null);
+        assertThat(first.passed()).isTrue();
+    }
+
+    @Test
+    void noResultWhenEveryEngineFails() throws IOException {
+        RaceDecompiler race = race(new DecompileWorkerPool(1, Duration.ZERO));
+        RaceDecompiler.ClassResult result = race.decompileClass(new byte[] {(byte) 0xCA, (byte) 0xFE}, "best", null);
+        assertThat(result.engine()).isNull();
+        assertThat(result.passed()).isFalse();
+    }
+}
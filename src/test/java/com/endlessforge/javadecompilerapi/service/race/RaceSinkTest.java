@@ -0,0 +1,130 @@
+package com.endlessforge.javadecompilerapi.service.race;
+
+import com.endlessforge.javadecompilerapi.service.metrics.DecompileMetrics;
+import com.endlessforge.javadecompilerapi.service.pipeline.DecompiledEntry;
+import com.endlessforge.javadecompilerapi.service.pipeline.EntrySink;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RaceSinkTest {
+
+    private static final String GOOD = "class B {}";
+    private static final String WARNED = "class B { // WARNING: x\n }";
+    private static final String BROKEN = "class B {";
+    private static final String STUB = "/*\n * Decompilation timed out: cfr did not finish a.B\n */\npackage a;\n";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<String> written = new ArrayList<>();
+    private final EntrySink target = entry -> written.add(entry.path() + "=" + new String(entry.content(), StandardCharsets.UTF_8));
+
+    private RaceSink sink(String mode) {
+        return new RaceSink(target, mode, 3, new DecompileMetrics(registry));
+    }
+
+    private static DecompiledEntry source(String source) {
+        return DecompiledEntry.source("a/B.java", source);
+    }
+
+    private double wins(String mode, String engine, String result) {
+        var counter = registry.find("decompiler.race.wins").tags("mode", mode, "engine", engine, "result", result).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    @Test
+    void raceKeepsTheFirstPassingResult() throws IOException {
+        RaceSink race = sink("race");
+        race.forEngine("procyon", 1).put(source(BROKEN));
+        assertThat(race.isSettled("a/B")).isFalse();
+        race.forEngine("jadx", 2).put(source(WARNED));
+        assertThat(race.isSettled("a/B")).isTrue();
+        race.forEngine("cfr", 0).put(source(GOOD)); // too late
+        race.finish();
+
+        assertThat(written).containsExactly("a/B.java=" + WARNED);
+        assertThat(wins("race", "jadx", "passed")).isEqualTo(1);
+    }
+
+    @Test
+    void bestWaitsForEveryEngineAndPrefersFewerWarnings() throws IOException {
+        RaceSink best = sink("best");
+        best.forEngine("cfr", 0).put(source(WARNED));
+        best.forEngine("jadx", 2).put(source(GOOD));
+        assertThat(written).isEmpty();
+        best.forEngine("procyon", 1).put(source(GOOD));
+
+        // procyon and jadx tie, procyon is earlier in the tie-break order
+        assertThat(written).containsExactly("a/B.java=" + GOOD);
+        assertThat(wins("best", "procyon", "passed")).isEqualTo(1);
+    }
+
+    @Test
+    void finishWritesTheLeastBadResultWhenNothingPasses() throws IOException {
+        RaceSink race = sink("race");
+        race.forEngine("cfr", 0).put(source(BROKEN));
+        race.forEngine("jadx", 2).put(source("class B { // JADX WARN: x\n"));
+        assertThat(written).isEmpty();
+        race.finish();
+
+        assertThat(written).containsExactly("a/B.java=" + BROKEN);
+        assertThat(wins("race", "cfr", "fallback")).isEqualTo(1);
+    }
+
+    @Test
+    void aStubIsAbandonedOnlyIfNoEngineDoesBetter() throws IOException {
+        List<String> abandoned = new ArrayList<>();
+        RaceSink race = sink("race");
+        race.forEngine("cfr", 0).stub(source(STUB), () -> abandoned.add("cfr"));
+        assertThat(race.isSettled("a/B")).isFalse();
+        race.forEngine("jadx", 2).put(source(GOOD));
+        race.forEngine("cfr", 0).stub(DecompiledEntry.source("a/C.java", STUB), () -> abandoned.add("cfr C"));
+        race.forEngine("procyon", 1).put(DecompiledEntry.source("a/C.java", BROKEN));
+        assertThat(abandoned).isEmpty();
+        race.finish();
+
+        // a broken source still beats the stub; a/B was never abandoned
+        assertThat(written).containsExactly("a/B.java=" + GOOD, "a/C.java=" + BROKEN);
+        assertThat(abandoned).isEmpty();
+    }
+
+    @Test
+    void aStubThatWinsIsRecordedBeforeItIsWritten() throws IOException {
+        List<String> abandoned = new ArrayList<>();
+        RaceSink best = sink("best");
+        best.forEngine("cfr", 0).stub(source(STUB), () -> abandoned.add("cfr:" + written.size()));
+        best.finish();
+
+        assertThat(abandoned).containsExactly("cfr:0");
+        assertThat(written).containsExactly("a/B.java=" + STUB);
+    }
+
+    @Test
+    void lineMapsAreWrittenWithTheWinningSourceOnly() throws IOException {
+        RaceSink race = sink("race");
+        race.forEngine("cfr", 0).put(DecompiledEntry.source("a/B.linemap", "cfr-lines"));
+        race.forEngine("jadx", 2).put(DecompiledEntry.source("a/B.linemap", "jadx-lines"));
+        race.forEngine("jadx", 2).put(source(GOOD));
+        race.forEngine("cfr", 0).put(source(GOOD));
+        race.finish();
+
+        assertThat(written).containsExactly("a/B.linemap=jadx-lines", "a/B.java=" + GOOD);
+    }
+
+    @Test
+    void aFailedWriteEndsTheRaceForEveryEngine() {
+        RaceSink race = new RaceSink(entry -> {
+            throw new IOException("client gone");
+        }, "race", 3, new DecompileMetrics(registry));
+        assertThatThrownBy(() -> race.forEngine("cfr", 0).put(source(GOOD))).hasMessage("client gone");
+        assertThatThrownBy(() -> race.forEngine("jadx", 2).put(DecompiledEntry.source("a/C.java", GOOD)))
+                .hasMessage("client gone");
+        assertThat(race.failure()).hasMessage("client gone");
+    }
+}
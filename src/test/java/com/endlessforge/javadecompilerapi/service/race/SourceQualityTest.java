@@ -0,0 +1,58 @@
+package com.endlessforge.javadecompilerapi.service.race;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SourceQualityTest {
+
+    @Test
+    void passesWellFormedSource() {
+        SourceQuality.Verdict v = SourceQuality.assess("""
+                package a;
+                /* a { comment */
+                class B {
+                    String s = "}) \\" (";
+                    char c = '{';
+                    String t = \"""
+                        ( unbalanced inside a text block
+                        \""";
+                    int[] f(int x) { return new int[] {x}; } // trailing }
+                }
+                """);
+        assertThat(v.passed()).isTrue();
+        assertThat(v.reason()).isEqualTo("ok");
+    }
+
+    @Test
+    void failsEmptySourceAndEngineFailureMarkers() {
+        assertThat(SourceQuality.assess(null).passed()).isFalse();
+        assertThat(SourceQuality.assess("  \n").reason()).isEqualTo("empty");
+        assertThat(SourceQuality.assess("class B { /* This method has failed to decompile */ }").reason())
+                .contains("This method has failed to decompile");
+        assertThat(SourceQuality.assess("class B { // JADX ERROR: x\n }").passed()).isFalse();
+        assertThat(SourceQuality.assess("/* Decompilation timed out */ class B {}").passed()).isFalse();
+    }
+
+    @Test
+    void failsSourceThatDoesNotCloseWhatItOpens() {
+        assertThat(SourceQuality.lexicalProblem("class B {\n void f() {\n}")).isEqualTo("missing '}' at end");
+        assertThat(SourceQuality.lexicalProblem("class B {\n int f(] }")).isEqualTo("unbalanced ']' at line 2");
+        assertThat(SourceQuality.lexicalProblem("class B {\n /* open")).isEqualTo("unterminated comment at line 2");
+        assertThat(SourceQuality.lexicalProblem("class B {\n\n String s = \"x;\n}")).isEqualTo("unterminated literal at line 3");
+        assertThat(SourceQuality.lexicalProblem("String s = \"\"\" x")).startsWith("unterminated text block");
+    }
+
+    @Test
+    void passingBeatsFailingThenFewerWarnings() {
+        SourceQuality.Verdict clean = SourceQuality.assess("class B {}");
+        SourceQuality.Verdict warned = SourceQuality.assess("class B { // WARNING: x\n // JADX WARN: y\n }");
+        SourceQuality.Verdict failed = SourceQuality.assess("class B {");
+        assertThat(warned.passed()).isTrue();
+        assertThat(warned.warnings()).isEqualTo(2);
+        assertThat(clean.betterThan(warned)).isTrue();
+        assertThat(warned.betterThan(clean)).isFalse();
+        assertThat(warned.betterThan(failed)).isTrue();
+        assertThat(clean.betterThan(clean)).isFalse();
+    }
+}
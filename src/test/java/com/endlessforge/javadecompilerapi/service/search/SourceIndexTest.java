@@ -0,0 +1,143 @@
+package com.endlessforge.javadecompilerapi.service.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SourceIndexTest {
+
+    private static final String FOO = """
+            package p;
+
+            public class Foo {
+                private String fooName = "hello world";
+
+                public void fooBar(int count) {
+                    fooName = "x";
+                }
+
+                public void fooBaz() {
+                    fooBar(1);
+                }
+            }
+            """;
+
+    private static final String QUX = """
+            package p;
+
+            class Qux {
+                void run() {
+                    new Foo().fooBar(2);
+                    new Foo().fooBaz();
+                }
+            }
+            """;
+
+    @TempDir
+    Path tmp;
+
+    private SourceIndex index;
+
+    @BeforeEach
+    void build() throws IOException {
+        Path archive = tmp.resolve("result.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+            add(out, "p/", "");
+            add(out, "p/Foo.java", FOO);
+            add(out, "p/notes.txt", "fooBar everywhere");
+            add(out, "p/Qux.java", QUX);
+        }
+        Path file = tmp.resolve("result.idx");
+        assertThat(SourceIndex.build(archive, file)).isPositive();
+        index = SourceIndex.open(file);
+    }
+
+    private static void add(ZipOutputStream out, String name, String content) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content.getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+    }
+
+    private List<String> terms(String query, TermKind kind) {
+        return index.find(query, kind).stream().map(m -> m.kind().label() + ":" + m.term()).toList();
+    }
+
+    /** The hits of every match as {@code file:line}. */
+    private List<String> hits(String query, TermKind kind, int limit) throws IOException {
+        List<String> hits = new ArrayList<>();
+        try (FileChannel channel = index.channel()) {
+            for (SourceIndex.Match match : index.find(query, kind)) {
+                int[] pairs = index.postings(channel, match, limit);
+                for (int i = 0; i < pairs.length; i += 2) hits.add(index.file(pairs[i]) + ":" + pairs[i + 1]);
+            }
+        }
+        return hits;
+    }
+
+    @Test
+    void indexesOnlyJavaSources() {
+        assertThat(index.fileCount()).isEqualTo(2);
+        assertThat(List.of(index.file(0), index.file(1))).containsExactly("p/Foo.java", "p/Qux.java");
+        assertThat(index.termCount()).isPositive();
+    }
+
+    @Test
+    void findsWholeTermsIgnoringCase() {
+        assertThat(terms("foo", TermKind.CLASS)).containsExactly("class:Foo");
+        assertThat(terms("FOOBAR", TermKind.METHOD)).contains("method:fooBar");
+        assertThat(terms("fooName", TermKind.FIELD)).containsExactly("field:fooName");
+        assertThat(terms("hello world", TermKind.STRING)).containsExactly("string:hello world");
+        assertThat(terms("fooBa", null)).isEmpty();
+        assertThat(terms("zzz", null)).isEmpty();
+    }
+
+    @Test
+    void kindNarrowsTheMatches() {
+        assertThat(terms("fooName", null)).contains("field:fooName", "identifier:fooName");
+        assertThat(terms("fooName", TermKind.METHOD)).isEmpty();
+    }
+
+    @Test
+    void wildcardsMatchWithinThePrefixRange() {
+        assertThat(terms("fooba?", TermKind.METHOD)).containsExactly("method:fooBar", "method:fooBaz");
+        assertThat(terms("foo*", TermKind.FIELD)).containsExactly("field:fooName");
+        assertThat(terms("*world", TermKind.STRING)).containsExactly("string:hello world");
+        assertThat(terms("q*x", TermKind.CLASS)).contains("class:Qux");
+    }
+
+    @Test
+    void postingsKeepFileAndLineAcrossFiles() throws IOException {
+        // lines restart per file, so deltas within a file and absolute lines after a file change both decode
+        assertThat(hits("fooBar", TermKind.IDENTIFIER, Integer.MAX_VALUE))
+                .containsExactly("p/Foo.java:6", "p/Foo.java:11", "p/Qux.java:5");
+        assertThat(hits("fooName", TermKind.IDENTIFIER, Integer.MAX_VALUE))
+                .containsExactly("p/Foo.java:4", "p/Foo.java:7");
+    }
+
+    @Test
+    void postingsStopAtTheLimit() throws IOException {
+        assertThat(hits("fooBar", TermKind.IDENTIFIER, 2)).containsExactly("p/Foo.java:6", "p/Foo.java:11");
+        assertThat(index.find("fooBar", TermKind.IDENTIFIER)).singleElement()
+                .satisfies(m -> assertThat(m.count()).isEqualTo(3));
+    }
+
+    @Test
+    void refusesFilesThatAreNotAnIndex() throws IOException {
+        Path junk = tmp.resolve("junk.idx");
+        Files.write(junk, new byte[16]);
+        assertThatThrownBy(() -> SourceIndex.open(junk)).isInstanceOf(IOException.class);
+    }
+}
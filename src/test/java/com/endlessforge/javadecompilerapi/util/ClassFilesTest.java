@@ -0,0 +1,46 @@
+package com.endlessforge.javadecompilerapi.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ClassFilesTest {
+
+    static byte[] bytesOf(Class<?> type) throws IOException {
+        String resource = type.getName().substring(type.getPackageName().length() + 1) + ".class";
+        try (InputStream in = type.getResourceAsStream(resource)) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    void readsTheNameOfTopLevelAndNestedClasses() throws IOException {
+        assertThat(ClassFiles.internalName(bytesOf(ClassFiles.class)))
+                .isEqualTo("com/endlessforge/javadecompilerapi/util/ClassFiles");
+        assertThat(ClassFiles.binaryName(bytesOf(Map.Entry.class))).isEqualTo("java.util.Map$Entry");
+    }
+
+    @Test
+    void rejectsWhatIsNotAClassFile() {
+        assertThatThrownBy(() -> ClassFiles.internalName("PK\u0003\u0004 not a class".getBytes()))
+                .isInstanceOf(IOException.class).hasMessageContaining("magic");
+        assertThatThrownBy(() -> ClassFiles.internalName(new byte[0])).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void rejectsTruncatedAndCorruptHeaders() throws IOException {
+        byte[] bytes = bytesOf(ClassFiles.class);
+        assertThatThrownBy(() -> ClassFiles.internalName(Arrays.copyOf(bytes, 40))).isInstanceOf(IOException.class);
+
+        byte[] badTag = bytes.clone();
+        badTag[10] = 99; // first constant pool tag
+        assertThatThrownBy(() -> ClassFiles.internalName(badTag)).isInstanceOf(IOException.class)
+                .hasMessageContaining("tag");
+    }
+}
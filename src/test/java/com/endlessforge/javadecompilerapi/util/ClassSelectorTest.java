@@ -0,0 +1,92 @@
+package com.endlessforge.javadecompilerapi.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClassSelectorTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void blankOrWildcardSelectsTheWholeArchive() {
+        assertThat(ClassSelector.parse(null)).isNull();
+        assertThat(ClassSelector.parse(" ")).isNull();
+        assertThat(ClassSelector.parse(" , ")).isNull();
+        assertThat(ClassSelector.parse("org.acme.Foo,*")).isNull();
+    }
+
+    @Test
+    void acceptsDottedSlashedAndClassFileNames() {
+        ClassSelector selector = ClassSelector.parse("org.acme.Foo, org/acme/Bar ,org/acme/Baz.class");
+        assertThat(selector.isExact()).isTrue();
+        assertThat(selector.classes()).containsExactly("org/acme/Bar", "org/acme/Baz", "org/acme/Foo");
+    }
+
+    @Test
+    void nestedClassesSelectTheirOutermostClass() {
+        ClassSelector selector = ClassSelector.parse("org.acme.Foo$Bar$Baz");
+        assertThat(selector.classes()).containsExactly("org/acme/Foo");
+        assertThat(selector.matches("org/acme/Foo")).isTrue();
+        assertThat(selector.matches("org/acme/Foo$1")).isTrue();
+        assertThat(selector.matches("org/acme/Food")).isFalse();
+    }
+
+    @Test
+    void packagePrefixesIncludeSubPackages() {
+        ClassSelector selector = ClassSelector.parse("org.acme.*");
+        assertThat(selector.isExact()).isFalse();
+        assertThat(selector.matches("org/acme/Foo")).isTrue();
+        assertThat(selector.matches("org/acme/deep/Foo$Inner")).isTrue();
+        assertThat(selector.matches("org/acmex/Foo")).isFalse();
+        assertThat(selector.matches("Foo")).isFalse();
+    }
+
+    @Test
+    void stringFormIsSortedForCacheKeys() {
+        assertThat(ClassSelector.parse("b.B,a.*,a.A").toString())
+                .isEqualTo(ClassSelector.parse("a.A , a/* , b/B.class").toString())
+                .isEqualTo("a.A,b.B,a.*");
+    }
+
+    @Test
+    void ofTakesNamesAsTheyAreAndMaySelectNothing() {
+        ClassSelector none = ClassSelector.of(List.of());
+        assertThat(none.isExact()).isTrue();
+        assertThat(none.matches("a/A")).isFalse();
+        assertThat(ClassSelector.of(List.of("a/A$B")).classes()).containsExactly("a/A$B");
+    }
+
+    @Test
+    void findsSelectedClassesInAJar() throws IOException {
+        Path jar = tmp.resolve("t.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (String name : List.of("a/A.class", "a/A$1.class", "a/b/C.class", "d/D.class",
+                    "META-INF/versions/11/a/A.class", "a/readme.txt")) {
+                out.putNextEntry(new ZipEntry(name));
+                write(out);
+                out.closeEntry();
+            }
+        }
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            assertThat(ClassSelector.parse("a.A,x.Missing").topLevelClasses(zip)).containsExactly("a/A");
+            assertThat(ClassSelector.parse("a.*").topLevelClasses(zip)).containsExactlyInAnyOrder("a/A", "a/b/C");
+            assertThat(ClassSelector.parse("a.A").classesWithNested(zip)).containsExactlyInAnyOrder("a/A", "a/A$1");
+        }
+    }
+
+    private static void write(OutputStream out) throws IOException {
+        out.write(new byte[]{(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE});
+    }
+}
@@ -0,0 +1,87 @@
+package com.endlessforge.javadecompilerapi.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JarClassesTest {
+
+    @TempDir
+    Path tmp;
+
+    private static ZipEntry entry(String name, long size) {
+        ZipEntry e = new ZipEntry(name);
+        if (size >= 0) e.setSize(size);
+        return e;
+    }
+
+    private static InputStream bytes(int n) {
+        return new ByteArrayInputStream(new byte[n]);
+    }
+
+    @Test
+    void readsEntriesOfTheirRecordedSize() throws IOException {
+        assertThat(JarClasses.read(bytes(100), entry("a/B.class", 100), 1000)).hasSize(100);
+        assertThat(JarClasses.read(bytes(100), entry("a/B.class", -1), 1000)).hasSize(100);
+        assertThat(JarClasses.read(bytes(1000), entry("a/B.class", -1), 1000)).hasSize(1000);
+    }
+
+    @Test
+    void refusesARecordedSizeOverTheLimitWithoutReading() {
+        InputStream never = new InputStream() {
+            @Override
+            public int read() {
+                throw new AssertionError("read a class that was too large");
+            }
+        };
+        assertThatThrownBy(() -> JarClasses.read(never, entry("a/B.class", Integer.MAX_VALUE), 1000))
+                .isInstanceOf(ClassTooLargeException.class)
+                .hasMessageContaining("a/B.class");
+        assertThatThrownBy(() -> JarClasses.read(never, entry("a/B.class", Long.MAX_VALUE), Long.MAX_VALUE))
+                .isInstanceOf(ClassTooLargeException.class);
+    }
+
+    @Test
+    void refusesEntriesInflatingPastTheLimit() {
+        assertThatThrownBy(() -> JarClasses.read(bytes(1001), entry("a/B.class", -1), 1000))
+                .isInstanceOf(ClassTooLargeException.class);
+        // the recorded size is not trusted either
+        assertThatThrownBy(() -> JarClasses.read(bytes(200), entry("a/B.class", 100), 1000))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("longer than its recorded size");
+        assertThatThrownBy(() -> JarClasses.read(bytes(50), entry("a/B.class", 100), 1000))
+                .isInstanceOf(EOFException.class);
+    }
+
+    @Test
+    void readsOutOfAZipFile() throws IOException {
+        Path jar = tmp.resolve("a.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (String name : List.of("a/B.class", "a/B$1.class", "a/C.class", "META-INF/versions/11/a/B.class", "a/res.txt")) {
+                out.putNextEntry(new ZipEntry(name));
+                out.write(new byte[name.length() * 10]);
+                out.closeEntry();
+            }
+        }
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            assertThat(JarClasses.allClasses(zip)).containsExactly("a/B", "a/B$1", "a/C");
+            assertThat(JarClasses.topLevelClasses(zip)).containsExactly("a/B", "a/C");
+            assertThat(JarClasses.read(zip, zip.getEntry("a/B.class"), 1000)).hasSize(90);
+            assertThatThrownBy(() -> JarClasses.read(zip, zip.getEntry("a/B.class"), 89))
+                    .isInstanceOf(ClassTooLargeException.class);
+        }
+    }
+}